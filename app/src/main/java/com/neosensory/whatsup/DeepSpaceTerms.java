@@ -0,0 +1,458 @@
+package com.neosensory.whatsup;
+
+/**
+ * The SDP4 deep-space terms for one orbit (period >= 225 minutes): lunar and solar periodics, and
+ * for 12-hour and geosynchronous orbits the geopotential resonance coefficients. They're worked out
+ * once from the mean elements at epoch (Vallado's dscom and dsinit); {@link OrbitalState} applies
+ * them at each propagation. Immutable once constructed.
+ */
+final class DeepSpaceTerms {
+  private static final double TWO_PI = 2 * Math.PI;
+  private static final double X2O3 = 2.0 / 3.0;
+  // lunar and solar constants
+  static final double ZNS = 1.19459e-5;
+  static final double ZES = 0.01675;
+  static final double ZNL = 1.5835218e-4;
+  static final double ZEL = 0.05490;
+  private static final double C1SS = 2.9864797e-6;
+  private static final double C1L = 4.7968065e-7;
+  private static final double ZSINIS = 0.39785416;
+  private static final double ZCOSIS = 0.91744867;
+  private static final double ZCOSGS = 0.1945905;
+  private static final double ZSINGS = -0.98088458;
+  // resonance constants
+  private static final double Q22 = 1.7891679e-6;
+  private static final double Q31 = 2.1460748e-6;
+  private static final double Q33 = 2.2123015e-7;
+  private static final double ROOT22 = 1.7891679e-6;
+  private static final double ROOT44 = 7.3636953e-9;
+  private static final double ROOT54 = 2.1765803e-9;
+  private static final double ROOT32 = 3.7393792e-7;
+  private static final double ROOT52 = 1.1428639e-7;
+  static final double RPTIM = 4.37526908801129966e-3; // earth rotation (rad/min)
+
+  // lunar-solar periodics
+  final double e3;
+  final double ee2;
+  final double se2;
+  final double se3;
+  final double sgh2;
+  final double sgh3;
+  final double sgh4;
+  final double sh2;
+  final double sh3;
+  final double si2;
+  final double si3;
+  final double sl2;
+  final double sl3;
+  final double sl4;
+  final double xgh2;
+  final double xgh3;
+  final double xgh4;
+  final double xh2;
+  final double xh3;
+  final double xi2;
+  final double xi3;
+  final double xl2;
+  final double xl3;
+  final double xl4;
+  final double zmol;
+  final double zmos;
+
+  // lunar-solar secular rates (per minute)
+  final double dedt;
+  final double didt;
+  final double dmdt;
+  final double dnodt;
+  final double domdt;
+
+  // resonance: 0 for none, 1 for geosynchronous, 2 for 12-hour orbits
+  final int irez;
+  final double gsto; // sidereal time at epoch (rad)
+  final double xfact;
+  final double xlamo;
+  final double del1;
+  final double del2;
+  final double del3;
+  final double d2201;
+  final double d2211;
+  final double d3210;
+  final double d3222;
+  final double d4410;
+  final double d4422;
+  final double d5220;
+  final double d5232;
+  final double d5421;
+  final double d5433;
+
+  /**
+   * Work out the deep-space terms
+   *
+   * @param epochDays the epoch in days since 1949 December 31 00:00 UT
+   * @param gsto Greenwich sidereal time at epoch (rad)
+   * @param xke sqrt(GM) in earth radii^1.5 / min
+   * @param ecco eccentricity
+   * @param inclo inclination (rad)
+   * @param nodeo right ascension of the ascending node (rad)
+   * @param argpo argument of perigee (rad)
+   * @param mo mean anomaly (rad)
+   * @param no un-Kozai'd mean motion (rad/min)
+   * @param mdot secular rate of the mean anomaly (rad/min)
+   * @param argpdot secular rate of the argument of perigee (rad/min)
+   * @param nodedot secular rate of the node (rad/min)
+   */
+  DeepSpaceTerms(
+      double epochDays,
+      double gsto,
+      double xke,
+      double ecco,
+      double inclo,
+      double nodeo,
+      double argpo,
+      double mo,
+      double no,
+      double mdot,
+      double argpdot,
+      double nodedot) {
+    this.gsto = gsto;
+
+    // dscom: lunar and solar terms
+    double snodm = Math.sin(nodeo);
+    double cnodm = Math.cos(nodeo);
+    double sinomm = Math.sin(argpo);
+    double cosomm = Math.cos(argpo);
+    double sinim = Math.sin(inclo);
+    double cosim = Math.cos(inclo);
+    double emsq = ecco * ecco;
+    double betasq = 1 - emsq;
+    double rtemsq = Math.sqrt(betasq);
+
+    double day = epochDays + 18261.5;
+    double xnodce = (4.5236020 - 9.2422029e-4 * day) % TWO_PI;
+    double stem = Math.sin(xnodce);
+    double ctem = Math.cos(xnodce);
+    double zcosil = 0.91375164 - 0.03568096 * ctem;
+    double zsinil = Math.sqrt(1 - zcosil * zcosil);
+    double zsinhl = 0.089683511 * stem / zsinil;
+    double zcoshl = Math.sqrt(1 - zsinhl * zsinhl);
+    double gam = 5.8351514 + 0.0019443680 * day;
+    double zx = 0.39785416 * stem / zsinil;
+    double zy = zcoshl * ctem + 0.91744867 * zsinhl * stem;
+    zx = Math.atan2(zx, zy);
+    zx = gam + zx - xnodce;
+    double zcosgl = Math.cos(zx);
+    double zsingl = Math.sin(zx);
+
+    // the first pass is the sun, the second the moon
+    double zcosg = ZCOSGS;
+    double zsing = ZSINGS;
+    double zcosi = ZCOSIS;
+    double zsini = ZSINIS;
+    double zcosh = cnodm;
+    double zsinh = snodm;
+    double cc = C1SS;
+    double xnoi = 1 / no;
+    double[] solar = null;
+    double[] lunar = null;
+    for (int body = 0; body < 2; body++) {
+      double a1 = zcosg * zcosh + zsing * zcosi * zsinh;
+      double a3 = -zsing * zcosh + zcosg * zcosi * zsinh;
+      double a7 = -zcosg * zsinh + zsing * zcosi * zcosh;
+      double a8 = zsing * zsini;
+      double a9 = zsing * zsinh + zcosg * zcosi * zcosh;
+      double a10 = zcosg * zsini;
+      double a2 = cosim * a7 + sinim * a8;
+      double a4 = cosim * a9 + sinim * a10;
+      double a5 = -sinim * a7 + cosim * a8;
+      double a6 = -sinim * a9 + cosim * a10;
+
+      double x1 = a1 * cosomm + a2 * sinomm;
+      double x2 = a3 * cosomm + a4 * sinomm;
+      double x3 = -a1 * sinomm + a2 * cosomm;
+      double x4 = -a3 * sinomm + a4 * cosomm;
+      double x5 = a5 * sinomm;
+      double x6 = a6 * sinomm;
+      double x7 = a5 * cosomm;
+      double x8 = a6 * cosomm;
+
+      double z31 = 12 * x1 * x1 - 3 * x3 * x3;
+      double z32 = 24 * x1 * x2 - 6 * x3 * x4;
+      double z33 = 12 * x2 * x2 - 3 * x4 * x4;
+      double z1 = 3 * (a1 * a1 + a2 * a2) + z31 * emsq;
+      double z2 = 6 * (a1 * a3 + a2 * a4) + z32 * emsq;
+      double z3 = 3 * (a3 * a3 + a4 * a4) + z33 * emsq;
+      double z11 = -6 * a1 * a5 + emsq * (-24 * x1 * x7 - 6 * x3 * x5);
+      double z12 =
+          -6 * (a1 * a6 + a3 * a5)
+              + emsq * (-24 * (x2 * x7 + x1 * x8) - 6 * (x3 * x6 + x4 * x5));
+      double z13 = -6 * a3 * a6 + emsq * (-24 * x2 * x8 - 6 * x4 * x6);
+      double z21 = 6 * a2 * a5 + emsq * (24 * x1 * x5 - 6 * x3 * x7);
+      double z22 =
+          6 * (a4 * a5 + a2 * a6) + emsq * (24 * (x2 * x5 + x1 * x6) - 6 * (x4 * x7 + x3 * x8));
+      double z23 = 6 * a4 * a6 + emsq * (24 * x2 * x6 - 6 * x4 * x8);
+      z1 = z1 + z1 + betasq * z31;
+      z2 = z2 + z2 + betasq * z32;
+      z3 = z3 + z3 + betasq * z33;
+      double s3 = cc * xnoi;
+      double s2 = -0.5 * s3 / rtemsq;
+      double s4 = s3 * rtemsq;
+      double s1 = -15 * ecco * s4;
+      double s5 = x1 * x3 + x2 * x4;
+      double s6 = x2 * x3 + x1 * x4;
+      double s7 = x2 * x4 - x1 * x3;
+      double[] terms = {
+        s1, s2, s3, s4, s5, s6, s7, z1, z2, z3, z11, z12, z13, z21, z22, z23, z31, z32, z33
+      };
+      if (body == 0) {
+        solar = terms;
+        zcosg = zcosgl;
+        zsing = zsingl;
+        zcosi = zcosil;
+        zsini = zsinil;
+        zcosh = zcoshl * cnodm + zsinhl * snodm;
+        zsinh = snodm * zcoshl - cnodm * zsinhl;
+        cc = C1L;
+      } else {
+        lunar = terms;
+      }
+    }
+    // terms[]: s1..s7 at 0..6, z1..z3 at 7..9, z11..z13 at 10..12, z21..z23 at 13..15,
+    // z31..z33 at 16..18
+    double ss1 = solar[0];
+    double ss2 = solar[1];
+    double ss3 = solar[2];
+    double ss4 = solar[3];
+    double ss5 = solar[4];
+    double ss6 = solar[5];
+    double ss7 = solar[6];
+    double sz1 = solar[7];
+    double sz2 = solar[8];
+    double sz3 = solar[9];
+    double sz11 = solar[10];
+    double sz12 = solar[11];
+    double sz13 = solar[12];
+    double sz21 = solar[13];
+    double sz22 = solar[14];
+    double sz23 = solar[15];
+    double sz31 = solar[16];
+    double sz32 = solar[17];
+    double sz33 = solar[18];
+    double s1 = lunar[0];
+    double s2 = lunar[1];
+    double s3 = lunar[2];
+    double s4 = lunar[3];
+    double s5 = lunar[4];
+    double s6 = lunar[5];
+    double s7 = lunar[6];
+    double z1 = lunar[7];
+    double z2 = lunar[8];
+    double z3 = lunar[9];
+    double z11 = lunar[10];
+    double z12 = lunar[11];
+    double z13 = lunar[12];
+    double z21 = lunar[13];
+    double z22 = lunar[14];
+    double z23 = lunar[15];
+    double z31 = lunar[16];
+    double z32 = lunar[17];
+    double z33 = lunar[18];
+
+    zmol = (4.7199672 + 0.22997150 * day - gam) % TWO_PI;
+    zmos = (6.2565837 + 0.017201977 * day) % TWO_PI;
+
+    se2 = 2 * ss1 * ss6;
+    se3 = 2 * ss1 * ss7;
+    si2 = 2 * ss2 * sz12;
+    si3 = 2 * ss2 * (sz13 - sz11);
+    sl2 = -2 * ss3 * sz2;
+    sl3 = -2 * ss3 * (sz3 - sz1);
+    sl4 = -2 * ss3 * (-21 - 9 * emsq) * ZES;
+    sgh2 = 2 * ss4 * sz32;
+    sgh3 = 2 * ss4 * (sz33 - sz31);
+    sgh4 = -18 * ss4 * ZES;
+    sh2 = -2 * ss2 * sz22;
+    sh3 = -2 * ss2 * (sz23 - sz21);
+
+    ee2 = 2 * s1 * s6;
+    e3 = 2 * s1 * s7;
+    xi2 = 2 * s2 * z12;
+    xi3 = 2 * s2 * (z13 - z11);
+    xl2 = -2 * s3 * z2;
+    xl3 = -2 * s3 * (z3 - z1);
+    xl4 = -2 * s3 * (-21 - 9 * emsq) * ZEL;
+    xgh2 = 2 * s4 * z32;
+    xgh3 = 2 * s4 * (z33 - z31);
+    xgh4 = -18 * s4 * ZEL;
+    xh2 = -2 * s2 * z22;
+    xh3 = -2 * s2 * (z23 - z21);
+
+    // dsinit: secular rates and resonance
+    boolean nearEquatorial = inclo < 5.2359877e-2 || inclo > Math.PI - 5.2359877e-2;
+    if (no < 0.0052359877 && no > 0.0034906585) {
+      irez = 1;
+    } else if (no >= 8.26e-3 && no <= 9.24e-3 && ecco >= 0.5) {
+      irez = 2;
+    } else {
+      irez = 0;
+    }
+
+    double ses = ss1 * ZNS * ss5;
+    double sis = ss2 * ZNS * (sz11 + sz13);
+    double sls = -ZNS * ss3 * (sz1 + sz3 - 14 - 6 * emsq);
+    double sghs = ss4 * ZNS * (sz31 + sz33 - 6);
+    double shs = nearEquatorial ? 0 : -ZNS * ss2 * (sz21 + sz23);
+    if (sinim != 0) {
+      shs = shs / sinim;
+    }
+    double sgs = sghs - cosim * shs;
+
+    dedt = ses + s1 * ZNL * s5;
+    didt = sis + s2 * ZNL * (z11 + z13);
+    dmdt = sls - ZNL * s3 * (z1 + z3 - 14 - 6 * emsq);
+    double sghl = s4 * ZNL * (z31 + z33 - 6);
+    double shll = nearEquatorial ? 0 : -ZNL * s2 * (z21 + z23);
+    double domdt = sgs + sghl;
+    double dnodt = shs;
+    if (sinim != 0) {
+      domdt = domdt - cosim / sinim * shll;
+      dnodt = dnodt + shll / sinim;
+    }
+    this.domdt = domdt;
+    this.dnodt = dnodt;
+
+    double theta = gsto % TWO_PI;
+    double aonv = Math.pow(no / xke, X2O3);
+    double xfact = 0;
+    double xlamo = 0;
+    double del1 = 0;
+    double del2 = 0;
+    double del3 = 0;
+    double d2201 = 0;
+    double d2211 = 0;
+    double d3210 = 0;
+    double d3222 = 0;
+    double d4410 = 0;
+    double d4422 = 0;
+    double d5220 = 0;
+    double d5232 = 0;
+    double d5421 = 0;
+    double d5433 = 0;
+    if (irez == 2) {
+      // geopotential resonance for 12-hour orbits
+      double cosisq = cosim * cosim;
+      double em = ecco;
+      double eoc = em * emsq;
+      double g201 = -0.306 - (em - 0.64) * 0.440;
+      double g211;
+      double g310;
+      double g322;
+      double g410;
+      double g422;
+      double g520;
+      double g521;
+      double g532;
+      double g533;
+      if (em <= 0.65) {
+        g211 = 3.616 - 13.2470 * em + 16.2900 * emsq;
+        g310 = -19.302 + 117.3900 * em - 228.4190 * emsq + 156.5910 * eoc;
+        g322 = -18.9068 + 109.7927 * em - 214.6334 * emsq + 146.5816 * eoc;
+        g410 = -41.122 + 242.6940 * em - 471.0940 * emsq + 313.9530 * eoc;
+        g422 = -146.407 + 841.8800 * em - 1629.014 * emsq + 1083.4350 * eoc;
+        g520 = -532.114 + 3017.977 * em - 5740.032 * emsq + 3708.2760 * eoc;
+      } else {
+        g211 = -72.099 + 331.819 * em - 508.738 * emsq + 266.724 * eoc;
+        g310 = -346.844 + 1582.851 * em - 2415.925 * emsq + 1246.113 * eoc;
+        g322 = -342.585 + 1554.908 * em - 2366.899 * emsq + 1215.972 * eoc;
+        g410 = -1052.797 + 4758.686 * em - 7193.992 * emsq + 3651.957 * eoc;
+        g422 = -3581.690 + 16178.110 * em - 24462.770 * emsq + 12422.520 * eoc;
+        if (em > 0.715) {
+          g520 = -5149.66 + 29936.92 * em - 54087.36 * emsq + 31324.56 * eoc;
+        } else {
+          g520 = 1464.74 - 4664.75 * em + 3763.64 * emsq;
+        }
+      }
+      if (em < 0.7) {
+        g533 = -919.22770 + 4988.6100 * em - 9064.7700 * emsq + 5542.21 * eoc;
+        g521 = -822.71072 + 4568.6173 * em - 8491.4146 * emsq + 5337.524 * eoc;
+        g532 = -853.66600 + 4690.2500 * em - 8624.7700 * emsq + 5341.4 * eoc;
+      } else {
+        g533 = -37995.780 + 161616.52 * em - 229838.20 * emsq + 109377.94 * eoc;
+        g521 = -51752.104 + 218913.95 * em - 309468.16 * emsq + 146349.42 * eoc;
+        g532 = -40023.880 + 170470.89 * em - 242699.48 * emsq + 115605.82 * eoc;
+      }
+      double sini2 = sinim * sinim;
+      double f220 = 0.75 * (1 + 2 * cosim + cosisq);
+      double f221 = 1.5 * sini2;
+      double f321 = 1.875 * sinim * (1 - 2 * cosim - 3 * cosisq);
+      double f322 = -1.875 * sinim * (1 + 2 * cosim - 3 * cosisq);
+      double f441 = 35 * sini2 * f220;
+      double f442 = 39.3750 * sini2 * sini2;
+      double f522 =
+          9.84375
+              * sinim
+              * (sini2 * (1 - 2 * cosim - 5 * cosisq)
+                  + 0.33333333 * (-2 + 4 * cosim + 6 * cosisq));
+      double f523 =
+          sinim
+              * (4.92187512 * sini2 * (-2 - 4 * cosim + 10 * cosisq)
+                  + 6.56250012 * (1 + 2 * cosim - 3 * cosisq));
+      double f542 =
+          29.53125 * sinim * (2 - 8 * cosim + cosisq * (-12 + 8 * cosim + 10 * cosisq));
+      double f543 =
+          29.53125 * sinim * (-2 - 8 * cosim + cosisq * (12 + 8 * cosim - 10 * cosisq));
+      double xno2 = no * no;
+      double ainv2 = aonv * aonv;
+      double temp1 = 3 * xno2 * ainv2;
+      double temp = temp1 * ROOT22;
+      d2201 = temp * f220 * g201;
+      d2211 = temp * f221 * g211;
+      temp1 = temp1 * aonv;
+      temp = temp1 * ROOT32;
+      d3210 = temp * f321 * g310;
+      d3222 = temp * f322 * g322;
+      temp1 = temp1 * aonv;
+      temp = 2 * temp1 * ROOT44;
+      d4410 = temp * f441 * g410;
+      d4422 = temp * f442 * g422;
+      temp1 = temp1 * aonv;
+      temp = temp1 * ROOT52;
+      d5220 = temp * f522 * g520;
+      d5232 = temp * f523 * g532;
+      temp = 2 * temp1 * ROOT54;
+      d5421 = temp * f542 * g521;
+      d5433 = temp * f543 * g533;
+      xlamo = (mo + nodeo + nodeo - theta - theta) % TWO_PI;
+      xfact = mdot + dmdt + 2 * (nodedot + dnodt - RPTIM) - no;
+    } else if (irez == 1) {
+      // synchronous resonance
+      double g200 = 1 + emsq * (-2.5 + 0.8125 * emsq);
+      double g310 = 1 + 2 * emsq;
+      double g300 = 1 + emsq * (-6 + 6.60937 * emsq);
+      double f220 = 0.75 * (1 + cosim) * (1 + cosim);
+      double f311 = 0.9375 * sinim * sinim * (1 + 3 * cosim) - 0.75 * (1 + cosim);
+      double f330 = 1 + cosim;
+      f330 = 1.875 * f330 * f330 * f330;
+      del1 = 3 * no * no * aonv * aonv;
+      del2 = 2 * del1 * f220 * g200 * Q22;
+      del3 = 3 * del1 * f330 * g300 * Q33 * aonv;
+      del1 = del1 * f311 * g310 * Q31 * aonv;
+      xlamo = (mo + nodeo + argpo - theta) % TWO_PI;
+      xfact = mdot + (argpdot + nodedot) - RPTIM + dmdt + domdt + dnodt - no;
+    }
+    this.xfact = xfact;
+    this.xlamo = xlamo;
+    this.del1 = del1;
+    this.del2 = del2;
+    this.del3 = del3;
+    this.d2201 = d2201;
+    this.d2211 = d2211;
+    this.d3210 = d3210;
+    this.d3222 = d3222;
+    this.d4410 = d4410;
+    this.d4422 = d4422;
+    this.d5220 = d5220;
+    this.d5232 = d5232;
+    this.d5421 = d5421;
+    this.d5433 = d5433;
+  }
+}
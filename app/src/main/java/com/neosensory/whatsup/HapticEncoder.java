@@ -0,0 +1,146 @@
+package com.neosensory.whatsup;
+
+/**
+ * Encodes several satellites into one frame of motor activations. Each satellite's activations are
+ * looked up in a table precomputed over quantized (intensity, bearing) pairs, so encoding a tick is
+ * a few array reads per satellite instead of a call into the haptics SDK, and the per-satellite
+ * frames are blended with a selectable {@link CombineRule}.
+ *
+ * <p>Bearings map linearly across the motors (0 degrees to the first motor, 360 to the last), the
+ * same way they were passed to the SDK. Not thread safe.
+ */
+public final class HapticEncoder {
+  /** Computes the activations for one (intensity, location) pair when the table is built */
+  public interface Encoding {
+    /**
+     * Get the motor activations for a point
+     *
+     * @param intensity how strong the point is, [0:1]
+     * @param location where the point is across the motors, [0:1]
+     * @return one activation per motor
+     */
+    int[] getActivations(float intensity, float location);
+  }
+
+  /** How the satellites' frames are combined */
+  public enum CombineRule {
+    /** each motor takes the strongest activation of any satellite */
+    MAX,
+    /**
+     * each motor takes the average of the satellites' activations, weighted by their intensities,
+     * so nearer satellites dominate and the frame is never stronger than the strongest satellite
+     */
+    WEIGHTED_SUM,
+    /**
+     * satellites are taken in the order given (e.g. nearest first) and each motor takes the first
+     * nonzero activation, so lower-priority satellites only fill motors the others leave idle
+     */
+    PRIORITY
+  }
+
+  private final int numMotors;
+  private final int intensitySteps;
+  private final int bearingSteps;
+  // activations by [intensity step][bearing step][motor]
+  private final int[] table;
+  private final float[] weightedSums;
+  private CombineRule combineRule = CombineRule.MAX;
+
+  /**
+   * Create an encoder and build its table
+   *
+   * @param encoding computes the activations the table is built from
+   * @param numMotors the number of motors
+   * @param intensitySteps the number of quantized intensities, from 0 to 1 inclusive (at least 2)
+   * @param bearingSteps the number of quantized bearings, from 0 to 360 degrees inclusive (at
+   *     least 2)
+   */
+  public HapticEncoder(Encoding encoding, int numMotors, int intensitySteps, int bearingSteps) {
+    if (intensitySteps < 2 || bearingSteps < 2) {
+      throw new IllegalArgumentException("need at least 2 intensity and bearing steps");
+    }
+    this.numMotors = numMotors;
+    this.intensitySteps = intensitySteps;
+    this.bearingSteps = bearingSteps;
+    table = new int[intensitySteps * bearingSteps * numMotors];
+    weightedSums = new float[numMotors];
+    for (int i = 0; i < intensitySteps; i++) {
+      float intensity = i / (float) (intensitySteps - 1);
+      for (int b = 0; b < bearingSteps; b++) {
+        int[] activations = encoding.getActivations(intensity, b / (float) (bearingSteps - 1));
+        System.arraycopy(activations, 0, table, (i * bearingSteps + b) * numMotors, numMotors);
+      }
+    }
+  }
+
+  /**
+   * Set how the satellites' frames are combined
+   *
+   * @param combineRule the combine rule
+   */
+  public void setCombineRule(CombineRule combineRule) {
+    this.combineRule = combineRule;
+  }
+
+  /**
+   * Get how the satellites' frames are combined
+   *
+   * @return the combine rule
+   */
+  public CombineRule getCombineRule() {
+    return combineRule;
+  }
+
+  /**
+   * Encode satellites into one frame
+   *
+   * @param intensities each satellite's intensity, [0:1] (clamped)
+   * @param bearings each satellite's bearing from the user (degrees)
+   * @param count the number of satellites, in priority order for {@link CombineRule#PRIORITY}
+   * @param frame receives the activations (numMotors long). All zeros if count is 0.
+   */
+  public void encode(float[] intensities, float[] bearings, int count, int[] frame) {
+    for (int m = 0; m < numMotors; m++) {
+      frame[m] = 0;
+      weightedSums[m] = 0;
+    }
+    float totalIntensity = 0;
+    for (int s = 0; s < count; s++) {
+      float intensity = Math.max(0, Math.min(1, intensities[s]));
+      int offset = getOffset(intensity, bearings[s]);
+      switch (combineRule) {
+        case MAX:
+          for (int m = 0; m < numMotors; m++) {
+            frame[m] = Math.max(frame[m], table[offset + m]);
+          }
+          break;
+        case WEIGHTED_SUM:
+          totalIntensity += intensity;
+          for (int m = 0; m < numMotors; m++) {
+            weightedSums[m] += intensity * table[offset + m];
+          }
+          break;
+        case PRIORITY:
+          for (int m = 0; m < numMotors; m++) {
+            if (frame[m] == 0) {
+              frame[m] = table[offset + m];
+            }
+          }
+          break;
+      }
+    }
+    if (combineRule == CombineRule.WEIGHTED_SUM && totalIntensity > 0) {
+      for (int m = 0; m < numMotors; m++) {
+        frame[m] = Math.round(weightedSums[m] / totalIntensity);
+      }
+    }
+  }
+
+  // table offset of the nearest quantized (intensity, bearing) pair
+  private int getOffset(float intensity, float bearing) {
+    int i = Math.round(intensity * (intensitySteps - 1));
+    float location = Math.max(0, Math.min(1, bearing / 360));
+    int b = Math.round(location * (bearingSteps - 1));
+    return (i * bearingSteps + b) * numMotors;
+  }
+}
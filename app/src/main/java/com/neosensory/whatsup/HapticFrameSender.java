@@ -0,0 +1,228 @@
+package com.neosensory.whatsup;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends motor frames to the wristband from its own thread, so a slow Bluetooth write never blocks
+ * the tracking loop. Submitted frames go into a single-slot mailbox where the latest frame wins: a
+ * frame that hasn't been sent by the time the next one arrives is dropped. Frames identical to the
+ * last one written are skipped, and writes are spaced at least a minimum interval apart.
+ *
+ * <p>Write latency, dropped frames and skipped frames are counted so the link can be monitored.
+ */
+public final class HapticFrameSender {
+  private static final String TAG = "HapticFrameSender";
+  private static final long STOP_TIMEOUT_MILLIS = 500;
+
+  /** Where frames are written, e.g. the Neosensory SDK's vibrateMotors */
+  public interface MotorSink {
+    /**
+     * Write one frame. Called from the sender's thread. The array is reused after the call returns,
+     * so don't keep it.
+     *
+     * @param frame one activation per motor
+     */
+    void write(int[] frame);
+  }
+
+  private final MotorSink sink;
+  private final long minWriteIntervalNanos;
+  private final Thread thread;
+  private final Object lock = new Object();
+  // guarded by lock
+  private final int[] pendingFrame;
+  private boolean hasPending;
+  private boolean hasWritten;
+  private boolean running;
+  // only touched by the sender's thread
+  private final int[] sendingFrame;
+  private final int[] lastWrittenFrame;
+  private long lastWriteNanos;
+
+  private final AtomicLong writeCount = new AtomicLong();
+  private final AtomicLong totalWriteNanos = new AtomicLong();
+  private final AtomicLong maxWriteNanos = new AtomicLong();
+  private final AtomicLong droppedFrames = new AtomicLong();
+  private final AtomicLong skippedFrames = new AtomicLong();
+
+  /**
+   * Create a sender. Call {@link #start()} to start its thread.
+   *
+   * @param name the sender thread's name
+   * @param sink where frames are written
+   * @param numMotors the frame length
+   * @param minWriteIntervalMillis the least time between the starts of two writes (ms), to stay
+   *     within what the link can sustain
+   */
+  public HapticFrameSender(
+      String name, MotorSink sink, int numMotors, long minWriteIntervalMillis) {
+    this.sink = sink;
+    this.minWriteIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minWriteIntervalMillis);
+    pendingFrame = new int[numMotors];
+    sendingFrame = new int[numMotors];
+    lastWrittenFrame = new int[numMotors];
+    lastWriteNanos = System.nanoTime() - minWriteIntervalNanos;
+    thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                sendFrames();
+              }
+            },
+            name);
+    thread.setDaemon(true);
+  }
+
+  /** Start the sender's thread */
+  public void start() {
+    synchronized (lock) {
+      running = true;
+    }
+    thread.start();
+  }
+
+  /**
+   * Stop the sender. Any frame that hasn't been written is discarded. Waits briefly for a write in
+   * progress to finish, so the caller can follow up with its own commands (e.g. stopping the
+   * motors) without a late frame overriding them.
+   */
+  public void stop() {
+    synchronized (lock) {
+      running = false;
+      hasPending = false;
+      lock.notifyAll();
+    }
+    try {
+      thread.join(STOP_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Queue a frame, replacing any frame that hasn't been written yet. Never blocks on the link.
+   *
+   * @param frame one activation per motor (copied)
+   */
+  public void submit(int[] frame) {
+    synchronized (lock) {
+      if (hasPending) {
+        droppedFrames.incrementAndGet();
+      }
+      System.arraycopy(frame, 0, pendingFrame, 0, pendingFrame.length);
+      hasPending = true;
+      lock.notifyAll();
+    }
+  }
+
+  /**
+   * Forget the last written frame so the next one is written even if it's unchanged, e.g. after
+   * the wristband reconnects
+   */
+  public void reset() {
+    synchronized (lock) {
+      hasWritten = false;
+    }
+  }
+
+  private void sendFrames() {
+    while (true) {
+      synchronized (lock) {
+        try {
+          // wait for a frame, then for the link's minimum write interval; a newer frame arriving
+          // in the meantime replaces the pending one
+          while (running && !hasPending) {
+            lock.wait();
+          }
+          long waitNanos = lastWriteNanos + minWriteIntervalNanos - System.nanoTime();
+          while (running && waitNanos > 0) {
+            TimeUnit.NANOSECONDS.timedWait(lock, waitNanos);
+            waitNanos = lastWriteNanos + minWriteIntervalNanos - System.nanoTime();
+          }
+        } catch (InterruptedException e) {
+          return;
+        }
+        if (!running) {
+          return;
+        }
+        System.arraycopy(pendingFrame, 0, sendingFrame, 0, sendingFrame.length);
+        hasPending = false;
+        if (hasWritten && Arrays.equals(sendingFrame, lastWrittenFrame)) {
+          skippedFrames.incrementAndGet();
+          continue;
+        }
+        hasWritten = true;
+      }
+      long start = System.nanoTime();
+      try {
+        sink.write(sendingFrame);
+      } catch (RuntimeException e) {
+        Log.e(TAG, "Motor write failed", e);
+      }
+      long elapsed = System.nanoTime() - start;
+      System.arraycopy(sendingFrame, 0, lastWrittenFrame, 0, lastWrittenFrame.length);
+      lastWriteNanos = start;
+      recordWrite(elapsed);
+    }
+  }
+
+  private void recordWrite(long elapsedNanos) {
+    writeCount.incrementAndGet();
+    totalWriteNanos.addAndGet(elapsedNanos);
+    long max = maxWriteNanos.get();
+    while (elapsedNanos > max && !maxWriteNanos.compareAndSet(max, elapsedNanos)) {
+      max = maxWriteNanos.get();
+    }
+  }
+
+  /**
+   * Get the number of frames written to the sink
+   *
+   * @return the write count
+   */
+  public long getWriteCount() {
+    return writeCount.get();
+  }
+
+  /**
+   * Get the average time a write took
+   *
+   * @return the mean write latency (ms), or 0 if nothing has been written
+   */
+  public double getAverageWriteMillis() {
+    long writes = writeCount.get();
+    return writes == 0 ? 0 : totalWriteNanos.get() / (writes * 1.0e6);
+  }
+
+  /**
+   * Get the longest time a write took
+   *
+   * @return the max write latency (ms)
+   */
+  public double getMaxWriteMillis() {
+    return maxWriteNanos.get() / 1.0e6;
+  }
+
+  /**
+   * Get the number of frames replaced by a newer frame before they could be written
+   *
+   * @return the dropped frame count
+   */
+  public long getDroppedFrameCount() {
+    return droppedFrames.get();
+  }
+
+  /**
+   * Get the number of frames not written because they matched the last written frame
+   *
+   * @return the skipped frame count
+   */
+  public long getSkippedFrameCount() {
+    return skippedFrames.get();
+  }
+}
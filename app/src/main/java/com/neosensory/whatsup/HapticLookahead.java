@@ -0,0 +1,239 @@
+package com.neosensory.whatsup;
+
+/**
+ * Pre-renders the next second or two of motor frames into a ring buffer, so haptic output keeps
+ * playing smoothly when the tracking thread is late. Each call to {@link #render} propagates the
+ * nearest satellites to every future frame time up to the horizon, encodes them, and appends the
+ * frames; a separate timed consumer reads the frame for the current time with {@link #getFrame}.
+ *
+ * <p>Frames are rendered for the user's location at render time, so the buffer is thrown away and
+ * re-rendered when the user moves more than a threshold, or when the set of nearest satellites or
+ * their orbits change. Satellites without a TLE don't contribute, as they can't be propagated.
+ *
+ * <p>Call {@link #render} from the tracking thread (it reads the {@link SatelliteStore} and uses
+ * the {@link HapticEncoder}); {@link #getFrame} may be called from any thread.
+ */
+public final class HapticLookahead {
+  private final SatelliteStore store;
+  private final HapticEncoder encoder;
+  private final int numMotors;
+  private final long framePeriodMillis;
+  private final int horizonFrames;
+  private final double maxDistanceToUser;
+  private final double invalidateDistanceKm;
+
+  // frame sequence numbers count framePeriodMillis steps from time 0; frame seq is in ring slot
+  // seq % capacity. Guarded by this.
+  private final int capacity;
+  private final int[] frames;
+  private long headSeq; // oldest frame still buffered
+  private long tailSeq; // next frame to render
+  private long underruns;
+  private long invalidations;
+
+  // render state, only touched by the rendering thread
+  private boolean hasRendered;
+  private double renderedLat; // where the buffered frames were rendered for
+  private double renderedLon;
+  private int candidateCount;
+  private final int[] candidateSlots;
+  private final OrbitalState[] candidateStates;
+  private final float[] intensities;
+  private final float[] bearings;
+  private final double[] distances;
+  private final double[] lla = new double[3];
+  private final double[] distanceAndBearing = new double[2];
+  private final int[] renderedFrame;
+
+  /**
+   * Create a lookahead renderer
+   *
+   * @param store the tracked satellites
+   * @param encoder encodes the satellites into a frame
+   * @param numMotors the frame length
+   * @param maxSatellites the most satellites blended into a frame
+   * @param framePeriodMillis time between frames (ms)
+   * @param horizonMillis how far ahead to render (ms)
+   * @param maxDistanceToUser surface distance (km) at which a satellite's intensity reaches 0
+   * @param invalidateDistanceKm how far (km) the user can move before the buffer is re-rendered
+   */
+  public HapticLookahead(
+      SatelliteStore store,
+      HapticEncoder encoder,
+      int numMotors,
+      int maxSatellites,
+      long framePeriodMillis,
+      long horizonMillis,
+      double maxDistanceToUser,
+      double invalidateDistanceKm) {
+    this.store = store;
+    this.encoder = encoder;
+    this.numMotors = numMotors;
+    this.framePeriodMillis = framePeriodMillis;
+    this.horizonFrames = (int) Math.max(1, horizonMillis / framePeriodMillis);
+    this.maxDistanceToUser = maxDistanceToUser;
+    this.invalidateDistanceKm = invalidateDistanceKm;
+    // one extra frame so the frame being played is kept while the full horizon is buffered
+    capacity = horizonFrames + 2;
+    frames = new int[capacity * numMotors];
+    candidateSlots = new int[maxSatellites];
+    candidateStates = new OrbitalState[maxSatellites];
+    intensities = new float[maxSatellites];
+    bearings = new float[maxSatellites];
+    distances = new double[maxSatellites];
+    renderedFrame = new int[numMotors];
+  }
+
+  /**
+   * Render frames up to the horizon. Invalidates the buffer first if the user has moved too far or
+   * the nearest satellites have changed.
+   *
+   * @param userLat user latitude (degrees)
+   * @param userLon user longitude (degrees)
+   * @param nowMillis the current time
+   * @param nearestSlots the nearest satellites' slots, nearest first (e.g. from the tracker)
+   * @param nearestCount the number of nearest satellites; only the first maxSatellites are used
+   */
+  public void render(
+      double userLat, double userLon, long nowMillis, int[] nearestSlots, int nearestCount) {
+    boolean invalidate = updateCandidates(nearestSlots, nearestCount);
+    if (hasRendered
+        && Utilities.getDistance(renderedLat, userLat, renderedLon, userLon)
+            > invalidateDistanceKm) {
+      invalidate = true;
+    }
+    long nowSeq = nowMillis / framePeriodMillis;
+    long seq;
+    synchronized (this) {
+      if (invalidate || !hasRendered || tailSeq <= nowSeq) {
+        // start over from the current frame (also if we've fallen behind the consumer)
+        if (hasRendered && invalidate) {
+          invalidations++;
+        }
+        headSeq = nowSeq;
+        tailSeq = nowSeq;
+        hasRendered = true;
+        renderedLat = userLat;
+        renderedLon = userLon;
+      }
+      seq = tailSeq;
+    }
+    for (; seq <= nowSeq + horizonFrames; seq++) {
+      renderFrame(userLat, userLon, seq * framePeriodMillis);
+      synchronized (this) {
+        if (seq - headSeq >= capacity) {
+          // the consumer hasn't caught up; drop the oldest frame
+          headSeq = seq - capacity + 1;
+        }
+        System.arraycopy(
+            renderedFrame, 0, frames, (int) (seq % capacity) * numMotors, numMotors);
+        tailSeq = seq + 1;
+      }
+    }
+  }
+
+  /**
+   * Get the frame to play at a time. Frames before it are discarded.
+   *
+   * @param timeMillis the playback time
+   * @param frame receives the frame (numMotors long)
+   * @return false if no frame has been rendered for this time (an underrun)
+   */
+  public synchronized boolean getFrame(long timeMillis, int[] frame) {
+    long seq = timeMillis / framePeriodMillis;
+    if (seq < headSeq || seq >= tailSeq) {
+      underruns++;
+      return false;
+    }
+    headSeq = seq;
+    System.arraycopy(frames, (int) (seq % capacity) * numMotors, frame, 0, numMotors);
+    return true;
+  }
+
+  /**
+   * Get the number of frames buffered ahead of a time
+   *
+   * @param timeMillis the current time
+   * @return the number of frames from timeMillis to the end of the buffer
+   */
+  public synchronized int getBufferedFrames(long timeMillis) {
+    long seq = Math.max(headSeq, timeMillis / framePeriodMillis);
+    return (int) Math.max(0, tailSeq - seq);
+  }
+
+  /**
+   * Get the number of times a frame was requested that hadn't been rendered
+   *
+   * @return the underrun count
+   */
+  public synchronized long getUnderrunCount() {
+    return underruns;
+  }
+
+  /**
+   * Get the number of times the buffer was thrown away because the user moved or the nearest
+   * satellites changed
+   *
+   * @return the invalidation count
+   */
+  public synchronized long getInvalidationCount() {
+    return invalidations;
+  }
+
+  // take the propagatable satellites from the nearest list, returning true if they've changed
+  private boolean updateCandidates(int[] nearestSlots, int nearestCount) {
+    boolean changed = false;
+    int count = 0;
+    for (int i = 0; i < nearestCount && count < candidateSlots.length; i++) {
+      int slot = nearestSlots[i];
+      OrbitalState orbitalState = store.getOrbitalState(slot);
+      if (orbitalState == null) {
+        continue;
+      }
+      if (count >= candidateCount
+          || candidateSlots[count] != slot
+          || candidateStates[count] != orbitalState) {
+        changed = true;
+      }
+      candidateSlots[count] = slot;
+      candidateStates[count] = orbitalState;
+      count++;
+    }
+    if (count != candidateCount) {
+      changed = true;
+    }
+    for (int i = count; i < candidateCount; i++) {
+      candidateStates[i] = null;
+    }
+    candidateCount = count;
+    return changed;
+  }
+
+  // encode the candidates' positions at a time into renderedFrame
+  private void renderFrame(double userLat, double userLon, long timeMillis) {
+    int count = 0;
+    for (int i = 0; i < candidateCount; i++) {
+      if (!candidateStates[i].getPosition(timeMillis, lla)) {
+        continue;
+      }
+      Utilities.getDistanceAndBearing(userLat, lla[0], userLon, lla[1], distanceAndBearing);
+      double distance = distanceAndBearing[0];
+      // stronger vibrations for satellites nearer the user: 1 overhead, 0 at maxDistanceToUser
+      float intensity =
+          distance <= maxDistanceToUser ? (float) (1 - distance / maxDistanceToUser) : 0;
+      // keep the satellites nearest first at this time, for the PRIORITY combine rule
+      int j = count;
+      while (j > 0 && distances[j - 1] > distance) {
+        distances[j] = distances[j - 1];
+        intensities[j] = intensities[j - 1];
+        bearings[j] = bearings[j - 1];
+        j--;
+      }
+      distances[j] = distance;
+      intensities[j] = intensity;
+      bearings[j] = (float) distanceAndBearing[1];
+      count++;
+    }
+    encoder.encode(intensities, bearings, count, renderedFrame);
+  }
+}
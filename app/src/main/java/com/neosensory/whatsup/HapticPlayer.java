@@ -0,0 +1,89 @@
+package com.neosensory.whatsup;
+
+/**
+ * Plays pre-rendered motor frames out on schedule. Its own thread wakes once per frame period,
+ * takes the frame for the current time from a {@link HapticLookahead} and submits it to a {@link
+ * HapticFrameSender}, so the wristband keeps getting frames on time while the tracking thread is
+ * late. If nothing has been rendered for the current time, the frame is skipped and the wristband
+ * keeps its last frame.
+ */
+public final class HapticPlayer {
+  private final HapticLookahead lookahead;
+  private final HapticFrameSender sender;
+  private final TickScheduler scheduler;
+  private final int[] frame;
+  private final Thread thread;
+  private volatile boolean running;
+  private volatile long playedFrames;
+
+  /**
+   * Create a player. Call {@link #start()} to start its thread.
+   *
+   * @param name the player thread's name
+   * @param lookahead where frames are read from
+   * @param sender where frames are played to
+   * @param numMotors the frame length
+   * @param framePeriodMillis time between frames (ms)
+   */
+  public HapticPlayer(
+      String name,
+      HapticLookahead lookahead,
+      HapticFrameSender sender,
+      int numMotors,
+      long framePeriodMillis) {
+    this.lookahead = lookahead;
+    this.sender = sender;
+    scheduler = new TickScheduler(framePeriodMillis);
+    frame = new int[numMotors];
+    thread =
+        new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                playFrames();
+              }
+            },
+            name);
+    thread.setDaemon(true);
+  }
+
+  /** Start the player's thread */
+  public void start() {
+    running = true;
+    thread.start();
+  }
+
+  /** Stop the player and wait for its thread to exit */
+  public void stop() {
+    running = false;
+    thread.interrupt();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Get the number of frames submitted to the sender
+   *
+   * @return the played frame count
+   */
+  public long getPlayedFrameCount() {
+    return playedFrames;
+  }
+
+  private void playFrames() {
+    while (running) {
+      try {
+        scheduler.awaitNextTick();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (running && lookahead.getFrame(System.currentTimeMillis(), frame)) {
+        sender.submit(frame);
+        playedFrames++;
+      }
+    }
+  }
+}
@@ -0,0 +1,243 @@
+package com.neosensory.whatsup;
+
+/**
+ * Open-addressing map from an int key (the NORAD ID) to a satellite (the app stores {@link
+ * Satellite}s), without boxing.
+ *
+ * <p>The map is copy-on-write: every mutation builds a new table under the map's lock and publishes
+ * it through a volatile field. Reads never lock, and a snapshot for iteration is just the current
+ * table, so the per-tick loops can walk every satellite without copying.
+ *
+ * <p>The price is that every put and remove is O(n): it copies the whole table, and allocates a new
+ * one, even to change a single entry. At the app's MAXSATELLITES (20) a put and a remove together
+ * take about half a microsecond, and writes (admitting or dropping a satellite) happen a few times
+ * a minute against thousands of reads, so it's a good trade. It isn't for a large, write-heavy map:
+ * at 20,000 entries the same pair takes milliseconds. The benchmarks module's
+ * SatelliteMapContentionBenchmark measures both the contended mix and the write cost by size.
+ *
+ * @param <S> the satellite type
+ */
+public final class IntSatelliteMap<S> {
+  private static final int MIN_CAPACITY = 16; // must be a power of two
+
+  private volatile Snapshot<S> table;
+
+  /** Create an empty map */
+  public IntSatelliteMap() {
+    table = new Snapshot<S>(MIN_CAPACITY);
+  }
+
+  /**
+   * Create an empty map sized for an expected number of entries
+   *
+   * @param expectedSize the number of entries the map should hold without resizing
+   */
+  public IntSatelliteMap(int expectedSize) {
+    table = new Snapshot<S>(capacityFor(expectedSize));
+  }
+
+  /**
+   * Get the satellite stored under a key
+   *
+   * @param key the NORAD ID
+   * @return the satellite, or null if the key isn't present
+   */
+  public S get(int key) {
+    return table.lookup(key);
+  }
+
+  /**
+   * Check if a key is present
+   *
+   * @param key the NORAD ID
+   * @return true if the map contains the key
+   */
+  public boolean containsKey(int key) {
+    return table.lookup(key) != null;
+  }
+
+  /**
+   * Get the number of entries
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    return table.size;
+  }
+
+  /**
+   * Check if the map is empty
+   *
+   * @return true if the map has no entries
+   */
+  public boolean isEmpty() {
+    return table.size == 0;
+  }
+
+  /**
+   * Get an immutable view of the map's current entries. Later writes to the map do not affect the
+   * returned snapshot.
+   *
+   * @return the current snapshot
+   */
+  public Snapshot<S> snapshot() {
+    return table;
+  }
+
+  /**
+   * Store a satellite under a key, replacing any existing value
+   *
+   * @param key the NORAD ID
+   * @param satellite the satellite (must not be null)
+   * @return the previous value, or null if there was none
+   */
+  public synchronized S put(int key, S satellite) {
+    Snapshot<S> current = table;
+    S previous = current.lookup(key);
+    int capacity = current.keys.length;
+    if (previous == null && (current.size + 1) * 2 > capacity) {
+      capacity *= 2;
+    }
+    Snapshot<S> updated = current.copy(capacity, key);
+    updated.insert(key, satellite);
+    updated.rebuildDense();
+    table = updated;
+    return previous;
+  }
+
+  /**
+   * Store a satellite under a key only if the key isn't already present
+   *
+   * @param key the NORAD ID
+   * @param satellite the satellite (must not be null)
+   * @return the existing value if there was one (in which case the map is unchanged), else null
+   */
+  public synchronized S putIfAbsent(int key, S satellite) {
+    S existing = table.lookup(key);
+    if (existing != null) {
+      return existing;
+    }
+    put(key, satellite);
+    return null;
+  }
+
+  /**
+   * Remove a key
+   *
+   * @param key the NORAD ID
+   * @return the removed value, or null if the key wasn't present
+   */
+  public synchronized S remove(int key) {
+    Snapshot<S> current = table;
+    S previous = current.lookup(key);
+    if (previous != null) {
+      Snapshot<S> updated = current.copy(current.keys.length, key);
+      updated.rebuildDense();
+      table = updated;
+    }
+    return previous;
+  }
+
+  /** Remove every entry */
+  public synchronized void clear() {
+    table = new Snapshot<S>(MIN_CAPACITY);
+  }
+
+  private static int capacityFor(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * An immutable table of entries. Values are also kept in a dense array so iteration doesn't need
+   * to skip empty buckets.
+   *
+   * @param <S> the satellite type
+   */
+  public static final class Snapshot<S> {
+    private final int[] keys;
+    private final Object[] values;
+    private final Object[] dense;
+    private int size;
+
+    private Snapshot(int capacity) {
+      keys = new int[capacity];
+      values = new Object[capacity];
+      dense = new Object[capacity / 2];
+      size = 0;
+    }
+
+    /**
+     * Get the number of entries in the snapshot
+     *
+     * @return the number of entries
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Get the i-th satellite of the snapshot, for iteration
+     *
+     * @param i index on [0, size())
+     * @return the satellite
+     */
+    @SuppressWarnings("unchecked") // only S is ever stored
+    public S get(int i) {
+      return (S) dense[i];
+    }
+
+    @SuppressWarnings("unchecked") // only S is ever stored
+    private S lookup(int key) {
+      int mask = keys.length - 1;
+      for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+        if (keys[i] == key) {
+          return (S) values[i];
+        }
+      }
+      return null;
+    }
+
+    // insert into a table that is still private to the writer
+    private void insert(int key, Object satellite) {
+      int mask = keys.length - 1;
+      int i = hash(key) & mask;
+      while (values[i] != null && keys[i] != key) {
+        i = (i + 1) & mask;
+      }
+      if (values[i] == null) {
+        size++;
+      }
+      keys[i] = key;
+      values[i] = satellite;
+    }
+
+    // copy every entry except skipKey into a new table of the given capacity
+    private Snapshot<S> copy(int capacity, int skipKey) {
+      Snapshot<S> copy = new Snapshot<S>(capacity);
+      for (int i = 0; i < keys.length; i++) {
+        if (values[i] != null && keys[i] != skipKey) {
+          copy.insert(keys[i], values[i]);
+        }
+      }
+      return copy;
+    }
+
+    private void rebuildDense() {
+      int n = 0;
+      for (int i = 0; i < values.length; i++) {
+        if (values[i] != null) {
+          dense[n++] = values[i];
+        }
+      }
+    }
+  }
+}
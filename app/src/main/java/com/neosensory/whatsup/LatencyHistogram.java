@@ -0,0 +1,131 @@
+package com.neosensory.whatsup;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with fixed power-of-two buckets: bucket 0 holds durations under 1 us
+ * and bucket i holds [2^(i-1), 2^i) us, up to about 18 minutes. Recording is a few atomic adds, so
+ * it can be called from hot paths on any thread; percentiles are read from a {@link Snapshot} and
+ * are accurate to the bucket (within a factor of 2).
+ */
+public final class LatencyHistogram {
+  public static final int BUCKETS = 31;
+  private static final long NANOS_PER_MICRO = 1000;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Record one duration
+   *
+   * @param nanos the duration (ns). Negative durations are recorded as 0.
+   */
+  public void recordNanos(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    long micros = nanos / NANOS_PER_MICRO;
+    int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+  }
+
+  /**
+   * Copy the current state. Recording can continue meanwhile, so the copy may be off by the
+   * durations recorded while it was taken.
+   *
+   * @return the snapshot
+   */
+  public Snapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return new Snapshot(counts, count.get(), totalNanos.get(), maxNanos.get());
+  }
+
+  /** A point-in-time copy of a histogram */
+  public static final class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    private Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+      this.counts = counts;
+      this.count = count;
+      this.totalNanos = totalNanos;
+      this.maxNanos = maxNanos;
+    }
+
+    /**
+     * Get the number of durations recorded
+     *
+     * @return the count
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * Get the mean duration
+     *
+     * @return the mean (ms), or 0 if nothing was recorded
+     */
+    public double getMeanMillis() {
+      return count == 0 ? 0 : totalNanos / (count * 1.0e6);
+    }
+
+    /**
+     * Get the longest duration
+     *
+     * @return the max (ms)
+     */
+    public double getMaxMillis() {
+      return maxNanos / 1.0e6;
+    }
+
+    /**
+     * Estimate a percentile as the upper edge of the bucket it falls in (capped at the max)
+     *
+     * @param percentile the percentile, [0:100]
+     * @return the estimate (ms), or 0 if nothing was recorded
+     */
+    public double getPercentileMillis(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(count * Math.max(0, Math.min(100, percentile)) / 100);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += counts[i];
+        if (seen >= Math.max(1, rank)) {
+          double upperMillis = (1L << i) / 1000.0;
+          return Math.min(upperMillis, getMaxMillis());
+        }
+      }
+      return getMaxMillis();
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "n=%d mean=%.3f p50=%.3f p99=%.3f max=%.3f ms",
+          count,
+          getMeanMillis(),
+          getPercentileMillis(50),
+          getPercentileMillis(99),
+          getMaxMillis());
+    }
+  }
+}
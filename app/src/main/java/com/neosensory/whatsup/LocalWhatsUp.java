@@ -0,0 +1,145 @@
+package com.neosensory.whatsup;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Local replacement for the n2yo.com "What's Up" call. Propagates every satellite in a TLE catalog
+ * and reports the ones inside the same elevation cone that getWhatsUp searches, through the same
+ * handler n2yo.com responses are parsed into, so they're admitted exactly like network results. It
+ * only knows about satellites whose TLEs have been cached, so it complements rather than replaces
+ * the network call.
+ */
+public final class LocalWhatsUp {
+  private int catalogSize;
+  private long loadedModificationCount = -1; // the cache's modification count at the last load
+  private OrbitalState[] orbitalStates = new OrbitalState[0];
+  private String[] names = new String[0];
+  private String[] intlDesignators = new String[0];
+  // parsed states from the previous catalog, reused when the TLE hasn't changed
+  private HashMap<Integer, OrbitalState> parsedStates = new HashMap<Integer, OrbitalState>();
+  private final double[] latLonAlt = new double[3];
+
+  /**
+   * Replace the catalog of satellites to search. TLEs that are unchanged since the last call are not
+   * re-parsed.
+   *
+   * @param catalog the cached TLEs to search
+   */
+  public synchronized void setCatalog(List<TleCache.Entry> catalog) {
+    HashMap<Integer, OrbitalState> updatedStates = new HashMap<Integer, OrbitalState>();
+    OrbitalState[] states = new OrbitalState[catalog.size()];
+    String[] satNames = new String[catalog.size()];
+    String[] satIntlDesignators = new String[catalog.size()];
+    int n = 0;
+    for (TleCache.Entry entry : catalog) {
+      OrbitalState orbitalState = parsedStates.get(entry.noradId);
+      try {
+        if (orbitalState == null || orbitalState.getEpochMillis() != entry.epochMillis) {
+          orbitalState = OrbitalState.fromTle(entry.line1, entry.line2);
+        }
+        satIntlDesignators[n] = getIntlDesignator(entry.line1);
+      } catch (IllegalArgumentException e) {
+        // leave malformed entries out of the catalog
+        e.printStackTrace();
+        continue;
+      }
+      updatedStates.put(entry.noradId, orbitalState);
+      states[n] = orbitalState;
+      satNames[n] = entry.name;
+      n++;
+    }
+    parsedStates = updatedStates;
+    orbitalStates = states;
+    names = satNames;
+    intlDesignators = satIntlDesignators;
+    catalogSize = n;
+  }
+
+  /**
+   * Reload the catalog from a TLE cache if the cache has changed since the last load (an entry
+   * added or refreshed), rather than on every search
+   *
+   * @param cache the TLE cache
+   * @return true if the catalog was reloaded
+   */
+  public synchronized boolean loadIfChanged(TleCache cache) {
+    long modificationCount = cache.getModificationCount();
+    if (modificationCount == loadedModificationCount) {
+      return false;
+    }
+    // a put that lands after the count is read is picked up now and reloaded again next time
+    setCatalog(cache.getAll());
+    loadedModificationCount = modificationCount;
+    return true;
+  }
+
+  /**
+   * Get the number of satellites in the catalog
+   *
+   * @return the catalog size
+   */
+  public synchronized int getCatalogSize() {
+    return catalogSize;
+  }
+
+  /**
+   * Find every catalog satellite above the observer, within the search cone
+   *
+   * @param observerLat observer latitude (degrees)
+   * @param observerLng observer longitude (degrees)
+   * @param observerAlt observer altitude (meters above sea level, as passed to getWhatsUp)
+   * @param searchRadius cone half-angle (degrees): 0 = straight up, 90 = horizon
+   * @param timeMillis the time to propagate to
+   * @param handler receives each satellite in the cone, like a parsed n2yo.com response
+   * @return the number of satellites found
+   */
+  public synchronized int getWhatsUp(
+      double observerLat,
+      double observerLng,
+      double observerAlt,
+      int searchRadius,
+      long timeMillis,
+      N2yoResponseParser.WhatsUpHandler handler) {
+    double minElevation = 90 - searchRadius;
+    double observerAltKm = observerAlt / 1000;
+    int satCount = 0;
+    for (int i = 0; i < catalogSize; i++) {
+      if (!orbitalStates[i].getPosition(timeMillis, latLonAlt)) {
+        continue;
+      }
+      double elevation =
+          Utilities.getElevation(
+              observerLat,
+              observerLng,
+              observerAltKm,
+              latLonAlt[0],
+              latLonAlt[1],
+              latLonAlt[2]);
+      if (elevation >= minElevation) {
+        handler.onSatellite(
+            orbitalStates[i].getNoradId(),
+            names[i],
+            intlDesignators[i],
+            latLonAlt[0],
+            latLonAlt[1],
+            latLonAlt[2]);
+        satCount++;
+      }
+    }
+    return satCount;
+  }
+
+  // convert TLE line 1's designator (e.g. "98067A") to n2yo.com's format (e.g. "1998-067A")
+  private static String getIntlDesignator(String line1) {
+    String designator = line1.substring(9, 17).trim();
+    if (designator.length() < 5) {
+      return designator;
+    }
+    int year = Integer.parseInt(designator.substring(0, 2));
+    return (year < 57 ? 2000 + year : 1900 + year)
+        + "-"
+        + designator.substring(2, 5)
+        + designator.substring(5);
+  }
+}
@@ -9,14 +9,12 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.drawable.VectorDrawable;
 import android.location.Location;
 import android.os.Bundle;
 import android.os.Handler;
 import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.android.gms.location.FusedLocationProviderClient;
@@ -28,25 +26,19 @@ import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
-import com.google.android.gms.maps.model.BitmapDescriptor;
-import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.neosensory.n2yo.N2YO;
 import com.neosensory.neosensoryblessed.NeoBuzzPsychophysics;
 import com.neosensory.neosensoryblessed.NeosensoryBlessed;
-import com.neosensory.tlepredictionengine.TlePredictionEngine;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Arrays;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Hashtable;
-import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MapsActivity extends FragmentActivity implements OnMapReadyCallback {
   private static final int ACCESS_LOCATION_REQUEST = 2;
@@ -62,15 +54,83 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
   // careful of n2yo.com API limits when setting this
   private static final int REFRESHLOCATIONPERIOD =
       50; // how many ms until we try to update all the tracked satellite locations
+  private static final int IDLEREFRESHLOCATIONPERIOD =
+      500; // update period (ms) used while no satellite is within MAXSURFACEDISTANCETOUSER
+  private static final long PASSHORIZON =
+      10 * 60 * 1000; // how far ahead (ms) each satellite's next pass over the user is predicted
+  private static final long PASSSTEP =
+      20000; // coarse sampling step (ms) when searching for a pass, before refining it
+  private static final double PASSOBSERVERMOVE =
+      5; // how far (km) the user can move before the predicted passes are recomputed
+  private static final long PROPAGATIONPERIOD =
+      1000; // ms between full propagations of each satellite (ticks in between interpolate)
+  private static final long MAXDORMANTPERIOD =
+      60000; // longest (ms) a satellite that can't reach the user yet goes without propagation
   private static final long REFRESHSATELLITESPERIOD =
       120000; // how many milliseconds we wait until polling n2yo.com for the list of nearby
   // satellites. Need to be careful of the n2yo.com API limits when setting this
+  private static final int N2YOWHATSUPPERHOUR =
+      90; // most "What's Up" requests sent in any hour (n2yo.com allows 100)
+  private static final int N2YOTLEPERHOUR =
+      900; // most get TLE requests sent in any hour (n2yo.com allows 1000)
+  private static final int N2YOMAXINFLIGHT =
+      4; // most n2yo.com requests awaiting a response at once
+  private static final long N2YOREQUESTTIMEOUT =
+      15000; // ms without a response before an n2yo.com request is given up on (TLEs are retried)
+  private static final double TLEREFRESHPRIORITY =
+      20000; // km added to a TLE request's priority if a stale TLE already places the satellite
   private static final int NUMMOTORS = 4; // assume this is for Neosensory Buzz
+  private static final long MOTORWRITEPERIOD =
+      40; // least ms between motor frame writes over Bluetooth (unchanged frames aren't resent)
+  private static final long HAPTICLOOKAHEAD =
+      2000; // how far ahead (ms) motor frames are rendered, to ride out tracking thread stalls
+  private static final double HAPTICLOOKAHEADMOVE =
+      0.5; // how far (km) the user can move before the rendered frames are re-rendered
+  private static final int HAPTICSATELLITES =
+      3; // how many of the nearest satellites are blended into each vibration frame
+  private static final HapticEncoder.CombineRule HAPTICCOMBINERULE =
+      HapticEncoder.CombineRule.MAX; // how their activations are blended
+  private static final int HAPTICINTENSITYSTEPS =
+      64; // quantized intensities in the haptic encoding table
+  private static final int HAPTICBEARINGSTEPS =
+      181; // quantized bearings (2 degrees apart) in the haptic encoding table
+  private static final long LOCALWHATSUPPERIOD =
+      5000; // how many ms between "What's Up" searches of our cached TLEs (no API cost)
+  private static final long TLECACHEMAXAGE =
+      24 * 60 * 60 * 1000; // ms before a cached TLE is refreshed (shorter for high-drag orbits)
+  private static final int WORKERTHREADS = 2; // worker threads for processing n2yo.com responses
+  private static final int WORKERQUEUESIZE =
+      64; // tasks that can wait for a worker before the oldest is dropped to make room
+  private static final double MARKERPIXELTHRESHOLD =
+      1; // how far (dp) a marker has to move on screen before we reposition it
+  private static final float MARKERALPHATHRESHOLD =
+      0.02f; // how much a marker's alpha has to change before we update it
+  private static final float MARKERROTATIONTHRESHOLD =
+      1; // how much (degrees) the user marker has to turn before we rotate it
+  private static final int MARKERMAXSKIPPEDUPDATES =
+      20; // most updates in a row a change too small to see is held back (1 s of 50 ms ticks)
+  private static final double VIEWPORTMARGIN =
+      0.25; // markers this far outside the visible region (fraction of its size) are still updated
+  private static final int MAXDISTANTUPDATEINTERVAL =
+      8; // most UI frames between updates of a marker far from the user
+  private static final float FULLRATEZOOM =
+      10; // zoom at which far markers update every frame (each level below halves their rate)
+  private static final long METRICSOVERLAYPERIOD =
+      1000; // ms between refreshes of the metrics overlay (long-press the map to toggle it)
+  private static final long METRICSLOGPERIOD =
+      60000; // ms between writes of the metrics to the log, under the TrackingMetrics tag
+  private static final int ICONCACHEBYTES =
+      4 * 1024 * 1024; // bitmap memory for rendered marker icons (every type and size fits)
 
   private NeosensoryBlessed
       blessedNeo; // instance of the Neosensory Android SDK to help connect to Buzz
   private GoogleMap mMap; // GoogleMap instance
+  private MarkerPool markerPool; // recycled satellite markers, only touched from the UI thread
   private N2YO n2yo; // n2yo.com instance used for obtaining latest satellite data
+  private N2yoRequestScheduler n2yoScheduler; // keeps n2yo.com requests within the API limits
+  private TleCache tleCache; // on-disk TLEs so we only hit n2yo.com for missing or stale ones
+  private SatelliteIconCache satelliteIcons; // rendered marker icons, shared between markers
+  private final LocalWhatsUp localWhatsUp = new LocalWhatsUp(); // "What's Up" over tleCache
   private FusedLocationProviderClient
       fusedLocationClient; // instance used for getting user location
   private LocationRequest locationRequest;
@@ -84,7 +144,9 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
   private Boolean authorizedCLI = false;
   private Boolean disconnectRequested = false;
   private Boolean exitThreadLoop = false;
-  private Date timeOfLastWhatsUp;
+  private volatile Boolean userLocationUpdated = false;
+  private long timeOfLastWhatsUp;
+  private long timeOfLastLocalWhatsUp = 0;
 
   private static double userLatitude = 0;
   private static double userLongitude = 0;
@@ -92,13 +154,50 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
   private static double userAltitude = 0;
   private Marker userMarker;
 
-  // use a hashtable because we need to synchronize the entire set
-  Hashtable<Integer, Satellite> nearbySatellites = new Hashtable<Integer, Satellite>();
+  // NORAD ID -> satellite. Reads and snapshot iteration are lock-free, so the ingestion threads,
+  // the main processing thread and the UI thread never contend on a shared monitor
+  IntSatelliteMap<Satellite> nearbySatellites = new IntSatelliteMap<Satellite>(MAXSATELLITES + 1);
+  // admission, TLEs, propagation and motor frame rendering for every satellite in
+  // nearbySatellites. Ticked only from the main processing thread.
+  private TrackingEngine trackingEngine;
 
   // Thread Processing
-  ThreadExecutor satThreadProcessor;
+  WorkerPool satThreadProcessor;
 
   private static int[] motorActivationFrame;
+  private HapticEncoder hapticEncoder; // table-driven motor encoding of the nearest satellites
+  private HapticFrameSender hapticSender; // writes motor frames to Buzz off the tracking loop
+  private HapticLookahead hapticLookahead; // motor frames rendered ahead of time, by trackingEngine
+  private HapticPlayer hapticPlayer; // plays the rendered frames to hapticSender on schedule
+  private static final String ACTIVATIONS_TAG = "Activations";
+  // skips marker updates too small to see at the current zoom, only touched from the UI thread
+  private final MarkerDeltaFilter markerDeltaFilter =
+      new MarkerDeltaFilter(
+          MARKERPIXELTHRESHOLD,
+          MARKERALPHATHRESHOLD,
+          MARKERROTATIONTHRESHOLD,
+          MARKERMAXSKIPPEDUPDATES);
+  private final MarkerDeltaFilter.State userMarkerState = new MarkerDeltaFilter.State();
+  // skips satellite markers that are out of view, and slows down far ones, only touched from the
+  // UI thread
+  private final ViewportCuller viewportCuller =
+      new ViewportCuller(
+          VIEWPORTMARGIN, MAXSURFACEDISTANCETOUSER / 2, MAXDISTANTUPDATEINTERVAL, FULLRATEZOOM);
+  private boolean userMarkerShown = false;
+  // set while a UI update is posted but hasn't run yet, so ticks that happen in the meantime
+  // don't queue more of them
+  private final AtomicBoolean uiUpdatePending = new AtomicBoolean();
+  private volatile long uiPostNanos; // when the pending UI update was posted
+  // latency histograms and counters for the whole pipeline, shown on the metrics overlay
+  private final TrackingMetrics metrics = new TrackingMetrics();
+  private TextView metricsOverlay;
+  private long timeOfLastMetricsOverlay = 0;
+  private long timeOfLastMetricsLog = 0;
+  // scratch buffer for satellite positions, only touched from the UI thread
+  private final double[] uiLatLonAlt = new double[3];
+  // paces the main processing loop: REFRESHLOCATIONPERIOD while a satellite is in range, otherwise
+  // IDLEREFRESHLOCATIONPERIOD
+  private final TickScheduler tickScheduler = new TickScheduler(REFRESHLOCATIONPERIOD);
   private Boolean processedAllSatelliteUpdates = false;
 
   ////////////////////////////////////////////
@@ -110,14 +209,97 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     super.onCreate(savedInstanceState);
     // set the view for this app
     setContentView(R.layout.activity_maps);
+    metricsOverlay = (TextView) findViewById(R.id.metrics_overlay);
     // set up access to n2yo.com for pulling current satellite data
     n2yo = new N2YO(getResources().getString(R.string.n2yo_api_key), this);
+    // every request goes through the scheduler, which budgets, deduplicates and orders them. A
+    // fresh start can fetch a TLE for every tracked satellite at once.
+    n2yoScheduler =
+        new N2yoRequestScheduler(
+            n2yoSender,
+            N2YOWHATSUPPERHOUR,
+            N2YOTLEPERHOUR,
+            MAXSATELLITES,
+            N2YOMAXINFLIGHT,
+            N2YOREQUESTTIMEOUT);
+    // open the on-disk TLE cache. If it can't be opened we just request every TLE from n2yo.com
+    try {
+      tleCache = new TleCache(new File(getFilesDir(), "tle-cache.bin"), TLECACHEMAXAGE);
+    } catch (IOException e) {
+      e.printStackTrace();
+      tleCache = null;
+    }
     // request Bluetooth be turned on from the Neosensory Android SDK
     NeosensoryBlessed.requestBluetoothOn(this);
-    // create a thread executor for launching threads
-    satThreadProcessor = new ThreadExecutor();
-    // initialize our motor activations for a Buzz wristband
+    // create a bounded worker pool for processing n2yo.com responses
+    satThreadProcessor = new WorkerPool("n2yo-worker", WORKERTHREADS, WORKERQUEUESIZE);
+    satelliteIcons = new SatelliteIconCache(this, ICONCACHEBYTES);
+    // initialize our motor activations for a Buzz wristband, and tabulate the SDK's illusion-based
+    // encoding (see SDK JavaDocs) so a tick doesn't have to call into it
     motorActivationFrame = new int[NUMMOTORS];
+    hapticEncoder =
+        new HapticEncoder(
+            new HapticEncoder.Encoding() {
+              @Override
+              public int[] getActivations(float intensity, float location) {
+                return NeoBuzzPsychophysics.GetIllusionActivations(intensity, location);
+              }
+            },
+            NUMMOTORS,
+            HAPTICINTENSITYSTEPS,
+            HAPTICBEARINGSTEPS);
+    hapticEncoder.setCombineRule(HAPTICCOMBINERULE);
+    // write motor frames from their own thread so a slow Bluetooth write can't stall tracking
+    hapticSender =
+        new HapticFrameSender(
+            "haptic-sender",
+            new HapticFrameSender.MotorSink() {
+              @Override
+              public void write(int[] frame) {
+                if (authorizedCLI) {
+                  long start = System.nanoTime();
+                  blessedNeo.vibrateMotors(frame);
+                  metrics.recordMotorWrite(System.nanoTime() - start);
+                }
+              }
+            },
+            NUMMOTORS,
+            MOTORWRITEPERIOD);
+    hapticSender.start();
+    trackingEngine =
+        new TrackingEngine(
+            hapticEncoder,
+            NUMMOTORS,
+            MAXSATELLITES,
+            MAXALTITUDE,
+            MAXSURFACEDISTANCETOUSER,
+            HAPTICSATELLITES,
+            REFRESHLOCATIONPERIOD,
+            HAPTICLOOKAHEAD,
+            HAPTICLOOKAHEADMOVE,
+            trackingListener);
+    trackingEngine.getTracker().setPropagationInterval(PROPAGATIONPERIOD);
+    // decide whether a satellite is headed our way from its predicted pass, not from one tick's
+    // change in distance
+    trackingEngine
+        .getTracker()
+        .setPassPredictor(
+            new PassPredictor(MAXSURFACEDISTANCETOUSER, PASSHORIZON, PASSSTEP, PASSOBSERVERMOVE));
+    // skip satellites that can't get within range yet. They wake in time for the frames rendered
+    // ahead, even if the next tick is an idle one.
+    trackingEngine
+        .getTracker()
+        .setDormancy(MAXDORMANTPERIOD, HAPTICLOOKAHEAD + IDLEREFRESHLOCATIONPERIOD);
+    // a satellite with no pass within PASSHORIZON is released as soon as its TLE arrives; don't
+    // admit it again from every local "What's Up" search (each LOCALWHATSUPPERIOD)
+    trackingEngine.setReadmissionCooldown(PASSHORIZON / 2);
+    // the engine renders the frames ahead on the tracking thread; play them out from their own
+    // thread, so the wristband stays smooth if tracking is preempted
+    hapticLookahead = trackingEngine.getLookahead();
+    hapticPlayer =
+        new HapticPlayer(
+            "haptic-player", hapticLookahead, hapticSender, NUMMOTORS, REFRESHLOCATIONPERIOD);
+    hapticPlayer.start();
 
     // If we already have all the needed permissions, launch all of our initializations. Otherwise,
     // we'll call this from our callback once permissions have been obtained.
@@ -131,7 +313,7 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     mapFragment.getMapAsync(this);
 
     // set the time for
-    timeOfLastWhatsUp = Calendar.getInstance().getTime();
+    timeOfLastWhatsUp = System.currentTimeMillis();
 
     // lauch the main processing Thread for the app
     mainThreadLogic();
@@ -145,11 +327,59 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     mMap = googleMap;
     mMap.setMinZoomPreference(6);
     mMap.setMaxZoomPreference(10);
+    // draw the plain satellite icons in the background now, rather than on the UI thread when the
+    // first batch of markers is created. Only the ISS uses another icon, so it's drawn on demand.
+    satThreadProcessor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            satelliteIcons.prerender(SatelliteIconCache.ICON_SATELLITE);
+          }
+        });
     userMarker =
         mMap.addMarker(
             new MarkerOptions().position(new LatLng(userLatitude, userLongitude)).title("Me"));
     userMarker.setFlat(true);
     userMarker.setVisible(false);
+    // measure marker movement at the current zoom, and cull markers outside the current view
+    updateCamera();
+    mMap.setOnCameraMoveListener(
+        new GoogleMap.OnCameraMoveListener() {
+          @Override
+          public void onCameraMove() {
+            updateCamera();
+            // this runs every frame of a pan or zoom, so only show or hide the existing markers.
+            // Adding and removing them is left to the next tick, or to when the camera stops.
+            if (locationEstablished) {
+              updateSatelliteMarkerVisibility();
+            }
+          }
+        });
+    mMap.setOnCameraIdleListener(
+        new GoogleMap.OnCameraIdleListener() {
+          @Override
+          public void onCameraIdle() {
+            updateCamera();
+            if (locationEstablished) {
+              updateSatellitesUI();
+            }
+          }
+        });
+    // long-press the map to show or hide the metrics overlay
+    mMap.setOnMapLongClickListener(
+        new GoogleMap.OnMapLongClickListener() {
+          @Override
+          public void onMapLongClick(LatLng point) {
+            if (metricsOverlay.getVisibility() == View.VISIBLE) {
+              metricsOverlay.setVisibility(View.GONE);
+            } else {
+              metricsOverlay.setText(metrics.dump());
+              metricsOverlay.setVisibility(View.VISIBLE);
+            }
+          }
+        });
+    // enough hidden satellite markers for a full set of tracked satellites
+    markerPool = new MarkerPool(mMap, MAXSATELLITES + 1);
     Toast.makeText(
             this,
             "Getting location and gathering satellite data. This may take 20-30 seconds.",
@@ -163,89 +393,132 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
 
   private void mainThreadLogic() {
     final Handler handler = new Handler();
+    // posted to the UI thread whenever something it draws has changed. The same instance is posted
+    // every tick, so updating the UI doesn't allocate.
+    final Runnable uiUpdate =
+        new Runnable() {
+          @Override
+          public void run() {
+            // clear first, so a tick that lands while we're drawing posts another update
+            uiUpdatePending.set(false);
+            metrics.recordUiPostLatency(System.nanoTime() - uiPostNanos);
+            updateMetricsOverlay();
+            // UI calls MUST go here
+            // if our map is ready and we know the user location, update the user position
+            // on the map
+            if (mapReady && locationEstablished) {
+              // only touch the user marker when it has visibly changed
+              if (markerDeltaFilter.positionChanged(userMarkerState, userLatitude, userLongitude)) {
+                userMarker.setPosition(new LatLng(userLatitude, userLongitude));
+              }
+              if (markerDeltaFilter.rotationChanged(userMarkerState, (float) userBearing)) {
+                userMarker.setRotation((float) userBearing);
+              }
+              if (!userMarkerShown) {
+                userMarker.setVisible(true);
+                userMarkerShown = true;
+              }
+              if (!initalCameraSet) {
+                // only center the camera over the user once so the user can pan around
+                // without being overridden
+                mMap.moveCamera(
+                    CameraUpdateFactory.newLatLng(new LatLng(userLatitude, userLongitude)));
+                initalCameraSet = true;
+              }
+              // Process satellite UI if they exist in our map
+              updateSatellitesUI();
+            }
+          }
+        };
     Runnable runnable =
         new Runnable() {
           @Override
           public void run() {
             while (!exitThreadLoop) {
+              // Wait for the next fixed-rate deadline. If we overran by more than a period the
+              // missed ticks are skipped instead of being run back-to-back.
+              int skippedTicks = 0;
+              try {
+                skippedTicks = tickScheduler.awaitNextTick();
+                if (skippedTicks > 0) {
+                  Log.w("TickScheduler", "Processing overran, skipped ticks: " + skippedTicks);
+                }
+              } catch (InterruptedException e) {
+                e.printStackTrace();
+              }
+              long tickStartNanos = System.nanoTime();
+              long tickPeriodNanos = tickScheduler.getPeriodMillis() * 1000000;
+
               // Non-UI calls must go here
-              Date now = Calendar.getInstance().getTime();
-              // If we haven't yet made the n2yo.com call to obtain nearby satellites, call it
+              long now = System.currentTimeMillis();
+              // only post to the UI thread if something it draws has changed
+              boolean uiNeedsUpdate = userLocationUpdated || !initalCameraSet;
+              userLocationUpdated = false;
+              int satellitesInRange = 0;
+              // If we haven't yet made the n2yo.com call to obtain nearby satellites, queue it
               if (needWhatsUp && locationEstablished) {
-                n2yo.getWhatsUp(
-                    (float) userLatitude,
-                    (float) userLongitude,
-                    (float) userAltitude,
-                    SEARCHDEGREES,
-                    0);
+                n2yoScheduler.requestWhatsUp();
                 needWhatsUp = false;
                 timeOfLastWhatsUp = now;
               } else {
                 // otherwise, if we have made the call to obtain nearby satellites, wait for
                 // REFRESHSATELLITESPERIOD to call it again
-                if ((now.getTime() - timeOfLastWhatsUp.getTime()) > REFRESHSATELLITESPERIOD) {
+                if ((now - timeOfLastWhatsUp) > REFRESHSATELLITESPERIOD) {
                   needWhatsUp = true;
                 }
               }
-              // If our hashtable contains satellites, process them and decide how we should vibrate
-              if (!nearbySatellites.isEmpty()) {
-                motorActivationFrame = new int[4];
-                double nearestSatelliteDistance = MAXSURFACEDISTANCETOUSER * 4;
-                Object[] tempSatArray = nearbySatellites.values().toArray();
-                Satellite nearestSatellite = (Satellite) tempSatArray[0];
-                for (int i = 0; i < tempSatArray.length; i++) {
-                  Satellite satellite = (Satellite) tempSatArray[i];
-                  double distanceToUser = updateSatelliteState(satellite);
-                  if ((distanceToUser < nearestSatelliteDistance)&&(satellite.getTleUsedforLocation())) {
-                    nearestSatelliteDistance = distanceToUser;
-                    nearestSatellite = satellite;
-                  }
-                }
-                motorActivationFrame = getSatelliteVibration(nearestSatellite);
-                Log.i("Activations on process", Arrays.toString(motorActivationFrame));
-                if (authorizedCLI) {
-                  blessedNeo.vibrateMotors(motorActivationFrame);
-                }
+              if ((now - timeOfLastMetricsLog) > METRICSLOGPERIOD) {
+                Log.i("TrackingMetrics", metrics.dump());
+                timeOfLastMetricsLog = now;
               }
-
-              // Sleep on the thread for REFRESHLOCATIONPERIOD
-              try {
-                Thread.sleep(REFRESHLOCATIONPERIOD);
-              } catch (InterruptedException e) {
-                e.printStackTrace();
+              // send whatever n2yo.com requests the budgets allow
+              n2yoScheduler.dispatch(now);
+              // Between n2yo.com calls, search our cached TLE catalog for candidates locally
+              if (locationEstablished
+                  && (tleCache != null)
+                  && ((now - timeOfLastLocalWhatsUp) > LOCALWHATSUPPERIOD)) {
+                satThreadProcessor.execute(new LocalWhatsUpRunnable(now));
+                timeOfLastLocalWhatsUp = now;
+              }
+              // If our store contains satellites, process them and decide how we should vibrate
+              boolean tracking = !trackingEngine.getStore().isEmpty();
+              // propagate every satellite, apply the range rules, find the nearest satellites and
+              // everything in range, and top up the rendered motor frames (silence if there's
+              // nothing to track)
+              trackingEngine.tick(userLatitude, userLongitude, now);
+              if (tracking) {
+                uiNeedsUpdate = true;
+                SatelliteTracker tracker = trackingEngine.getTracker();
+                metrics.recordPropagation(
+                    tracker.getPropagationNanos(), tracker.getPropagatedCount());
+              }
+              satellitesInRange = trackingEngine.getInRangeCount();
+              // only build the log message if someone is listening
+              if (Log.isLoggable(ACTIVATIONS_TAG, Log.DEBUG)
+                  && hapticLookahead.getFrame(now, motorActivationFrame)) {
+                Log.d(ACTIVATIONS_TAG, Arrays.toString(motorActivationFrame));
               }
 
-              handler.post(
-                  new Runnable() {
-                    @Override
-                    public void run() {
-                      // UI calls MUST go here
-                      // if our map is ready and we know the user location, update the user position
-                      // on the map
-                      if (mapReady && locationEstablished) {
-                        userMarker.setPosition(new LatLng(userLatitude, userLongitude));
-                        userMarker.setRotation((float) userBearing);
-                        userMarker.setVisible(true);
-                        if (!initalCameraSet) {
-                          // only center the camera over the user once so the user can pan around
-                          // without being overridden
-                          mMap.moveCamera(
-                              CameraUpdateFactory.newLatLng(
-                                  new LatLng(userLatitude, userLongitude)));
-                          initalCameraSet = true;
-                        }
-                        // Process satellite UI if they exist in our hashtable
-                        if (!nearbySatellites.isEmpty()) {
-                          Object[] tempSatArray = nearbySatellites.values().toArray();
-                          for (int i = 0; i < tempSatArray.length; i++) {
-                            updateSatelliteUI((Satellite) tempSatArray[i]);
-                          }
-                        }
-                      }
-                    }
-                  });
+              // run fast while a satellite is close enough to be felt/seen or is about to be, slow
+              // while the sky is empty
+              tickScheduler.setPeriodMillis(
+                  (satellitesInRange > 0)
+                          || (trackingEngine.getNextPassMillis() - now <= IDLEREFRESHLOCATIONPERIOD)
+                      ? REFRESHLOCATIONPERIOD
+                      : IDLEREFRESHLOCATIONPERIOD);
+
+              // if the UI thread hasn't run the last update yet it will pick up this tick's state
+              // too, so merge the ticks rather than queuing another post
+              if (uiNeedsUpdate && uiUpdatePending.compareAndSet(false, true)) {
+                uiPostNanos = System.nanoTime();
+                handler.post(uiUpdate);
+              }
+              metrics.recordTick(System.nanoTime() - tickStartNanos, tickPeriodNanos, skippedTicks);
             }
 
+            // stop the player and sender first so a queued frame can't restart the motors
+            hapticPlayer.stop();
+            hapticSender.stop();
             if (disconnectRequested&&authorizedCLI) {
               blessedNeo.stopMotors();
               blessedNeo.resumeDeviceAlgorithm();
@@ -266,262 +539,280 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     new Thread(runnable).start();
   }
 
+  // refresh the metrics overlay, at most every METRICSOVERLAYPERIOD, while it's shown
+  private void updateMetricsOverlay() {
+    if (metricsOverlay.getVisibility() != View.VISIBLE) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if ((now - timeOfLastMetricsOverlay) > METRICSOVERLAYPERIOD) {
+      metricsOverlay.setText(metrics.dump());
+      timeOfLastMetricsOverlay = now;
+    }
+  }
+
+  // cache the camera's zoom and visible region for the marker filters
+  private void updateCamera() {
+    float zoom = mMap.getCameraPosition().zoom;
+    markerDeltaFilter.setZoom(zoom);
+    viewportCuller.setZoom(zoom);
+    LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+    viewportCuller.setVisibleRegion(
+        bounds.southwest.latitude,
+        bounds.southwest.longitude,
+        bounds.northeast.latitude,
+        bounds.northeast.longitude);
+  }
+
   //////////////////////////////////////////////////////
   // Method for updating an individual satellite's UI //
   //////////////////////////////////////////////////////
 
+  private void updateSatellitesUI() {
+    IntSatelliteMap.Snapshot<Satellite> satellites = nearbySatellites.snapshot();
+    for (int i = 0; i < satellites.size(); i++) {
+      Satellite satellite = satellites.get(i);
+      if (satellite.isTracked()) {
+        updateSatelliteUI(satellite);
+      }
+    }
+  }
+
+  private void updateSatelliteMarkerVisibility() {
+    IntSatelliteMap.Snapshot<Satellite> satellites = nearbySatellites.snapshot();
+    for (int i = 0; i < satellites.size(); i++) {
+      Satellite satellite = satellites.get(i);
+      if (satellite.isTracked() && satellite.getHasMarker()) {
+        satellite.updateMarkerVisibility(markerDeltaFilter, viewportCuller);
+      }
+    }
+  }
+
   private void updateSatelliteUI(Satellite satellite) {
     // If the satellite doesn't yet have an assigned Google Maps marker and
     // we're not trying to delete the satellite, give it a marker
     if (((!satellite.getHasMarker()) && (!satellite.getReadyToRemoveSatellite()))
         && (satellite.getTleUsedforLocation())) {
 
-      // See method getSatelliteIcon below for available icon types
-      int iconCode = 0;
+      // See SatelliteIconCache for available icon types
+      int iconCode = SatelliteIconCache.ICON_SATELLITE;
       if(satellite.getNoradID()==25544){
-        iconCode = 2; // special icon for ISS
+        iconCode = SatelliteIconCache.ICON_ISS; // special icon for ISS
       }
 
+      satellite.getLla(uiLatLonAlt);
       // also scale the icon size to altitude (smaller == higher)
       Marker satMarker =
-          mMap.addMarker(
-              new MarkerOptions()
-                  .position(new LatLng(satellite.getLla()[0], satellite.getLla()[1]))
-                  .title(satellite.getName())
-                  .snippet(satellite.getIntlDesignator())
-                  .icon(
-                      getSatelliteIcon(
-                          (int)
-                              (200
-                                  * (1
-                                      - Utilities.getLinearMap(
-                                          (float) satellite.getLla()[2],
-                                          0,
-                                          (float) MAXALTITUDE,
-                                          0,
-                                          0.75f,
-                                          true))),iconCode)));
-      satMarker.setFlat(true);
-      satMarker.setVisible(true);
+          markerPool.acquire(
+              new LatLng(uiLatLonAlt[0], uiLatLonAlt[1]),
+              satellite.getName(),
+              satellite.getIntlDesignator(),
+              satelliteIcons.getIcon(
+                  iconCode,
+                  (int)
+                      (200
+                          * (1
+                              - Utilities.getLinearMap(
+                                  (float) uiLatLonAlt[2],
+                                  0,
+                                  (float) MAXALTITUDE,
+                                  0,
+                                  0.75f,
+                                  true)))));
       satellite.setSatelliteMarker(satMarker);
     }
     // otherwise if the satellite has a marker, update its
     // position/transparency if we're not trying to remove the satellite
     if (satellite.getHasMarker()) {
       if ((satellite.getOutsideUserRange()) && (!satellite.getHeadedToUser())) {
-        satellite.removeMarker();
+        satellite.removeMarker(markerPool);
       } else {
-        satellite.updateMarkerPosition();
-        satellite.getSatelliteMarker().setAlpha(satellite.getAlphaDistanceToUser());
-      }
-    }
-  }
-
-  ///////////////////////////////////////////////////////
-  // Method for obtaining a satellite's motor encoding //
-  ///////////////////////////////////////////////////////
-
-  private int[] getSatelliteVibration(Satellite satellite) {
-    int[] activation = new int[NUMMOTORS];
-    // If we have a bearing and a TLE was used to update the satellite position, build up the
-    // vibration for the satellite
-    if (satellite.getUserBearingSet() && satellite.getTleUsedforLocation()) {
-      // Build up the vibration for this satellite. Build up a quasi-illusion that
-      // takes the takes the max actuator values found while looping through all of
-      // the satellites.
-
-      // here we map inverse distance from [0 1] where 1 is closes to the user and 0 is furthest,
-      // as we want stronger vibrations for nearer to user
-      float satelliteDistance = (float) satellite.getDistanceToUser();
-      float linearDistance = 0;
-      if (satelliteDistance <= MAXSURFACEDISTANCETOUSER) {
-        linearDistance = 1 - (satelliteDistance / (float) MAXSURFACEDISTANCETOUSER);
-        if (linearDistance > 1) {
-          linearDistance = 1;
-        }
-      }
-
-      // obtain an illusion-based encoding from the Neosensory SDK (see SDK JavaDocs)
-      activation =
-          NeoBuzzPsychophysics.GetIllusionActivations(
-              linearDistance, (float) satellite.getUserBearing() / 360);
-    }
-    return activation;
-  }
-
-  /////////////////////////////////////////////////////////
-  // Method for updating an individual satellite's state //
-  /////////////////////////////////////////////////////////
-
-  private double updateSatelliteState(Satellite satellite) {
-    // If the satellite has a TLE, update it's position, distance to user, and bearing from user
-    if (satellite.getHasTle()) {
-      String[] tle = satellite.getTles();
-      double[] latLonAlt = TlePredictionEngine.getSatellitePosition(tle[0], tle[1], true);
-      satellite.setLla(latLonAlt[0], latLonAlt[1], latLonAlt[2]);
-      double distanceToUser =
-          Utilities.getDistance(userLatitude, latLonAlt[0], userLongitude, latLonAlt[1]);
-      double bearing =
-          Utilities.getBearing(userLatitude, latLonAlt[0], userLongitude, latLonAlt[1]);
-      satellite.setUserBearing(bearing);
-
-      // If the distance is beyond our threshold see whether or not we should remove it
-      if (distanceToUser > MAXSURFACEDISTANCETOUSER) {
-        // If a we're ready to remove the satellite (i.e. it's marker has been cleared off a UI
-        // thread), we can try to remove the satellite from our HashTable
-        if (satellite.getReadyToRemoveSatellite()) {
-          // pop off satellites that are headed away from user and further than our
-          // distance. We need to make sure the marker is removed first
-          try {
-            // if this doesn't work, we'll try to get rid of this on another
-            // iteration
-            nearbySatellites.remove(satellite.getNoradID());
-          } catch (Exception e) {
-            e.printStackTrace();
-          }
-          Log.i(
-              "Hashtable", "Entry removed. Current satellites tracked: " + nearbySatellites.size());
-        } else {
-          // if we're not ready to remove the satellite, but it's outside our threshold range,
-          // check to see if the satellite is headed towards the user
-          if (!satellite.getHeadedToUser()) {
-            // if the satellite is headed away from user signal that we need to remove the marker
-            // from the UI thread
-            satellite.setOutsideUserRange(true);
-          }
-          // else, continue to track the satellite since it's moving towards the user
-        }
+        satellite.updateMarker(markerDeltaFilter, viewportCuller);
       }
-
-      // update the satellite's calculated distance to the user
-      satellite.setDistanceToUser(distanceToUser, MAXSURFACEDISTANCETOUSER);
     }
-    return satellite.getDistanceToUser();
   }
 
   ////////////////////////////////////////////////////////////////////////////////////////////////
-  // n2yo.com threaded response processing (may not actually be needed to run these on threads) //
-  // Process "What's Up" response from n2yo.com                                                 //
+  // n2yo.com threaded response processing                                                      //
+  // Responses are stream-parsed on the worker pool straight into the tracking engine          //
   ////////////////////////////////////////////////////////////////////////////////////////////////
 
-  private void processN2yoWhatsUp(JSONObject n2yoResponse) throws JSONException {
-    int numSatellites = n2yoResponse.getJSONObject("info").getInt("satcount");
-    JSONArray satelliteArray = n2yoResponse.getJSONArray("above");
-    // launch a thread to process each of the satellites in the response
-    for (int i = 0; i < numSatellites; i++) {
-      JSONObject satInfo = satelliteArray.getJSONObject(i);
-      AddSatelliteRunnable addSatellite = new AddSatelliteRunnable(satInfo);
-      satThreadProcessor.execute(addSatellite);
-    }
-  }
-
-  // a runnable for launching a thread to process an individual satellite
-  public class AddSatelliteRunnable implements Runnable {
-    private JSONObject satelliteInfo;
-
-    public AddSatelliteRunnable(JSONObject satelliteInfo_) {
-      this.satelliteInfo = satelliteInfo_;
+  // a runnable for parsing an n2yo.com response off the main thread
+  public class ParseN2yoResponseRunnable implements Runnable {
+    private N2YO.CallId requestType;
+    private String response;
+    private long receivedNanos;
+
+    public ParseN2yoResponseRunnable(
+        N2YO.CallId requestType_, String response_, long receivedNanos_) {
+      this.requestType = requestType_;
+      this.response = response_;
+      this.receivedNanos = receivedNanos_;
     }
 
     @Override
     public void run() {
-      int noradID = 0;
-      String satName = null;
-      String satIntlDesignator = null;
-      double satLatitude = 0;
-      double satLongitude = 0;
-      double satAltitude = 0;
-      double distanceToUser = 5000000;
       try {
-        noradID = satelliteInfo.getInt("satid");
-        satName = satelliteInfo.getString("satname");
-        satIntlDesignator = satelliteInfo.getString("intDesignator");
-        satLatitude = satelliteInfo.getDouble("satlat");
-        satLongitude = satelliteInfo.getDouble("satlng");
-        satAltitude = satelliteInfo.getDouble("satalt");
-        distanceToUser =
-            Utilities.getDistance(userLatitude, satLatitude, userLongitude, satLongitude);
-        // only add satellites that are far away, but incoming so they don't just "pop" onto the
-        // display when we refresh
-        if ((satAltitude < MAXALTITUDE)
-            && (nearbySatellites.size() <= MAXSATELLITES)
-            && (!nearbySatellites.containsKey(noradID))
-            && (distanceToUser >= MAXSURFACEDISTANCETOUSER)) {
-          Log.i(
-              "Hashtable", "Entry added . Current satellites tracked: " + nearbySatellites.size());
-          nearbySatellites.put(
-              noradID,
-              new Satellite(
-                  noradID, satIntlDesignator, satName, satLatitude, satLongitude, satAltitude));
-          n2yo.getTle(noradID);
+        if (requestType == N2YO.CallId.WHATSUP) {
+          int numSatellites = trackingEngine.admitWhatsUp(new StringReader(response));
+          Log.i("N2YO", "API Call Type: WHATSUP Satellites: " + numSatellites);
+        } else if (requestType == N2YO.CallId.TLE) {
+          // TLE requests are told apart by NORAD ID, which we only know once it's parsed
+          N2yoResponseParser.parseTle(
+              new StringReader(response),
+              new N2yoResponseParser.TleHandler() {
+                @Override
+                public void onTle(int noradID, String satName, String line1, String line2) {
+                  metrics.n2yoResponseReceived(N2YO.CallId.TLE, noradID, receivedNanos);
+                  n2yoScheduler.onTleResponse(noradID);
+                  tleAdmitter.onTle(noradID, satName, line1, line2);
+                }
+              });
         }
-
-      } catch (JSONException e) {
+      } catch (IOException e) {
         e.printStackTrace();
       }
     }
   }
 
-  ////////////////////////////////////////////////////////////////////////////////////////////////
-  // n2yo.com threaded response processing (may not actually be needed to run these on threads) //
-  // Process get TLE responses from n2yo.com                                                    //
-  ////////////////////////////////////////////////////////////////////////////////////////////////
-
-  private void processN2yoTle(JSONObject n2yoResponse) throws JSONException {
-    addTleRunnable addTle = new addTleRunnable(n2yoResponse);
-    satThreadProcessor.execute(addTle);
-  }
+  // a runnable for running a "What's Up" search over the cached TLE catalog and admitting the
+  // results exactly like an n2yo.com response
+  public class LocalWhatsUpRunnable implements Runnable {
+    private long timeMillis;
 
-  public class addTleRunnable implements Runnable {
-    private JSONObject tleInfo;
-
-    public addTleRunnable(JSONObject tleInfo_) {
-      this.tleInfo = tleInfo_;
+    public LocalWhatsUpRunnable(long timeMillis_) {
+      this.timeMillis = timeMillis_;
     }
 
     @Override
     public void run() {
-      int noradID = -1;
-      String tle = null;
-      try {
-        noradID = tleInfo.getJSONObject("info").getInt("satid");
-        tle = tleInfo.getString("tle");
-        String[] tleLines = tle.split("\r\n", 0);
-        if (nearbySatellites.containsKey(noradID)) {
-          nearbySatellites.get(noradID).setTles(tleLines[0], tleLines[1]);
-        }
-      } catch (JSONException e) {
-        e.printStackTrace();
-      }
+      localWhatsUp.loadIfChanged(tleCache);
+      trackingEngine.admitLocalWhatsUp(
+          localWhatsUp, userLatitude, userLongitude, userAltitude, SEARCHDEGREES, timeMillis);
     }
   }
 
+  // keeps nearbySatellites in step with the engine's store, and gets each admitted satellite a TLE
+  private final TrackingEngine.Listener trackingListener =
+      new TrackingEngine.Listener() {
+        @Override
+        public void onSatelliteAdded(int slot, int noradID) {
+          nearbySatellites.put(noradID, new Satellite(trackingEngine.getStore(), slot));
+          metrics.satelliteAdded();
+          Log.i(
+              "SatelliteMap",
+              "Entry added . Current satellites tracked: " + nearbySatellites.size());
+          // serve the TLE from disk first and only go to n2yo.com if it's missing or stale
+          if (!setCachedTle(noradID)) {
+            // the nearest satellites go first, and ones still missing a TLE before any refresh
+            SatelliteStore store = trackingEngine.getStore();
+            double priority =
+                Utilities.getDistance(
+                    userLatitude, store.getLatitude(slot), userLongitude, store.getLongitude(slot));
+            if (store.hasFlag(slot, SatelliteStore.FLAG_HAS_TLE)) {
+              priority += TLEREFRESHPRIORITY;
+            }
+            // if it goes unanswered the scheduler retries it, backing off, until the satellite
+            // is removed
+            n2yoScheduler.requestTle(noradID, priority);
+          }
+        }
+
+        @Override
+        public void onSatelliteRemoved(int slot, int noradID) {
+          // don't spend quota on a satellite we no longer track, including on retries
+          n2yoScheduler.cancelTle(noradID);
+          nearbySatellites.remove(noradID);
+          metrics.satelliteRemoved();
+          Log.i(
+              "SatelliteMap",
+              "Entry removed. Current satellites tracked: " + nearbySatellites.size());
+        }
+
+        // returns true if the satellite got a TLE from the cache that doesn't need refreshing
+        private boolean setCachedTle(int noradID) {
+          if (tleCache == null) {
+            return false;
+          }
+          TleCache.Entry cached = tleCache.get(noradID);
+          if (cached == null) {
+            return false;
+          }
+          try {
+            // even a stale TLE places the satellite better than its "What's Up" position
+            trackingEngine.applyTle(noradID, cached.line1, cached.line2);
+          } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            return false;
+          }
+          return !tleCache.needsRefresh(cached, System.currentTimeMillis());
+        }
+      };
+
+  // sends the scheduled n2yo.com requests; the responses come back through n2yoReceiver
+  private final N2yoRequestScheduler.Sender n2yoSender =
+      new N2yoRequestScheduler.Sender() {
+        @Override
+        public void sendWhatsUp() {
+          n2yo.getWhatsUp(
+              (float) userLatitude, (float) userLongitude, (float) userAltitude, SEARCHDEGREES, 0);
+          metrics.n2yoRequestSent(N2YO.CallId.WHATSUP, 0, System.nanoTime());
+        }
+
+        @Override
+        public void sendTle(int noradID) {
+          n2yo.getTle(noradID);
+          metrics.n2yoRequestSent(N2YO.CallId.TLE, noradID, System.nanoTime());
+        }
+      };
+
+  // applies a get TLE response to its satellite and caches it
+  private final N2yoResponseParser.TleHandler tleAdmitter =
+      new N2yoResponseParser.TleHandler() {
+        @Override
+        public void onTle(int noradID, String satName, String line1, String line2) {
+          try {
+            trackingEngine.applyTle(noradID, line1, line2);
+            if (tleCache != null) {
+              tleCache.put(noradID, satName, line1, line2, System.currentTimeMillis());
+            }
+          } catch (IllegalArgumentException e) {
+            // malformed TLE; the satellite stays at its "What's Up" position until the next
+            // refresh
+            e.printStackTrace();
+          } catch (IOException e) {
+            // couldn't write to the TLE cache; we'll just request this TLE again next time
+            e.printStackTrace();
+          }
+        }
+      };
+
   //////////////////////////////////////////////////////////////
   // Callbacks for processing Bluetooth and Internet Requests //
   //////////////////////////////////////////////////////////////
 
-  // Handle processing JSON responses from our n2yo.com requests
+  // Handle JSON responses from our n2yo.com requests. This runs on the main thread, so it only
+  // hands the response to the worker pool.
   private final BroadcastReceiver n2yoReceiver =
       new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
-          JSONObject receivedJSON = null;
           Bundle bundle = intent.getExtras();
           N2YO.CallId requestType = (N2YO.CallId) bundle.getSerializable("requestType");
-          try {
-            receivedJSON = new JSONObject((String) bundle.getString("responseObject"));
-            if (requestType == N2YO.CallId.WHATSUP) {
-              processN2yoWhatsUp(receivedJSON);
-            } else if (requestType == N2YO.CallId.TLE) {
-              processN2yoTle(receivedJSON);
-            } else {
-            }
-          } catch (JSONException e) {
-            e.printStackTrace();
+          String response = bundle.getString("responseObject");
+          long receivedNanos = System.nanoTime();
+          if (requestType == N2YO.CallId.WHATSUP) {
+            metrics.n2yoResponseReceived(N2YO.CallId.WHATSUP, 0, receivedNanos);
+            n2yoScheduler.onWhatsUpResponse();
+          }
+          if (response == null) {
+            return;
+          }
+          satThreadProcessor.execute(
+              new ParseN2yoResponseRunnable(requestType, response, receivedNanos));
+          if (Log.isLoggable("N2YO", Log.DEBUG)) {
+            Log.d("N2YO", "API Call Type: " + requestType.name() + " Response: " + response);
           }
-          String receivedJSONString = receivedJSON.toString();
-          Log.i(
-              "N2YO", "API Call Type: " + requestType.name() + " Response: " + receivedJSONString);
         }
       };
 
@@ -544,6 +835,8 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
               // https://neosensory.com/legal/dev-terms-service/
               blessedNeo.acceptApiTerms();
               blessedNeo.pauseDeviceAlgorithm();
+              // the device's motor state is unknown after (re)connecting, so resend the next frame
+              hapticSender.reset();
               authorizedCLI = true;
             }
           }
@@ -586,6 +879,7 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
                 userLatitude = location.getLatitude();
                 userLongitude = location.getLongitude();
                 userAltitude = location.getAltitude();
+                userLocationUpdated = true;
                 if (!locationEstablished) {
                   locationEstablished = true;
                 }
@@ -631,54 +925,6 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     }
   }
 
-  // Setup the ThreadExecutor for scheduling/executing threads
-  public class ThreadExecutor implements Executor {
-    public void execute(Runnable r) {
-      new Thread(r).start();
-    }
-  }
-
-  ///////////////
-  // Utilities //
-  ///////////////
-
-  // return a BitmapDescriptor which is needed for setting a custom vector-based icon for a Google
-  // Map icon
-  // from https://gist.github.com/Ozius/1ef2151908c701854736
-  private BitmapDescriptor getSatelliteIcon(int size, int type) {
-// icon types:
-    // 0: satellite
-    // 1: space junk/debris
-    // 2: ISS
-    // 3: tracked/targeted satellite
-    VectorDrawable vectorDrawable;
-    switch(type){
-      case 0: vectorDrawable = (VectorDrawable) getDrawable(R.drawable.ic_fp_satellite_icon);
-      break;
-      case 1: vectorDrawable = (VectorDrawable) getDrawable(R.drawable.garbage1);
-        break;
-      case 2: vectorDrawable = (VectorDrawable) getDrawable(R.drawable.iss);
-        break;
-      case 3: vectorDrawable = (VectorDrawable) getDrawable(R.drawable.ic_fp_satellite_icon);
-      vectorDrawable.setTint(Color.argb(255, 255, 0, 0));
-        break;
-      default: vectorDrawable = (VectorDrawable) getDrawable(R.drawable.ic_fp_satellite_icon);
-    }
-
-
-    assert vectorDrawable != null;
-    int h = size;
-    int w = size;
-
-    vectorDrawable.setBounds(0, 0, w, h);
-
-    Bitmap bm = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-    Canvas canvas = new Canvas(bm);
-    vectorDrawable.draw(canvas);
-
-    return BitmapDescriptorFactory.fromBitmap(bm);
-  }
-
   /////////////
   // Cleanup //
   /////////////
@@ -691,6 +937,12 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
     fusedLocationClient.removeLocationUpdates(locationCallback);
     disconnectRequested = true;
     exitThreadLoop = true;
+    satThreadProcessor.shutdown();
+    hapticPlayer.stop();
+    hapticSender.stop();
+    if (tleCache != null) {
+      tleCache.close();
+    }
     if (authorizedCLI) {
       blessedNeo.stopMotors();
       blessedNeo.resumeDeviceAlgorithm();
@@ -0,0 +1,158 @@
+package com.neosensory.whatsup;
+
+/**
+ * Decides whether a marker has changed enough to be worth a Google Maps call. Each marker keeps a
+ * {@link State} with what was last rendered; a new position, alpha or rotation is only pushed to
+ * the marker when it differs from the rendered one by more than a threshold at the current camera
+ * zoom. At zoom 6-10 a low-earth satellite moves well under a pixel per 50 ms tick, so most
+ * updates are skipped.
+ *
+ * <p>A change under the threshold is only held back for a limited number of updates in a row;
+ * after that it is sent anyway, so a marker that creeps along or fades slowly never lags what the
+ * tracker knows by more than that many updates.
+ *
+ * <p>Positions are compared in Web Mercator world coordinates (256 dp wide at zoom 0), so the
+ * recorded state stays valid when the camera zooms. Only use it from the UI thread.
+ */
+public final class MarkerDeltaFilter {
+  private static final double WORLD_SIZE = 256; // dp at zoom 0
+  private static final double MAX_LATITUDE = 85.05112878; // Web Mercator cut-off
+
+  /** What was last rendered for one marker */
+  public static final class State {
+    private boolean hasPosition;
+    private double worldX;
+    private double worldY;
+    private boolean hasAlpha;
+    private float alpha;
+    private boolean hasRotation;
+    private float rotation;
+    // updates held back in a row since each was last sent
+    private int skippedPositions;
+    private int skippedAlphas;
+    private int skippedRotations;
+
+    /** Forget what was rendered, e.g. when the marker is reassigned, so the next update is sent */
+    public void reset() {
+      hasPosition = false;
+      hasAlpha = false;
+      hasRotation = false;
+      skippedPositions = 0;
+      skippedAlphas = 0;
+      skippedRotations = 0;
+    }
+  }
+
+  private final double pixelThreshold;
+  private final float alphaThreshold;
+  private final float rotationThreshold;
+  private final int maxSkippedUpdates;
+  private double thresholdSq; // squared pixel threshold in zoom-0 world units
+
+  /**
+   * Create a filter
+   *
+   * @param pixelThreshold how far (dp) a marker must move on screen before it is repositioned
+   * @param alphaThreshold how much a marker's alpha must change before it is updated
+   * @param rotationThreshold how much (degrees) a marker's rotation must change before it is
+   *     updated
+   * @param maxSkippedUpdates the most updates in a row a change under a threshold is held back
+   *     before it is sent anyway
+   */
+  public MarkerDeltaFilter(
+      double pixelThreshold,
+      float alphaThreshold,
+      float rotationThreshold,
+      int maxSkippedUpdates) {
+    this.pixelThreshold = pixelThreshold;
+    this.alphaThreshold = alphaThreshold;
+    this.rotationThreshold = rotationThreshold;
+    this.maxSkippedUpdates = maxSkippedUpdates;
+    setZoom(0);
+  }
+
+  /**
+   * Set the camera zoom that screen distances are measured at
+   *
+   * @param zoom the Google Maps zoom level
+   */
+  public void setZoom(float zoom) {
+    double threshold = pixelThreshold / Math.pow(2, zoom);
+    thresholdSq = threshold * threshold;
+  }
+
+  /**
+   * Check whether a marker has moved far enough on screen to reposition it, recording the new
+   * position if so
+   *
+   * @param state the marker's rendered state
+   * @param lat the new latitude (degrees)
+   * @param lon the new longitude (degrees)
+   * @return true if the marker should be repositioned
+   */
+  public boolean positionChanged(State state, double lat, double lon) {
+    double x = (lon + 180) / 360 * WORLD_SIZE;
+    double sinLat = Math.sin(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat)) * Math.PI / 180);
+    double y = (0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / (4 * Math.PI)) * WORLD_SIZE;
+    if (state.hasPosition) {
+      double dx = x - state.worldX;
+      double dy = y - state.worldY;
+      double distSq = dx * dx + dy * dy;
+      if (distSq <= thresholdSq && !isStale(distSq, ++state.skippedPositions)) {
+        return false;
+      }
+    }
+    state.skippedPositions = 0;
+    state.hasPosition = true;
+    state.worldX = x;
+    state.worldY = y;
+    return true;
+  }
+
+  /**
+   * Check whether a marker's alpha has changed enough to update it, recording the new alpha if so
+   *
+   * @param state the marker's rendered state
+   * @param alpha the new alpha
+   * @return true if the marker's alpha should be updated
+   */
+  public boolean alphaChanged(State state, float alpha) {
+    if (state.hasAlpha) {
+      float delta = Math.abs(alpha - state.alpha);
+      if (delta <= alphaThreshold && !isStale(delta, ++state.skippedAlphas)) {
+        return false;
+      }
+    }
+    state.skippedAlphas = 0;
+    state.hasAlpha = true;
+    state.alpha = alpha;
+    return true;
+  }
+
+  /**
+   * Check whether a marker's rotation has changed enough to update it, recording the new rotation
+   * if so
+   *
+   * @param state the marker's rendered state
+   * @param rotation the new rotation (degrees)
+   * @return true if the marker's rotation should be updated
+   */
+  public boolean rotationChanged(State state, float rotation) {
+    if (state.hasRotation) {
+      float delta = Math.abs(rotation - state.rotation) % 360;
+      delta = Math.min(delta, 360 - delta);
+      if (delta <= rotationThreshold && !isStale(delta, ++state.skippedRotations)) {
+        return false;
+      }
+    }
+    state.skippedRotations = 0;
+    state.hasRotation = true;
+    state.rotation = rotation;
+    return true;
+  }
+
+  // a change held back for too long is sent anyway, unless there's nothing to send
+  private boolean isStale(double delta, int skipped) {
+    return delta > 0 && skipped >= maxSkippedUpdates;
+  }
+}
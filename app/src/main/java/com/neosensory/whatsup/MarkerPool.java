@@ -0,0 +1,108 @@
+package com.neosensory.whatsup;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of Google Maps markers for satellites. Released markers are hidden rather than removed, and
+ * acquiring one re-assigns its position, title, snippet, icon and alpha, so satellite turnover
+ * doesn't pay for GoogleMap.addMarker. The pool is pre-filled with hidden markers and adds more
+ * whenever it runs dry.
+ *
+ * <p>Like the markers themselves, the pool must only be used from the UI thread.
+ */
+public final class MarkerPool {
+  private static final LatLng HIDDEN_POSITION = new LatLng(0, 0);
+
+  private final GoogleMap map;
+  private final ArrayList<Marker> freeMarkers;
+  private int createdCount;
+
+  /**
+   * Create a marker pool and pre-fill it with hidden markers
+   *
+   * @param map the map the markers belong to
+   * @param initialSize the number of markers to create up front
+   */
+  public MarkerPool(GoogleMap map, int initialSize) {
+    this.map = map;
+    freeMarkers = new ArrayList<Marker>(initialSize);
+    for (int i = 0; i < initialSize; i++) {
+      freeMarkers.add(create(new MarkerOptions().position(HIDDEN_POSITION).visible(false)));
+    }
+  }
+
+  /**
+   * Get a visible marker set up for a satellite, recycling a hidden one if possible
+   *
+   * @param position the marker position
+   * @param title the marker title
+   * @param snippet the marker snippet
+   * @param icon the marker icon
+   * @return the marker
+   */
+  public Marker acquire(LatLng position, String title, String snippet, BitmapDescriptor icon) {
+    int free = freeMarkers.size();
+    if (free == 0) {
+      // pool is empty: grow it by one
+      return create(
+          new MarkerOptions()
+              .position(position)
+              .title(title)
+              .snippet(snippet)
+              .icon(icon)
+              .flat(true)
+              .visible(true));
+    }
+    Marker marker = freeMarkers.remove(free - 1);
+    marker.setPosition(position);
+    marker.setTitle(title);
+    marker.setSnippet(snippet);
+    marker.setIcon(icon);
+    marker.setAlpha(1);
+    marker.setVisible(true);
+    return marker;
+  }
+
+  /**
+   * Hide a marker and return it to the pool
+   *
+   * @param marker a marker from {@link #acquire}
+   */
+  public void release(Marker marker) {
+    if (marker.isInfoWindowShown()) {
+      marker.hideInfoWindow();
+    }
+    marker.setVisible(false);
+    freeMarkers.add(marker);
+  }
+
+  /**
+   * Get the number of hidden markers waiting to be reused
+   *
+   * @return the free marker count
+   */
+  public int getFreeCount() {
+    return freeMarkers.size();
+  }
+
+  /**
+   * Get the number of markers the pool has added to the map
+   *
+   * @return the created marker count
+   */
+  public int getCreatedCount() {
+    return createdCount;
+  }
+
+  private Marker create(MarkerOptions options) {
+    Marker marker = map.addMarker(options.flat(true));
+    createdCount++;
+    return marker;
+  }
+}
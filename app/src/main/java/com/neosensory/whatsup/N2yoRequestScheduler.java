@@ -0,0 +1,343 @@
+package com.neosensory.whatsup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Schedules n2yo.com requests so they stay within the API's hourly limits and each request counts.
+ * Requests are queued rather than sent straight away, and {@link #dispatch} (called from the main
+ * loop) sends them:
+ *
+ * <ul>
+ *   <li>each endpoint ("What's Up" and get TLE) has a token bucket holding its hourly budget, so
+ *       a burst goes out at once but the hourly rate is never exceeded
+ *   <li>a request for something already queued or in flight is dropped (a queued TLE request just
+ *       takes the more urgent priority)
+ *   <li>TLE requests go out in priority order, lowest first (e.g. the satellites nearest the user)
+ *   <li>at most a fixed number of requests are in flight at once. A request counts as in flight
+ *       until its response is reported, or until it times out (e.g. the request failed).
+ *   <li>a TLE request that times out is queued again after a backoff (the timeout, doubling with
+ *       each further timeout), unless it was cancelled because the satellite is no longer tracked
+ * </ul>
+ *
+ * <p>A "What's Up" request goes ahead of any TLE request. This is plain Java with no Android
+ * dependencies; it's thread safe, and the {@link Sender} is called with the scheduler's lock held,
+ * so it must hand the request off rather than wait for the response.
+ */
+public final class N2yoRequestScheduler {
+  /** Sends requests to n2yo.com. Responses are reported back through the scheduler. */
+  public interface Sender {
+    /** Send a "What's Up" request for the user's current location */
+    void sendWhatsUp();
+
+    /**
+     * Send a get TLE request
+     *
+     * @param noradId the satellite's NORAD ID
+     */
+    void sendTle(int noradId);
+  }
+
+  private static final long MILLIS_PER_HOUR = 60 * 60 * 1000;
+  // the longest a timed out TLE request waits before it's queued again is 2^this timeouts
+  private static final int MAX_BACKOFF_DOUBLINGS = 4;
+
+  private final Sender sender;
+  private final int maxInFlight;
+  private final long timeoutMillis;
+  private final TokenBucket whatsUpBudget;
+  private final TokenBucket tleBudget;
+
+  // queued TLE requests, most urgent first, and the same requests by NORAD ID
+  private final PriorityQueue<TleRequest> tleQueue =
+      new PriorityQueue<TleRequest>(
+          16,
+          new Comparator<TleRequest>() {
+            @Override
+            public int compare(TleRequest a, TleRequest b) {
+              int byPriority = Double.compare(a.priority, b.priority);
+              return byPriority != 0 ? byPriority : Long.compare(a.sequence, b.sequence);
+            }
+          });
+  private final Map<Integer, TleRequest> queuedTles = new HashMap<Integer, TleRequest>();
+  // timed out TLE requests waiting out their backoff before they're queued again; also in
+  // queuedTles
+  private final ArrayList<TleRequest> tleRetries = new ArrayList<TleRequest>();
+  // in-flight TLE requests, by NORAD ID
+  private final Map<Integer, TleRequest> tlesInFlight = new HashMap<Integer, TleRequest>();
+  private boolean whatsUpQueued;
+  private long whatsUpSentMillis = -1; // -1 while no "What's Up" request is in flight
+  private long sequence;
+
+  private long sentCount;
+  private long deduplicatedCount;
+  private long timedOutCount;
+
+  /**
+   * Create a scheduler
+   *
+   * @param sender sends the requests
+   * @param whatsUpPerHour the most "What's Up" requests to send in any hour (more than 1)
+   * @param tlePerHour the most get TLE requests to send in any hour (more than tleBurst)
+   * @param tleBurst the most get TLE requests that can be sent back-to-back (e.g. the number of
+   *     satellites tracked, so a fresh start gets every TLE at once)
+   * @param maxInFlight the most requests awaiting a response at once
+   * @param timeoutMillis how long (ms) to wait for a response before giving up on a request
+   */
+  public N2yoRequestScheduler(
+      Sender sender,
+      int whatsUpPerHour,
+      int tlePerHour,
+      int tleBurst,
+      int maxInFlight,
+      long timeoutMillis) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("At least one request must be allowed in flight");
+    }
+    this.sender = sender;
+    this.maxInFlight = maxInFlight;
+    this.timeoutMillis = timeoutMillis;
+    whatsUpBudget = new TokenBucket(1, whatsUpPerHour);
+    tleBudget = new TokenBucket(tleBurst, tlePerHour);
+  }
+
+  /** Queue a "What's Up" request, unless one is already queued or in flight */
+  public synchronized void requestWhatsUp() {
+    if (whatsUpQueued || whatsUpSentMillis >= 0) {
+      deduplicatedCount++;
+      return;
+    }
+    whatsUpQueued = true;
+  }
+
+  /**
+   * Queue a get TLE request, unless one for the satellite is already in flight. If one is already
+   * queued (or waiting to be retried), it keeps the more urgent of the two priorities.
+   *
+   * @param noradId the satellite's NORAD ID
+   * @param priority how soon the TLE is needed; lower goes first
+   */
+  public synchronized void requestTle(int noradId, double priority) {
+    TleRequest inFlight = tlesInFlight.get(noradId);
+    if (inFlight != null) {
+      deduplicatedCount++;
+      // tracked again after a cancel: retry it if it times out after all
+      inFlight.cancelled = false;
+      inFlight.priority = Math.min(inFlight.priority, priority);
+      return;
+    }
+    TleRequest queued = queuedTles.get(noradId);
+    if (queued != null) {
+      deduplicatedCount++;
+      if (priority < queued.priority) {
+        // one waiting to be retried still waits out its backoff
+        boolean inQueue = tleQueue.remove(queued);
+        queued.priority = priority;
+        if (inQueue) {
+          tleQueue.add(queued);
+        }
+      }
+      return;
+    }
+    TleRequest request = new TleRequest(noradId, priority, sequence++);
+    queuedTles.put(noradId, request);
+    tleQueue.add(request);
+  }
+
+  /**
+   * Drop a queued get TLE request (e.g. the satellite is no longer tracked). A request already in
+   * flight is left to finish, but isn't queued again if it times out.
+   *
+   * @param noradId the satellite's NORAD ID
+   */
+  public synchronized void cancelTle(int noradId) {
+    TleRequest queued = queuedTles.remove(noradId);
+    if (queued != null && !tleQueue.remove(queued)) {
+      tleRetries.remove(queued);
+    }
+    TleRequest inFlight = tlesInFlight.get(noradId);
+    if (inFlight != null) {
+      inFlight.cancelled = true;
+    }
+  }
+
+  /** Report that a "What's Up" response arrived (or the request failed) */
+  public synchronized void onWhatsUpResponse() {
+    whatsUpSentMillis = -1;
+  }
+
+  /**
+   * Report that a get TLE response arrived
+   *
+   * @param noradId the satellite the response was for
+   */
+  public synchronized void onTleResponse(int noradId) {
+    tlesInFlight.remove(noradId);
+    // a late response to a request that timed out: there's no need to retry it now
+    TleRequest queued = queuedTles.get(noradId);
+    if (queued != null && queued.timeouts > 0) {
+      cancelTle(noradId);
+    }
+  }
+
+  /**
+   * Send as many queued requests as the budgets and the in-flight limit allow
+   *
+   * @param nowMillis the current time
+   * @return the number of requests sent
+   */
+  public synchronized int dispatch(long nowMillis) {
+    expire(nowMillis);
+    requeueRetries(nowMillis);
+    int sent = 0;
+    if (whatsUpQueued && getInFlightCount() < maxInFlight && whatsUpBudget.tryTake(nowMillis)) {
+      whatsUpQueued = false;
+      whatsUpSentMillis = nowMillis;
+      sender.sendWhatsUp();
+      sent++;
+    }
+    while (!tleQueue.isEmpty()
+        && getInFlightCount() < maxInFlight
+        && tleBudget.tryTake(nowMillis)) {
+      TleRequest request = tleQueue.poll();
+      queuedTles.remove(request.noradId);
+      request.sentMillis = nowMillis;
+      tlesInFlight.put(request.noradId, request);
+      sender.sendTle(request.noradId);
+      sent++;
+    }
+    sentCount += sent;
+    return sent;
+  }
+
+  /**
+   * Get the number of queued requests, including timed out ones waiting to be retried
+   *
+   * @return the queued request count
+   */
+  public synchronized int getQueuedCount() {
+    return queuedTles.size() + (whatsUpQueued ? 1 : 0);
+  }
+
+  /**
+   * Get the number of requests awaiting a response
+   *
+   * @return the in-flight request count
+   */
+  public synchronized int getInFlightCount() {
+    return tlesInFlight.size() + (whatsUpSentMillis >= 0 ? 1 : 0);
+  }
+
+  /**
+   * Get the number of requests sent so far
+   *
+   * @return the sent request count
+   */
+  public synchronized long getSentCount() {
+    return sentCount;
+  }
+
+  /**
+   * Get the number of requests dropped because the same request was already queued or in flight
+   *
+   * @return the deduplicated request count
+   */
+  public synchronized long getDeduplicatedCount() {
+    return deduplicatedCount;
+  }
+
+  /**
+   * Get the number of requests given up on because no response arrived in time
+   *
+   * @return the timed out request count
+   */
+  public synchronized long getTimedOutCount() {
+    return timedOutCount;
+  }
+
+  // give up on requests that have waited too long for a response, so they can be asked for again.
+  // TLE requests that weren't cancelled wait out a backoff and then queue again by themselves.
+  private void expire(long nowMillis) {
+    if (whatsUpSentMillis >= 0 && nowMillis - whatsUpSentMillis >= timeoutMillis) {
+      whatsUpSentMillis = -1;
+      timedOutCount++;
+    }
+    Iterator<TleRequest> inFlight = tlesInFlight.values().iterator();
+    while (inFlight.hasNext()) {
+      TleRequest request = inFlight.next();
+      if (nowMillis - request.sentMillis >= timeoutMillis) {
+        inFlight.remove();
+        timedOutCount++;
+        if (!request.cancelled) {
+          request.retryMillis =
+              nowMillis + (timeoutMillis << Math.min(request.timeouts, MAX_BACKOFF_DOUBLINGS));
+          request.timeouts++;
+          queuedTles.put(request.noradId, request);
+          tleRetries.add(request);
+        }
+      }
+    }
+  }
+
+  // queue the timed out TLE requests whose backoff is over
+  private void requeueRetries(long nowMillis) {
+    for (int i = tleRetries.size() - 1; i >= 0; i--) {
+      TleRequest request = tleRetries.get(i);
+      if (nowMillis >= request.retryMillis) {
+        tleRetries.remove(i);
+        tleQueue.add(request);
+      }
+    }
+  }
+
+  private static final class TleRequest {
+    final int noradId;
+    final long sequence; // ties go to the older request
+    double priority;
+    long sentMillis;
+    int timeouts; // times this request has gone unanswered
+    long retryMillis; // when a timed out request is queued again
+    boolean cancelled; // the satellite stopped being tracked while the request was in flight
+
+    TleRequest(int noradId, double priority, long sequence) {
+      this.noradId = noradId;
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+  }
+
+  // A token bucket that starts full and refills continuously. The refill rate leaves room for a
+  // full bucket, so no hour (including the first) sees more than perHour tokens taken.
+  private static final class TokenBucket {
+    private final double capacity;
+    private final double tokensPerMilli;
+    private double tokens;
+    private long lastRefillMillis = Long.MIN_VALUE;
+
+    TokenBucket(int capacity, int perHour) {
+      if (capacity < 1 || perHour <= capacity) {
+        throw new IllegalArgumentException(
+            "Hourly budget " + perHour + " must exceed the burst of " + capacity);
+      }
+      this.capacity = capacity;
+      this.tokensPerMilli = (perHour - capacity) / (double) MILLIS_PER_HOUR;
+      tokens = this.capacity;
+    }
+
+    boolean tryTake(long nowMillis) {
+      if (lastRefillMillis != Long.MIN_VALUE && nowMillis > lastRefillMillis) {
+        tokens = Math.min(capacity, tokens + (nowMillis - lastRefillMillis) * tokensPerMilli);
+      }
+      lastRefillMillis = Math.max(lastRefillMillis, nowMillis);
+      if (tokens < 1) {
+        return false;
+      }
+      tokens--;
+      return true;
+    }
+  }
+}
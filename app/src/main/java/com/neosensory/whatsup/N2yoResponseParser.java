@@ -0,0 +1,228 @@
+package com.neosensory.whatsup;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming parser for n2yo.com responses. Reads the JSON token by token and hands each satellite
+ * or TLE to a handler as plain fields, without building a JSONObject tree. Fields the app doesn't
+ * use (e.g. launchDate) are skipped, and fields may arrive in any order.
+ *
+ * <p>Uses Gson's JsonReader, which has the same API as android.util.JsonReader but also runs on a
+ * plain JVM, so the parser can be unit tested and benchmarked. Parse on a worker thread.
+ */
+public final class N2yoResponseParser {
+  /** Receives the satellites in a "What's Up" response */
+  public interface WhatsUpHandler {
+    /**
+     * Called for each well-formed satellite, in response order
+     *
+     * @param noradId the satellite's NORAD ID
+     * @param name the satellite's name
+     * @param intlDesignator the international designator (e.g. "1998-067A")
+     * @param latitude latitude (degrees)
+     * @param longitude longitude (degrees)
+     * @param altitude altitude (km)
+     */
+    void onSatellite(
+        int noradId,
+        String name,
+        String intlDesignator,
+        double latitude,
+        double longitude,
+        double altitude);
+  }
+
+  /** Receives the TLE from a get TLE response */
+  public interface TleHandler {
+    /**
+     * Called once if the response holds a two-line TLE
+     *
+     * @param noradId the satellite's NORAD ID
+     * @param name the satellite's name
+     * @param line1 TLE line 1
+     * @param line2 TLE line 2
+     */
+    void onTle(int noradId, String name, String line1, String line2);
+  }
+
+  private N2yoResponseParser() {}
+
+  /**
+   * Parse a "What's Up" response. Entries with missing or mistyped fields are skipped.
+   *
+   * @param in the response JSON
+   * @param handler receives each satellite
+   * @return the number of satellites passed to the handler
+   * @throws IOException if the response isn't valid JSON
+   */
+  public static int parseWhatsUp(Reader in, WhatsUpHandler handler) throws IOException {
+    JsonReader reader = new JsonReader(in);
+    int count = 0;
+    try {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (reader.nextName().equals("above") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+          reader.beginArray();
+          while (reader.hasNext()) {
+            if (parseSatellite(reader, handler)) {
+              count++;
+            }
+          }
+          reader.endArray();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    } catch (IllegalStateException e) {
+      // the response isn't shaped like a "What's Up" response at all
+      throw new IOException(e);
+    } finally {
+      reader.close();
+    }
+    return count;
+  }
+
+  /**
+   * Parse a get TLE response
+   *
+   * @param in the response JSON
+   * @param handler receives the TLE
+   * @return true if the response held a TLE (n2yo.com sends an empty one for unknown satellites)
+   * @throws IOException if the response isn't valid JSON
+   */
+  public static boolean parseTle(Reader in, TleHandler handler) throws IOException {
+    JsonReader reader = new JsonReader(in);
+    int noradId = -1;
+    String name = null;
+    String tle = null;
+    try {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String field = reader.nextName();
+        if (field.equals("info") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+          reader.beginObject();
+          while (reader.hasNext()) {
+            String infoField = reader.nextName();
+            if (infoField.equals("satid")) {
+              noradId = readInt(reader);
+            } else if (infoField.equals("satname")) {
+              name = readString(reader);
+            } else {
+              reader.skipValue();
+            }
+          }
+          reader.endObject();
+        } else if (field.equals("tle")) {
+          tle = readString(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    } catch (IllegalStateException e) {
+      throw new IOException(e);
+    } finally {
+      reader.close();
+    }
+    if (noradId < 0 || name == null || tle == null) {
+      return false;
+    }
+    // lines are separated by "\r\n"
+    int lineBreak = tle.indexOf('\n');
+    if (lineBreak < 0) {
+      return false;
+    }
+    String line1 = tle.substring(0, lineBreak).trim();
+    String line2 = tle.substring(lineBreak + 1).trim();
+    if (line1.isEmpty() || line2.isEmpty()) {
+      return false;
+    }
+    handler.onTle(noradId, name, line1, line2);
+    return true;
+  }
+
+  // read one entry of the "above" array, returning true if it was passed to the handler
+  private static boolean parseSatellite(JsonReader reader, WhatsUpHandler handler)
+      throws IOException {
+    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+      reader.skipValue();
+      return false;
+    }
+    int noradId = -1;
+    String name = null;
+    String intlDesignator = null;
+    double latitude = Double.NaN;
+    double longitude = Double.NaN;
+    double altitude = Double.NaN;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String field = reader.nextName();
+      if (field.equals("satid")) {
+        noradId = readInt(reader);
+      } else if (field.equals("satname")) {
+        name = readString(reader);
+      } else if (field.equals("intDesignator")) {
+        intlDesignator = readString(reader);
+      } else if (field.equals("satlat")) {
+        latitude = readDouble(reader);
+      } else if (field.equals("satlng")) {
+        longitude = readDouble(reader);
+      } else if (field.equals("satalt")) {
+        altitude = readDouble(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (noradId < 0
+        || name == null
+        || intlDesignator == null
+        || Double.isNaN(latitude)
+        || Double.isNaN(longitude)
+        || Double.isNaN(altitude)) {
+      return false;
+    }
+    handler.onSatellite(noradId, name, intlDesignator, latitude, longitude, altitude);
+    return true;
+  }
+
+  // the value as an int, or -1 if it isn't one
+  private static int readInt(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING) {
+      try {
+        return reader.nextInt();
+      } catch (NumberFormatException e) {
+        // fall through and skip the value
+      }
+    }
+    reader.skipValue();
+    return -1;
+  }
+
+  // the value as a double, or NaN if it isn't one
+  private static double readDouble(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NUMBER || reader.peek() == JsonToken.STRING) {
+      try {
+        return reader.nextDouble();
+      } catch (NumberFormatException e) {
+        // fall through and skip the value
+      }
+    }
+    reader.skipValue();
+    return Double.NaN;
+  }
+
+  // the value as a string (numbers are converted), or null if it isn't one
+  private static String readString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.STRING || reader.peek() == JsonToken.NUMBER) {
+      return reader.nextString();
+    }
+    reader.skipValue();
+    return null;
+  }
+}
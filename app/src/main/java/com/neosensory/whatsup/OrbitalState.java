@@ -0,0 +1,734 @@
+package com.neosensory.whatsup;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Immutable, pre-parsed orbital state for a single satellite. A two line element (TLE) set is
+ * parsed and run through the SGP4 initialization exactly once, so every subsequent propagation is
+ * pure arithmetic on primitive fields. Near-earth SGP4 (WGS-72 constants, as used to generate the
+ * TLEs) is implemented here, along with the SDP4 lunar-solar and resonance terms for deep-space
+ * orbits (period >= 225 minutes; see {@link DeepSpaceTerms}), so any orbit can be propagated to
+ * any time.
+ */
+public final class OrbitalState {
+  // WGS-72 gravity model constants
+  private static final double RADIUS_EARTH_KM = 6378.135;
+  private static final double XKE = 0.07436691613317342; // sqrt(GM) in earth radii^1.5 / min
+  private static final double J2 = 0.001082616;
+  private static final double J3 = -0.00000253881;
+  private static final double J4 = -0.00000165597;
+  private static final double J3OJ2 = J3 / J2;
+  private static final double X2O3 = 2.0 / 3.0;
+  private static final double TWO_PI = 2 * Math.PI;
+  private static final double DEG2RAD = Math.PI / 180;
+  private static final double MINUTES_PER_DAY = 1440;
+  private static final double MILLIS_PER_MINUTE = 60000;
+  private static final double MILLIS_PER_DAY = 86400000;
+  private static final double JULIAN_DATE_UNIX_EPOCH = 2440587.5;
+  private static final double JULIAN_DATE_1950 = 2433281.5; // 1949 December 31 00:00 UT
+  private static final double DEEP_SPACE_PERIOD = 225; // minutes
+  // deep-space resonance integration: step (min), half its square, and the resonance phases
+  private static final double RESONANCE_STEP = 720;
+  private static final double RESONANCE_STEP2 = 259200;
+  private static final double FASX2 = 0.13130908;
+  private static final double FASX4 = 2.8843198;
+  private static final double FASX6 = 0.37448087;
+  private static final double G22 = 5.7686396;
+  private static final double G32 = 0.95240898;
+  private static final double G44 = 1.8014998;
+  private static final double G52 = 1.0508330;
+  private static final double G54 = 4.4108898;
+  // bounding ground speed: margin on the orbital part, and the equator's eastward speed (km/s)
+  private static final double GROUND_SPEED_MARGIN = 1.1;
+  private static final double EARTH_SURFACE_SPEED = 0.4651;
+
+  // WGS-84 ellipsoid used when converting to geodetic coordinates
+  private static final double WGS84_A = 6378.137;
+  private static final double WGS84_F = 1 / 298.257223563;
+  private static final double WGS84_E2 = WGS84_F * (2 - WGS84_F);
+
+  /** Number of doubles written by {@link #getTemePosition(long, double[])}. */
+  public static final int TEME_SIZE = 3;
+
+  private final String tle1;
+  private final String tle2;
+  private final int noradId;
+  private final boolean deepSpace;
+
+  // Mean elements at epoch
+  private final double epochMillis;
+  private final double bstar;
+  private final double inclo;
+  private final double nodeo;
+  private final double ecco;
+  private final double argpo;
+  private final double mo;
+  private final double noKozai;
+  private final double no; // un-Kozai'd mean motion (rad/min)
+
+  // SGP4 initialization products
+  private final boolean isimp;
+  private final double aycof;
+  private final double con41;
+  private final double cc1;
+  private final double cc4;
+  private final double cc5;
+  private final double d2;
+  private final double d3;
+  private final double d4;
+  private final double delmo;
+  private final double eta;
+  private final double argpdot;
+  private final double omgcof;
+  private final double sinmao;
+  private final double t2cof;
+  private final double t3cof;
+  private final double t4cof;
+  private final double t5cof;
+  private final double x1mth2;
+  private final double x7thm1;
+  private final double mdot;
+  private final double nodedot;
+  private final double xlcof;
+  private final double xmcof;
+  private final double nodecf;
+  private final DeepSpaceTerms deepSpaceTerms; // null for near-earth orbits
+
+  /**
+   * Parse a TLE and initialize SGP4 for it
+   *
+   * @param tle1_ TLE line 1
+   * @param tle2_ TLE line 2
+   * @return the initialized orbital state
+   * @throws IllegalArgumentException if the TLE cannot be parsed
+   */
+  public static OrbitalState fromTle(String tle1_, String tle2_) {
+    if (tle1_ == null || tle2_ == null || tle1_.length() < 64 || tle2_.length() < 63) {
+      throw new IllegalArgumentException("Malformed TLE: " + tle1_ + " / " + tle2_);
+    }
+    try {
+      return new OrbitalState(tle1_, tle2_);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Malformed TLE: " + tle1_ + " / " + tle2_, e);
+    }
+  }
+
+  private OrbitalState(String tle1_, String tle2_) {
+    tle1 = tle1_;
+    tle2 = tle2_;
+
+    // Line 1
+    noradId = Integer.parseInt(tle1_.substring(2, 7).trim());
+    int epochYear = Integer.parseInt(tle1_.substring(18, 20).trim());
+    double epochDay = Double.parseDouble(tle1_.substring(20, 32).trim());
+    bstar = parseExponential(tle1_.substring(53, 61));
+    // Line 2
+    inclo = Double.parseDouble(tle2_.substring(8, 16).trim()) * DEG2RAD;
+    nodeo = Double.parseDouble(tle2_.substring(17, 25).trim()) * DEG2RAD;
+    ecco = Double.parseDouble("0." + tle2_.substring(26, 33).trim());
+    argpo = Double.parseDouble(tle2_.substring(34, 42).trim()) * DEG2RAD;
+    mo = Double.parseDouble(tle2_.substring(43, 51).trim()) * DEG2RAD;
+    noKozai = Double.parseDouble(tle2_.substring(52, 63).trim()) * TWO_PI / MINUTES_PER_DAY;
+
+    Calendar yearStart = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    yearStart.clear();
+    yearStart.set(epochYear < 57 ? 2000 + epochYear : 1900 + epochYear, Calendar.JANUARY, 1);
+    epochMillis = yearStart.getTimeInMillis() + (epochDay - 1) * MILLIS_PER_DAY;
+
+    // Recover the original mean motion and semi-major axis from the Kozai mean motion
+    double eccsq = ecco * ecco;
+    double omeosq = 1 - eccsq;
+    double rteosq = Math.sqrt(omeosq);
+    double cosio = Math.cos(inclo);
+    double cosio2 = cosio * cosio;
+    double ak = Math.pow(XKE / noKozai, X2O3);
+    double d1 = 0.75 * J2 * (3 * cosio2 - 1) / (rteosq * omeosq);
+    double del = d1 / (ak * ak);
+    double adel = ak * (1 - del * del - del * (1.0 / 3.0 + 134 * del * del / 81));
+    del = d1 / (adel * adel);
+    no = noKozai / (1 + del);
+
+    double ao = Math.pow(XKE / no, X2O3);
+    double sinio = Math.sin(inclo);
+    double po = ao * omeosq;
+    double con42 = 1 - 5 * cosio2;
+    con41 = -con42 - cosio2 - cosio2;
+    double posq = po * po;
+    double rp = ao * (1 - ecco);
+    deepSpace = (TWO_PI / no) >= DEEP_SPACE_PERIOD;
+
+    // Simplified drag model for very low perigee orbits, and for all deep-space orbits
+    isimp = deepSpace || rp < (220 / RADIUS_EARTH_KM + 1);
+    double sfour = 78 / RADIUS_EARTH_KM + 1;
+    double qzms24 = Math.pow((120 - 78) / RADIUS_EARTH_KM, 4);
+    double perige = (rp - 1) * RADIUS_EARTH_KM;
+    if (perige < 156) {
+      sfour = perige - 78;
+      if (perige < 98) {
+        sfour = 20;
+      }
+      qzms24 = Math.pow((120 - sfour) / RADIUS_EARTH_KM, 4);
+      sfour = sfour / RADIUS_EARTH_KM + 1;
+    }
+    double pinvsq = 1 / posq;
+
+    double tsi = 1 / (ao - sfour);
+    eta = ao * ecco * tsi;
+    double etasq = eta * eta;
+    double eeta = ecco * eta;
+    double psisq = Math.abs(1 - etasq);
+    double coef = qzms24 * Math.pow(tsi, 4);
+    double coef1 = coef / Math.pow(psisq, 3.5);
+    double cc2 =
+        coef1
+            * no
+            * (ao * (1 + 1.5 * etasq + eeta * (4 + etasq))
+                + 0.375 * J2 * tsi / psisq * con41 * (8 + 3 * etasq * (8 + etasq)));
+    cc1 = bstar * cc2;
+    double cc3 = 0;
+    if (ecco > 1.0e-4) {
+      cc3 = -2 * coef * tsi * J3OJ2 * no * sinio / ecco;
+    }
+    x1mth2 = 1 - cosio2;
+    cc4 =
+        2
+            * no
+            * coef1
+            * ao
+            * omeosq
+            * (eta * (2 + 0.5 * etasq)
+                + ecco * (0.5 + 2 * etasq)
+                - J2
+                    * tsi
+                    / (ao * psisq)
+                    * (-3 * con41 * (1 - 2 * eeta + etasq * (1.5 - 0.5 * eeta))
+                        + 0.75 * x1mth2 * (2 * etasq - eeta * (1 + etasq)) * Math.cos(2 * argpo)));
+    cc5 = 2 * coef1 * ao * omeosq * (1 + 2.75 * (etasq + eeta) + eeta * etasq);
+
+    double cosio4 = cosio2 * cosio2;
+    double temp1 = 1.5 * J2 * pinvsq * no;
+    double temp2 = 0.5 * temp1 * J2 * pinvsq;
+    double temp3 = -0.46875 * J4 * pinvsq * pinvsq * no;
+    mdot =
+        no
+            + 0.5 * temp1 * rteosq * con41
+            + 0.0625 * temp2 * rteosq * (13 - 78 * cosio2 + 137 * cosio4);
+    argpdot =
+        -0.5 * temp1 * con42
+            + 0.0625 * temp2 * (7 - 114 * cosio2 + 395 * cosio4)
+            + temp3 * (3 - 36 * cosio2 + 49 * cosio4);
+    double xhdot1 = -temp1 * cosio;
+    nodedot = xhdot1 + (0.5 * temp2 * (4 - 19 * cosio2) + 2 * temp3 * (3 - 7 * cosio2)) * cosio;
+    omgcof = bstar * cc3 * Math.cos(argpo);
+    xmcof = (ecco > 1.0e-4) ? -X2O3 * coef * bstar / eeta : 0;
+    nodecf = 3.5 * omeosq * xhdot1 * cc1;
+    t2cof = 1.5 * cc1;
+    double cosioPlus1 = Math.abs(cosio + 1) > 1.5e-12 ? 1 + cosio : 1.5e-12;
+    xlcof = -0.25 * J3OJ2 * sinio * (3 + 5 * cosio) / cosioPlus1;
+    aycof = -0.5 * J3OJ2 * sinio;
+    delmo = Math.pow(1 + eta * Math.cos(mo), 3);
+    sinmao = Math.sin(mo);
+    x7thm1 = 7 * cosio2 - 1;
+
+    if (deepSpace) {
+      double epochJulianDate = epochMillis / MILLIS_PER_DAY + JULIAN_DATE_UNIX_EPOCH;
+      deepSpaceTerms =
+          new DeepSpaceTerms(
+              epochJulianDate - JULIAN_DATE_1950,
+              getGmstFromJulianDate(epochJulianDate),
+              XKE,
+              ecco,
+              inclo,
+              nodeo,
+              argpo,
+              mo,
+              no,
+              mdot,
+              argpdot,
+              nodedot);
+    } else {
+      deepSpaceTerms = null;
+    }
+
+    if (!isimp) {
+      double cc1sq = cc1 * cc1;
+      d2 = 4 * ao * tsi * cc1sq;
+      double temp = d2 * tsi * cc1 / 3;
+      d3 = (17 * ao + sfour) * temp;
+      d4 = 0.5 * temp * ao * tsi * (221 * ao + 31 * sfour) * cc1;
+      t3cof = d2 + 2 * cc1sq;
+      t4cof = 0.25 * (3 * d3 + cc1 * (12 * d2 + 10 * cc1sq));
+      t5cof = 0.2 * (3 * d4 + 12 * cc1 * d3 + 6 * d2 * d2 + 15 * cc1sq * (2 * d2 + cc1sq));
+    } else {
+      d2 = 0;
+      d3 = 0;
+      d4 = 0;
+      t3cof = 0;
+      t4cof = 0;
+      t5cof = 0;
+    }
+  }
+
+  /**
+   * Propagate the satellite to a point in time and write its geodetic position into a caller
+   * supplied buffer.
+   *
+   * @param timeMillis UTC time (ms since the Unix epoch) to propagate to
+   * @param lla output buffer receiving latitude (degrees), longitude (degrees) and altitude (km)
+   * @return false if the orbit has decayed or the elements are invalid at that time
+   */
+  public boolean getPosition(long timeMillis, double[] lla) {
+    if (!getTemePosition(timeMillis, lla)) {
+      return false;
+    }
+    // rotate from the inertial TEME frame into the earth-fixed frame
+    double gmst = getGmst(timeMillis);
+    double cosGmst = Math.cos(gmst);
+    double sinGmst = Math.sin(gmst);
+    double x = cosGmst * lla[0] + sinGmst * lla[1];
+    double y = -sinGmst * lla[0] + cosGmst * lla[1];
+    double z = lla[2];
+    ecefToGeodetic(x, y, z, lla);
+    return true;
+  }
+
+  /**
+   * Run SGP4 for a point in time and write the TEME position (km) into a caller supplied buffer.
+   *
+   * @param timeMillis UTC time (ms since the Unix epoch) to propagate to
+   * @param out output buffer of at least {@link #TEME_SIZE} doubles
+   * @return false if the orbit has decayed or the elements are invalid at that time
+   */
+  public boolean getTemePosition(long timeMillis, double[] out) {
+    return getTemePositionSinceEpoch((timeMillis - epochMillis) / MILLIS_PER_MINUTE, out);
+  }
+
+  /**
+   * Run SGP4 for a time relative to the TLE epoch and write the TEME position (km) into a caller
+   * supplied buffer. Deep-space resonance is integrated from the epoch on every call, so the result
+   * depends only on t.
+   *
+   * @param t minutes since the TLE epoch (tsince)
+   * @param out output buffer of at least {@link #TEME_SIZE} doubles
+   * @return false if the orbit has decayed or the elements are invalid at that time
+   */
+  boolean getTemePositionSinceEpoch(double t, double[] out) {
+    // secular gravity and atmospheric drag
+    double xmdf = mo + mdot * t;
+    double argpdf = argpo + argpdot * t;
+    double nodedf = nodeo + nodedot * t;
+    double argpm = argpdf;
+    double mm = xmdf;
+    double t2 = t * t;
+    double nodem = nodedf + nodecf * t2;
+    double tempa = 1 - cc1 * t;
+    double tempe = bstar * cc4 * t;
+    double templ = t2cof * t2;
+
+    if (!isimp) {
+      double delomg = omgcof * t;
+      double delmtemp = 1 + eta * Math.cos(xmdf);
+      double delm = xmcof * (delmtemp * delmtemp * delmtemp - delmo);
+      double temp = delomg + delm;
+      mm = xmdf + temp;
+      argpm = argpdf - temp;
+      double t3 = t2 * t;
+      double t4 = t3 * t;
+      tempa = tempa - d2 * t2 - d3 * t3 - d4 * t4;
+      tempe = tempe + bstar * cc5 * (Math.sin(mm) - sinmao);
+      templ = templ + t3cof * t3 + t4 * (t4cof + t * t5cof);
+    }
+
+    double nm = no;
+    double em = ecco;
+    double inclm = inclo;
+    DeepSpaceTerms ds = deepSpaceTerms;
+    if (ds != null) {
+      // lunar-solar secular effects
+      em = em + ds.dedt * t;
+      inclm = inclm + ds.didt * t;
+      argpm = argpm + ds.domdt * t;
+      nodem = nodem + ds.dnodt * t;
+      mm = mm + ds.dmdt * t;
+      if (ds.irez != 0) {
+        // integrate the resonance from the epoch in half-day steps (Euler-Maclaurin)
+        double theta = (ds.gsto + t * DeepSpaceTerms.RPTIM) % TWO_PI;
+        double step = t > 0 ? RESONANCE_STEP : -RESONANCE_STEP;
+        double atime = 0;
+        double xni = no;
+        double xli = ds.xlamo;
+        double xndt;
+        double xldot;
+        double xnddt;
+        while (true) {
+          if (ds.irez != 2) {
+            xndt =
+                ds.del1 * Math.sin(xli - FASX2)
+                    + ds.del2 * Math.sin(2 * (xli - FASX4))
+                    + ds.del3 * Math.sin(3 * (xli - FASX6));
+            xnddt =
+                ds.del1 * Math.cos(xli - FASX2)
+                    + 2 * ds.del2 * Math.cos(2 * (xli - FASX4))
+                    + 3 * ds.del3 * Math.cos(3 * (xli - FASX6));
+          } else {
+            double xomi = argpo + argpdot * atime;
+            double x2omi = xomi + xomi;
+            double x2li = xli + xli;
+            xndt =
+                ds.d2201 * Math.sin(x2omi + xli - G22)
+                    + ds.d2211 * Math.sin(xli - G22)
+                    + ds.d3210 * Math.sin(xomi + xli - G32)
+                    + ds.d3222 * Math.sin(-xomi + xli - G32)
+                    + ds.d4410 * Math.sin(x2omi + x2li - G44)
+                    + ds.d4422 * Math.sin(x2li - G44)
+                    + ds.d5220 * Math.sin(xomi + xli - G52)
+                    + ds.d5232 * Math.sin(-xomi + xli - G52)
+                    + ds.d5421 * Math.sin(xomi + x2li - G54)
+                    + ds.d5433 * Math.sin(-xomi + x2li - G54);
+            xnddt =
+                ds.d2201 * Math.cos(x2omi + xli - G22)
+                    + ds.d2211 * Math.cos(xli - G22)
+                    + ds.d3210 * Math.cos(xomi + xli - G32)
+                    + ds.d3222 * Math.cos(-xomi + xli - G32)
+                    + ds.d5220 * Math.cos(xomi + xli - G52)
+                    + ds.d5232 * Math.cos(-xomi + xli - G52)
+                    + 2
+                        * (ds.d4410 * Math.cos(x2omi + x2li - G44)
+                            + ds.d4422 * Math.cos(x2li - G44)
+                            + ds.d5421 * Math.cos(xomi + x2li - G54)
+                            + ds.d5433 * Math.cos(-xomi + x2li - G54));
+          }
+          xldot = xni + ds.xfact;
+          xnddt = xnddt * xldot;
+          if (Math.abs(t - atime) < RESONANCE_STEP) {
+            break;
+          }
+          xli = xli + xldot * step + xndt * RESONANCE_STEP2;
+          xni = xni + xndt * step + xnddt * RESONANCE_STEP2;
+          atime = atime + step;
+        }
+        double ft = t - atime;
+        nm = xni + xndt * ft + xnddt * ft * ft * 0.5;
+        double xl = xli + xldot * ft + xndt * ft * ft * 0.5;
+        if (ds.irez != 1) {
+          mm = xl - 2 * nodem + 2 * theta;
+        } else {
+          mm = xl - nodem - argpm + theta;
+        }
+      }
+      if (nm <= 0) {
+        return false;
+      }
+    }
+
+    double am = Math.pow(XKE / nm, X2O3) * tempa * tempa;
+    nm = XKE / Math.pow(am, 1.5);
+    em = em - tempe;
+    if (em >= 1 || em < -0.001 || am < 0.95) {
+      return false;
+    }
+    if (em < 1.0e-6) {
+      em = 1.0e-6;
+    }
+    mm = mm + no * templ;
+    double xlm = mm + argpm + nodem;
+    nodem = nodem % TWO_PI;
+    argpm = argpm % TWO_PI;
+    xlm = xlm % TWO_PI;
+    mm = (xlm - argpm - nodem) % TWO_PI;
+
+    double sinip = Math.sin(inclm);
+    double cosip = Math.cos(inclm);
+    double ep = em;
+    double xincp = inclm;
+    double argpp = argpm;
+    double nodep = nodem;
+    double mp = mm;
+    double aycof = this.aycof;
+    double xlcof = this.xlcof;
+    double con41 = this.con41;
+    double x1mth2 = this.x1mth2;
+    double x7thm1 = this.x7thm1;
+    if (ds != null) {
+      // lunar-solar periodics
+      double zm = ds.zmos + DeepSpaceTerms.ZNS * t;
+      double zf = zm + 2 * DeepSpaceTerms.ZES * Math.sin(zm);
+      double sinzf = Math.sin(zf);
+      double f2 = 0.5 * sinzf * sinzf - 0.25;
+      double f3 = -0.5 * sinzf * Math.cos(zf);
+      double ses = ds.se2 * f2 + ds.se3 * f3;
+      double sis = ds.si2 * f2 + ds.si3 * f3;
+      double sls = ds.sl2 * f2 + ds.sl3 * f3 + ds.sl4 * sinzf;
+      double sghs = ds.sgh2 * f2 + ds.sgh3 * f3 + ds.sgh4 * sinzf;
+      double shs = ds.sh2 * f2 + ds.sh3 * f3;
+      zm = ds.zmol + DeepSpaceTerms.ZNL * t;
+      zf = zm + 2 * DeepSpaceTerms.ZEL * Math.sin(zm);
+      sinzf = Math.sin(zf);
+      f2 = 0.5 * sinzf * sinzf - 0.25;
+      f3 = -0.5 * sinzf * Math.cos(zf);
+      double pe = ses + ds.ee2 * f2 + ds.e3 * f3;
+      double pinc = sis + ds.xi2 * f2 + ds.xi3 * f3;
+      double pl = sls + ds.xl2 * f2 + ds.xl3 * f3 + ds.xl4 * sinzf;
+      double pgh = sghs + ds.xgh2 * f2 + ds.xgh3 * f3 + ds.xgh4 * sinzf;
+      double ph = shs + ds.xh2 * f2 + ds.xh3 * f3;
+
+      xincp = xincp + pinc;
+      ep = ep + pe;
+      sinip = Math.sin(xincp);
+      cosip = Math.cos(xincp);
+      if (xincp >= 0.2) {
+        ph = ph / sinip;
+        pgh = pgh - cosip * ph;
+        argpp = argpp + pgh;
+        nodep = nodep + ph;
+        mp = mp + pl;
+      } else {
+        // Lyddane's modification for low inclinations
+        double sinop = Math.sin(nodep);
+        double cosop = Math.cos(nodep);
+        double alfdp = sinip * sinop + ph * cosop + pinc * cosip * sinop;
+        double betdp = sinip * cosop - ph * sinop + pinc * cosip * cosop;
+        nodep = nodep % TWO_PI;
+        double xls = mp + argpp + cosip * nodep + pl + pgh - pinc * nodep * sinip;
+        double xnoh = nodep;
+        nodep = Math.atan2(alfdp, betdp);
+        if (Math.abs(xnoh - nodep) > Math.PI) {
+          nodep = nodep < xnoh ? nodep + TWO_PI : nodep - TWO_PI;
+        }
+        mp = mp + pl;
+        argpp = xls - mp - cosip * nodep;
+      }
+      if (xincp < 0) {
+        xincp = -xincp;
+        nodep = nodep + Math.PI;
+        argpp = argpp - Math.PI;
+      }
+      if (ep < 0 || ep > 1) {
+        return false;
+      }
+
+      // the inclination-dependent coefficients now vary with time
+      sinip = Math.sin(xincp);
+      cosip = Math.cos(xincp);
+      aycof = -0.5 * J3OJ2 * sinip;
+      double cosipPlus1 = Math.abs(cosip + 1) > 1.5e-12 ? 1 + cosip : 1.5e-12;
+      xlcof = -0.25 * J3OJ2 * sinip * (3 + 5 * cosip) / cosipPlus1;
+      double cosisq = cosip * cosip;
+      con41 = 3 * cosisq - 1;
+      x1mth2 = 1 - cosisq;
+      x7thm1 = 7 * cosisq - 1;
+    }
+
+    // long period periodics
+    double axnl = ep * Math.cos(argpp);
+    double temp = 1 / (am * (1 - ep * ep));
+    double aynl = ep * Math.sin(argpp) + temp * aycof;
+    double xl = mp + argpp + nodep + temp * xlcof * axnl;
+
+    // solve Kepler's equation
+    double u = (xl - nodep) % TWO_PI;
+    double eo1 = u;
+    double tem5 = 9999.9;
+    double sineo1 = 0;
+    double coseo1 = 0;
+    for (int ktr = 1; Math.abs(tem5) >= 1.0e-12 && ktr <= 10; ktr++) {
+      sineo1 = Math.sin(eo1);
+      coseo1 = Math.cos(eo1);
+      tem5 = 1 - coseo1 * axnl - sineo1 * aynl;
+      tem5 = (u - aynl * coseo1 + axnl * sineo1 - eo1) / tem5;
+      if (Math.abs(tem5) >= 0.95) {
+        tem5 = tem5 > 0 ? 0.95 : -0.95;
+      }
+      eo1 = eo1 + tem5;
+    }
+
+    // short period preliminary quantities
+    double ecose = axnl * coseo1 + aynl * sineo1;
+    double esine = axnl * sineo1 - aynl * coseo1;
+    double el2 = axnl * axnl + aynl * aynl;
+    double pl = am * (1 - el2);
+    if (pl < 0) {
+      return false;
+    }
+    double rl = am * (1 - ecose);
+    double betal = Math.sqrt(1 - el2);
+    temp = esine / (1 + betal);
+    double sinu = am / rl * (sineo1 - aynl - axnl * temp);
+    double cosu = am / rl * (coseo1 - axnl + aynl * temp);
+    double su = Math.atan2(sinu, cosu);
+    double sin2u = (cosu + cosu) * sinu;
+    double cos2u = 1 - 2 * sinu * sinu;
+    temp = 1 / pl;
+    double temp1 = 0.5 * J2 * temp;
+    double temp2 = temp1 * temp;
+
+    // update for short period periodics
+    double mrt = rl * (1 - 1.5 * temp2 * betal * con41) + 0.5 * temp1 * x1mth2 * cos2u;
+    su = su - 0.25 * temp2 * x7thm1 * sin2u;
+    double xnode = nodep + 1.5 * temp2 * cosip * sin2u;
+    double xinc = xincp + 1.5 * temp2 * cosip * sinip * cos2u;
+    if (mrt < 1) {
+      // the satellite has decayed
+      return false;
+    }
+
+    // orientation vectors
+    double sinsu = Math.sin(su);
+    double cossu = Math.cos(su);
+    double snod = Math.sin(xnode);
+    double cnod = Math.cos(xnode);
+    double sini = Math.sin(xinc);
+    double cosi = Math.cos(xinc);
+    double xmx = -snod * cosi;
+    double xmy = cnod * cosi;
+    double ux = xmx * sinsu + cnod * cossu;
+    double uy = xmy * sinsu + snod * cossu;
+    double uz = sini * sinsu;
+
+    double radius = mrt * RADIUS_EARTH_KM;
+    out[0] = radius * ux;
+    out[1] = radius * uy;
+    out[2] = radius * uz;
+    return true;
+  }
+
+  /**
+   * Get the Greenwich mean sidereal time for a point in time
+   *
+   * @param timeMillis UTC time (ms since the Unix epoch)
+   * @return GMST in radians on [0, 2*PI)
+   */
+  public static double getGmst(long timeMillis) {
+    return getGmstFromJulianDate(timeMillis / MILLIS_PER_DAY + JULIAN_DATE_UNIX_EPOCH);
+  }
+
+  // GMST (radians on [0, 2*PI)) for a Julian date
+  private static double getGmstFromJulianDate(double jd) {
+    double tut1 = (jd - 2451545.0) / 36525.0;
+    double temp =
+        -6.2e-6 * tut1 * tut1 * tut1
+            + 0.093104 * tut1 * tut1
+            + (876600.0 * 3600 + 8640184.812866) * tut1
+            + 67310.54841;
+    temp = (temp * DEG2RAD / 240.0) % TWO_PI;
+    if (temp < 0) {
+      temp += TWO_PI;
+    }
+    return temp;
+  }
+
+  // convert an earth-fixed position (km) into WGS-84 latitude/longitude (degrees) and altitude (km)
+  private static void ecefToGeodetic(double x, double y, double z, double[] lla) {
+    double p = Math.sqrt(x * x + y * y);
+    double lon = Math.atan2(y, x);
+    double lat = Math.atan2(z, p * (1 - WGS84_E2));
+    double n = WGS84_A;
+    // a handful of fixed-point iterations converges to well under a meter for LEO altitudes
+    for (int i = 0; i < 4; i++) {
+      double sinLat = Math.sin(lat);
+      n = WGS84_A / Math.sqrt(1 - WGS84_E2 * sinLat * sinLat);
+      lat = Math.atan2(z + n * WGS84_E2 * sinLat, p);
+    }
+    double cosLat = Math.cos(lat);
+    double alt;
+    if (cosLat > 1.0e-10) {
+      alt = p / cosLat - n;
+    } else {
+      alt = Math.abs(z) - WGS84_A * Math.sqrt(1 - WGS84_E2);
+    }
+    lla[0] = lat * 180 / Math.PI;
+    lla[1] = lon * 180 / Math.PI;
+    lla[2] = alt;
+  }
+
+  // parse the TLE "assumed decimal point" exponential notation, e.g. " 28098-4" -> 0.28098e-4
+  private static double parseExponential(String field) {
+    String value = field.trim();
+    if (value.isEmpty()) {
+      return 0;
+    }
+    int sign = 1;
+    if (value.charAt(0) == '-' || value.charAt(0) == '+') {
+      sign = value.charAt(0) == '-' ? -1 : 1;
+      value = value.substring(1);
+    }
+    int exponentStart = Math.max(value.lastIndexOf('-'), value.lastIndexOf('+'));
+    if (exponentStart <= 0) {
+      return sign * Double.parseDouble("0." + value);
+    }
+    double mantissa = Double.parseDouble("0." + value.substring(0, exponentStart));
+    int exponent = Integer.parseInt(value.substring(exponentStart).replace("+", ""));
+    return sign * mantissa * Math.pow(10, exponent);
+  }
+
+  /**
+   * Get the NORAD ID encoded in the TLE
+   *
+   * @return the NORAD ID
+   */
+  public int getNoradId() {
+    return noradId;
+  }
+
+  /**
+   * Get the TLE epoch
+   *
+   * @return the epoch in ms since the Unix epoch
+   */
+  public long getEpochMillis() {
+    return (long) epochMillis;
+  }
+
+  /**
+   * Get the mean motion from the TLE
+   *
+   * @return mean motion in revolutions per day
+   */
+  public double getMeanMotion() {
+    return noKozai * MINUTES_PER_DAY / TWO_PI;
+  }
+
+  /**
+   * Get an upper bound on how fast the satellite's ground track can move: the angular speed at
+   * perigee (the fastest point of the orbit) carried down to the earth's surface, plus the speed
+   * of the surface itself at the equator, with a margin for drag and perturbations
+   *
+   * @return the max ground speed (km/s)
+   */
+  public double getMaxGroundSpeed() {
+    // semi-major axis (earth radii) from Kepler's third law, then vis-viva at perigee
+    double a = Math.pow(XKE / noKozai, X2O3);
+    double perigee = a * (1 - ecco);
+    double perigeeSpeed = XKE * Math.sqrt((1 + ecco) / perigee); // earth radii / min
+    double groundSpeed = perigeeSpeed / perigee * RADIUS_EARTH_KM / 60; // km/s
+    return GROUND_SPEED_MARGIN * groundSpeed + EARTH_SURFACE_SPEED;
+  }
+
+  /**
+   * Check whether this orbit is propagated with the SDP4 deep-space terms
+   *
+   * @return true if the orbital period is 225 minutes or longer
+   */
+  public boolean isDeepSpace() {
+    return deepSpace;
+  }
+
+  /**
+   * Get TLE line 1
+   *
+   * @return TLE line 1
+   */
+  public String getTle1() {
+    return tle1;
+  }
+
+  /**
+   * Get TLE line 2
+   *
+   * @return TLE line 2
+   */
+  public String getTle2() {
+    return tle2;
+  }
+}
@@ -0,0 +1,326 @@
+package com.neosensory.whatsup;
+
+import java.util.Arrays;
+
+/**
+ * Predicts each tracked satellite's next pass over the user: when it comes within the tracking
+ * radius, when and how close its closest approach is, and when it leaves again. The surface
+ * distance is sampled at a coarse step out to a horizon to bracket each closest approach, which is
+ * then refined with a golden-section search; entry and exit are refined by bisection.
+ *
+ * <p>Predictions are cached by slot and only recomputed when the satellite's orbital state is
+ * replaced, the user moves more than a threshold, the predicted pass is over, or (with no pass
+ * found) half the horizon has gone by. That's a few dozen propagations per satellite every few
+ * minutes rather than a distance comparison every tick.
+ *
+ * <p>Deep-space orbits (periods of 225 minutes or more) aren't predicted: they drift across the
+ * sky slowly enough that the change in distance between ticks is a good guide, and each SDP4
+ * propagation also integrates the resonance terms, so a prediction would cost far more. Callers
+ * check {@link #predicts} and fall back to comparing distances for those.
+ *
+ * <p>This is plain Java with no Android dependencies. It is not thread safe; call it from one
+ * thread (the tracking thread).
+ */
+public final class PassPredictor {
+  // how precisely entry, closest approach and exit times are refined (ms)
+  private static final long REFINE_MILLIS = 100;
+  private static final double GOLDEN = (Math.sqrt(5) - 1) / 2;
+
+  private final double maxDistanceToUser;
+  private final long horizonMillis;
+  private final long stepMillis;
+  private final double observerMoveKm;
+
+  // cached predictions, by slot
+  private OrbitalState[] predictedStates = new OrbitalState[0];
+  private double[] observerLats = new double[0];
+  private double[] observerLons = new double[0];
+  private long[] validUntil = new long[0];
+  private boolean[] hasPass = new boolean[0];
+  private long[] entryMillis = new long[0];
+  private long[] closestMillis = new long[0];
+  private double[] closestDistances = new double[0];
+  private long[] exitMillis = new long[0];
+  private long predictionCount;
+
+  // scratch for a prediction
+  private final long[] sampleTimes;
+  private final double[] sampleDistances;
+  private final double[] lla = new double[3];
+  private OrbitalState orbitalState;
+  private double userLat;
+  private double userLon;
+
+  /**
+   * Create a predictor
+   *
+   * @param maxDistanceToUser surface distance (km) within which a satellite is passing
+   * @param horizonMillis how far ahead to look for a pass (ms)
+   * @param stepMillis the coarse sampling step (ms). Closest approaches less than a step apart
+   *     can be missed, so keep it well under the time between them (a few minutes in low earth
+   *     orbit).
+   * @param observerMoveKm how far (km) the user can move before predictions are recomputed
+   */
+  public PassPredictor(
+      double maxDistanceToUser, long horizonMillis, long stepMillis, double observerMoveKm) {
+    this.maxDistanceToUser = maxDistanceToUser;
+    this.horizonMillis = horizonMillis;
+    this.stepMillis = stepMillis;
+    this.observerMoveKm = observerMoveKm;
+    int samples = (int) (horizonMillis / stepMillis) + 1;
+    sampleTimes = new long[samples];
+    sampleDistances = new double[samples];
+  }
+
+  /**
+   * Check whether passes are predicted for an orbit
+   *
+   * @param orbitalState the satellite's orbital state
+   * @return false for deep-space orbits, which {@link #update} leaves without a pass
+   */
+  public boolean predicts(OrbitalState orbitalState) {
+    return !orbitalState.isDeepSpace();
+  }
+
+  /**
+   * Bring a satellite's prediction up to date, recomputing it only if it's stale. A deep-space
+   * orbit (see {@link #predicts}) is left without a pass.
+   *
+   * @param slot the satellite's slot
+   * @param orbitalState the satellite's orbital state
+   * @param userLat user latitude (degrees)
+   * @param userLon user longitude (degrees)
+   * @param nowMillis the current time
+   */
+  public void update(
+      int slot, OrbitalState orbitalState, double userLat, double userLon, long nowMillis) {
+    ensureCapacity(slot + 1);
+    if (!predicts(orbitalState)) {
+      predictedStates[slot] = null;
+      hasPass[slot] = false;
+      return;
+    }
+    if (predictedStates[slot] == orbitalState
+        && nowMillis < validUntil[slot]
+        && Utilities.getDistance(observerLats[slot], userLat, observerLons[slot], userLon)
+            <= observerMoveKm) {
+      return;
+    }
+    this.orbitalState = orbitalState;
+    this.userLat = userLat;
+    this.userLon = userLon;
+    predict(slot, nowMillis);
+    this.orbitalState = null;
+    predictedStates[slot] = orbitalState;
+    observerLats[slot] = userLat;
+    observerLons[slot] = userLon;
+    predictionCount++;
+  }
+
+  /**
+   * Check whether a pass was found within the horizon
+   *
+   * @param slot the satellite's slot
+   * @return true if the satellite's next pass is known
+   */
+  public boolean hasPass(int slot) {
+    return slot < hasPass.length && hasPass[slot];
+  }
+
+  /**
+   * Check whether a satellite is on its way in: it has a pass coming up, or in progress, and
+   * hasn't reached its closest approach yet
+   *
+   * @param slot the satellite's slot
+   * @param nowMillis the current time
+   * @return true if the satellite is approaching the user
+   */
+  public boolean isApproaching(int slot, long nowMillis) {
+    return hasPass(slot) && nowMillis < closestMillis[slot];
+  }
+
+  /**
+   * Get when the satellite enters the tracking radius. Only valid if {@link #hasPass}.
+   *
+   * @param slot the satellite's slot
+   * @return the entry time, or the time of the prediction if the pass was already in progress
+   */
+  public long getEntryMillis(int slot) {
+    return entryMillis[slot];
+  }
+
+  /**
+   * Get the time of closest approach. Only valid if {@link #hasPass}.
+   *
+   * @param slot the satellite's slot
+   * @return the time of closest approach
+   */
+  public long getClosestMillis(int slot) {
+    return closestMillis[slot];
+  }
+
+  /**
+   * Get the surface distance at closest approach. Only valid if {@link #hasPass}.
+   *
+   * @param slot the satellite's slot
+   * @return the distance (km)
+   */
+  public double getClosestDistance(int slot) {
+    return closestDistances[slot];
+  }
+
+  /**
+   * Get when the satellite leaves the tracking radius. Only valid if {@link #hasPass}.
+   *
+   * @param slot the satellite's slot
+   * @return the exit time, or the end of the horizon if the satellite is still inside then
+   */
+  public long getExitMillis(int slot) {
+    return exitMillis[slot];
+  }
+
+  /**
+   * Get the number of predictions computed (rather than served from the cache)
+   *
+   * @return the prediction count
+   */
+  public long getPredictionCount() {
+    return predictionCount;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (predictedStates.length < capacity) {
+      int length = Math.max(capacity, predictedStates.length * 2);
+      predictedStates = Arrays.copyOf(predictedStates, length);
+      observerLats = Arrays.copyOf(observerLats, length);
+      observerLons = Arrays.copyOf(observerLons, length);
+      validUntil = Arrays.copyOf(validUntil, length);
+      hasPass = Arrays.copyOf(hasPass, length);
+      entryMillis = Arrays.copyOf(entryMillis, length);
+      closestMillis = Arrays.copyOf(closestMillis, length);
+      closestDistances = Arrays.copyOf(closestDistances, length);
+      exitMillis = Arrays.copyOf(exitMillis, length);
+    }
+  }
+
+  // find the first closest approach within maxDistanceToUser, and its entry and exit
+  private void predict(int slot, long nowMillis) {
+    hasPass[slot] = false;
+    // with no pass in sight, look again once half the horizon has gone by
+    validUntil[slot] = nowMillis + horizonMillis / 2;
+    int samples = sampleTimes.length;
+    for (int i = 0; i < samples; i++) {
+      sampleTimes[i] = nowMillis + i * stepMillis;
+      sampleDistances[i] = getDistance(sampleTimes[i]);
+      if (Double.isNaN(sampleDistances[i])) {
+        // the orbit can't be propagated (e.g. it has decayed)
+        return;
+      }
+    }
+    int i = 0;
+    while (i < samples) {
+      // walk down to the next coarse minimum; the true minimum is within a step of it
+      while (i + 1 < samples && sampleDistances[i + 1] <= sampleDistances[i]) {
+        i++;
+      }
+      long low = sampleTimes[Math.max(0, i - 1)];
+      long high = sampleTimes[Math.min(samples - 1, i + 1)];
+      long closest = findMinimum(low, high);
+      double closestDistance = getDistance(closest);
+      if (closestDistance <= maxDistanceToUser) {
+        hasPass[slot] = true;
+        closestMillis[slot] = closest;
+        closestDistances[slot] = closestDistance;
+        entryMillis[slot] = findEntry(i, closest);
+        exitMillis[slot] = findExit(i, closest);
+        // look for the following pass once this one is over
+        validUntil[slot] = exitMillis[slot];
+        return;
+      }
+      // not close enough; climb to the next coarse maximum and try the following minimum
+      while (i + 1 < samples && sampleDistances[i + 1] >= sampleDistances[i]) {
+        i++;
+      }
+      if (i + 1 >= samples) {
+        return;
+      }
+    }
+  }
+
+  // golden-section search for the time of least distance in [low, high]
+  private long findMinimum(long low, long high) {
+    double a = low;
+    double b = high;
+    double c = b - GOLDEN * (b - a);
+    double d = a + GOLDEN * (b - a);
+    double fc = getDistance((long) c);
+    double fd = getDistance((long) d);
+    while (b - a > REFINE_MILLIS) {
+      if (fc <= fd) {
+        b = d;
+        d = c;
+        fd = fc;
+        c = b - GOLDEN * (b - a);
+        fc = getDistance((long) c);
+      } else {
+        a = c;
+        c = d;
+        fc = fd;
+        d = a + GOLDEN * (b - a);
+        fd = getDistance((long) d);
+      }
+    }
+    return (long) ((a + b) / 2);
+  }
+
+  // the time the distance falls to maxDistanceToUser before the closest approach near sample i
+  private long findEntry(int i, long closest) {
+    // the samples are non-increasing up to i, so the ones outside the radius come first
+    int outside = -1;
+    for (int j = 0; j <= i && sampleTimes[j] < closest; j++) {
+      if (sampleDistances[j] > maxDistanceToUser) {
+        outside = j;
+      }
+    }
+    if (outside < 0) {
+      // already inside when the prediction was made
+      return sampleTimes[0];
+    }
+    return findCrossing(sampleTimes[outside], closest);
+  }
+
+  // the time the distance rises past maxDistanceToUser after the closest approach near sample i
+  private long findExit(int i, long closest) {
+    int samples = sampleTimes.length;
+    for (int j = Math.max(0, i - 1); j < samples; j++) {
+      if (sampleTimes[j] > closest && sampleDistances[j] > maxDistanceToUser) {
+        return findCrossing(sampleTimes[j], closest);
+      }
+    }
+    // still inside at the end of the horizon
+    return sampleTimes[samples - 1];
+  }
+
+  // bisect for where the distance crosses maxDistanceToUser between a time outside the radius and
+  // one inside it (in either order)
+  private long findCrossing(long outside, long inside) {
+    while (Math.abs(inside - outside) > REFINE_MILLIS) {
+      long middle = outside + (inside - outside) / 2;
+      if (getDistance(middle) > maxDistanceToUser) {
+        outside = middle;
+      } else {
+        inside = middle;
+      }
+    }
+    return (outside + inside) / 2;
+  }
+
+  // surface distance (km) from the user to the satellite at a time, or NaN if it can't be
+  // propagated
+  private double getDistance(long timeMillis) {
+    if (!orbitalState.getPosition(timeMillis, lla)) {
+      return Double.NaN;
+    }
+    return Utilities.getDistance(userLat, lla[0], userLon, lla[1]);
+  }
+}
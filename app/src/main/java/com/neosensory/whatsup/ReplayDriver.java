@@ -0,0 +1,322 @@
+package com.neosensory.whatsup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Replays a recorded session through a {@link TrackingEngine} on a simulated clock, as fast as the
+ * CPU allows, so the tracking core can be regression tested and measured (e.g. in simulated hours
+ * per second) off the device. A {@link Recording} holds the user's location trace, the n2yo.com
+ * "What's Up" responses with the times they arrived, and the get TLE responses by NORAD ID.
+ *
+ * <p>Every tick the driver moves the user to their latest recorded fix and ticks the engine, then
+ * delivers the responses that have arrived by then. TLEs are requested as satellites are admitted,
+ * and arrive a fixed delay later. The driver also plays the map's part in removing satellites:
+ * a satellite the engine has flagged as out of range and headed away is released on the next tick,
+ * as it is once the app has removed its marker.
+ *
+ * <p>Pass the driver to the engine as its {@link TrackingEngine.Listener}, so it sees admissions.
+ * A driver replays its recording once and isn't thread safe.
+ */
+public final class ReplayDriver implements TrackingEngine.Listener {
+  /** Receives the state after every tick */
+  public interface Output {
+    /**
+     * Called after every tick. Don't keep the store or frame; they change on the next tick.
+     *
+     * @param timeMillis the simulated time
+     * @param userLat user latitude (degrees)
+     * @param userLon user longitude (degrees)
+     * @param store the tracked satellites' states
+     * @param frame the motor frame played at this time (the last one, if none was rendered)
+     */
+    void onTick(long timeMillis, double userLat, double userLon, SatelliteStore store, int[] frame);
+  }
+
+  private final Recording recording;
+  private final long tickMillis;
+  private final long tleDelayMillis;
+  private final ArrayDeque<long[]> pendingTles = new ArrayDeque<long[]>(); // {due time, NORAD ID}
+  private final N2yoResponseParser.TleHandler tleApplier =
+      new N2yoResponseParser.TleHandler() {
+        @Override
+        public void onTle(int noradID, String satName, String line1, String line2) {
+          try {
+            engine.applyTle(noradID, line1, line2);
+          } catch (IllegalArgumentException e) {
+            // malformed TLE in the recording: skip it, as the app does
+            e.printStackTrace();
+          }
+        }
+      };
+  private TrackingEngine engine;
+  private long nowMillis;
+  private long addedCount;
+  private long removedCount;
+
+  /**
+   * Create a driver
+   *
+   * @param recording the session to replay
+   * @param tickMillis simulated time between ticks (ms)
+   * @param tleDelayMillis simulated time (ms) between admitting a satellite and its TLE arriving
+   */
+  public ReplayDriver(Recording recording, long tickMillis, long tleDelayMillis) {
+    this.recording = recording;
+    this.tickMillis = tickMillis;
+    this.tleDelayMillis = tleDelayMillis;
+  }
+
+  /**
+   * Replay the recording from its first location fix to its last
+   *
+   * @param engine the engine to drive; this driver must be its listener
+   * @param output receives the state after every tick, or null
+   * @return the number of ticks run
+   * @throws IOException if a recorded response isn't valid JSON
+   */
+  public long run(TrackingEngine engine, Output output) throws IOException {
+    this.engine = engine;
+    int numFixes = recording.fixTimes.size();
+    if (numFixes == 0) {
+      return 0;
+    }
+    int[] frame = new int[engine.getNumMotors()];
+    long start = (recording.fixTimes.get(0) + tickMillis - 1) / tickMillis * tickMillis;
+    long end = recording.fixTimes.get(numFixes - 1);
+    int fix = 0;
+    int whatsUp = 0;
+    long ticks = 0;
+    for (nowMillis = start; nowMillis <= end; nowMillis += tickMillis) {
+      while (fix + 1 < numFixes && recording.fixTimes.get(fix + 1) <= nowMillis) {
+        fix++;
+      }
+      double userLat = recording.fixes.get(fix)[0];
+      double userLon = recording.fixes.get(fix)[1];
+      releaseRemovable(engine.getStore());
+      engine.tick(userLat, userLon, nowMillis);
+      engine.getLookahead().getFrame(nowMillis, frame);
+      if (output != null) {
+        output.onTick(nowMillis, userLat, userLon, engine.getStore(), frame);
+      }
+      ticks++;
+
+      // responses that arrive during this tick are picked up by the next one
+      while (whatsUp < recording.whatsUpTimes.size()
+          && recording.whatsUpTimes.get(whatsUp) <= nowMillis) {
+        engine.admitWhatsUp(new StringReader(recording.whatsUps.get(whatsUp)));
+        whatsUp++;
+      }
+      while (!pendingTles.isEmpty() && pendingTles.peekFirst()[0] <= nowMillis) {
+        String response = recording.tles.get((int) pendingTles.pollFirst()[1]);
+        if (response != null) {
+          N2yoResponseParser.parseTle(new StringReader(response), tleApplier);
+        }
+      }
+    }
+    return ticks;
+  }
+
+  /**
+   * Get the number of satellites admitted so far
+   *
+   * @return the admission count
+   */
+  public long getAddedCount() {
+    return addedCount;
+  }
+
+  /**
+   * Get the number of satellites removed so far
+   *
+   * @return the removal count
+   */
+  public long getRemovedCount() {
+    return removedCount;
+  }
+
+  @Override
+  public void onSatelliteAdded(int slot, int noradId) {
+    addedCount++;
+    // a satellite with no recorded TLE stays at its "What's Up" position, like a failed request
+    pendingTles.addLast(new long[] {nowMillis + tleDelayMillis, noradId});
+  }
+
+  @Override
+  public void onSatelliteRemoved(int slot, int noradId) {
+    removedCount++;
+  }
+
+  // flag the satellites whose markers the app would have removed, so the tracker releases them
+  private static void releaseRemovable(SatelliteStore store) {
+    int highWater = store.getHighWater();
+    for (int slot = 0; slot < highWater; slot++) {
+      if (store.isLive(slot)
+          && store.hasFlag(slot, SatelliteStore.FLAG_OUTSIDE_RANGE)
+          && !store.hasFlag(slot, SatelliteStore.FLAG_HEADED_TO_USER)) {
+        store.setFlag(slot, SatelliteStore.FLAG_READY_TO_REMOVE, true);
+      }
+    }
+  }
+
+  /**
+   * A recorded session. Build it in memory, or {@link #load} it from a directory holding:
+   *
+   * <ul>
+   *   <li>{@code locations.csv}: one fix per line, "timeMillis,latitude,longitude,altitude"
+   *       (altitude in meters); lines starting with # are skipped
+   *   <li>{@code whatsup-<timeMillis>.json}: a "What's Up" response and when it arrived
+   *   <li>{@code tle-<noradId>.json}: a get TLE response
+   * </ul>
+   *
+   * <p>The response files are exactly what n2yo.com returned, e.g. from the app's N2YO debug log.
+   */
+  public static final class Recording {
+    private final ArrayList<Long> fixTimes = new ArrayList<Long>();
+    private final ArrayList<double[]> fixes = new ArrayList<double[]>();
+    private final ArrayList<Long> whatsUpTimes = new ArrayList<Long>();
+    private final ArrayList<String> whatsUps = new ArrayList<String>();
+    private final HashMap<Integer, String> tles = new HashMap<Integer, String>();
+
+    /**
+     * Add a location fix. Fixes must be added in time order.
+     *
+     * @param timeMillis when the fix arrived
+     * @param lat latitude (degrees)
+     * @param lon longitude (degrees)
+     * @param alt altitude (meters above sea level)
+     */
+    public void addLocation(long timeMillis, double lat, double lon, double alt) {
+      if (!fixTimes.isEmpty() && timeMillis < fixTimes.get(fixTimes.size() - 1)) {
+        throw new IllegalArgumentException("Location fixes out of order at " + timeMillis);
+      }
+      fixTimes.add(timeMillis);
+      fixes.add(new double[] {lat, lon, alt});
+    }
+
+    /**
+     * Add a "What's Up" response. Responses must be added in time order.
+     *
+     * @param timeMillis when the response arrived
+     * @param response the response JSON
+     */
+    public void addWhatsUp(long timeMillis, String response) {
+      if (!whatsUpTimes.isEmpty() && timeMillis < whatsUpTimes.get(whatsUpTimes.size() - 1)) {
+        throw new IllegalArgumentException("What's Up responses out of order at " + timeMillis);
+      }
+      whatsUpTimes.add(timeMillis);
+      whatsUps.add(response);
+    }
+
+    /**
+     * Add the get TLE response returned whenever a satellite's TLE is requested
+     *
+     * @param noradId the satellite's NORAD ID
+     * @param response the response JSON
+     */
+    public void addTle(int noradId, String response) {
+      tles.put(noradId, response);
+    }
+
+    /**
+     * Load a recording from a directory
+     *
+     * @param directory the directory holding the recording's files
+     * @return the recording
+     * @throws IOException if a file can't be read or locations.csv is malformed
+     */
+    public static Recording load(File directory) throws IOException {
+      Recording recording = new Recording();
+      BufferedReader locations = open(new File(directory, "locations.csv"));
+      try {
+        String line;
+        int lineNumber = 0;
+        while ((line = locations.readLine()) != null) {
+          lineNumber++;
+          line = line.trim();
+          if (line.isEmpty() || line.startsWith("#")) {
+            continue;
+          }
+          String[] fields = line.split(",");
+          try {
+            recording.addLocation(
+                Long.parseLong(fields[0].trim()),
+                Double.parseDouble(fields[1].trim()),
+                Double.parseDouble(fields[2].trim()),
+                fields.length > 3 ? Double.parseDouble(fields[3].trim()) : 0);
+          } catch (RuntimeException e) {
+            throw new IOException("locations.csv line " + lineNumber + ": " + line, e);
+          }
+        }
+      } finally {
+        locations.close();
+      }
+
+      File[] files = directory.listFiles();
+      if (files == null) {
+        throw new IOException("Can't list " + directory);
+      }
+      // responses are named after their arrival time or NORAD ID; replay them in time order
+      Arrays.sort(
+          files,
+          new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+              return Long.compare(getNumber(a, "whatsup-"), getNumber(b, "whatsup-"));
+            }
+          });
+      for (File file : files) {
+        long whatsUpTime = getNumber(file, "whatsup-");
+        if (whatsUpTime != Long.MAX_VALUE) {
+          recording.addWhatsUp(whatsUpTime, read(file));
+        }
+        long noradId = getNumber(file, "tle-");
+        if (noradId != Long.MAX_VALUE) {
+          recording.addTle((int) noradId, read(file));
+        }
+      }
+      return recording;
+    }
+
+    // the number in a file named <prefix><number>.json, or Long.MAX_VALUE if it isn't named so
+    private static long getNumber(File file, String prefix) {
+      String name = file.getName();
+      if (!name.startsWith(prefix) || !name.endsWith(".json")) {
+        return Long.MAX_VALUE;
+      }
+      try {
+        return Long.parseLong(name.substring(prefix.length(), name.length() - 5));
+      } catch (NumberFormatException e) {
+        return Long.MAX_VALUE;
+      }
+    }
+
+    private static BufferedReader open(File file) throws IOException {
+      return new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    }
+
+    private static String read(File file) throws IOException {
+      StringBuilder text = new StringBuilder();
+      BufferedReader reader = open(file);
+      try {
+        char[] buffer = new char[8192];
+        int n;
+        while ((n = reader.read(buffer)) > 0) {
+          text.append(buffer, 0, n);
+        }
+      } finally {
+        reader.close();
+      }
+      return text.toString();
+    }
+  }
+}
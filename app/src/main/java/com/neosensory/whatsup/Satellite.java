@@ -3,58 +3,51 @@ package com.neosensory.whatsup;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Marker;
 
+/**
+ * Handle onto a tracked satellite's slot in a {@link SatelliteStore}, plus the Google Maps marker
+ * for the satellite (which is only ever touched from the UI thread).
+ */
 public class Satellite {
-  private int noradId;
-  private String intlDesignator;
-  private String tle1;
-  private String tle2;
-  private String name;
-  private double latitude;
-  private double longitude;
-  private double altitude;
-  private Boolean hasTle;
+  private final SatelliteStore store;
+  private final int slot;
+  private final int noradId;
   Marker satelliteMarker;
-  private Boolean hasMarker;
-  private double distanceToUser;
-  private double alphaDistanceToUser;
-  private double lastDistanceToUser;
-  private double userBearing;
-  private Boolean userBearingSet;
-  private Boolean distanceToUserSet;
-  private Boolean
-      locationUpdatedCalled; // used to only make the satellite active once we've started updating
-  // its position via TLE (to avoid jumping)
-  private Boolean headedTowardsUser;
-  private Boolean readyToRemove;
-  private Boolean outsideUserRange;
+  // what was last rendered to the marker, only touched from the UI thread
+  private final MarkerDeltaFilter.State markerState = new MarkerDeltaFilter.State();
+  // viewport culling state, only touched from the UI thread
+  private boolean markerCulled;
+  private int framesUntilMarkerUpdate;
 
   /**
    * Satellite constructor for keeping track of a satellite and its UI element
    *
-   * @param noradId_ int NORAD ID for the satellite
-   * @param intlDesignator_ String unique int'l de
-   * @param name_ The satellite's name (via n2yo.com)
-   * @param lat The satellite's starting latitude
-   * @param lon The satellite's starting longitude
-   * @param alt The satellite's starting altitude
-   */
-  public Satellite(
-      int noradId_, String intlDesignator_, String name_, double lat, double lon, double alt) {
-    noradId = noradId_;
-    intlDesignator = intlDesignator_;
-    name = name_;
-    latitude = lat;
-    longitude = lon;
-    altitude = alt;
-    hasTle = false;
-    hasMarker = false;
+   * @param store_ the store holding the satellite's state
+   * @param slot_ the satellite's slot in the store (see {@link TrackingEngine.Listener})
+   */
+  public Satellite(SatelliteStore store_, int slot_) {
+    store = store_;
+    slot = slot_;
+    noradId = store.getNoradId(slot_);
     satelliteMarker = null;
-    distanceToUserSet = false;
-    locationUpdatedCalled = false;
-    readyToRemove = false;
-    outsideUserRange = false;
-    userBearingSet = false;
-    headedTowardsUser = true;
+  }
+
+  /**
+   * Get the satellite's slot index in the store
+   *
+   * @return the slot index
+   */
+  public int getSlot() {
+    return slot;
+  }
+
+  /**
+   * Check that the satellite's slot hasn't been released (and possibly reused) since this handle
+   * was created
+   *
+   * @return true if the slot still holds this satellite
+   */
+  public Boolean isTracked() {
+    return store.isLive(slot) && (store.getNoradId(slot) == noradId);
   }
 
   /**
@@ -63,7 +56,7 @@ public class Satellite {
    * @return whether or not the bearing has been set
    */
   public Boolean getUserBearingSet() {
-    return userBearingSet;
+    return store.hasFlag(slot, SatelliteStore.FLAG_BEARING_SET);
   }
 
   /**
@@ -72,8 +65,7 @@ public class Satellite {
    * @param bearing - the bearing (in degrees)
    */
   public void setUserBearing(double bearing) {
-    userBearing = bearing;
-    userBearingSet = true;
+    store.setUserBearing(slot, bearing);
   }
 
   /**
@@ -82,8 +74,8 @@ public class Satellite {
    * @return the bearing (if it's set), or -1 if it's not
    */
   public double getUserBearing() {
-    if (userBearingSet) {
-      return userBearing;
+    if (getUserBearingSet()) {
+      return store.getUserBearing(slot);
     } else {
       return -1;
     }
@@ -95,7 +87,7 @@ public class Satellite {
    * @param outsideUserRange_
    */
   public void setOutsideUserRange(Boolean outsideUserRange_) {
-    outsideUserRange = outsideUserRange_;
+    store.setFlag(slot, SatelliteStore.FLAG_OUTSIDE_RANGE, outsideUserRange_);
   }
 
   /**
@@ -104,17 +96,23 @@ public class Satellite {
    * @return
    */
   public Boolean getOutsideUserRange() {
-    return outsideUserRange;
+    return store.hasFlag(slot, SatelliteStore.FLAG_OUTSIDE_RANGE);
   }
 
   /**
-   * Remove the Google Maps marker associated with the satellite. This needs to happen on a UI
-   * thread.
+   * Remove the Google Maps marker associated with the satellite, returning it to the pool it came
+   * from. This needs to happen on a UI thread.
+   *
+   * @param markerPool the pool the marker was acquired from
    */
-  public void removeMarker() {
-    satelliteMarker.remove();
-    hasMarker = false;
-    readyToRemove = true;
+  public void removeMarker(MarkerPool markerPool) {
+    markerPool.release(satelliteMarker);
+    satelliteMarker = null;
+    markerState.reset();
+    markerCulled = false;
+    framesUntilMarkerUpdate = 0;
+    store.setFlag(slot, SatelliteStore.FLAG_HAS_MARKER, false);
+    store.setFlag(slot, SatelliteStore.FLAG_READY_TO_REMOVE, true);
   }
 
   /**
@@ -124,7 +122,7 @@ public class Satellite {
    * @return true if ready to remove the object
    */
   public Boolean getReadyToRemoveSatellite() {
-    return readyToRemove;
+    return store.hasFlag(slot, SatelliteStore.FLAG_READY_TO_REMOVE);
   }
 
   /**
@@ -135,7 +133,7 @@ public class Satellite {
    * @return true if a TLE has been used to update the satellite's location
    */
   public Boolean getTleUsedforLocation() {
-    return locationUpdatedCalled;
+    return store.hasFlag(slot, SatelliteStore.FLAG_LOCATION_UPDATED);
   }
 
   /**
@@ -148,15 +146,7 @@ public class Satellite {
    *     out
    */
   public void setDistanceToUser(double distance, double maxDistance) {
-      distanceToUser = distance;
-      alphaDistanceToUser =
-          1 - Utilities.getLinearMap((float) distance, 0, (float) maxDistance, 0, 1, true);
-    if (distanceToUserSet) {
-      double direction = distanceToUser - lastDistanceToUser;
-      headedTowardsUser = (direction <= 0);
-    }
-    lastDistanceToUser = distanceToUser;
-    distanceToUserSet = true;
+    store.setDistanceToUser(slot, distance, maxDistance);
   }
 
   /**
@@ -165,7 +155,7 @@ public class Satellite {
    * @return true if the satellite is moving towards the user
    */
   public Boolean getHeadedToUser() {
-    return headedTowardsUser;
+    return store.hasFlag(slot, SatelliteStore.FLAG_HEADED_TO_USER);
   }
 
   /**
@@ -174,8 +164,8 @@ public class Satellite {
    * @return the distance (in km) or -1 if this has not yet been set
    */
   public double getDistanceToUser() {
-    if (distanceToUserSet) {
-      return distanceToUser;
+    if (store.hasFlag(slot, SatelliteStore.FLAG_DISTANCE_SET)) {
+      return store.getDistanceToUser(slot);
     } else {
       return -1;
     }
@@ -187,8 +177,8 @@ public class Satellite {
    * @return the alpha value (on [0,1]) if the distance to the user has been set. -1 otherwise.
    */
   public float getAlphaDistanceToUser() {
-    if (distanceToUserSet) {
-      return (float) alphaDistanceToUser;
+    if (store.hasFlag(slot, SatelliteStore.FLAG_DISTANCE_SET)) {
+      return (float) store.getAlphaDistanceToUser(slot);
     } else {
       return -1;
     }
@@ -201,7 +191,10 @@ public class Satellite {
    */
   public void setSatelliteMarker(Marker marker) {
     satelliteMarker = marker;
-    hasMarker = true;
+    markerState.reset();
+    markerCulled = false; // markers come out of the pool visible
+    framesUntilMarkerUpdate = 0;
+    store.setFlag(slot, SatelliteStore.FLAG_HAS_MARKER, true);
   }
 
   /**
@@ -210,7 +203,7 @@ public class Satellite {
    * @return true if it has a Google Maps marker attached to it
    */
   public Boolean getHasMarker() {
-    return hasMarker;
+    return store.hasFlag(slot, SatelliteStore.FLAG_HAS_MARKER);
   }
 
   /**
@@ -223,11 +216,74 @@ public class Satellite {
   }
 
   /**
-   * Update the position of the attached Google Maps marker based on the current set
-   * latitude+longitude coordinates
+   * Update the position and alpha (from the distance to the user) of the attached Google Maps
+   * marker. Markers out of view are hidden and skipped, distant ones are only updated every few
+   * frames, and changes too small to see at the current zoom are dropped.
+   *
+   * @param filter decides which changes are visible
+   * @param viewport decides how often the marker should be updated
+   */
+  public void updateMarker(MarkerDeltaFilter filter, ViewportCuller viewport) {
+    double lat = store.getLatitude(slot);
+    double lon = store.getLongitude(slot);
+    int interval = viewport.getUpdateInterval(lat, lon, getDistanceToUser());
+    if (interval == 0) {
+      cullMarker();
+      return;
+    }
+    if (markerCulled) {
+      // just came into view: bring it up to date now
+      uncullMarker(filter, lat, lon);
+      framesUntilMarkerUpdate = interval;
+      return;
+    }
+    if (--framesUntilMarkerUpdate > 0) {
+      return;
+    }
+    framesUntilMarkerUpdate = interval;
+    updateMarkerPosition(filter, lat, lon);
+  }
+
+  /**
+   * Show or hide the attached Google Maps marker as it comes into or goes out of view, without
+   * otherwise updating it. Cheap enough to run for every camera frame.
+   *
+   * @param filter decides which changes are visible, for a marker that's shown again
+   * @param viewport the current view
    */
-  public void updateMarkerPosition() {
-    satelliteMarker.setPosition(new LatLng(latitude, longitude));
+  public void updateMarkerVisibility(MarkerDeltaFilter filter, ViewportCuller viewport) {
+    double lat = store.getLatitude(slot);
+    double lon = store.getLongitude(slot);
+    boolean visible = viewport.isVisible(lat, lon);
+    if (visible && markerCulled) {
+      uncullMarker(filter, lat, lon);
+    } else if (!visible) {
+      cullMarker();
+    }
+  }
+
+  private void cullMarker() {
+    if (!markerCulled) {
+      markerCulled = true;
+      satelliteMarker.setVisible(false);
+    }
+  }
+
+  // it was left where it was when it went out of view, so move it before showing it
+  private void uncullMarker(MarkerDeltaFilter filter, double lat, double lon) {
+    markerCulled = false;
+    updateMarkerPosition(filter, lat, lon);
+    satelliteMarker.setVisible(true);
+  }
+
+  private void updateMarkerPosition(MarkerDeltaFilter filter, double lat, double lon) {
+    if (filter.positionChanged(markerState, lat, lon)) {
+      satelliteMarker.setPosition(new LatLng(lat, lon));
+    }
+    float alpha = getAlphaDistanceToUser();
+    if (filter.alphaChanged(markerState, alpha)) {
+      satelliteMarker.setAlpha(alpha);
+    }
   }
 
   /**
@@ -254,7 +310,7 @@ public class Satellite {
    * @return the International Designator
    */
   public String getIntlDesignator() {
-    return intlDesignator;
+    return store.getIntlDesignator(slot);
   }
 
   /**
@@ -263,7 +319,7 @@ public class Satellite {
    * @return the satellite's name
    */
   public String getName() {
-    return name;
+    return store.getName(slot);
   }
 
   /**
@@ -272,25 +328,46 @@ public class Satellite {
    * @return String array for each TLE line
    */
   public String[] getTles() {
-    if (hasTle) {
-      String[] tles = {tle1, tle2};
-      return tles;
+    String[] tles = new String[2];
+    getTles(tles);
+    return tles;
+  }
+
+  /**
+   * Get the two line element (TLE) set associated with the satellite without allocating
+   *
+   * @param tles receives TLE line 1 in tles[0] and line 2 in tles[1], or "" if no TLE has been set
+   */
+  public void getTles(String[] tles) {
+    OrbitalState orbitalState = store.getOrbitalState(slot);
+    if (orbitalState != null) {
+      tles[0] = orbitalState.getTle1();
+      tles[1] = orbitalState.getTle2();
     } else {
-      String[] tles = {"", ""};
-      return tles;
+      tles[0] = "";
+      tles[1] = "";
     }
   }
 
   /**
-   * Set the two line element (TLE) set for the satellite
+   * Set the two line element (TLE) set for the satellite. The TLE is parsed and SGP4 is
+   * initialized here so that later propagations don't need to touch the TLE strings.
    *
    * @param tle1_ TLE line 1
    * @param tle2_ TLE line 2
+   * @throws IllegalArgumentException if the TLE cannot be parsed
    */
   public void setTles(String tle1_, String tle2_) {
-    tle1 = tle1_;
-    tle2 = tle2_;
-    hasTle = true;
+    store.setOrbitalState(slot, noradId, OrbitalState.fromTle(tle1_, tle2_));
+  }
+
+  /**
+   * Get the pre-parsed orbital state built from the satellite's TLE
+   *
+   * @return the orbital state, or null if no TLE has been set
+   */
+  public OrbitalState getOrbitalState() {
+    return store.getOrbitalState(slot);
   }
 
   /**
@@ -299,7 +376,7 @@ public class Satellite {
    * @return true if the satellite has an associated TLE
    */
   public Boolean getHasTle() {
-    return hasTle;
+    return store.hasFlag(slot, SatelliteStore.FLAG_HAS_TLE);
   }
 
   /**
@@ -310,10 +387,7 @@ public class Satellite {
    * @param alt altitude (meters above sea level)
    */
   public void setLla(double lat, double lon, double alt) {
-    latitude = lat;
-    longitude = lon;
-    altitude = alt;
-    locationUpdatedCalled = true;
+    store.setLla(slot, lat, lon, alt);
   }
 
   /**
@@ -323,7 +397,20 @@ public class Satellite {
    *     above sea level)
    */
   public double[] getLla() {
-    double[] lla = {latitude, longitude, altitude};
+    double[] lla = new double[3];
+    getLla(lla);
     return lla;
   }
+
+  /**
+   * Get the latitude/longitude/altitude for the satellite without allocating
+   *
+   * @param lla receives latitude (degrees), longitude (degrees), and altitude (meters above sea
+   *     level)
+   */
+  public void getLla(double[] lla) {
+    lla[0] = store.getLatitude(slot);
+    lla[1] = store.getLongitude(slot);
+    lla[2] = store.getAltitude(slot);
+  }
 }
@@ -0,0 +1,178 @@
+package com.neosensory.whatsup;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.VectorDrawable;
+import android.util.LruCache;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+
+/**
+ * LRU cache of rasterized satellite marker icons, keyed by icon type and size. Sizes are quantized
+ * into buckets so satellites at similar altitudes share one bitmap, and the cache holds at most a
+ * fixed number of bytes of bitmap memory, shared between the icons and the prerendered bitmaps.
+ *
+ * <p>Rendering a vector icon (inflate, allocate an ARGB_8888 bitmap, draw) is slow enough to drop
+ * frames when a batch of markers is created at once, so {@link #prerender} can draw the bitmaps for
+ * an icon type from a background thread before the markers are needed. BitmapDescriptorFactory
+ * can only be used on the UI thread once the map is initialized, so the descriptors themselves are
+ * made by {@link #getIcon}, from the prerendered bitmap when there is one.
+ */
+public final class SatelliteIconCache {
+  // icon types
+  public static final int ICON_SATELLITE = 0;
+  public static final int ICON_DEBRIS = 1;
+  public static final int ICON_ISS = 2;
+  public static final int ICON_TARGETED = 3;
+  private static final int ICON_TYPES = 4;
+
+  // icon sizes (px) are rounded to a multiple of SIZE_STEP, within [MIN_SIZE, MAX_SIZE]
+  public static final int MIN_SIZE = 48;
+  public static final int MAX_SIZE = 208;
+  private static final int SIZE_STEP = 16;
+  private static final int BYTES_PER_PIXEL = 4; // ARGB_8888
+
+  private final Context context;
+  private final int maxBytes;
+  private final LruCache<Integer, BitmapDescriptor> icons; // UI thread only
+  // bitmaps drawn by prerender, waiting for getIcon to wrap them in a descriptor
+  private final LruCache<Integer, Bitmap> prerendered;
+
+  /**
+   * Create an icon cache
+   *
+   * @param context context for loading the icon drawables
+   * @param maxBytes bitmap memory budget for the cached icons
+   */
+  public SatelliteIconCache(Context context, int maxBytes) {
+    this.context = context.getApplicationContext();
+    this.maxBytes = maxBytes;
+    icons =
+        new LruCache<Integer, BitmapDescriptor>(maxBytes) {
+          @Override
+          protected int sizeOf(Integer key, BitmapDescriptor icon) {
+            int size = getSize(key);
+            return size * size * BYTES_PER_PIXEL;
+          }
+        };
+    prerendered =
+        new LruCache<Integer, Bitmap>(maxBytes) {
+          @Override
+          protected int sizeOf(Integer key, Bitmap bitmap) {
+            return bitmap.getByteCount();
+          }
+        };
+  }
+
+  /**
+   * Get the icon for a satellite, rendering it if it isn't cached. Call this on the UI thread, once
+   * the map is ready.
+   *
+   * @param type the icon type (ICON_SATELLITE, ICON_DEBRIS, ICON_ISS or ICON_TARGETED)
+   * @param size the requested icon size (px), rounded to the nearest size bucket
+   * @return the icon
+   */
+  public BitmapDescriptor getIcon(int type, int size) {
+    int key = getKey(type, quantize(size));
+    BitmapDescriptor icon = icons.get(key);
+    if (icon == null) {
+      Bitmap bitmap = prerendered.remove(key);
+      if (bitmap == null) {
+        bitmap = render(getType(key), getSize(key));
+      }
+      icon = BitmapDescriptorFactory.fromBitmap(bitmap);
+      icons.put(key, icon);
+      // the prerendered bitmaps only get what the icons leave of the budget
+      prerendered.trimToSize(maxBytes - icons.size());
+    }
+    return icon;
+  }
+
+  /**
+   * Draw the bitmaps for every size bucket of one icon type (as far as the budget allows), ready
+   * for {@link #getIcon} to use. It doesn't touch the map, so it can run on any thread.
+   *
+   * @param type the icon type the markers will use
+   */
+  public void prerender(int type) {
+    for (int size = MIN_SIZE; size <= MAX_SIZE; size += SIZE_STEP) {
+      int key = getKey(type, size);
+      if (prerendered.get(key) == null) {
+        if (icons.size() + prerendered.size() + size * size * BYTES_PER_PIXEL > maxBytes) {
+          return;
+        }
+        prerendered.put(key, render(type, size));
+      }
+    }
+  }
+
+  /**
+   * Get the number of lookups that found a cached icon
+   *
+   * @return the hit count
+   */
+  public int getHitCount() {
+    return icons.hitCount();
+  }
+
+  /**
+   * Get the number of lookups that had to render an icon
+   *
+   * @return the miss count
+   */
+  public int getMissCount() {
+    return icons.missCount();
+  }
+
+  /** Drop every cached icon */
+  public void clear() {
+    icons.evictAll();
+    prerendered.evictAll();
+  }
+
+  // round a size to the nearest bucket
+  private static int quantize(int size) {
+    int clamped = Math.max(MIN_SIZE, Math.min(MAX_SIZE, size));
+    return MIN_SIZE + Math.round((clamped - MIN_SIZE) / (float) SIZE_STEP) * SIZE_STEP;
+  }
+
+  private static int getKey(int type, int size) {
+    return size * ICON_TYPES + type;
+  }
+
+  private static int getType(int key) {
+    return key % ICON_TYPES;
+  }
+
+  private static int getSize(int key) {
+    return key / ICON_TYPES;
+  }
+
+  private Bitmap render(int type, int size) {
+    VectorDrawable vectorDrawable;
+    switch (type) {
+      case ICON_DEBRIS:
+        vectorDrawable = (VectorDrawable) context.getDrawable(R.drawable.garbage1);
+        break;
+      case ICON_ISS:
+        vectorDrawable = (VectorDrawable) context.getDrawable(R.drawable.iss);
+        break;
+      case ICON_TARGETED:
+        // mutate so the tint doesn't leak into the plain satellite icon's shared drawable state
+        vectorDrawable =
+            (VectorDrawable) context.getDrawable(R.drawable.ic_fp_satellite_icon).mutate();
+        vectorDrawable.setTint(Color.argb(255, 255, 0, 0));
+        break;
+      default:
+        vectorDrawable = (VectorDrawable) context.getDrawable(R.drawable.ic_fp_satellite_icon);
+    }
+    vectorDrawable.setBounds(0, 0, size, size);
+    Bitmap bm = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    Canvas canvas = new Canvas(bm);
+    vectorDrawable.draw(canvas);
+    return bm;
+  }
+}
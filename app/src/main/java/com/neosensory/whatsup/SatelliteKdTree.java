@@ -0,0 +1,403 @@
+package com.neosensory.whatsup;
+
+/**
+ * Spatial index over the sub-satellite points of a {@link SatelliteStore}'s slots, for "nearest N
+ * to the observer" and "everything within R km" queries in O(log n) rather than a scan of every
+ * tracked satellite.
+ *
+ * <p>Points are stored as unit vectors on the sphere that Utilities.getDistance uses, so the
+ * straight-line (chord) distance between two points orders them exactly like their great-circle
+ * surface distance. The tree is implicit: {@link #rebuild} partitions a flat array of point indices
+ * around medians, so there are no node objects and no allocation once the arrays have grown to the
+ * store's capacity.
+ *
+ * <p>Satellites move every tick, but the set of them rarely changes. {@link #update} moves the
+ * indexed points in place and refits each node's bounding box, which is O(n) with no sorting;
+ * queries prune on those boxes rather than on the split planes, so they stay exact however far
+ * the points have moved. The tree only rebuilds when the set of slots changes, or every
+ * {@link #REFITS_PER_REBUILD} updates so the boxes stay tight.
+ */
+public final class SatelliteKdTree {
+  private static final double EARTH_RADIUS_KM = 6371; // matches Utilities.getDistance
+  private static final double DEG2RAD = Math.PI / 180;
+  /**
+   * Updates between rebuilds when the set of slots doesn't change. A low-earth satellite moves
+   * about 400 km a minute, so at the app's 50 ms tick this rebuilds every 10 s, by which time each
+   * has moved under 1 degree.
+   */
+  public static final int REFITS_PER_REBUILD = 200;
+
+  private int[] slots = new int[0]; // slot of each point; permuted into kd order by rebuild
+  private double[] xs = new double[0];
+  private double[] ys = new double[0];
+  private double[] zs = new double[0];
+  // bounding box of the subtree whose median is at each point
+  private double[] minXs = new double[0];
+  private double[] minYs = new double[0];
+  private double[] minZs = new double[0];
+  private double[] maxXs = new double[0];
+  private double[] maxYs = new double[0];
+  private double[] maxZs = new double[0];
+  private int[] pointOfSlot = new int[0]; // by slot; only valid where slots[pointOfSlot[s]] == s
+  private int count;
+  private int refitsSinceRebuild;
+
+  // query state, reused between calls
+  private double queryX;
+  private double queryY;
+  private double queryZ;
+  private int bestCount;
+  private int bestLimit;
+  private int[] bestSlots = new int[0];
+  private double[] bestDistances = new double[0];
+  private double radiusChordSq;
+  private int[] radiusOut;
+  private int radiusCount;
+
+  /**
+   * Rebuild the index from the current positions of every live slot that has a TLE-derived
+   * location.
+   *
+   * @param store the store to index
+   */
+  public void rebuild(SatelliteStore store) {
+    int highWater = store.getHighWater();
+    ensureCapacity(highWater, store.getCapacity());
+    count = 0;
+    for (int slot = 0; slot < highWater; slot++) {
+      add(store, slot);
+    }
+    finishBuild();
+  }
+
+  /**
+   * Rebuild the index from the current positions of some of the store's slots. Slots that aren't
+   * live or have no TLE-derived location are skipped.
+   *
+   * @param store the store to index
+   * @param slotsToIndex the slots to index
+   * @param n the number of slots in slotsToIndex
+   */
+  public void rebuild(SatelliteStore store, int[] slotsToIndex, int n) {
+    ensureCapacity(n, store.getCapacity());
+    count = 0;
+    for (int i = 0; i < n; i++) {
+      add(store, slotsToIndex[i]);
+    }
+    finishBuild();
+  }
+
+  /**
+   * Index the current positions of some of the store's slots, as {@link #rebuild(SatelliteStore,
+   * int[], int)} does. If they're the slots already indexed, the points are moved in place and the
+   * bounding boxes refitted instead of rebuilding the tree.
+   *
+   * @param store the store to index
+   * @param slotsToIndex the slots to index
+   * @param n the number of slots in slotsToIndex
+   * @return true if the tree was rebuilt, false if it was refitted
+   */
+  public boolean update(SatelliteStore store, int[] slotsToIndex, int n) {
+    if (refitsSinceRebuild < REFITS_PER_REBUILD && pointOfSlot.length >= store.getCapacity()) {
+      int moved = 0;
+      for (int i = 0; i < n; i++) {
+        int slot = slotsToIndex[i];
+        if (!store.hasFlag(
+            slot, SatelliteStore.FLAG_LIVE | SatelliteStore.FLAG_LOCATION_UPDATED)) {
+          continue;
+        }
+        int point = pointOfSlot[slot];
+        if (point >= count || slots[point] != slot) {
+          moved = -1; // a slot that isn't indexed yet
+          break;
+        }
+        setPoint(point, store.getLatitude(slot), store.getLongitude(slot));
+        moved++;
+      }
+      // the slots are distinct, so as many of them as there are points means the same set
+      if (moved == count) {
+        if (count > 0) {
+          refit(0, count);
+        }
+        refitsSinceRebuild++;
+        return false;
+      }
+    }
+    rebuild(store, slotsToIndex, n);
+    return true;
+  }
+
+  /**
+   * Get the number of indexed points
+   *
+   * @return the point count
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Find the satellites nearest to a point, ordered nearest first
+   *
+   * @param lat latitude (degrees)
+   * @param lon longitude (degrees)
+   * @param n the maximum number of satellites to return
+   * @param outSlots receives the slots of the nearest satellites (length >= n)
+   * @param outDistances receives their surface distances in km (length >= n), or null
+   * @return the number of satellites found (min of n and the index size)
+   */
+  public int nearest(double lat, double lon, int n, int[] outSlots, double[] outDistances) {
+    setQuery(lat, lon);
+    if (bestSlots.length < n) {
+      bestSlots = new int[n];
+      bestDistances = new double[n];
+    }
+    bestLimit = n;
+    bestCount = 0;
+    if (n > 0) {
+      searchNearest(0, count, 0);
+    }
+    for (int i = 0; i < bestCount; i++) {
+      outSlots[i] = bestSlots[i];
+      if (outDistances != null) {
+        outDistances[i] = chordSqToKm(bestDistances[i]);
+      }
+    }
+    return bestCount;
+  }
+
+  /**
+   * Find every satellite within a surface distance of a point
+   *
+   * @param lat latitude (degrees)
+   * @param lon longitude (degrees)
+   * @param radiusKm the search radius (km)
+   * @param outSlots receives the matching slots (length >= size())
+   * @return the number of satellites found
+   */
+  public int withinRadius(double lat, double lon, double radiusKm, int[] outSlots) {
+    setQuery(lat, lon);
+    double chord = 2 * Math.sin(Math.min(radiusKm / EARTH_RADIUS_KM, Math.PI) / 2);
+    radiusChordSq = chord * chord;
+    radiusOut = outSlots;
+    radiusCount = 0;
+    searchRadius(0, count);
+    radiusOut = null;
+    return radiusCount;
+  }
+
+  private void setQuery(double lat, double lon) {
+    double latR = lat * DEG2RAD;
+    double lonR = lon * DEG2RAD;
+    double cosLat = Math.cos(latR);
+    queryX = cosLat * Math.cos(lonR);
+    queryY = cosLat * Math.sin(lonR);
+    queryZ = Math.sin(latR);
+  }
+
+  private void add(SatelliteStore store, int slot) {
+    if (!store.hasFlag(slot, SatelliteStore.FLAG_LIVE | SatelliteStore.FLAG_LOCATION_UPDATED)) {
+      return;
+    }
+    slots[count] = slot;
+    setPoint(count, store.getLatitude(slot), store.getLongitude(slot));
+    count++;
+  }
+
+  private void setPoint(int i, double latDegrees, double lonDegrees) {
+    double lat = latDegrees * DEG2RAD;
+    double lon = lonDegrees * DEG2RAD;
+    double cosLat = Math.cos(lat);
+    xs[i] = cosLat * Math.cos(lon);
+    ys[i] = cosLat * Math.sin(lon);
+    zs[i] = Math.sin(lat);
+  }
+
+  private void ensureCapacity(int capacity, int slotCapacity) {
+    if (slots.length < capacity) {
+      slots = new int[capacity];
+      xs = new double[capacity];
+      ys = new double[capacity];
+      zs = new double[capacity];
+      minXs = new double[capacity];
+      minYs = new double[capacity];
+      minZs = new double[capacity];
+      maxXs = new double[capacity];
+      maxYs = new double[capacity];
+      maxZs = new double[capacity];
+    }
+    if (pointOfSlot.length < slotCapacity) {
+      pointOfSlot = new int[slotCapacity];
+    }
+  }
+
+  private void finishBuild() {
+    build(0, count, 0);
+    for (int i = 0; i < count; i++) {
+      pointOfSlot[slots[i]] = i;
+    }
+    if (count > 0) {
+      refit(0, count);
+    }
+    refitsSinceRebuild = 0;
+  }
+
+  // arrange [lo, hi) so the median on this depth's axis sits in the middle, then recurse
+  private void build(int lo, int hi, int depth) {
+    if (hi - lo <= 1) {
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    select(lo, hi - 1, mid, depth % 3);
+    build(lo, mid, depth + 1);
+    build(mid + 1, hi, depth + 1);
+  }
+
+  // quickselect: place the k-th smallest point on an axis at index k
+  private void select(int lo, int hi, int k, int axis) {
+    while (hi > lo) {
+      double pivot = coordinate((lo + hi) >>> 1, axis);
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (coordinate(i, axis) < pivot) {
+          i++;
+        }
+        while (coordinate(j, axis) > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(i, j);
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  // set the bounding box of [lo, hi), stored at its median, from its point and its children's boxes
+  private void refit(int lo, int hi) {
+    int mid = (lo + hi) >>> 1;
+    minXs[mid] = maxXs[mid] = xs[mid];
+    minYs[mid] = maxYs[mid] = ys[mid];
+    minZs[mid] = maxZs[mid] = zs[mid];
+    if (lo < mid) {
+      refit(lo, mid);
+      include(mid, (lo + mid) >>> 1);
+    }
+    if (mid + 1 < hi) {
+      refit(mid + 1, hi);
+      include(mid, (mid + 1 + hi) >>> 1);
+    }
+  }
+
+  private void include(int box, int child) {
+    minXs[box] = Math.min(minXs[box], minXs[child]);
+    minYs[box] = Math.min(minYs[box], minYs[child]);
+    minZs[box] = Math.min(minZs[box], minZs[child]);
+    maxXs[box] = Math.max(maxXs[box], maxXs[child]);
+    maxYs[box] = Math.max(maxYs[box], maxYs[child]);
+    maxZs[box] = Math.max(maxZs[box], maxZs[child]);
+  }
+
+  private void searchNearest(int lo, int hi, int depth) {
+    if (lo >= hi) {
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    // skip the subtree if nothing in its box could be closer than the current worst result
+    if (bestCount == bestLimit && boxDistanceSq(mid) >= bestDistances[bestCount - 1]) {
+      return;
+    }
+    double distSq = distanceSq(mid);
+    if (bestCount < bestLimit || distSq < bestDistances[bestCount - 1]) {
+      insertBest(slots[mid], distSq);
+    }
+    // search the side of the split the query is on first, so the other side is more likely to be
+    // pruned
+    if (queryCoordinate(depth % 3) < coordinate(mid, depth % 3)) {
+      searchNearest(lo, mid, depth + 1);
+      searchNearest(mid + 1, hi, depth + 1);
+    } else {
+      searchNearest(mid + 1, hi, depth + 1);
+      searchNearest(lo, mid, depth + 1);
+    }
+  }
+
+  // keep the best results sorted nearest first; n is small so insertion is cheapest
+  private void insertBest(int slot, double distSq) {
+    int i = bestCount < bestLimit ? bestCount++ : bestCount - 1;
+    while (i > 0 && bestDistances[i - 1] > distSq) {
+      bestDistances[i] = bestDistances[i - 1];
+      bestSlots[i] = bestSlots[i - 1];
+      i--;
+    }
+    bestDistances[i] = distSq;
+    bestSlots[i] = slot;
+  }
+
+  private void searchRadius(int lo, int hi) {
+    if (lo >= hi) {
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    if (boxDistanceSq(mid) > radiusChordSq) {
+      return;
+    }
+    if (distanceSq(mid) <= radiusChordSq) {
+      radiusOut[radiusCount++] = slots[mid];
+    }
+    searchRadius(lo, mid);
+    searchRadius(mid + 1, hi);
+  }
+
+  private double distanceSq(int i) {
+    double dx = xs[i] - queryX;
+    double dy = ys[i] - queryY;
+    double dz = zs[i] - queryZ;
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  // squared distance from the query to the nearest point of a subtree's bounding box
+  private double boxDistanceSq(int box) {
+    double dx = Math.max(0, Math.max(minXs[box] - queryX, queryX - maxXs[box]));
+    double dy = Math.max(0, Math.max(minYs[box] - queryY, queryY - maxYs[box]));
+    double dz = Math.max(0, Math.max(minZs[box] - queryZ, queryZ - maxZs[box]));
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  private double coordinate(int i, int axis) {
+    return axis == 0 ? xs[i] : (axis == 1 ? ys[i] : zs[i]);
+  }
+
+  private double queryCoordinate(int axis) {
+    return axis == 0 ? queryX : (axis == 1 ? queryY : queryZ);
+  }
+
+  private void swap(int i, int j) {
+    int slot = slots[i];
+    slots[i] = slots[j];
+    slots[j] = slot;
+    double t = xs[i];
+    xs[i] = xs[j];
+    xs[j] = t;
+    t = ys[i];
+    ys[i] = ys[j];
+    ys[j] = t;
+    t = zs[i];
+    zs[i] = zs[j];
+    zs[j] = t;
+  }
+
+  // convert a squared chord length on the unit sphere to a surface distance in km
+  private static double chordSqToKm(double chordSq) {
+    return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(chordSq) / 2));
+  }
+}
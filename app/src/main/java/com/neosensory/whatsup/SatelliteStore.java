@@ -0,0 +1,356 @@
+package com.neosensory.whatsup;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Structure-of-arrays store for the state of every tracked satellite. Each satellite owns a stable
+ * slot index for as long as it is tracked, and its state lives in primitive columns indexed by that
+ * slot so per-tick scans run over contiguous memory. Boolean state is packed into one int of flags
+ * per slot.
+ *
+ * <p>Slots are allocated and released under the store's lock. Column reads and writes are not
+ * locked; each column is only written by one thread at a time (the main processing thread for
+ * position/distance state, the UI thread for marker state), and flags are updated atomically. The
+ * columns are allocated once, at full capacity, and never replaced, so every thread always reads
+ * and writes the same arrays.
+ */
+public final class SatelliteStore {
+  // Flag bits
+  public static final int FLAG_LIVE = 1; // the slot holds a tracked satellite
+  public static final int FLAG_HAS_TLE = 1 << 1;
+  public static final int FLAG_HAS_MARKER = 1 << 2;
+  public static final int FLAG_BEARING_SET = 1 << 3;
+  public static final int FLAG_DISTANCE_SET = 1 << 4;
+  public static final int FLAG_LOCATION_UPDATED = 1 << 5; // position has come from a TLE
+  public static final int FLAG_HEADED_TO_USER = 1 << 6;
+  public static final int FLAG_READY_TO_REMOVE = 1 << 7; // marker is gone, slot can be released
+  public static final int FLAG_OUTSIDE_RANGE = 1 << 8;
+
+  // Columns
+  private final int[] noradIds;
+  private final double[] latitudes;
+  private final double[] longitudes;
+  private final double[] altitudes;
+  private final double[] distances;
+  private final double[] lastDistances;
+  private final double[] alphas;
+  private final double[] bearings;
+  private final AtomicIntegerArray flags;
+  private final OrbitalState[] orbitalStates;
+  private final String[] names;
+  private final String[] intlDesignators;
+
+  // Slot bookkeeping
+  private final int[] freeSlots;
+  private int freeCount;
+  private volatile int highWater; // one past the highest slot ever allocated
+  private volatile int size;
+
+  /**
+   * Create a store
+   *
+   * @param maxSatellites the most satellites the store can track at once
+   */
+  public SatelliteStore(int maxSatellites) {
+    int capacity = Math.max(maxSatellites, 1);
+    noradIds = new int[capacity];
+    latitudes = new double[capacity];
+    longitudes = new double[capacity];
+    altitudes = new double[capacity];
+    distances = new double[capacity];
+    lastDistances = new double[capacity];
+    alphas = new double[capacity];
+    bearings = new double[capacity];
+    flags = new AtomicIntegerArray(capacity);
+    orbitalStates = new OrbitalState[capacity];
+    names = new String[capacity];
+    intlDesignators = new String[capacity];
+    freeSlots = new int[capacity];
+    freeCount = 0;
+    highWater = 0;
+    size = 0;
+  }
+
+  /**
+   * Allocate a slot for a newly tracked satellite
+   *
+   * @param noradId NORAD ID for the satellite
+   * @param intlDesignator the satellite's international designator
+   * @param name the satellite's name
+   * @param lat starting latitude (degrees)
+   * @param lon starting longitude (degrees)
+   * @param alt starting altitude (km)
+   * @return the slot index assigned to the satellite, or -1 if the store is full
+   */
+  public synchronized int allocate(
+      int noradId, String intlDesignator, String name, double lat, double lon, double alt) {
+    int slot;
+    if (freeCount > 0) {
+      slot = freeSlots[--freeCount];
+    } else if (highWater < noradIds.length) {
+      slot = highWater;
+    } else {
+      return -1;
+    }
+    noradIds[slot] = noradId;
+    intlDesignators[slot] = intlDesignator;
+    names[slot] = name;
+    latitudes[slot] = lat;
+    longitudes[slot] = lon;
+    altitudes[slot] = alt;
+    distances[slot] = 0;
+    lastDistances[slot] = 0;
+    alphas[slot] = 0;
+    bearings[slot] = 0;
+    orbitalStates[slot] = null;
+    // publish the slot last so readers never see a live slot with stale columns
+    flags.set(slot, FLAG_LIVE | FLAG_HEADED_TO_USER);
+    if (slot == highWater) {
+      highWater = slot + 1;
+    }
+    size++;
+    return slot;
+  }
+
+  /**
+   * Release a slot so it can be reused by a future satellite
+   *
+   * @param slot the slot to release
+   */
+  public synchronized void release(int slot) {
+    if ((flags.get(slot) & FLAG_LIVE) == 0) {
+      return;
+    }
+    flags.set(slot, 0);
+    orbitalStates[slot] = null;
+    names[slot] = null;
+    intlDesignators[slot] = null;
+    freeSlots[freeCount++] = slot;
+    size--;
+  }
+
+  /**
+   * Get one past the highest slot index that has ever been allocated. Scans should iterate [0,
+   * highWater) and skip slots that aren't live.
+   *
+   * @return the high-water slot index
+   */
+  public int getHighWater() {
+    return highWater;
+  }
+
+  /**
+   * Get the number of satellites currently being tracked
+   *
+   * @return the number of live slots
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Check if the store is tracking no satellites
+   *
+   * @return true if there are no live slots
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Get the most satellites the store can track at once
+   *
+   * @return the slot capacity
+   */
+  public int getCapacity() {
+    return noradIds.length;
+  }
+
+  /**
+   * Check to see if a slot holds a tracked satellite
+   *
+   * @param slot the slot index
+   * @return true if the slot is live
+   */
+  public boolean isLive(int slot) {
+    return (flags.get(slot) & FLAG_LIVE) != 0;
+  }
+
+  ///////////
+  // Flags //
+  ///////////
+
+  /**
+   * Get all of the flags for a slot
+   *
+   * @param slot the slot index
+   * @return the packed flag bits
+   */
+  public int getFlags(int slot) {
+    return flags.get(slot);
+  }
+
+  /**
+   * Check whether all of the given flag bits are set for a slot
+   *
+   * @param slot the slot index
+   * @param mask one or more FLAG_ bits
+   * @return true if every bit in mask is set
+   */
+  public boolean hasFlag(int slot, int mask) {
+    return (flags.get(slot) & mask) == mask;
+  }
+
+  /**
+   * Set or clear flag bits for a slot
+   *
+   * @param slot the slot index
+   * @param mask one or more FLAG_ bits
+   * @param value true to set the bits, false to clear them
+   */
+  public void setFlag(int slot, int mask, boolean value) {
+    int current;
+    int updated;
+    do {
+      current = flags.get(slot);
+      updated = value ? (current | mask) : (current & ~mask);
+    } while (current != updated && !flags.compareAndSet(slot, current, updated));
+  }
+
+  //////////////////
+  // Column state //
+  //////////////////
+
+  /** Get the NORAD ID of the satellite in a slot */
+  public int getNoradId(int slot) {
+    return noradIds[slot];
+  }
+
+  /** Get the name of the satellite in a slot */
+  public String getName(int slot) {
+    return names[slot];
+  }
+
+  /** Get the international designator of the satellite in a slot */
+  public String getIntlDesignator(int slot) {
+    return intlDesignators[slot];
+  }
+
+  /** Get the latitude (degrees) of the satellite in a slot */
+  public double getLatitude(int slot) {
+    return latitudes[slot];
+  }
+
+  /** Get the longitude (degrees) of the satellite in a slot */
+  public double getLongitude(int slot) {
+    return longitudes[slot];
+  }
+
+  /** Get the latitude column, indexed by slot, for batch kernels */
+  public double[] getLatitudes() {
+    return latitudes;
+  }
+
+  /** Get the longitude column, indexed by slot, for batch kernels */
+  public double[] getLongitudes() {
+    return longitudes;
+  }
+
+  /** Get the altitude (km) of the satellite in a slot */
+  public double getAltitude(int slot) {
+    return altitudes[slot];
+  }
+
+  /**
+   * Set the latitude/longitude/altitude for a slot and mark its position as TLE-derived
+   *
+   * @param slot the slot index
+   * @param lat latitude (degrees)
+   * @param lon longitude (degrees)
+   * @param alt altitude (km)
+   */
+  public void setLla(int slot, double lat, double lon, double alt) {
+    latitudes[slot] = lat;
+    longitudes[slot] = lon;
+    altitudes[slot] = alt;
+    setFlag(slot, FLAG_LOCATION_UPDATED, true);
+  }
+
+  /** Get the orbital state of the satellite in a slot, or null if it has no TLE yet */
+  public OrbitalState getOrbitalState(int slot) {
+    return orbitalStates[slot];
+  }
+
+  /**
+   * Attach a parsed orbital state to a slot
+   *
+   * @param slot the slot index
+   * @param orbitalState the orbital state parsed from the satellite's TLE
+   */
+  public void setOrbitalState(int slot, OrbitalState orbitalState) {
+    orbitalStates[slot] = orbitalState;
+    setFlag(slot, FLAG_HAS_TLE, true);
+  }
+
+  /**
+   * Attach a parsed orbital state to a satellite's slot, as long as the slot still holds that
+   * satellite. A slot found by NORAD ID on another thread can be released and reused before the
+   * TLE arrives; the check and the write happen together, under the lock release takes.
+   *
+   * @param slot the slot index
+   * @param noradId the NORAD ID the slot was looked up by
+   * @param orbitalState the orbital state parsed from the satellite's TLE
+   * @return false if the slot has been released or now holds another satellite
+   */
+  public synchronized boolean setOrbitalState(int slot, int noradId, OrbitalState orbitalState) {
+    if ((flags.get(slot) & FLAG_LIVE) == 0 || noradIds[slot] != noradId) {
+      return false;
+    }
+    setOrbitalState(slot, orbitalState);
+    return true;
+  }
+
+  /** Get the bearing (degrees) from the user to the satellite in a slot */
+  public double getUserBearing(int slot) {
+    return bearings[slot];
+  }
+
+  /**
+   * Set the bearing from the user to the satellite
+   *
+   * @param slot the slot index
+   * @param bearing the bearing (degrees)
+   */
+  public void setUserBearing(int slot, double bearing) {
+    bearings[slot] = bearing;
+    setFlag(slot, FLAG_BEARING_SET, true);
+  }
+
+  /** Get the distance (km) from the user to the satellite in a slot */
+  public double getDistanceToUser(int slot) {
+    return distances[slot];
+  }
+
+  /** Get the distance to the user mapped to a marker alpha on [0,1] */
+  public double getAlphaDistanceToUser(int slot) {
+    return alphas[slot];
+  }
+
+  /**
+   * Set the distance from the user to the satellite, map it on an inverse 0-1 scale for the marker
+   * alpha and determine whether the satellite is headed towards the user
+   *
+   * @param slot the slot index
+   * @param distance the distance from the user to the satellite (km)
+   * @param maxDistance the distance at which the satellite should be fully faded out (km)
+   */
+  public void setDistanceToUser(int slot, double distance, double maxDistance) {
+    distances[slot] = distance;
+    alphas[slot] = 1 - Utilities.getLinearMap((float) distance, 0, (float) maxDistance, 0, 1, true);
+    if (hasFlag(slot, FLAG_DISTANCE_SET)) {
+      setFlag(slot, FLAG_HEADED_TO_USER, distance - lastDistances[slot] <= 0);
+    }
+    lastDistances[slot] = distance;
+    setFlag(slot, FLAG_DISTANCE_SET, true);
+  }
+}
@@ -0,0 +1,596 @@
+package com.neosensory.whatsup;
+
+import java.util.Arrays;
+
+/**
+ * Per-tick satellite tracking: propagates every tracked satellite in a {@link SatelliteStore},
+ * computes its distance to and bearing from the user, applies the range/removal rules, and finds
+ * the nearest satellite and the ones in range.
+ *
+ * <p>Propagation can run at a lower rate than the tick (see {@link #setPropagationInterval}). Each
+ * satellite then keeps three propagated samples, one interval apart and one interval ahead of the
+ * current time, and ticks in between read a cubic Hermite interpolation of them. Every so often an
+ * interpolated position is checked against a full propagation, so the interpolation error is
+ * measured rather than assumed.
+ *
+ * <p>With a {@link PassPredictor} set, whether a satellite is headed to the user comes from its
+ * predicted pass rather than from the change in distance since the last tick.
+ *
+ * <p>With dormancy on (see {@link #setDormancy}), a satellite that is out of range but headed to
+ * the user goes dormant until the earliest time it could get back within range: its distance to
+ * the range boundary over the fastest its ground track can close on the user. Dormant satellites
+ * aren't propagated or indexed, so the cost of a tick follows the satellites near the user rather
+ * than all of the tracked ones. A satellite wakes when its time comes, when its TLE is replaced,
+ * or when the user jumps further than they could have travelled.
+ *
+ * <p>This is plain Java with no Android dependencies, so the same code runs in the app's main
+ * processing loop and in the benchmarks. It is not thread safe; call it from one thread.
+ */
+public final class SatelliteTracker {
+  /** Notified when a satellite that has left range is about to be released from the store. */
+  public interface RemovalListener {
+    /**
+     * Called before the satellite's slot is released
+     *
+     * @param slot the slot being released
+     * @param noradId the satellite's NORAD ID
+     */
+    void onSatelliteRemoved(int slot, int noradId);
+  }
+
+  // samples per slot (previous, current, next) of latitude, unwrapped longitude and altitude
+  private static final int SAMPLES = 3;
+  private static final int SAMPLE_STRIDE = SAMPLES * 3;
+  // check one interpolated position against a full propagation every this many new samples
+  private static final int ERROR_CHECK_INTERVAL = 16;
+  // the fastest the user is expected to travel (km/s), a little over an airliner's cruise
+  private static final double USER_SPEED = 0.3;
+  // slack (km) on top of that before a change in the user's location counts as a jump
+  private static final double USER_JUMP_SLACK = 1;
+
+  private final SatelliteStore store;
+  private final double maxDistanceToUser;
+  private final RemovalListener removalListener;
+  private final SatelliteKdTree index = new SatelliteKdTree();
+  private final double[] latLonAlt = new double[3];
+  private int[] nearestSlots = new int[1];
+  private double[] nearestDistances = new double[1];
+  // scratch buffers, indexed by slot where noted; sized to the store up front so a tick never
+  // allocates
+  private final int[] propagatedSlots;
+  private final double[] slotDistances; // by slot
+  private final double[] slotBearings; // by slot
+  private final int[] inRangeSlots;
+
+  // low-rate propagation state, by slot
+  private long propagationIntervalMillis;
+  private final OrbitalState[] sampledStates; // orbit the samples were taken from
+  private final long[] nextSampleTimes; // time of the newest (future) sample
+  private final double[] samples;
+  private final double[] checkLatLonAlt = new double[3];
+  private int samplesSinceErrorCheck;
+  private long interpolationErrorChecks;
+  private double lastInterpolationErrorKm;
+  private double maxInterpolationErrorKm;
+
+  // dormancy, by slot
+  private long maxDormantMillis;
+  private long wakeMarginMillis;
+  private final OrbitalState[] dormantStates; // orbit the wake time was set for
+  private final long[] wakeTimes;
+  private double lastUserLat;
+  private double lastUserLon;
+  private long lastUpdateMillis = Long.MIN_VALUE;
+
+  // results of the last update
+  private long propagationNanos;
+  private int propagatedCount;
+  private int dormantCount;
+  private int nearestCount;
+  private int nearestSlot = -1;
+  private double nearestDistance;
+  private int inRangeCount;
+  private long nextPassMillis = Long.MAX_VALUE;
+
+  private PassPredictor passPredictor;
+
+  /**
+   * Create a tracker
+   *
+   * @param store the satellites to track
+   * @param maxDistanceToUser surface distance (km) beyond which satellites are out of range
+   * @param removalListener told about satellites removed from the store, or null
+   */
+  public SatelliteTracker(
+      SatelliteStore store, double maxDistanceToUser, RemovalListener removalListener) {
+    this.store = store;
+    this.maxDistanceToUser = maxDistanceToUser;
+    this.removalListener = removalListener;
+    nearestDistance = maxDistanceToUser * 4;
+    int capacity = store.getCapacity();
+    propagatedSlots = new int[capacity];
+    slotDistances = new double[capacity];
+    slotBearings = new double[capacity];
+    inRangeSlots = new int[capacity];
+    sampledStates = new OrbitalState[capacity];
+    nextSampleTimes = new long[capacity];
+    samples = new double[capacity * SAMPLE_STRIDE];
+    dormantStates = new OrbitalState[capacity];
+    wakeTimes = new long[capacity];
+  }
+
+  /**
+   * Set how often each satellite is fully propagated. Ticks in between interpolate.
+   *
+   * @param intervalMillis the propagation interval (ms), or 0 to propagate every satellite on every
+   *     tick
+   */
+  public void setPropagationInterval(long intervalMillis) {
+    propagationIntervalMillis = intervalMillis;
+    // drop any samples taken at the old interval
+    Arrays.fill(sampledStates, null);
+  }
+
+  /**
+   * Get how often each satellite is fully propagated
+   *
+   * @return the propagation interval (ms), or 0 if every tick propagates
+   */
+  public long getPropagationInterval() {
+    return propagationIntervalMillis;
+  }
+
+  /**
+   * Get the error of the most recent interpolated position that was checked against a full
+   * propagation
+   *
+   * @return the distance (km) between the interpolated and propagated positions
+   */
+  public double getLastInterpolationErrorKm() {
+    return lastInterpolationErrorKm;
+  }
+
+  /**
+   * Get the largest interpolation error seen so far
+   *
+   * @return the max distance (km) between an interpolated position and the propagated one
+   */
+  public double getMaxInterpolationErrorKm() {
+    return maxInterpolationErrorKm;
+  }
+
+  /**
+   * Get the number of interpolated positions that have been checked against a full propagation
+   *
+   * @return the check count
+   */
+  public long getInterpolationErrorChecks() {
+    return interpolationErrorChecks;
+  }
+
+  /**
+   * Set how many of the nearest satellites each update finds (1 by default)
+   *
+   * @param n the number of nearest satellites to find
+   */
+  public void setNearestLimit(int n) {
+    nearestSlots = new int[Math.max(1, n)];
+    nearestDistances = new double[nearestSlots.length];
+    nearestCount = 0;
+  }
+
+  /**
+   * Predict each satellite's passes, and decide whether it's headed to the user from them (by
+   * default it's decided from the change in distance since the last tick)
+   *
+   * @param predictor the predictor, or null to go back to comparing distances
+   */
+  public void setPassPredictor(PassPredictor predictor) {
+    passPredictor = predictor;
+  }
+
+  /**
+   * Get the pass predictor
+   *
+   * @return the predictor, or null if none is set
+   */
+  public PassPredictor getPassPredictor() {
+    return passPredictor;
+  }
+
+  /**
+   * Let satellites that can't reach the user for a while go dormant (off by default)
+   *
+   * @param maxDormantMillis the longest a satellite sleeps at a time (ms), or 0 to turn dormancy
+   *     off
+   * @param wakeMarginMillis how long (ms) before a satellite could reach range it wakes. Cover
+   *     anything that looks ahead of the current tick (e.g. rendered haptics) plus the longest
+   *     time between ticks.
+   */
+  public void setDormancy(long maxDormantMillis, long wakeMarginMillis) {
+    this.maxDormantMillis = maxDormantMillis;
+    this.wakeMarginMillis = wakeMarginMillis;
+    // wake everyone; they go back to sleep on their next update under the new settings
+    Arrays.fill(dormantStates, null);
+  }
+
+  /**
+   * Bring every tracked satellite up to date and find the nearest satellite and the ones in range
+   *
+   * @param userLat user latitude (degrees)
+   * @param userLon user longitude (degrees)
+   * @param timeMillis the time to propagate to
+   */
+  public void update(double userLat, double userLon, long timeMillis) {
+    // propagate every active satellite, then compute all of the distances and bearings in one
+    // batch
+    int highWater = store.getHighWater();
+    checkUserJump(userLat, userLon, timeMillis);
+    long propagationStart = System.nanoTime();
+    propagatedCount = 0;
+    dormantCount = 0;
+    nextPassMillis = Long.MAX_VALUE;
+    for (int slot = 0; slot < highWater; slot++) {
+      if (!store.isLive(slot)) {
+        continue;
+      }
+      if (isDormant(slot, timeMillis)) {
+        dormantCount++;
+        // its pass can't start before it wakes, so the prediction it went to sleep with holds
+        if (passPredictor != null && passPredictor.hasPass(slot)) {
+          nextPassMillis = Math.min(nextPassMillis, passPredictor.getEntryMillis(slot));
+        }
+      } else if (propagate(slot, timeMillis)) {
+        propagatedSlots[propagatedCount++] = slot;
+      }
+    }
+    propagationNanos = System.nanoTime() - propagationStart;
+    Utilities.getDistancesAndBearings(
+        userLat,
+        userLon,
+        store.getLatitudes(),
+        store.getLongitudes(),
+        propagatedSlots,
+        propagatedCount,
+        slotDistances,
+        slotBearings);
+    for (int i = 0; i < propagatedCount; i++) {
+      int slot = propagatedSlots[i];
+      updateSatelliteState(
+          slot, slotDistances[slot], slotBearings[slot], userLat, userLon, timeMillis);
+    }
+
+    // move the indexed points to their new positions and ask the index for the nearest satellite
+    // and everything in range, instead of scanning every satellite. Dormant satellites are well out
+    // of range, so only the ones positioned this tick need indexing; the index only rebuilds when
+    // that set changes.
+    index.update(store, propagatedSlots, propagatedCount);
+    nearestCount =
+        index.nearest(userLat, userLon, nearestSlots.length, nearestSlots, nearestDistances);
+    if (nearestCount > 0) {
+      nearestSlot = nearestSlots[0];
+      nearestDistance = nearestDistances[0];
+    } else {
+      nearestSlot = -1;
+      nearestDistance = maxDistanceToUser * 4;
+    }
+    inRangeCount = index.withinRadius(userLat, userLon, maxDistanceToUser, inRangeSlots);
+  }
+
+  /**
+   * Get the nearest satellite found by the last update
+   *
+   * @return the nearest satellite's slot, or -1 if no satellite has a position
+   */
+  public int getNearestSlot() {
+    return nearestSlot;
+  }
+
+  /**
+   * Get the earliest predicted entry into range of a satellite that isn't in range yet, as of the
+   * last update
+   *
+   * @return the entry time, or Long.MAX_VALUE if no pass is predicted (or there's no predictor)
+   */
+  public long getNextPassMillis() {
+    return nextPassMillis;
+  }
+
+  /**
+   * Get the surface distance to the nearest satellite found by the last update
+   *
+   * @return the distance (km), or 4x the max distance if there is no nearest satellite
+   */
+  public double getNearestDistance() {
+    return nearestDistance;
+  }
+
+  /**
+   * Get how long the last update spent propagating (or interpolating) satellite positions
+   *
+   * @return the propagation time (ns)
+   */
+  public long getPropagationNanos() {
+    return propagationNanos;
+  }
+
+  /**
+   * Get the number of satellites the last update positioned
+   *
+   * @return the propagated satellite count
+   */
+  public int getPropagatedCount() {
+    return propagatedCount;
+  }
+
+  /**
+   * Get the number of satellites the last update skipped because they were dormant
+   *
+   * @return the dormant satellite count
+   */
+  public int getDormantCount() {
+    return dormantCount;
+  }
+
+  /**
+   * Get the number of nearest satellites found by the last update
+   *
+   * @return the count, at most the limit set by {@link #setNearestLimit}
+   */
+  public int getNearestCount() {
+    return nearestCount;
+  }
+
+  /**
+   * Get one of the nearest satellites found by the last update
+   *
+   * @param i which result, [0:getNearestCount()), nearest first
+   * @return the slot
+   */
+  public int getNearestSlot(int i) {
+    return nearestSlots[i];
+  }
+
+  /**
+   * Get the number of satellites within range found by the last update
+   *
+   * @return the in-range count
+   */
+  public int getInRangeCount() {
+    return inRangeCount;
+  }
+
+  /**
+   * Get a slot found within range by the last update
+   *
+   * @param i which result, [0:getInRangeCount())
+   * @return the slot
+   */
+  public int getInRangeSlot(int i) {
+    return inRangeSlots[i];
+  }
+
+  // A satellite is dormant until its wake time, as long as it still has the orbit it went to sleep
+  // with
+  private boolean isDormant(int slot, long timeMillis) {
+    OrbitalState dormantState = dormantStates[slot];
+    return dormantState != null
+        && timeMillis < wakeTimes[slot]
+        && dormantState == store.getOrbitalState(slot);
+  }
+
+  // Wake every satellite if the user has moved further than they could have travelled since the
+  // last update (e.g. the first real location fix)
+  private void checkUserJump(double userLat, double userLon, long timeMillis) {
+    if (lastUpdateMillis != Long.MIN_VALUE) {
+      double elapsedSeconds = Math.max(0, timeMillis - lastUpdateMillis) / 1000.0;
+      double moved = Utilities.getDistance(lastUserLat, userLat, lastUserLon, userLon);
+      if (moved > USER_SPEED * elapsedSeconds + USER_JUMP_SLACK) {
+        Arrays.fill(dormantStates, null);
+      }
+    }
+    lastUserLat = userLat;
+    lastUserLon = userLon;
+    lastUpdateMillis = timeMillis;
+  }
+
+  // Put an out-of-range satellite to sleep until the earliest it could be back within range (less
+  // the wake margin), if that's any time at all
+  private void sleep(int slot, double distanceToUser, long timeMillis) {
+    OrbitalState orbitalState = store.getOrbitalState(slot);
+    double closingSpeed = orbitalState.getMaxGroundSpeed() + USER_SPEED; // km/s
+    long dormantMillis =
+        (long) ((distanceToUser - maxDistanceToUser) / closingSpeed * 1000) - wakeMarginMillis;
+    if (dormantMillis <= 0) {
+      return;
+    }
+    dormantStates[slot] = orbitalState;
+    wakeTimes[slot] = timeMillis + Math.min(dormantMillis, maxDormantMillis);
+  }
+
+  // If the satellite has a TLE, update its position. Returns true if the position was updated.
+  private boolean propagate(int slot, long timeMillis) {
+    if (!store.hasFlag(slot, SatelliteStore.FLAG_HAS_TLE)) {
+      return false;
+    }
+    // propagate from the orbital state parsed when the TLE was set
+    OrbitalState orbitalState = store.getOrbitalState(slot);
+    long interval = propagationIntervalMillis;
+    if (interval <= 0) {
+      if (!orbitalState.getPosition(timeMillis, latLonAlt)) {
+        return false;
+      }
+    } else {
+      long nextSampleTime = nextSampleTimes[slot];
+      if (sampledStates[slot] != orbitalState
+          || timeMillis >= nextSampleTime + interval
+          || timeMillis < nextSampleTime - interval) {
+        // new satellite or TLE, or we've fallen too far behind: start sampling over
+        if (!initSamples(slot, orbitalState, timeMillis)) {
+          return false;
+        }
+      } else if (timeMillis >= nextSampleTime) {
+        if (!advanceSamples(slot, orbitalState, timeMillis)) {
+          return false;
+        }
+      }
+      interpolate(slot, timeMillis, latLonAlt);
+    }
+    store.setLla(slot, latLonAlt[0], latLonAlt[1], latLonAlt[2]);
+    return true;
+  }
+
+  // propagate samples one interval before, at, and one interval after the time
+  private boolean initSamples(int slot, OrbitalState orbitalState, long timeMillis) {
+    sampledStates[slot] = null;
+    long interval = propagationIntervalMillis;
+    int base = slot * SAMPLE_STRIDE;
+    for (int i = 0; i < SAMPLES; i++) {
+      if (!orbitalState.getPosition(timeMillis + (i - 1) * interval, latLonAlt)) {
+        return false;
+      }
+      storeSample(base, i, latLonAlt);
+    }
+    sampledStates[slot] = orbitalState;
+    nextSampleTimes[slot] = timeMillis + interval;
+    return true;
+  }
+
+  // drop the oldest sample and propagate a new one an interval past the newest
+  private boolean advanceSamples(int slot, OrbitalState orbitalState, long timeMillis) {
+    long interval = propagationIntervalMillis;
+    long nextSampleTime = nextSampleTimes[slot] + interval;
+    if (!orbitalState.getPosition(nextSampleTime, latLonAlt)) {
+      sampledStates[slot] = null;
+      return false;
+    }
+    int base = slot * SAMPLE_STRIDE;
+    System.arraycopy(samples, base + 3, samples, base, SAMPLE_STRIDE - 3);
+    storeSample(base, SAMPLES - 1, latLonAlt);
+    nextSampleTimes[slot] = nextSampleTime;
+
+    if (++samplesSinceErrorCheck >= ERROR_CHECK_INTERVAL) {
+      samplesSinceErrorCheck = 0;
+      checkInterpolation(slot, orbitalState);
+    }
+    return true;
+  }
+
+  // store a sample, unwrapping its longitude so it's continuous with the previous sample
+  private void storeSample(int base, int index, double[] lla) {
+    int offset = base + index * 3;
+    double lon = lla[1];
+    if (index > 0) {
+      double previousLon = samples[offset - 2];
+      lon += 360 * Math.round((previousLon - lon) / 360);
+    }
+    samples[offset] = lla[0];
+    samples[offset + 1] = lon;
+    samples[offset + 2] = lla[2];
+  }
+
+  // cubic Hermite interpolation between the current and next samples. Tangents are finite
+  // differences over all three samples: central at the current one, second-order one-sided at the
+  // next one.
+  private void interpolate(int slot, long timeMillis, double[] lla) {
+    long interval = propagationIntervalMillis;
+    double u = (timeMillis - (nextSampleTimes[slot] - interval)) / (double) interval;
+    double u2 = u * u;
+    double u3 = u2 * u;
+    double h00 = 2 * u3 - 3 * u2 + 1;
+    double h10 = u3 - 2 * u2 + u;
+    double h01 = -2 * u3 + 3 * u2;
+    double h11 = u3 - u2;
+    int base = slot * SAMPLE_STRIDE;
+    for (int i = 0; i < 3; i++) {
+      double p0 = samples[base + i];
+      double p1 = samples[base + 3 + i];
+      double p2 = samples[base + 6 + i];
+      double m1 = (p2 - p0) / 2;
+      double m2 = (3 * p2 - 4 * p1 + p0) / 2;
+      lla[i] = h00 * p1 + h10 * m1 + h01 * p2 + h11 * m2;
+    }
+    // back onto [-180, 180)
+    lla[1] -= 360 * Math.floor((lla[1] + 180) / 360);
+  }
+
+  // measure the interpolation error for one satellite halfway between its current and next samples,
+  // where it's furthest from the propagated points
+  private void checkInterpolation(int slot, OrbitalState orbitalState) {
+    long checkTime = nextSampleTimes[slot] - propagationIntervalMillis / 2;
+    if (!orbitalState.getPosition(checkTime, checkLatLonAlt)) {
+      return;
+    }
+    interpolate(slot, checkTime, latLonAlt);
+    double surfaceError =
+        Utilities.getDistance(latLonAlt[0], checkLatLonAlt[0], latLonAlt[1], checkLatLonAlt[1]);
+    double altitudeError = latLonAlt[2] - checkLatLonAlt[2];
+    lastInterpolationErrorKm =
+        Math.sqrt(surfaceError * surfaceError + altitudeError * altitudeError);
+    maxInterpolationErrorKm = Math.max(maxInterpolationErrorKm, lastInterpolationErrorKm);
+    interpolationErrorChecks++;
+  }
+
+  // Update a freshly propagated satellite's distance to user and bearing from user
+  private void updateSatelliteState(
+      int slot,
+      double distanceToUser,
+      double bearing,
+      double userLat,
+      double userLon,
+      long timeMillis) {
+    store.setUserBearing(slot, bearing);
+    OrbitalState orbitalState = store.getOrbitalState(slot);
+    // deep-space orbits aren't predicted, so they go by the change in distance
+    boolean predicted = passPredictor != null && passPredictor.predicts(orbitalState);
+    if (predicted) {
+      passPredictor.update(slot, orbitalState, userLat, userLon, timeMillis);
+      store.setFlag(
+          slot,
+          SatelliteStore.FLAG_HEADED_TO_USER,
+          passPredictor.isApproaching(slot, timeMillis));
+      if (distanceToUser > maxDistanceToUser && passPredictor.hasPass(slot)) {
+        nextPassMillis = Math.min(nextPassMillis, passPredictor.getEntryMillis(slot));
+      }
+    }
+
+    // If the distance is beyond our threshold see whether or not we should remove it
+    if (distanceToUser > maxDistanceToUser) {
+      // If a we're ready to remove the satellite (i.e. it's marker has been cleared off a UI
+      // thread), we can remove it
+      if (store.hasFlag(slot, SatelliteStore.FLAG_READY_TO_REMOVE)) {
+        // pop off satellites that are headed away from user and further than our distance. The
+        // listener drops it from anything keyed by NORAD ID before the slot can be reused.
+        if (removalListener != null) {
+          removalListener.onSatelliteRemoved(slot, store.getNoradId(slot));
+        }
+        dormantStates[slot] = null;
+        store.release(slot);
+        return;
+      } else if (!store.hasFlag(slot, SatelliteStore.FLAG_HEADED_TO_USER)) {
+        // if we're not ready to remove the satellite, but it's outside our threshold range and
+        // headed away from the user, signal that we need to remove the marker from the UI thread
+        store.setFlag(slot, SatelliteStore.FLAG_OUTSIDE_RANGE, true);
+      }
+      // else, continue to track the satellite since it's moving towards the user
+    }
+
+    // update the satellite's calculated distance to the user
+    store.setDistanceToUser(slot, distanceToUser, maxDistanceToUser);
+    if (predicted) {
+      // setDistanceToUser judges the direction from the distance change; keep the predicted one
+      store.setFlag(
+          slot,
+          SatelliteStore.FLAG_HEADED_TO_USER,
+          passPredictor.isApproaching(slot, timeMillis));
+    }
+
+    // a satellite on its way in can sleep until it gets close; one headed away stays awake until
+    // it's removed
+    if (maxDormantMillis > 0
+        && distanceToUser > maxDistanceToUser
+        && store.hasFlag(slot, SatelliteStore.FLAG_HEADED_TO_USER)) {
+      sleep(slot, distanceToUser, timeMillis);
+    }
+  }
+}
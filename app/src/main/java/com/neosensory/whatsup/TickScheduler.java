@@ -0,0 +1,176 @@
+package com.neosensory.whatsup;
+
+/**
+ * Fixed-rate tick scheduler for a processing loop. Deadlines advance by exactly one period per
+ * tick, so the time the loop body takes doesn't make the rate drift. If the loop falls more than a
+ * full period behind, the missed ticks are skipped rather than run back-to-back to catch up.
+ *
+ * <p>The period can be changed between ticks (e.g. a fast rate while a satellite is close to the
+ * user and a slow one while the sky is empty); the new period applies from the next deadline.
+ *
+ * <p>A tick overruns when it takes longer than the period ({@link #isOverrun}); a tick that takes
+ * exactly one period is on time. {@link TrackingMetrics} counts overruns the same way.
+ */
+public final class TickScheduler {
+  private static final long NANOS_PER_MILLI = 1000000;
+
+  /** Where the scheduler gets the time and how it waits; swapped out in tests */
+  interface Clock {
+    long nanoTime();
+
+    void sleepNanos(long nanos) throws InterruptedException;
+  }
+
+  private static final Clock SYSTEM_CLOCK =
+      new Clock() {
+        @Override
+        public long nanoTime() {
+          return System.nanoTime();
+        }
+
+        @Override
+        public void sleepNanos(long nanos) throws InterruptedException {
+          Thread.sleep(nanos / NANOS_PER_MILLI, (int) (nanos % NANOS_PER_MILLI));
+        }
+      };
+
+  private final Clock clock;
+  private volatile long periodNanos;
+  private long tickStart;
+  private long tickPeriodNanos; // the period when the current tick started
+  private long nextDeadline;
+  private boolean started;
+  private long tickCount;
+  private long overrunCount;
+  private long skippedTickCount;
+  private long lastLatenessNanos;
+
+  /**
+   * Create a scheduler
+   *
+   * @param periodMillis the initial tick period (ms)
+   */
+  public TickScheduler(long periodMillis) {
+    this(periodMillis, SYSTEM_CLOCK);
+  }
+
+  TickScheduler(long periodMillis, Clock clock) {
+    this.clock = clock;
+    setPeriodMillis(periodMillis);
+    started = false;
+  }
+
+  /**
+   * Check whether a tick overran its period
+   *
+   * @param durationNanos how long the tick took (ns)
+   * @param periodNanos the tick period (ns)
+   * @return true if the tick took longer than the period
+   */
+  public static boolean isOverrun(long durationNanos, long periodNanos) {
+    return durationNanos > periodNanos;
+  }
+
+  /**
+   * Change the tick period. Takes effect from the next deadline.
+   *
+   * @param periodMillis the new tick period (ms)
+   */
+  public void setPeriodMillis(long periodMillis) {
+    if (periodMillis <= 0) {
+      throw new IllegalArgumentException("Tick period must be positive: " + periodMillis);
+    }
+    periodNanos = periodMillis * NANOS_PER_MILLI;
+  }
+
+  /**
+   * Get the current tick period
+   *
+   * @return the tick period (ms)
+   */
+  public long getPeriodMillis() {
+    return periodNanos / NANOS_PER_MILLI;
+  }
+
+  /**
+   * Block until the next tick's deadline. The first call returns immediately and starts the
+   * schedule.
+   *
+   * @return the number of ticks skipped because the loop fell a full period or more behind (0 if
+   *     the deadline was met)
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public int awaitNextTick() throws InterruptedException {
+    long now = clock.nanoTime();
+    if (!started) {
+      started = true;
+      nextDeadline = now;
+      tickStart = now;
+      tickPeriodNanos = periodNanos;
+      tickCount++;
+      return 0;
+    }
+    if (isOverrun(now - tickStart, tickPeriodNanos)) {
+      overrunCount++;
+    }
+    long period = periodNanos;
+    nextDeadline += period;
+    int skipped = 0;
+    long late = now - nextDeadline;
+    if (late > 0) {
+      // behind schedule: start now, dropping any whole periods that were missed
+      if (late >= period) {
+        skipped = (int) (late / period);
+        nextDeadline += skipped * period;
+        skippedTickCount += skipped;
+      }
+    } else {
+      long remaining = -late;
+      while (remaining > 0) {
+        clock.sleepNanos(remaining);
+        remaining = nextDeadline - clock.nanoTime();
+      }
+    }
+    tickStart = clock.nanoTime();
+    tickPeriodNanos = period;
+    lastLatenessNanos = tickStart - nextDeadline;
+    tickCount++;
+    return skipped;
+  }
+
+  /**
+   * Get the number of ticks that have started
+   *
+   * @return the tick count
+   */
+  public long getTickCount() {
+    return tickCount;
+  }
+
+  /**
+   * Get the number of ticks that took longer than the period (see {@link #isOverrun})
+   *
+   * @return the overrun count
+   */
+  public long getOverrunCount() {
+    return overrunCount;
+  }
+
+  /**
+   * Get the total number of ticks that were skipped to get back on schedule
+   *
+   * @return the skipped tick count
+   */
+  public long getSkippedTickCount() {
+    return skippedTickCount;
+  }
+
+  /**
+   * Get how late the most recent tick started relative to its deadline
+   *
+   * @return the lateness (ns)
+   */
+  public long getLastLatenessNanos() {
+    return lastLatenessNanos;
+  }
+}
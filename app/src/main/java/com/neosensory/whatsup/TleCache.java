@@ -0,0 +1,321 @@
+package com.neosensory.whatsup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent TLE store keyed by NORAD ID, so satellites can be placed from disk instead of waiting
+ * for (and spending API quota on) an n2yo.com TLE request.
+ *
+ * <p>Entries are fixed-size binary records in a memory-mapped file. Each entry carries its TLE
+ * epoch; an entry is due for a refresh once its epoch is older than the configured max age, which
+ * is shortened for low, high-drag orbits whose TLEs go stale faster. Each record carries a CRC-32
+ * of its contents, written last, so a record torn by a crash mid-write (or otherwise corrupted) is
+ * ignored rather than read back as a TLE.
+ *
+ * <pre>
+ * header (16 bytes): magic, version, record count, reserved
+ * record (256 bytes): noradId, checksum, fetchedAt, epoch, meanMotion, name, line 1, line 2
+ * </pre>
+ */
+public final class TleCache {
+  private static final int MAGIC = 0x544c4543; // "TLEC"
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 16;
+  private static final int RECORD_SIZE = 256;
+  private static final int INITIAL_RECORDS = 64;
+  private static final int TLE_LINE_LENGTH = 69;
+  private static final int NAME_LENGTH = 47; // UTF-8 bytes, plus one length byte
+
+  // record field offsets
+  private static final int NORAD_ID = 0;
+  private static final int CHECKSUM = 4; // covers every other field
+  private static final int FETCHED_AT = 8;
+  private static final int EPOCH = 16;
+  private static final int MEAN_MOTION = 24;
+  private static final int NAME = 32;
+  private static final int LINE1 = 80;
+  private static final int LINE2 = LINE1 + TLE_LINE_LENGTH;
+  private static final int RECORD_END = LINE2 + TLE_LINE_LENGTH;
+
+  // mean motion (rev/day) above which an orbit is treated as low and high-drag
+  private static final double HIGH_DRAG_MEAN_MOTION = 15.0;
+  private static final double MEDIUM_DRAG_MEAN_MOTION = 13.0;
+  // don't re-request an entry more often than this even if n2yo.com has nothing newer
+  private static final long MIN_REFETCH_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final long maxAgeMillis;
+  private MappedByteBuffer buffer;
+  private int capacity;
+  private int count;
+  private long modificationCount;
+  private final HashMap<Integer, Integer> index = new HashMap<Integer, Integer>();
+  private final CRC32 crc = new CRC32();
+
+  /** A TLE read back from the cache */
+  public static final class Entry {
+    public final int noradId;
+    public final String name;
+    public final String line1;
+    public final String line2;
+    public final long epochMillis;
+    public final long fetchedAtMillis;
+    public final double meanMotion;
+
+    Entry(
+        int noradId,
+        String name,
+        String line1,
+        String line2,
+        long epochMillis,
+        long fetchedAtMillis,
+        double meanMotion) {
+      this.noradId = noradId;
+      this.name = name;
+      this.line1 = line1;
+      this.line2 = line2;
+      this.epochMillis = epochMillis;
+      this.fetchedAtMillis = fetchedAtMillis;
+      this.meanMotion = meanMotion;
+    }
+  }
+
+  /**
+   * Open (or create) a TLE cache file
+   *
+   * @param cacheFile the file backing the cache
+   * @param maxAgeMillis how old a TLE epoch can get before the entry should be refreshed. Low,
+   *     high-drag orbits use a fraction of this.
+   * @throws IOException if the file can't be opened or mapped
+   */
+  public TleCache(File cacheFile, long maxAgeMillis) throws IOException {
+    this.maxAgeMillis = maxAgeMillis;
+    file = new RandomAccessFile(cacheFile, "rw");
+    channel = file.getChannel();
+    boolean valid = false;
+    if (file.length() >= HEADER_SIZE) {
+      map((int) ((file.length() - HEADER_SIZE) / RECORD_SIZE));
+      valid = buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION;
+    }
+    if (valid) {
+      count = Math.min(buffer.getInt(8), capacity);
+      for (int i = 0; i < count; i++) {
+        // a corrupt record is left out, and a new TLE for the satellite gets a new record
+        if (isIntact(i)) {
+          index.put(buffer.getInt(HEADER_SIZE + i * RECORD_SIZE + NORAD_ID), i);
+        }
+      }
+    } else {
+      // new or unrecognized file: start over
+      map(INITIAL_RECORDS);
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, VERSION);
+      buffer.putInt(8, 0);
+      count = 0;
+    }
+  }
+
+  private void map(int records) throws IOException {
+    capacity = records;
+    buffer =
+        channel.map(
+            FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) records * RECORD_SIZE);
+  }
+
+  /**
+   * Look up the cached TLE for a satellite
+   *
+   * @param noradId the NORAD ID
+   * @return the cached entry, or null if there isn't one (or it's corrupt)
+   */
+  public synchronized Entry get(int noradId) {
+    Integer record = index.get(noradId);
+    if (record == null || !isIntact(record)) {
+      return null;
+    }
+    return read(record);
+  }
+
+  /**
+   * Get every cached entry, leaving out any that are corrupt
+   *
+   * @return the cached entries, in insertion order
+   */
+  public synchronized List<Entry> getAll() {
+    List<Entry> entries = new ArrayList<Entry>(index.size());
+    for (int i = 0; i < count; i++) {
+      int noradId = buffer.getInt(HEADER_SIZE + i * RECORD_SIZE + NORAD_ID);
+      Integer record = index.get(noradId);
+      if (record != null && record == i && isIntact(i)) {
+        entries.add(read(i));
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Get the number of cached entries
+   *
+   * @return the entry count
+   */
+  public synchronized int size() {
+    return index.size();
+  }
+
+  /**
+   * Store (or replace) the TLE for a satellite
+   *
+   * @param noradId the NORAD ID
+   * @param name the satellite's name
+   * @param line1 TLE line 1
+   * @param line2 TLE line 2
+   * @param nowMillis the current time, recorded as the fetch time
+   * @throws IllegalArgumentException if the TLE cannot be parsed
+   * @throws IOException if the cache file needs to grow and can't be remapped
+   */
+  public synchronized void put(int noradId, String name, String line1, String line2, long nowMillis)
+      throws IOException {
+    OrbitalState orbitalState = OrbitalState.fromTle(line1, line2);
+    Integer existing = index.get(noradId);
+    int record;
+    if (existing != null) {
+      record = existing;
+    } else {
+      if (count == capacity) {
+        // a file cut short after its header maps no records at all
+        map(Math.max(INITIAL_RECORDS, capacity * 2));
+      }
+      record = count++;
+      index.put(noradId, record);
+    }
+    int base = HEADER_SIZE + record * RECORD_SIZE;
+    buffer.putInt(base + NORAD_ID, noradId);
+    buffer.putLong(base + FETCHED_AT, nowMillis);
+    buffer.putLong(base + EPOCH, orbitalState.getEpochMillis());
+    buffer.putDouble(base + MEAN_MOTION, orbitalState.getMeanMotion());
+    byte[] nameBytes = name == null ? new byte[0] : name.getBytes(UTF8);
+    int nameLength = nameBytes.length;
+    if (nameLength > NAME_LENGTH) {
+      // cut at a character boundary: back up over any UTF-8 continuation bytes (10xxxxxx)
+      nameLength = NAME_LENGTH;
+      while (nameLength > 0 && (nameBytes[nameLength] & 0xc0) == 0x80) {
+        nameLength--;
+      }
+    }
+    buffer.put(base + NAME, (byte) nameLength);
+    for (int i = 0; i < nameLength; i++) {
+      buffer.put(base + NAME + 1 + i, nameBytes[i]);
+    }
+    writeLine(base + LINE1, line1);
+    writeLine(base + LINE2, line2);
+    buffer.putInt(base + CHECKSUM, checksum(base));
+    buffer.putInt(8, count);
+    modificationCount++;
+  }
+
+  /**
+   * Get the number of changes made to the cache since it was opened. Every put counts, including a
+   * refreshed TLE replacing an existing entry.
+   *
+   * @return the modification count
+   */
+  public synchronized long getModificationCount() {
+    return modificationCount;
+  }
+
+  /**
+   * Check if an entry should be re-requested from n2yo.com
+   *
+   * @param entry the cached entry
+   * @param nowMillis the current time
+   * @return true if the entry's epoch is older than its max age and it wasn't fetched recently
+   */
+  public boolean needsRefresh(Entry entry, long nowMillis) {
+    return (nowMillis - entry.epochMillis > getMaxAgeMillis(entry.meanMotion))
+        && (nowMillis - entry.fetchedAtMillis > MIN_REFETCH_MILLIS);
+  }
+
+  /**
+   * Get the max TLE age for an orbit. Drag makes low orbits diverge from their TLE fastest.
+   *
+   * @param meanMotion the orbit's mean motion (rev/day)
+   * @return the max age (ms)
+   */
+  public long getMaxAgeMillis(double meanMotion) {
+    if (meanMotion >= HIGH_DRAG_MEAN_MOTION) {
+      return maxAgeMillis / 4;
+    } else if (meanMotion >= MEDIUM_DRAG_MEAN_MOTION) {
+      return maxAgeMillis / 2;
+    }
+    return maxAgeMillis;
+  }
+
+  /** Flush the cache to disk and close the file */
+  public synchronized void close() {
+    buffer.force();
+    try {
+      channel.close();
+      file.close();
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  // true if the record's contents match its checksum
+  private boolean isIntact(int record) {
+    int base = HEADER_SIZE + record * RECORD_SIZE;
+    return buffer.getInt(base + CHECKSUM) == checksum(base);
+  }
+
+  private int checksum(int base) {
+    ByteBuffer view = buffer.duplicate();
+    crc.reset();
+    view.limit(base + CHECKSUM).position(base + NORAD_ID);
+    crc.update(view);
+    view.limit(base + RECORD_END).position(base + FETCHED_AT);
+    crc.update(view);
+    return (int) crc.getValue();
+  }
+
+  private Entry read(int record) {
+    int base = HEADER_SIZE + record * RECORD_SIZE;
+    int nameLength = buffer.get(base + NAME) & 0xff;
+    return new Entry(
+        buffer.getInt(base + NORAD_ID),
+        readString(base + NAME + 1, nameLength, UTF8),
+        readString(base + LINE1, TLE_LINE_LENGTH, ASCII).trim(),
+        readString(base + LINE2, TLE_LINE_LENGTH, ASCII).trim(),
+        buffer.getLong(base + EPOCH),
+        buffer.getLong(base + FETCHED_AT),
+        buffer.getDouble(base + MEAN_MOTION));
+  }
+
+  private String readString(int offset, int length, Charset charset) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get(offset + i);
+    }
+    return new String(bytes, charset);
+  }
+
+  private void writeLine(int offset, String line) {
+    for (int i = 0; i < TLE_LINE_LENGTH; i++) {
+      buffer.put(offset + i, i < line.length() ? (byte) line.charAt(i) : (byte) ' ');
+    }
+  }
+}
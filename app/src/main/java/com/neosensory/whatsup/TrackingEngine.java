@@ -0,0 +1,312 @@
+package com.neosensory.whatsup;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The tracking core of the app with no Android dependencies: admits satellites from "What's Up"
+ * results, applies TLEs to them, and on every tick propagates them with a {@link SatelliteTracker}
+ * and renders motor frames ahead with a {@link HapticLookahead}. MapsActivity drives it from the
+ * device's clock, location and n2yo.com; {@link ReplayDriver} drives it from recordings.
+ *
+ * <p>Admission and TLEs may come from any thread. {@link #tick} must always be called from the same
+ * thread.
+ */
+public final class TrackingEngine {
+  /** Notified when satellites start and stop being tracked, e.g. to give them map markers. */
+  public interface Listener {
+    /**
+     * Called on the admitting thread once a satellite has a slot in the store. Admission of other
+     * satellites waits until this returns.
+     *
+     * @param slot the satellite's slot
+     * @param noradId the satellite's NORAD ID
+     */
+    void onSatelliteAdded(int slot, int noradId);
+
+    /**
+     * Called on the tick thread before a satellite's slot is released, and before the satellite
+     * can be admitted again
+     *
+     * @param slot the slot being released
+     * @param noradId the satellite's NORAD ID
+     */
+    void onSatelliteRemoved(int slot, int noradId);
+  }
+
+  private final int numMotors;
+  private final int maxSatellites;
+  private final double maxAltitude;
+  private final double maxDistanceToUser;
+  private final Listener listener;
+  private final SatelliteStore store;
+  private final SatelliteTracker tracker;
+  private final HapticLookahead lookahead;
+  // NORAD ID -> slot of every tracked satellite
+  private final ConcurrentHashMap<Integer, Integer> slots =
+      new ConcurrentHashMap<Integer, Integer>();
+  // NORAD ID -> the time a released satellite can be admitted again
+  private final ConcurrentHashMap<Integer, Long> cooldowns = new ConcurrentHashMap<Integer, Long>();
+  private volatile long readmissionCooldownMillis;
+  // serializes satellite admission across "What's Up" batches
+  private final Object admissionLock = new Object();
+  private final int[] hapticSlots;
+  // where admission measures distances from: the location passed to the last tick
+  private volatile double userLatitude;
+  private volatile double userLongitude;
+  private volatile long lastTickMillis;
+  private int inRangeCount;
+  private long nextPassMillis = Long.MAX_VALUE;
+
+  /**
+   * Create an engine
+   *
+   * @param encoder encodes the nearest satellites into motor frames
+   * @param numMotors the motor frame length
+   * @param maxSatellites the most satellites tracked at once
+   * @param maxAltitude satellites higher than this (km) aren't admitted
+   * @param maxDistanceToUser surface distance (km) beyond which satellites are out of range.
+   *     Satellites are only admitted from beyond it, so they don't pop up next to the user.
+   * @param hapticSatellites how many of the nearest satellites are blended into each frame
+   * @param framePeriodMillis time between motor frames (ms)
+   * @param lookaheadMillis how far ahead motor frames are rendered (ms)
+   * @param lookaheadMoveKm how far (km) the user can move before the rendered frames are
+   *     re-rendered
+   * @param listener told about satellites added and removed, or null
+   */
+  public TrackingEngine(
+      HapticEncoder encoder,
+      int numMotors,
+      int maxSatellites,
+      double maxAltitude,
+      double maxDistanceToUser,
+      int hapticSatellites,
+      long framePeriodMillis,
+      long lookaheadMillis,
+      double lookaheadMoveKm,
+      Listener listener) {
+    this.numMotors = numMotors;
+    this.maxSatellites = maxSatellites;
+    this.maxAltitude = maxAltitude;
+    this.maxDistanceToUser = maxDistanceToUser;
+    this.listener = listener;
+    store = new SatelliteStore(maxSatellites + 1);
+    tracker =
+        new SatelliteTracker(
+            store,
+            maxDistanceToUser,
+            new SatelliteTracker.RemovalListener() {
+              @Override
+              public void onSatelliteRemoved(int slot, int noradId) {
+                // tell the listener first: admission doesn't wait for the tick thread, and once the
+                // NORAD ID is gone from slots it can be admitted again and its addition would race
+                // this removal
+                if (TrackingEngine.this.listener != null) {
+                  TrackingEngine.this.listener.onSatelliteRemoved(slot, noradId);
+                }
+                if (readmissionCooldownMillis > 0) {
+                  cooldowns.put(noradId, lastTickMillis + readmissionCooldownMillis);
+                }
+                slots.remove(noradId);
+              }
+            });
+    tracker.setNearestLimit(hapticSatellites);
+    lookahead =
+        new HapticLookahead(
+            store,
+            encoder,
+            numMotors,
+            hapticSatellites,
+            framePeriodMillis,
+            lookaheadMillis,
+            maxDistanceToUser,
+            lookaheadMoveKm);
+    hapticSlots = new int[hapticSatellites];
+  }
+
+  /** Get the motor frame length */
+  public int getNumMotors() {
+    return numMotors;
+  }
+
+  /** Get the store holding every tracked satellite's state */
+  public SatelliteStore getStore() {
+    return store;
+  }
+
+  /** Get the tracker, e.g. to set its propagation interval or read its statistics */
+  public SatelliteTracker getTracker() {
+    return tracker;
+  }
+
+  /** Get the rendered motor frames, e.g. to play them out with a {@link HapticPlayer} */
+  public HapticLookahead getLookahead() {
+    return lookahead;
+  }
+
+  /**
+   * Keep released satellites from being admitted again for a while (off by default). A satellite
+   * released as soon as its TLE arrives (e.g. no pass is coming up) would otherwise be admitted
+   * again by every "What's Up" search.
+   *
+   * @param cooldownMillis how long (ms) after its release a satellite isn't admitted, or 0 to admit
+   *     it again straight away
+   */
+  public void setReadmissionCooldown(long cooldownMillis) {
+    readmissionCooldownMillis = cooldownMillis;
+  }
+
+  /**
+   * Parse an n2yo.com "What's Up" response and admit its satellites
+   *
+   * @param response the response JSON
+   * @return the number of satellites in the response
+   * @throws IOException if the response isn't valid JSON
+   */
+  public int admitWhatsUp(Reader response) throws IOException {
+    // admit one response at a time and in response order, so the maxSatellites check is
+    // deterministic
+    synchronized (admissionLock) {
+      expireCooldowns();
+      return N2yoResponseParser.parseWhatsUp(response, admitter);
+    }
+  }
+
+  /**
+   * Run a "What's Up" search over a local TLE catalog and admit the results exactly like an
+   * n2yo.com response
+   *
+   * @param localWhatsUp the catalog to search
+   * @param observerLat observer latitude (degrees)
+   * @param observerLng observer longitude (degrees)
+   * @param observerAlt observer altitude (meters above sea level)
+   * @param searchRadius cone half-angle (degrees): 0 = straight up, 90 = horizon
+   * @param timeMillis the time to search at
+   * @return the number of satellites found
+   */
+  public int admitLocalWhatsUp(
+      LocalWhatsUp localWhatsUp,
+      double observerLat,
+      double observerLng,
+      double observerAlt,
+      int searchRadius,
+      long timeMillis) {
+    synchronized (admissionLock) {
+      expireCooldowns();
+      return localWhatsUp.getWhatsUp(
+          observerLat, observerLng, observerAlt, searchRadius, timeMillis, admitter);
+    }
+  }
+
+  /**
+   * Apply a TLE to a tracked satellite
+   *
+   * @param noradId the satellite's NORAD ID
+   * @param line1 TLE line 1
+   * @param line2 TLE line 2
+   * @return false if the satellite isn't tracked (or stopped being tracked while the TLE was
+   *     applied)
+   * @throws IllegalArgumentException if the TLE cannot be parsed
+   */
+  public boolean applyTle(int noradId, String line1, String line2) {
+    OrbitalState orbitalState = OrbitalState.fromTle(line1, line2);
+    Integer slot = slots.get(noradId);
+    // the slot can be released and handed to another satellite after the lookup, so the store
+    // checks it still belongs to this one before writing
+    return slot != null && store.setOrbitalState(slot, noradId, orbitalState);
+  }
+
+  /**
+   * Bring every tracked satellite up to the current time and top up the rendered motor frames
+   * (silence if there's nothing to track)
+   *
+   * @param userLat user latitude (degrees)
+   * @param userLon user longitude (degrees)
+   * @param nowMillis the current time
+   */
+  public void tick(double userLat, double userLon, long nowMillis) {
+    userLatitude = userLat;
+    userLongitude = userLon;
+    lastTickMillis = nowMillis;
+    int count = 0;
+    inRangeCount = 0;
+    nextPassMillis = Long.MAX_VALUE;
+    if (!store.isEmpty()) {
+      // propagate every satellite, apply the range rules, and find the nearest satellites and
+      // everything in range
+      tracker.update(userLat, userLon, nowMillis);
+      inRangeCount = tracker.getInRangeCount();
+      nextPassMillis = tracker.getNextPassMillis();
+      count = Math.min(tracker.getNearestCount(), hapticSlots.length);
+      for (int i = 0; i < count; i++) {
+        hapticSlots[i] = tracker.getNearestSlot(i);
+      }
+    }
+    lookahead.render(userLat, userLon, nowMillis, hapticSlots, count);
+  }
+
+  /**
+   * Get the number of satellites within maxDistanceToUser at the last tick
+   *
+   * @return the in-range count
+   */
+  public int getInRangeCount() {
+    return inRangeCount;
+  }
+
+  /**
+   * Get the earliest predicted entry into range of a satellite that isn't in range yet, as of the
+   * last tick (see {@link SatelliteTracker#setPassPredictor})
+   *
+   * @return the entry time, or Long.MAX_VALUE if no pass is predicted
+   */
+  public long getNextPassMillis() {
+    return nextPassMillis;
+  }
+
+  // forget the satellites whose cooldown is over, so satellites that aren't seen again don't pile
+  // up. Only call it while holding admissionLock.
+  private void expireCooldowns() {
+    for (Iterator<Long> i = cooldowns.values().iterator(); i.hasNext(); ) {
+      if (i.next() <= lastTickMillis) {
+        i.remove();
+      }
+    }
+  }
+
+  // admits each satellite of a "What's Up" result. Only call it while holding admissionLock.
+  private final N2yoResponseParser.WhatsUpHandler admitter =
+      new N2yoResponseParser.WhatsUpHandler() {
+        @Override
+        public void onSatellite(
+            int noradID,
+            String satName,
+            String satIntlDesignator,
+            double satLatitude,
+            double satLongitude,
+            double satAltitude) {
+          double distanceToUser =
+              Utilities.getDistance(userLatitude, satLatitude, userLongitude, satLongitude);
+          // only add satellites that are far away, but incoming so they don't just "pop" onto the
+          // display when we refresh
+          if ((satAltitude < maxAltitude)
+              && (slots.size() < maxSatellites)
+              && (!slots.containsKey(noradID))
+              && (!cooldowns.containsKey(noradID))
+              && (distanceToUser >= maxDistanceToUser)) {
+            int slot =
+                store.allocate(
+                    noradID, satIntlDesignator, satName, satLatitude, satLongitude, satAltitude);
+            if (slot < 0) {
+              return;
+            }
+            slots.put(noradID, slot);
+            if (listener != null) {
+              listener.onSatelliteAdded(slot, noradID);
+            }
+          }
+        }
+      };
+}
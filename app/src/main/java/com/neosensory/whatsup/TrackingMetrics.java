@@ -0,0 +1,224 @@
+package com.neosensory.whatsup;
+
+import com.neosensory.n2yo.N2YO;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histograms for the tracking pipeline: tick duration and overruns,
+ * propagation time per satellite, UI post latency, motor write time, n2yo.com round trips per call
+ * type, and satellites added and removed. Everything is lock-free to record, so it can be called
+ * from the tracking loop, the UI thread and the workers. Read it with {@link #snapshot()}.
+ */
+public final class TrackingMetrics {
+  // with more requests than this outstanding, the missing responses are assumed lost
+  private static final int MAX_PENDING_REQUESTS = 1024;
+
+  private final LatencyHistogram tickDuration = new LatencyHistogram();
+  private final LatencyHistogram propagationPerSatellite = new LatencyHistogram();
+  private final LatencyHistogram uiPostLatency = new LatencyHistogram();
+  private final LatencyHistogram motorWrite = new LatencyHistogram();
+  private final Map<N2YO.CallId, LatencyHistogram> n2yoRoundTrips =
+      new EnumMap<N2YO.CallId, LatencyHistogram>(N2YO.CallId.class);
+  // send times of outstanding n2yo.com requests, keyed by call type and request key
+  private final ConcurrentHashMap<Long, Long> pendingRequests = new ConcurrentHashMap<Long, Long>();
+  private final AtomicLong tickOverruns = new AtomicLong();
+  private final AtomicLong skippedTicks = new AtomicLong();
+  private final AtomicLong satellitesAdded = new AtomicLong();
+  private final AtomicLong satellitesRemoved = new AtomicLong();
+
+  public TrackingMetrics() {
+    // filled once here and only read afterwards, so lookups need no locking
+    for (N2YO.CallId callId : N2YO.CallId.values()) {
+      n2yoRoundTrips.put(callId, new LatencyHistogram());
+    }
+  }
+
+  /**
+   * Record one pass of the tracking loop
+   *
+   * @param durationNanos how long the loop body took (ns)
+   * @param periodNanos the tick period; a longer tick counts as an overrun (see {@link
+   *     TickScheduler#isOverrun})
+   * @param skipped the number of ticks the scheduler skipped before this one
+   */
+  public void recordTick(long durationNanos, long periodNanos, int skipped) {
+    tickDuration.recordNanos(durationNanos);
+    if (TickScheduler.isOverrun(durationNanos, periodNanos)) {
+      tickOverruns.incrementAndGet();
+    }
+    if (skipped > 0) {
+      skippedTicks.addAndGet(skipped);
+    }
+  }
+
+  /**
+   * Record a tick's propagation phase
+   *
+   * @param nanos how long propagating every satellite took (ns)
+   * @param satellites the number of satellites propagated
+   */
+  public void recordPropagation(long nanos, int satellites) {
+    if (satellites > 0) {
+      propagationPerSatellite.recordNanos(nanos / satellites);
+    }
+  }
+
+  /**
+   * Record how long a UI update waited between being posted and running on the main thread
+   *
+   * @param nanos the wait (ns)
+   */
+  public void recordUiPostLatency(long nanos) {
+    uiPostLatency.recordNanos(nanos);
+  }
+
+  /**
+   * Record one vibrateMotors call
+   *
+   * @param nanos how long the call took (ns)
+   */
+  public void recordMotorWrite(long nanos) {
+    motorWrite.recordNanos(nanos);
+  }
+
+  /**
+   * Note that an n2yo.com request was sent
+   *
+   * @param callId the call type
+   * @param key tells concurrent requests of the same type apart (e.g. the NORAD ID for a TLE)
+   * @param nowNanos System.nanoTime() when it was sent
+   */
+  public void n2yoRequestSent(N2YO.CallId callId, int key, long nowNanos) {
+    if (pendingRequests.size() >= MAX_PENDING_REQUESTS) {
+      // responses for these are never coming (e.g. failed requests); start over
+      pendingRequests.clear();
+    }
+    pendingRequests.put(getRequestKey(callId, key), nowNanos);
+  }
+
+  /**
+   * Note that an n2yo.com response arrived, recording its round trip if the request was seen
+   *
+   * @param callId the call type
+   * @param key the key the request was sent with
+   * @param nowNanos System.nanoTime() when the response arrived
+   */
+  public void n2yoResponseReceived(N2YO.CallId callId, int key, long nowNanos) {
+    Long sentNanos = pendingRequests.remove(getRequestKey(callId, key));
+    if (sentNanos != null) {
+      n2yoRoundTrips.get(callId).recordNanos(nowNanos - sentNanos);
+    }
+  }
+
+  /** Count a satellite added to tracking */
+  public void satelliteAdded() {
+    satellitesAdded.incrementAndGet();
+  }
+
+  /** Count a satellite removed from tracking */
+  public void satelliteRemoved() {
+    satellitesRemoved.incrementAndGet();
+  }
+
+  /**
+   * Copy the current values
+   *
+   * @return the snapshot
+   */
+  public Snapshot snapshot() {
+    Map<N2YO.CallId, LatencyHistogram.Snapshot> roundTrips =
+        new EnumMap<N2YO.CallId, LatencyHistogram.Snapshot>(N2YO.CallId.class);
+    for (Map.Entry<N2YO.CallId, LatencyHistogram> entry : n2yoRoundTrips.entrySet()) {
+      roundTrips.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return new Snapshot(
+        tickDuration.snapshot(),
+        tickOverruns.get(),
+        skippedTicks.get(),
+        propagationPerSatellite.snapshot(),
+        uiPostLatency.snapshot(),
+        motorWrite.snapshot(),
+        roundTrips,
+        satellitesAdded.get(),
+        satellitesRemoved.get());
+  }
+
+  /**
+   * Format the current values as text, one metric per line
+   *
+   * @return the text
+   */
+  public String dump() {
+    return snapshot().toString();
+  }
+
+  private static long getRequestKey(N2YO.CallId callId, int key) {
+    return ((long) callId.ordinal() << 32) | (key & 0xffffffffL);
+  }
+
+  /** A point-in-time copy of the metrics */
+  public static final class Snapshot {
+    public final LatencyHistogram.Snapshot tickDuration;
+    public final long tickOverruns;
+    public final long skippedTicks;
+    public final LatencyHistogram.Snapshot propagationPerSatellite;
+    public final LatencyHistogram.Snapshot uiPostLatency;
+    public final LatencyHistogram.Snapshot motorWrite;
+    public final Map<N2YO.CallId, LatencyHistogram.Snapshot> n2yoRoundTrips;
+    public final long satellitesAdded;
+    public final long satellitesRemoved;
+
+    private Snapshot(
+        LatencyHistogram.Snapshot tickDuration,
+        long tickOverruns,
+        long skippedTicks,
+        LatencyHistogram.Snapshot propagationPerSatellite,
+        LatencyHistogram.Snapshot uiPostLatency,
+        LatencyHistogram.Snapshot motorWrite,
+        Map<N2YO.CallId, LatencyHistogram.Snapshot> n2yoRoundTrips,
+        long satellitesAdded,
+        long satellitesRemoved) {
+      this.tickDuration = tickDuration;
+      this.tickOverruns = tickOverruns;
+      this.skippedTicks = skippedTicks;
+      this.propagationPerSatellite = propagationPerSatellite;
+      this.uiPostLatency = uiPostLatency;
+      this.motorWrite = motorWrite;
+      this.n2yoRoundTrips = n2yoRoundTrips;
+      this.satellitesAdded = satellitesAdded;
+      this.satellitesRemoved = satellitesRemoved;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder text = new StringBuilder();
+      text.append("tick: ").append(tickDuration).append('\n');
+      text.append("tick overruns: ")
+          .append(tickOverruns)
+          .append(", skipped: ")
+          .append(skippedTicks)
+          .append('\n');
+      text.append("propagation/satellite: ").append(propagationPerSatellite).append('\n');
+      text.append("UI post latency: ").append(uiPostLatency).append('\n');
+      text.append("vibrateMotors: ").append(motorWrite).append('\n');
+      for (Map.Entry<N2YO.CallId, LatencyHistogram.Snapshot> entry : n2yoRoundTrips.entrySet()) {
+        if (entry.getValue().getCount() > 0) {
+          text.append("n2yo ")
+              .append(entry.getKey().name())
+              .append(": ")
+              .append(entry.getValue())
+              .append('\n');
+        }
+      }
+      text.append("satellites added: ")
+          .append(satellitesAdded)
+          .append(", removed: ")
+          .append(satellitesRemoved);
+      return text.toString();
+    }
+  }
+}
@@ -1,6 +1,10 @@
 package com.neosensory.whatsup;
 
 public class Utilities {
+    private static final int EARTH_RADIUS = 6371; // km, used for surface distances
+    // WGS-84 ellipsoid
+    private static final double WGS84_A = 6378.137; // km
+    private static final double WGS84_E2 = 6.69437999014e-3;
 
     /**
      * Linearly map an input on [x1,y1] to an output on [x2,y2]
@@ -41,17 +45,12 @@ public class Utilities {
      * @return the distance (in km) between the two latitude/longitude coordinates
      */
     public static double getDistance(double lat1, double lat2, double lon1, double lon2) {
-        final int R = 6371; // Radius of the earth
-        double latDistance = toRad(lat2 - lat1);
-        double lonDistance = toRad(lon2 - lon1);
-        double a =
-                Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                        + Math.cos(toRad(lat1))
-                        * Math.cos(toRad(lat2))
-                        * Math.sin(lonDistance / 2)
-                        * Math.sin(lonDistance / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return R * c;
+        double sinHalfLon = Math.sin(toRad(lon2 - lon1) / 2);
+        return haversine(
+                Math.sin(toRad(lat2 - lat1) / 2),
+                sinHalfLon,
+                Math.cos(toRad(lat1)),
+                Math.cos(toRad(lat2)));
     }
 
     /**
@@ -65,21 +64,138 @@ public class Utilities {
     public static double getBearing(double lat1, double lat2, double lon1, double lon2) {
         double lat1r = toRad(lat1);
         double lat2r = toRad(lat2);
-        double lon1r = toRad(lon1);
-        double lon2r = toRad(lon2);
-        double y = Math.sin(lon2r - lon1r) * Math.cos(lat2r);
-        double x =
-                Math.cos(lat1r) * Math.sin(lat2r)
-                        - Math.sin(lat1r) * Math.cos(lat2r) * Math.cos(lon2r - lon1r);
+        double lonDistance = toRad(lon2 - lon1);
+        return bearing(
+                Math.sin(lat1r),
+                Math.cos(lat1r),
+                Math.sin(lat2r),
+                Math.cos(lat2r),
+                Math.sin(lonDistance),
+                Math.cos(lonDistance));
+    }
+
+    /**
+     * Get both the distance and the bearing from one latitude+longitude point to another, sharing
+     * the trig between the two. Same results as getDistance and getBearing.
+     * @param lat1 point 1 latitude
+     * @param lat2 point 2 latitude
+     * @param lon1 point 1 longitude
+     * @param lon2 point 2 longitude
+     * @param out receives the distance (km) in out[0] and the bearing (degrees [0:360)) in out[1]
+     */
+    public static void getDistanceAndBearing(double lat1, double lat2, double lon1, double lon2,
+                                             double[] out) {
+        double lat1r = toRad(lat1);
+        double lat2r = toRad(lat2);
+        double sinLat2 = Math.sin(lat2r);
+        double cosLat2 = Math.cos(lat2r);
+        double halfLon = toRad(lon2 - lon1) / 2;
+        double sinHalfLon = Math.sin(halfLon);
+        double cosHalfLon = Math.cos(halfLon);
+        double cosLat1 = Math.cos(lat1r);
+        out[0] = haversine(Math.sin((lat2r - lat1r) / 2), sinHalfLon, cosLat1, cosLat2);
+        // sin/cos of the full longitude difference from the half-angle values
+        out[1] = bearing(Math.sin(lat1r), cosLat1, sinLat2, cosLat2,
+                2 * sinHalfLon * cosHalfLon, 1 - 2 * sinHalfLon * sinHalfLon);
+    }
 
+    /**
+     * Batch version of getDistanceAndBearing: the distance and bearing from one observer to many
+     * points (e.g. every tracked satellite). The observer's trig is computed once per call, and
+     * nothing is allocated.
+     * @param obsLat observer latitude
+     * @param obsLon observer longitude
+     * @param lats point latitudes
+     * @param lons point longitudes
+     * @param indices which entries of lats/lons to process
+     * @param count the number of entries of indices to use
+     * @param outDistances receives the distance (km) for each index, at that index
+     * @param outBearings receives the bearing (degrees [0:360)) for each index, at that index
+     */
+    public static void getDistancesAndBearings(double obsLat, double obsLon, double[] lats,
+                                               double[] lons, int[] indices, int count,
+                                               double[] outDistances, double[] outBearings) {
+        double obsLatR = toRad(obsLat);
+        double sinObsLat = Math.sin(obsLatR);
+        double cosObsLat = Math.cos(obsLatR);
+        for (int i = 0; i < count; i++) {
+            int index = indices[i];
+            double latR = toRad(lats[index]);
+            double sinLat = Math.sin(latR);
+            double cosLat = Math.cos(latR);
+            double halfLon = toRad(lons[index] - obsLon) / 2;
+            double sinHalfLon = Math.sin(halfLon);
+            double cosHalfLon = Math.cos(halfLon);
+            outDistances[index] =
+                    haversine(Math.sin((latR - obsLatR) / 2), sinHalfLon, cosObsLat, cosLat);
+            outBearings[index] = bearing(sinObsLat, cosObsLat, sinLat, cosLat,
+                    2 * sinHalfLon * cosHalfLon, 1 - 2 * sinHalfLon * sinHalfLon);
+        }
+    }
+
+    // great-circle distance (km) from the haversine terms
+    private static double haversine(double sinHalfLat, double sinHalfLon, double cosLat1,
+                                    double cosLat2) {
+        double a = sinHalfLat * sinHalfLat + cosLat1 * cosLat2 * sinHalfLon * sinHalfLon;
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return EARTH_RADIUS * c;
+    }
+
+    // initial bearing (degrees [0:360)) from point 1 to point 2
+    private static double bearing(double sinLat1, double cosLat1, double sinLat2, double cosLat2,
+                                  double sinLon, double cosLon) {
+        double y = sinLon * cosLat2;
+        double x = cosLat1 * sinLat2 - sinLat1 * cosLat2 * cosLon;
         return (toDeg(Math.atan2(y, x)) + 360) % 360;
     }
+
+    /**
+     * Get the elevation angle of a target (e.g. a satellite) above an observer's horizon. Both
+     * positions are converted to earth-centered, earth-fixed coordinates on the WGS-84 ellipsoid.
+     * @param obsLat observer latitude (degrees)
+     * @param obsLon observer longitude (degrees)
+     * @param obsAlt observer altitude (km)
+     * @param satLat target latitude (degrees)
+     * @param satLon target longitude (degrees)
+     * @param satAlt target altitude (km)
+     * @return the elevation in degrees [-90:90] where 90 = straight up
+     */
+    public static double getElevation(double obsLat, double obsLon, double obsAlt,
+                                      double satLat, double satLon, double satAlt) {
+        double obsLatR = toRad(obsLat);
+        double obsLonR = toRad(obsLon);
+        double satLatR = toRad(satLat);
+        double satLonR = toRad(satLon);
+        double cosObsLat = Math.cos(obsLatR);
+        double sinObsLat = Math.sin(obsLatR);
+        double cosObsLon = Math.cos(obsLonR);
+        double sinObsLon = Math.sin(obsLonR);
+        double obsN = WGS84_A / Math.sqrt(1 - WGS84_E2 * sinObsLat * sinObsLat);
+        double sinSatLat = Math.sin(satLatR);
+        double satN = WGS84_A / Math.sqrt(1 - WGS84_E2 * sinSatLat * sinSatLat);
+        double cosSatLat = Math.cos(satLatR);
+        // observer -> target range vector
+        double dx = (satN + satAlt) * cosSatLat * Math.cos(satLonR)
+                - (obsN + obsAlt) * cosObsLat * cosObsLon;
+        double dy = (satN + satAlt) * cosSatLat * Math.sin(satLonR)
+                - (obsN + obsAlt) * cosObsLat * sinObsLon;
+        double dz = (satN * (1 - WGS84_E2) + satAlt) * sinSatLat
+                - (obsN * (1 - WGS84_E2) + obsAlt) * sinObsLat;
+        double range = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (range == 0) {
+            return 90;
+        }
+        // component along the observer's local "up" (ellipsoid normal)
+        double up = cosObsLat * cosObsLon * dx + cosObsLat * sinObsLon * dy + sinObsLat * dz;
+        return toDeg(Math.asin(up / range));
+    }
+
     // convert degrees to radians
-    private static Double toRad(Double value) {
+    private static double toRad(double value) {
         return value * Math.PI / 180;
     }
     // convert radians to degrees
-    private static Double toDeg(Double value) {
+    private static double toDeg(double value) {
         return value * 180 / Math.PI;
     }
 
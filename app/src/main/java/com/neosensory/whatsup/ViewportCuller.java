@@ -0,0 +1,128 @@
+package com.neosensory.whatsup;
+
+/**
+ * Decides how often a satellite marker should be updated based on where it is relative to the
+ * camera. Markers outside the visible region (plus a margin) aren't updated at all, markers far
+ * from the user are updated at a reduced rate that drops further as the camera zooms out, and
+ * everything else is updated every frame.
+ *
+ * <p>The visible region is cached from the camera listeners rather than queried per marker. Only
+ * use it from the UI thread.
+ */
+public final class ViewportCuller {
+  private final double marginFraction;
+  private final double distantKm;
+  private final int maxDistantInterval;
+  private final float fullRateZoom;
+
+  private boolean hasBounds;
+  private double south;
+  private double north;
+  private double west;
+  private double east;
+  private int distantInterval = 1;
+
+  /**
+   * Create a viewport culler
+   *
+   * @param marginFraction how far outside the visible region markers are still updated, as a
+   *     fraction of the region's size, so markers are current by the time they scroll into view
+   * @param distantKm distance from the user (km) beyond which a marker is updated at the reduced
+   *     rate
+   * @param maxDistantInterval the most frames between updates of a distant marker
+   * @param fullRateZoom the camera zoom at (and above) which distant markers update every frame.
+   *     Each zoom level below this halves their update rate.
+   */
+  public ViewportCuller(
+      double marginFraction, double distantKm, int maxDistantInterval, float fullRateZoom) {
+    this.marginFraction = marginFraction;
+    this.distantKm = distantKm;
+    this.maxDistantInterval = maxDistantInterval;
+    this.fullRateZoom = fullRateZoom;
+  }
+
+  /**
+   * Set the camera's visible region. Until this is called every marker is treated as visible.
+   *
+   * @param southLat southern edge (degrees)
+   * @param westLon western edge (degrees)
+   * @param northLat northern edge (degrees)
+   * @param eastLon eastern edge (degrees). Less than westLon if the region crosses the
+   *     antimeridian.
+   */
+  public void setVisibleRegion(double southLat, double westLon, double northLat, double eastLon) {
+    double width = eastLon - westLon;
+    if (width < 0) {
+      width += 360;
+    }
+    double latMargin = (northLat - southLat) * marginFraction;
+    double lonMargin = width * marginFraction;
+    south = southLat - latMargin;
+    north = northLat + latMargin;
+    if (width + 2 * lonMargin >= 360) {
+      // the whole globe is in view
+      west = -180;
+      east = 180;
+    } else {
+      west = wrapLongitude(westLon - lonMargin);
+      east = wrapLongitude(eastLon + lonMargin);
+    }
+    hasBounds = true;
+  }
+
+  /**
+   * Set the camera zoom, which sets how often distant markers are updated
+   *
+   * @param zoom the Google Maps zoom level
+   */
+  public void setZoom(float zoom) {
+    double interval = Math.pow(2, fullRateZoom - zoom);
+    distantInterval = (int) Math.max(1, Math.min(maxDistantInterval, Math.round(interval)));
+  }
+
+  /**
+   * Check whether a point is inside the visible region plus the margin
+   *
+   * @param lat latitude (degrees)
+   * @param lon longitude (degrees)
+   * @return true if the point is (nearly) in view
+   */
+  public boolean isVisible(double lat, double lon) {
+    if (!hasBounds) {
+      return true;
+    }
+    if (lat < south || lat > north) {
+      return false;
+    }
+    if (west <= east) {
+      return lon >= west && lon <= east;
+    }
+    // region crosses the antimeridian
+    return lon >= west || lon <= east;
+  }
+
+  /**
+   * Get how often a marker should be updated
+   *
+   * @param lat the marker's latitude (degrees)
+   * @param lon the marker's longitude (degrees)
+   * @param distanceToUser the satellite's distance from the user (km)
+   * @return the number of frames between updates, or 0 if the marker is out of view and shouldn't
+   *     be updated at all
+   */
+  public int getUpdateInterval(double lat, double lon, double distanceToUser) {
+    if (!isVisible(lat, lon)) {
+      return 0;
+    }
+    return distanceToUser > distantKm ? distantInterval : 1;
+  }
+
+  private static double wrapLongitude(double lon) {
+    if (lon < -180) {
+      return lon + 360;
+    } else if (lon > 180) {
+      return lon - 360;
+    }
+    return lon;
+  }
+}
@@ -0,0 +1,181 @@
+package com.neosensory.whatsup;
+
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of named worker threads for background processing (e.g. n2yo.com responses).
+ *
+ * <p>Tasks wait in a fixed-size queue. When the queue is full the oldest waiting task is dropped
+ * (and counted) to make room: tasks are never run on the submitting thread, which is often the UI
+ * thread, and the queue never grows without bound. The work is n2yo.com responses, where a newer
+ * response supersedes an older one and a lost TLE response is asked for again once its request
+ * times out. Every task runs on a worker and is timed, and tasks slower than a threshold are
+ * logged.
+ */
+public final class WorkerPool implements Executor {
+  private static final String TAG = "WorkerPool";
+  private static final long SLOW_TASK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final ThreadPoolExecutor executor;
+  private final ThreadLocal<long[]> taskStartNanos;
+  private final AtomicLong completedTasks = new AtomicLong();
+  private final AtomicLong totalTaskNanos = new AtomicLong();
+  private final AtomicLong maxTaskNanos = new AtomicLong();
+  private final AtomicLong droppedTasks = new AtomicLong();
+
+  /**
+   * Create a worker pool
+   *
+   * @param name prefix for the worker thread names
+   * @param threads the number of worker threads
+   * @param queueCapacity the number of tasks that can wait for a worker
+   */
+  public WorkerPool(final String name, int threads, int queueCapacity) {
+    taskStartNanos =
+        new ThreadLocal<long[]>() {
+          @Override
+          protected long[] initialValue() {
+            return new long[1];
+          }
+        };
+    ThreadFactory threadFactory =
+        new ThreadFactory() {
+          private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, name + "-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+          }
+        };
+    RejectedExecutionHandler dropOldest =
+        new RejectedExecutionHandler() {
+          @Override
+          public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+              return;
+            }
+            // queue is full: make room by dropping the task that has waited longest
+            Runnable dropped = pool.getQueue().poll();
+            if (dropped != null) {
+              droppedTasks.incrementAndGet();
+              Log.w(TAG, name + " queue full, dropped " + dropped.getClass().getSimpleName());
+            }
+            pool.execute(r);
+          }
+        };
+    executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity),
+            threadFactory,
+            dropOldest) {
+          @Override
+          protected void beforeExecute(Thread t, Runnable r) {
+            taskStartNanos.get()[0] = System.nanoTime();
+          }
+
+          @Override
+          protected void afterExecute(Runnable r, Throwable t) {
+            long elapsed = System.nanoTime() - taskStartNanos.get()[0];
+            recordTask(name, r, elapsed);
+            if (t != null) {
+              Log.e(TAG, name + " task failed", t);
+            }
+          }
+        };
+  }
+
+  private void recordTask(String name, Runnable r, long elapsedNanos) {
+    completedTasks.incrementAndGet();
+    totalTaskNanos.addAndGet(elapsedNanos);
+    long max = maxTaskNanos.get();
+    while (elapsedNanos > max && !maxTaskNanos.compareAndSet(max, elapsedNanos)) {
+      max = maxTaskNanos.get();
+    }
+    if (elapsedNanos > SLOW_TASK_NANOS) {
+      Log.w(
+          TAG,
+          name
+              + " slow task "
+              + r.getClass().getSimpleName()
+              + ": "
+              + TimeUnit.NANOSECONDS.toMillis(elapsedNanos)
+              + " ms");
+    }
+  }
+
+  /**
+   * Queue a task for a worker
+   *
+   * @param r the task
+   */
+  @Override
+  public void execute(Runnable r) {
+    executor.execute(r);
+  }
+
+  /** Stop accepting tasks and let the queued ones finish */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Get the number of tasks that have finished
+   *
+   * @return the completed task count
+   */
+  public long getCompletedTaskCount() {
+    return completedTasks.get();
+  }
+
+  /**
+   * Get the average task run time
+   *
+   * @return the mean run time (ms), or 0 if no tasks have completed
+   */
+  public double getAverageTaskMillis() {
+    long completed = completedTasks.get();
+    return completed == 0 ? 0 : totalTaskNanos.get() / (completed * 1.0e6);
+  }
+
+  /**
+   * Get the longest task run time
+   *
+   * @return the max run time (ms)
+   */
+  public double getMaxTaskMillis() {
+    return maxTaskNanos.get() / 1.0e6;
+  }
+
+  /**
+   * Get the number of waiting tasks dropped to make room because the queue was full
+   *
+   * @return the dropped task count
+   */
+  public long getDroppedTaskCount() {
+    return droppedTasks.get();
+  }
+
+  /**
+   * Get the number of tasks waiting for a worker
+   *
+   * @return the queue length
+   */
+  public int getQueueSize() {
+    return executor.getQueue().size();
+  }
+}
@@ -0,0 +1,66 @@
+package com.neosensory.whatsup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/** Checks the table lookup and each combine rule against a simple panning encoding. */
+public class HapticEncoderTest {
+  private static final int MOTORS = 4;
+
+  // pans linearly between the two motors either side of the location, scaled to 0-200
+  private static final HapticEncoder.Encoding PAN =
+      new HapticEncoder.Encoding() {
+        @Override
+        public int[] getActivations(float intensity, float location) {
+          int[] activations = new int[MOTORS];
+          float position = location * (MOTORS - 1);
+          for (int m = 0; m < MOTORS; m++) {
+            float weight = Math.max(0, 1 - Math.abs(position - m));
+            activations[m] = Math.round(200 * intensity * weight);
+          }
+          return activations;
+        }
+      };
+
+  private final HapticEncoder encoder = new HapticEncoder(PAN, MOTORS, 11, 7);
+  private final int[] frame = new int[MOTORS];
+
+  @Test
+  public void encode_looksUpNearestTableEntry() {
+    // 62 degrees is nearest the 60 degree step (location 1/6), i.e. halfway between motors 0 and 1
+    encoder.encode(new float[] {0.98f}, new float[] {62}, 1, frame);
+    assertArrayEquals(new int[] {100, 100, 0, 0}, frame);
+  }
+
+  @Test
+  public void encode_noSatellitesIsSilent() {
+    frame[0] = 5;
+    encoder.encode(new float[0], new float[0], 0, frame);
+    assertArrayEquals(new int[] {0, 0, 0, 0}, frame);
+  }
+
+  @Test
+  public void max_takesStrongestPerMotor() {
+    encoder.setCombineRule(HapticEncoder.CombineRule.MAX);
+    // {100, 100, 0, 0} and {0, 200, 0, 0}
+    encoder.encode(new float[] {1, 1}, new float[] {60, 120}, 2, frame);
+    assertArrayEquals(new int[] {100, 200, 0, 0}, frame);
+  }
+
+  @Test
+  public void weightedSum_averagesByIntensity() {
+    encoder.setCombineRule(HapticEncoder.CombineRule.WEIGHTED_SUM);
+    // weights 0.8 and 0.2: motor 0 = 0.8 * 160, motor 3 = 0.2 * 40
+    encoder.encode(new float[] {0.8f, 0.2f}, new float[] {0, 360}, 2, frame);
+    assertArrayEquals(new int[] {128, 0, 0, 8}, frame);
+  }
+
+  @Test
+  public void priority_fillsIdleMotorsOnly() {
+    encoder.setCombineRule(HapticEncoder.CombineRule.PRIORITY);
+    // the second satellite overlaps motor 1 (kept from the first) and adds motor 2
+    encoder.encode(new float[] {0.5f, 1}, new float[] {60, 180}, 2, frame);
+    assertArrayEquals(new int[] {50, 50, 100, 0}, frame);
+  }
+}
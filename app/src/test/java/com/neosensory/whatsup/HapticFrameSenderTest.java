@@ -0,0 +1,122 @@
+package com.neosensory.whatsup;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the sender's latest-frame-wins mailbox, deduplication and write spacing. */
+public class HapticFrameSenderTest {
+  private static final long TIMEOUT_MILLIS = 2000;
+
+  // records every write, optionally blocking the first one until released
+  private static final class RecordingSink implements HapticFrameSender.MotorSink {
+    final List<String> frames = new ArrayList<String>();
+    final List<Long> writeNanos = new ArrayList<Long>();
+    final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+    final CountDownLatch releaseFirstWrite;
+
+    RecordingSink(boolean blockFirstWrite) {
+      releaseFirstWrite = new CountDownLatch(blockFirstWrite ? 1 : 0);
+    }
+
+    @Override
+    public void write(int[] frame) {
+      synchronized (this) {
+        frames.add(Arrays.toString(frame));
+        writeNanos.add(System.nanoTime());
+      }
+      firstWriteStarted.countDown();
+      try {
+        releaseFirstWrite.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    synchronized List<String> getFrames() {
+      return new ArrayList<String>(frames);
+    }
+  }
+
+  @Test
+  public void unchangedFrames_areNotRewritten() throws InterruptedException {
+    RecordingSink sink = new RecordingSink(false);
+    HapticFrameSender sender = new HapticFrameSender("test-sender", sink, 4, 0);
+    sender.start();
+    sender.submit(new int[] {0, 0, 0, 0});
+    awaitWrites(sender, 1);
+    sender.submit(new int[] {0, 0, 0, 0});
+    awaitSkips(sender, 1);
+    sender.submit(new int[] {1, 2, 3, 4});
+    awaitWrites(sender, 2);
+    sender.reset();
+    sender.submit(new int[] {1, 2, 3, 4});
+    awaitWrites(sender, 3);
+    sender.stop();
+
+    assertEquals(
+        Arrays.asList("[0, 0, 0, 0]", "[1, 2, 3, 4]", "[1, 2, 3, 4]"), sink.getFrames());
+    assertEquals(1, sender.getSkippedFrameCount());
+  }
+
+  @Test
+  public void latestFrameWins_whileWriteIsSlow() throws InterruptedException {
+    RecordingSink sink = new RecordingSink(true);
+    HapticFrameSender sender = new HapticFrameSender("test-sender", sink, 4, 0);
+    sender.start();
+    sender.submit(new int[] {1, 0, 0, 0});
+    assertTrue(sink.firstWriteStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    // submitting never waits for the stalled write; only the newest of these gets written
+    sender.submit(new int[] {2, 0, 0, 0});
+    sender.submit(new int[] {3, 0, 0, 0});
+    sender.submit(new int[] {4, 0, 0, 0});
+    sink.releaseFirstWrite.countDown();
+    awaitWrites(sender, 2);
+    sender.stop();
+
+    assertEquals(Arrays.asList("[1, 0, 0, 0]", "[4, 0, 0, 0]"), sink.getFrames());
+    assertEquals(2, sender.getDroppedFrameCount());
+  }
+
+  @Test
+  public void writes_areSpacedByMinInterval() throws InterruptedException {
+    RecordingSink sink = new RecordingSink(false);
+    HapticFrameSender sender = new HapticFrameSender("test-sender", sink, 4, 50);
+    sender.start();
+    for (int i = 1; i <= 3; i++) {
+      sender.submit(new int[] {i, 0, 0, 0});
+      awaitWrites(sender, i);
+    }
+    sender.stop();
+
+    for (int i = 1; i < 3; i++) {
+      long gap = sink.writeNanos.get(i) - sink.writeNanos.get(i - 1);
+      assertTrue("gap " + gap + " ns", gap >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+  }
+
+  private static void awaitWrites(HapticFrameSender sender, long count)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (sender.getWriteCount() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals(count, sender.getWriteCount());
+  }
+
+  private static void awaitSkips(HapticFrameSender sender, long count)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (sender.getSkippedFrameCount() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals(count, sender.getSkippedFrameCount());
+  }
+}
@@ -0,0 +1,121 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks that the lookahead renders the horizon ahead, tops it up, and re-renders on a move. */
+public class HapticLookaheadTest {
+  private static final int MOTORS = 4;
+  private static final long FRAME_MILLIS = 50;
+  private static final long HORIZON_MILLIS = 2000;
+  private static final int HORIZON_FRAMES = (int) (HORIZON_MILLIS / FRAME_MILLIS);
+  private static final double MAX_DISTANCE_KM = 2000;
+  private static final double INVALIDATE_KM = 0.5;
+
+  // intensity on motor 0, bearing (as a location) on motor 1, both scaled to 0-1000
+  private static final HapticEncoder.Encoding RAW =
+      new HapticEncoder.Encoding() {
+        @Override
+        public int[] getActivations(float intensity, float location) {
+          return new int[] {Math.round(1000 * intensity), Math.round(1000 * location), 0, 0};
+        }
+      };
+
+  private final int[] slots = new int[1];
+  private final int[] frame = new int[MOTORS];
+  private SatelliteStore store;
+  private HapticLookahead lookahead;
+  private long startMillis;
+  private double userLat;
+  private double userLon;
+
+  @Before
+  public void setUp() {
+    store = new SatelliteStore(1);
+    OrbitalState iss =
+        OrbitalState.fromTle(TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]);
+    slots[0] = store.allocate(iss.getNoradId(), "", "", 0, 0, 0);
+    store.setOrbitalState(slots[0], iss);
+    // put the user 500 km south of the ISS
+    startMillis = iss.getEpochMillis() / FRAME_MILLIS * FRAME_MILLIS;
+    double[] lla = new double[3];
+    assertTrue(iss.getPosition(startMillis, lla));
+    userLat = lla[0] - 4.5;
+    userLon = lla[1];
+    lookahead = newLookahead();
+  }
+
+  private HapticLookahead newLookahead() {
+    return new HapticLookahead(
+        store,
+        new HapticEncoder(RAW, MOTORS, 1001, 1001),
+        MOTORS,
+        1,
+        FRAME_MILLIS,
+        HORIZON_MILLIS,
+        MAX_DISTANCE_KM,
+        INVALIDATE_KM);
+  }
+
+  @Test
+  public void render_fillsHorizon() {
+    lookahead.render(userLat, userLon, startMillis, slots, 1);
+
+    assertEquals(HORIZON_FRAMES + 1, lookahead.getBufferedFrames(startMillis));
+    assertTrue(lookahead.getFrame(startMillis + HORIZON_MILLIS, frame));
+    assertFalse(lookahead.getFrame(startMillis + HORIZON_MILLIS + FRAME_MILLIS, frame));
+    assertEquals(1, lookahead.getUnderrunCount());
+  }
+
+  @Test
+  public void frames_followTheSatellite() {
+    lookahead.render(userLat, userLon, startMillis, slots, 1);
+    int[] first = new int[MOTORS];
+    int[] last = new int[MOTORS];
+    assertTrue(lookahead.getFrame(startMillis, first));
+    assertTrue(lookahead.getFrame(startMillis + HORIZON_MILLIS, last));
+
+    // a frame rendered 2 s ahead matches one rendered at that time
+    HapticLookahead later = newLookahead();
+    later.render(userLat, userLon, startMillis + HORIZON_MILLIS, slots, 1);
+    assertTrue(later.getFrame(startMillis + HORIZON_MILLIS, frame));
+    assertArrayEquals(last, frame);
+    // about 500 km away (intensity 0.75), and the ISS moves ~15 km in 2 s
+    assertEquals(750, first[0], 10);
+    assertTrue(first[0] != last[0] || first[1] != last[1]);
+  }
+
+  @Test
+  public void render_topsUpWithoutReRendering() {
+    lookahead.render(userLat, userLon, startMillis, slots, 1);
+    for (int tick = 1; tick <= 10; tick++) {
+      long now = startMillis + tick * FRAME_MILLIS;
+      assertTrue(lookahead.getFrame(now, frame));
+      lookahead.render(userLat, userLon, now, slots, 1);
+      assertEquals(HORIZON_FRAMES + 1, lookahead.getBufferedFrames(now));
+    }
+    assertEquals(0, lookahead.getInvalidationCount());
+    assertEquals(0, lookahead.getUnderrunCount());
+  }
+
+  @Test
+  public void moving_invalidatesBuffer() {
+    lookahead.render(userLat, userLon, startMillis, slots, 1);
+    // a small move keeps the frames
+    lookahead.render(userLat + 0.001, userLon, startMillis + FRAME_MILLIS, slots, 1);
+    assertEquals(0, lookahead.getInvalidationCount());
+    // a move past the threshold re-renders them
+    lookahead.render(userLat + 0.01, userLon, startMillis + 2 * FRAME_MILLIS, slots, 1);
+    assertEquals(1, lookahead.getInvalidationCount());
+    // and so does losing the satellite, which leaves silence
+    lookahead.render(userLat + 0.01, userLon, startMillis + 3 * FRAME_MILLIS, slots, 0);
+    assertEquals(2, lookahead.getInvalidationCount());
+    assertTrue(lookahead.getFrame(startMillis + 3 * FRAME_MILLIS, frame));
+    assertArrayEquals(new int[] {0, 0, 0, 0}, frame);
+  }
+}
@@ -0,0 +1,94 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the copy-on-write map's lookups, resizing, and that old snapshots never change. */
+public class IntSatelliteMapTest {
+  private IntSatelliteMap<String> map;
+
+  @Before
+  public void setUp() {
+    map = new IntSatelliteMap<String>();
+  }
+
+  @Test
+  public void put_replacesAndReturnsThePreviousValue() {
+    assertNull(map.put(25544, "ISS"));
+    assertNull(map.put(20580, "HST"));
+    assertEquals("ISS", map.put(25544, "ISS (ZARYA)"));
+
+    assertEquals(2, map.size());
+    assertEquals("ISS (ZARYA)", map.get(25544));
+    assertEquals("HST", map.get(20580));
+    assertNull(map.get(1));
+    assertEquals("HST", map.putIfAbsent(20580, "other"));
+    assertEquals("HST", map.get(20580));
+  }
+
+  @Test
+  public void remove_leavesTheOtherKeysReachable() {
+    // keys that collide in a 16-bucket table, so removal has to keep the probe chains intact
+    for (int key = 0; key < 8; key++) {
+      map.put(key * 16, "sat" + key);
+    }
+    assertEquals("sat3", map.remove(48));
+    assertNull(map.remove(48));
+
+    assertEquals(7, map.size());
+    assertFalse(map.containsKey(48));
+    for (int key = 0; key < 8; key++) {
+      if (key != 3) {
+        assertEquals("sat" + key, map.get(key * 16));
+      }
+    }
+  }
+
+  @Test
+  public void get_findsEveryKeyAfterTheTableIsCopiedLarger() {
+    for (int key = 1; key <= 1000; key++) {
+      map.put(key, "sat" + key);
+    }
+    assertEquals(1000, map.size());
+    for (int key = 1; key <= 1000; key++) {
+      assertEquals("sat" + key, map.get(key));
+    }
+
+    // and the snapshot holds each value exactly once
+    IntSatelliteMap.Snapshot<String> snapshot = map.snapshot();
+    Set<String> values = new HashSet<String>();
+    for (int i = 0; i < snapshot.size(); i++) {
+      values.add(snapshot.get(i));
+    }
+    assertEquals(1000, values.size());
+  }
+
+  @Test
+  public void snapshot_isUnchangedByLaterWrites() {
+    map.put(1, "one");
+    map.put(2, "two");
+    IntSatelliteMap.Snapshot<String> old = map.snapshot();
+
+    map.remove(1);
+    map.put(3, "three");
+    map.put(2, "TWO");
+    map.clear();
+
+    assertTrue(map.isEmpty());
+    assertEquals(2, old.size());
+    Set<String> values = new HashSet<String>();
+    for (int i = 0; i < old.size(); i++) {
+      values.add(old.get(i));
+    }
+    assertEquals(new HashSet<String>(Arrays.asList("one", "two")), values);
+  }
+}
@@ -0,0 +1,53 @@
+package com.neosensory.whatsup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks the histogram's bucketing and percentile estimates. */
+public class LatencyHistogramTest {
+  private static final double EPSILON = 1e-9;
+
+  @Test
+  public void emptyHistogram_reportsZeros() {
+    LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+    assertEquals(0, snapshot.getCount());
+    assertEquals(0, snapshot.getMeanMillis(), EPSILON);
+    assertEquals(0, snapshot.getPercentileMillis(99), EPSILON);
+  }
+
+  @Test
+  public void percentiles_useBucketUpperEdges() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    // 90 durations of 3 us (bucket [2, 4) us) and 10 of 1.5 ms (bucket [1024, 2048) us)
+    for (int i = 0; i < 90; i++) {
+      histogram.recordNanos(3000);
+    }
+    for (int i = 0; i < 10; i++) {
+      histogram.recordNanos(1500000);
+    }
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+    assertEquals(100, snapshot.getCount());
+    assertEquals((90 * 0.003 + 10 * 1.5) / 100, snapshot.getMeanMillis(), EPSILON);
+    assertEquals(0.004, snapshot.getPercentileMillis(50), EPSILON);
+    assertEquals(0.004, snapshot.getPercentileMillis(90), EPSILON);
+    // the upper edge (2.048 ms) is capped at the max
+    assertEquals(1.5, snapshot.getPercentileMillis(99), EPSILON);
+    assertEquals(1.5, snapshot.getMaxMillis(), EPSILON);
+  }
+
+  @Test
+  public void outOfRangeDurations_areClamped() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.recordNanos(-5);
+    histogram.recordNanos(Long.MAX_VALUE / 2);
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+    assertEquals(2, snapshot.getCount());
+    assertEquals(0.001, snapshot.getPercentileMillis(50), EPSILON);
+    double lastBucketMillis = (1L << (LatencyHistogram.BUCKETS - 1)) / 1000.0;
+    assertEquals(lastBucketMillis, snapshot.getPercentileMillis(100), EPSILON);
+  }
+}
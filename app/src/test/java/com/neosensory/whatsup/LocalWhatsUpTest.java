@@ -0,0 +1,94 @@
+package com.neosensory.whatsup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the local search finds what is overhead, and reloads only when the cache changes. */
+public class LocalWhatsUpTest {
+  private static final int SEARCH_DEGREES = 70;
+  private static final int ISS = 25544;
+
+  private final String[] iss = TestTles.LOW_EARTH[0];
+  private final List<Integer> found = new ArrayList<Integer>();
+  private final N2yoResponseParser.WhatsUpHandler handler =
+      new N2yoResponseParser.WhatsUpHandler() {
+        @Override
+        public void onSatellite(
+            int noradID,
+            String satName,
+            String satIntlDesignator,
+            double satLatitude,
+            double satLongitude,
+            double satAltitude) {
+          found.add(noradID);
+        }
+      };
+  private File file;
+  private TleCache cache;
+  private LocalWhatsUp localWhatsUp;
+  private long timeMillis;
+  private final double[] overhead = new double[3];
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("tle-cache", ".bin");
+    file.deleteOnExit();
+    cache = new TleCache(file, 24 * 60 * 60 * 1000L);
+    localWhatsUp = new LocalWhatsUp();
+    // stand right under the ISS, 5 minutes after its epoch
+    OrbitalState orbitalState = OrbitalState.fromTle(iss[0], iss[1]);
+    timeMillis = orbitalState.getEpochMillis() + 5 * 60 * 1000;
+    assertTrue(orbitalState.getPosition(timeMillis, overhead));
+  }
+
+  @After
+  public void tearDown() {
+    cache.close();
+    file.delete();
+  }
+
+  @Test
+  public void loadIfChanged_picksUpARefreshedTle() throws IOException {
+    cache.put(ISS, "ISS", iss[0], iss[1], 0);
+    assertTrue(localWhatsUp.loadIfChanged(cache));
+    assertFalse(localWhatsUp.loadIfChanged(cache));
+    assertEquals(1, search());
+
+    // a newer TLE for the same satellite: the cache is the same size, but the catalog reloads.
+    // With its epoch 2.4 hours on, the ISS is nowhere near the user at the same time.
+    String refreshed = iss[0].replace("08264.51782528", "08264.61782528");
+    cache.put(ISS, "ISS", refreshed, iss[1], 0);
+    assertEquals(1, cache.size());
+    assertTrue(localWhatsUp.loadIfChanged(cache));
+    assertEquals(0, search());
+  }
+
+  @Test
+  public void loadIfChanged_doesNotReloadForAnEntryItCantUse() throws IOException {
+    // parses as an orbit, but its international designator doesn't
+    String badDesignator = iss[0].replace("98067A", "XX067A");
+    cache.put(ISS, "ISS", badDesignator, iss[1], 0);
+    cache.put(5, "VANGUARD 1", TestTles.LOW_EARTH[3][0], TestTles.LOW_EARTH[3][1], 0);
+
+    assertTrue(localWhatsUp.loadIfChanged(cache));
+    assertEquals(1, localWhatsUp.getCatalogSize());
+    // the catalog is smaller than the cache, but nothing changed, so there's nothing to reload
+    assertFalse(localWhatsUp.loadIfChanged(cache));
+  }
+
+  private int search() {
+    found.clear();
+    return localWhatsUp.getWhatsUp(
+        overhead[0], overhead[1], 0, SEARCH_DEGREES, timeMillis, handler);
+  }
+}
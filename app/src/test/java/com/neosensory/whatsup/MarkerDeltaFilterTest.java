@@ -0,0 +1,108 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks which marker changes are held back, and that none is held back for too long. */
+public class MarkerDeltaFilterTest {
+  private static final double PIXEL_THRESHOLD = 1;
+  private static final float ALPHA_THRESHOLD = 0.02f;
+  private static final float ROTATION_THRESHOLD = 1;
+  private static final int MAX_SKIPPED_UPDATES = 5;
+  // one dp at zoom 0 is 360 / 256 degrees of longitude; this is a dp at zoom 8 on the equator
+  private static final double DP_AT_ZOOM_8 = 360.0 / 256 / 256;
+
+  private MarkerDeltaFilter filter;
+  private MarkerDeltaFilter.State state;
+
+  @Before
+  public void setUp() {
+    filter =
+        new MarkerDeltaFilter(
+            PIXEL_THRESHOLD, ALPHA_THRESHOLD, ROTATION_THRESHOLD, MAX_SKIPPED_UPDATES);
+    filter.setZoom(8);
+    state = new MarkerDeltaFilter.State();
+  }
+
+  @Test
+  public void firstUpdate_isAlwaysSent() {
+    assertTrue(filter.positionChanged(state, 0, 0));
+    assertTrue(filter.alphaChanged(state, 1));
+    assertTrue(filter.rotationChanged(state, 90));
+  }
+
+  @Test
+  public void position_onlyOnceItMovesFurtherThanThePixelThreshold() {
+    filter.positionChanged(state, 0, 0);
+
+    assertFalse(filter.positionChanged(state, 0, DP_AT_ZOOM_8 * 0.9));
+    assertTrue(filter.positionChanged(state, 0, DP_AT_ZOOM_8 * 1.1));
+    // measured from where it was last drawn, not from the last update
+    assertFalse(filter.positionChanged(state, 0, DP_AT_ZOOM_8 * 2));
+    assertTrue(filter.positionChanged(state, 0, DP_AT_ZOOM_8 * 2.2));
+  }
+
+  @Test
+  public void position_thresholdScalesWithZoom() {
+    filter.positionChanged(state, 0, 0);
+    // half a dp at zoom 8 is two at zoom 10
+    filter.setZoom(10);
+    assertTrue(filter.positionChanged(state, 0, DP_AT_ZOOM_8 / 2));
+    filter.setZoom(6);
+    assertFalse(filter.positionChanged(state, 0, DP_AT_ZOOM_8 * 3));
+  }
+
+  @Test
+  public void alphaAndRotation_onlyOnceTheyChangeByMoreThanTheThreshold() {
+    filter.alphaChanged(state, 0.5f);
+    assertFalse(filter.alphaChanged(state, 0.51f));
+    assertTrue(filter.alphaChanged(state, 0.53f));
+
+    filter.rotationChanged(state, 359.5f);
+    // across north: 0.5 degrees apart, not 359
+    assertFalse(filter.rotationChanged(state, 0));
+    assertTrue(filter.rotationChanged(state, 1));
+  }
+
+  @Test
+  public void smallChanges_areSentAfterTheMaximumSkippedUpdates() {
+    filter.positionChanged(state, 0, 0);
+    filter.alphaChanged(state, 0.5f);
+    for (int i = 1; i < MAX_SKIPPED_UPDATES; i++) {
+      assertFalse(filter.positionChanged(state, 0, DP_AT_ZOOM_8 * 0.1));
+      assertFalse(filter.alphaChanged(state, 0.51f));
+    }
+    assertTrue(filter.positionChanged(state, 0, DP_AT_ZOOM_8 * 0.1));
+    assertTrue(filter.alphaChanged(state, 0.51f));
+
+    // and the count starts again from the update that was sent
+    assertFalse(filter.positionChanged(state, 0, DP_AT_ZOOM_8 * 0.2));
+  }
+
+  @Test
+  public void noChange_isNeverSent() {
+    filter.positionChanged(state, 10, 20);
+    filter.rotationChanged(state, 45);
+    for (int i = 0; i < MAX_SKIPPED_UPDATES * 2; i++) {
+      assertFalse(filter.positionChanged(state, 10, 20));
+      assertFalse(filter.rotationChanged(state, 45));
+    }
+  }
+
+  @Test
+  public void recycledMarker_getsItsFirstUpdateEvenIfNothingMoved() {
+    filter.positionChanged(state, 10, 20);
+    filter.alphaChanged(state, 0.5f);
+    filter.rotationChanged(state, 45);
+
+    // the marker went back to the pool and was handed to another satellite at the same spot
+    state.reset();
+    assertTrue(filter.positionChanged(state, 10, 20));
+    assertTrue(filter.alphaChanged(state, 0.5f));
+    assertTrue(filter.rotationChanged(state, 45));
+    assertFalse(filter.positionChanged(state, 10, 20));
+  }
+}
@@ -0,0 +1,194 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the scheduler's ordering, deduplication, in-flight limit and hourly budgets. */
+public class N2yoRequestSchedulerTest {
+  private static final long HOUR_MILLIS = 60 * 60 * 1000;
+  private static final int WHATS_UP = -1; // stands in for a "What's Up" request in sent
+
+  private final List<Integer> sent = new ArrayList<Integer>();
+  private final N2yoRequestScheduler.Sender sender =
+      new N2yoRequestScheduler.Sender() {
+        @Override
+        public void sendWhatsUp() {
+          sent.add(WHATS_UP);
+        }
+
+        @Override
+        public void sendTle(int noradId) {
+          sent.add(noradId);
+        }
+      };
+  private N2yoRequestScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    scheduler = new N2yoRequestScheduler(sender, 10, 100, 5, 3, 10000);
+  }
+
+  @Test
+  public void dispatch_sendsWhatsUpThenNearestFirst() {
+    scheduler.requestTle(3, 900);
+    scheduler.requestTle(1, 100);
+    scheduler.requestTle(2, 500);
+    scheduler.requestWhatsUp();
+
+    assertEquals(3, scheduler.dispatch(0));
+    assertEquals(Arrays.asList(WHATS_UP, 1, 2), sent);
+    assertEquals(1, scheduler.getQueuedCount());
+  }
+
+  @Test
+  public void request_dropsDuplicates() {
+    scheduler.requestTle(1, 500);
+    scheduler.requestTle(2, 300);
+    // queued again, more urgently: it keeps the better priority
+    scheduler.requestTle(1, 100);
+    scheduler.requestWhatsUp();
+    scheduler.requestWhatsUp();
+    scheduler.dispatch(0);
+    // in flight
+    scheduler.requestTle(1, 0);
+    scheduler.requestWhatsUp();
+
+    assertEquals(Arrays.asList(WHATS_UP, 1, 2), sent);
+    assertEquals(4, scheduler.getDeduplicatedCount());
+    assertEquals(0, scheduler.getQueuedCount());
+  }
+
+  @Test
+  public void dispatch_limitsRequestsInFlight() {
+    for (int noradId = 1; noradId <= 5; noradId++) {
+      scheduler.requestTle(noradId, noradId);
+    }
+    scheduler.dispatch(0);
+    assertEquals(3, scheduler.getInFlightCount());
+
+    scheduler.onTleResponse(2);
+    scheduler.dispatch(1);
+    assertEquals(Arrays.asList(1, 2, 3, 4), sent);
+
+    // no response for the rest; they time out, free their places, and queue up to be retried
+    scheduler.dispatch(10001);
+    assertEquals(Arrays.asList(1, 2, 3, 4, 5), sent);
+    assertEquals(3, scheduler.getTimedOutCount());
+    assertEquals(3, scheduler.getQueuedCount());
+    // asking for one again only makes it more urgent; it still waits out its backoff, and then
+    // for the burst's budget to refill a little
+    scheduler.requestTle(1, 0);
+    scheduler.dispatch(10002);
+    assertEquals(5, sent.size());
+    scheduler.dispatch(60000);
+    assertEquals(Arrays.asList(1, 2, 3, 4, 5, 1), sent);
+  }
+
+  @Test
+  public void timedOutTle_isRetriedWithBackoff() {
+    // a budget big enough to stay out of the way
+    scheduler = new N2yoRequestScheduler(sender, 10, 1000, 50, 3, 10000);
+    scheduler.requestTle(1, 0);
+    scheduler.dispatch(0);
+
+    // times out at 10 s, and is retried one timeout later
+    assertEquals(0, scheduler.dispatch(10000));
+    assertEquals(1, scheduler.getQueuedCount());
+    assertEquals(0, scheduler.dispatch(19999));
+    assertEquals(1, scheduler.dispatch(20000));
+    // times out again at 30 s, and waits twice as long
+    assertEquals(0, scheduler.dispatch(30000));
+    assertEquals(0, scheduler.dispatch(49999));
+    assertEquals(1, scheduler.dispatch(50000));
+    assertEquals(Arrays.asList(1, 1, 1), sent);
+    assertEquals(2, scheduler.getTimedOutCount());
+
+    // a late answer to the last one stops the retries
+    scheduler.dispatch(60000);
+    scheduler.onTleResponse(1);
+    assertEquals(0, scheduler.getQueuedCount());
+    assertEquals(0, scheduler.dispatch(1000000));
+    assertEquals(3, sent.size());
+  }
+
+  @Test
+  public void cancelledTle_isNotRetried() {
+    scheduler.requestTle(1, 0);
+    scheduler.requestTle(2, 1);
+    scheduler.dispatch(0);
+    // 1 stops being tracked while its request is in flight
+    scheduler.cancelTle(1);
+    scheduler.dispatch(10000);
+    assertEquals(1, scheduler.getQueuedCount());
+    // 2 stops being tracked while it waits to be retried
+    scheduler.cancelTle(2);
+    assertEquals(0, scheduler.getQueuedCount());
+
+    assertEquals(0, scheduler.dispatch(HOUR_MILLIS));
+    assertEquals(Arrays.asList(1, 2), sent);
+  }
+
+  @Test
+  public void cancelledTle_isRetriedIfTrackedAgainWhileInFlight() {
+    scheduler.requestTle(1, 0);
+    scheduler.dispatch(0);
+    scheduler.cancelTle(1);
+    // dropped and then admitted again before the request came back
+    scheduler.requestTle(1, 0);
+
+    scheduler.dispatch(10000);
+    assertEquals(1, scheduler.getQueuedCount());
+    scheduler.dispatch(20000);
+    assertEquals(Arrays.asList(1, 1), sent);
+  }
+
+  @Test
+  public void dispatch_staysWithinTheHourlyBudget() {
+    // answer every request at once, so only the budget holds them back
+    int seconds = (int) (3 * HOUR_MILLIS / 1000);
+    int[] sentBySecond = new int[seconds];
+    int noradId = 0;
+    for (int second = 0; second < seconds; second++) {
+      scheduler.requestTle(++noradId, 0);
+      scheduler.requestWhatsUp();
+      sentBySecond[second] = scheduler.dispatch(second * 1000L);
+      for (int sentId : sent) {
+        if (sentId == WHATS_UP) {
+          scheduler.onWhatsUpResponse();
+        } else {
+          scheduler.onTleResponse(sentId);
+        }
+      }
+      sent.clear();
+    }
+    // no hour, the first one with its burst included, goes over 10 "What's Up" and 100 TLE
+    // requests, and the budget is nearly all used
+    int hour = (int) (HOUR_MILLIS / 1000);
+    int window = 0;
+    for (int second = 0; second < seconds; second++) {
+      window += sentBySecond[second];
+      if (second >= hour) {
+        window -= sentBySecond[second - hour];
+      }
+      assertTrue(window <= 110);
+    }
+    assertTrue(scheduler.getSentCount() > 3 * 100);
+  }
+
+  @Test
+  public void cancelTle_dropsTheQueuedRequest() {
+    scheduler.requestTle(1, 0);
+    scheduler.requestTle(2, 1);
+    scheduler.cancelTle(1);
+    scheduler.dispatch(0);
+
+    assertEquals(Arrays.asList(2), sent);
+  }
+}
@@ -0,0 +1,111 @@
+package com.neosensory.whatsup;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the streaming n2yo.com parser against responses in the API's format. */
+public class N2yoResponseParserTest {
+  private static final String WHATS_UP =
+      "{\"info\":{\"category\":\"ANY\",\"transactionscount\":17,\"satcount\":3},\"above\":["
+          + "{\"satid\":25544,\"satname\":\"SPACE STATION\",\"intDesignator\":\"1998-067A\","
+          + "\"launchDate\":\"1998-11-20\",\"satlat\":29.1,\"satlng\":-95.2,\"satalt\":421.5},"
+          // missing satalt: skipped
+          + "{\"satid\":20580,\"satname\":\"HST\",\"intDesignator\":\"1990-037B\","
+          + "\"satlat\":10,\"satlng\":20},"
+          // fields in a different order, with a nested value to skip
+          + "{\"satalt\":550.25,\"extra\":{\"a\":[1,2]},\"satlng\":179.9,\"satlat\":-12.5,"
+          + "\"intDesignator\":\"2019-029A\",\"satname\":\"STARLINK-24\",\"satid\":44238}"
+          + "]}";
+
+  private static final String TLE =
+      "{\"info\":{\"satid\":25544,\"satname\":\"SPACE STATION\",\"transactionscount\":4},"
+          + "\"tle\":\"1 25544U 98067A   08264.51782528 -.00002182  00000-0 -11606-4 0  2927"
+          + "\\r\\n2 25544  51.6416 247.4627 0006703 130.5360 325.0288 15.72125391563537\"}";
+
+  @Test
+  public void parseWhatsUp_emitsWellFormedSatellites() throws IOException {
+    final List<String> satellites = new ArrayList<String>();
+    int count =
+        N2yoResponseParser.parseWhatsUp(
+            new StringReader(WHATS_UP),
+            new N2yoResponseParser.WhatsUpHandler() {
+              @Override
+              public void onSatellite(
+                  int noradId,
+                  String name,
+                  String intlDesignator,
+                  double latitude,
+                  double longitude,
+                  double altitude) {
+                satellites.add(
+                    noradId + " " + name + " " + intlDesignator + " " + latitude + " " + longitude
+                        + " " + altitude);
+              }
+            });
+
+    assertEquals(2, count);
+    assertEquals(2, satellites.size());
+    assertEquals("25544 SPACE STATION 1998-067A 29.1 -95.2 421.5", satellites.get(0));
+    assertEquals("44238 STARLINK-24 2019-029A -12.5 179.9 550.25", satellites.get(1));
+  }
+
+  @Test
+  public void parseTle_splitsLines() throws IOException {
+    final String[] received = new String[3];
+    boolean parsed =
+        N2yoResponseParser.parseTle(
+            new StringReader(TLE),
+            new N2yoResponseParser.TleHandler() {
+              @Override
+              public void onTle(int noradId, String name, String line1, String line2) {
+                received[0] = noradId + " " + name;
+                received[1] = line1;
+                received[2] = line2;
+              }
+            });
+
+    assertTrue(parsed);
+    assertEquals("25544 SPACE STATION", received[0]);
+    assertEquals(TestTles.LOW_EARTH[0][0], received[1]);
+    assertEquals(TestTles.LOW_EARTH[0][1], received[2]);
+  }
+
+  @Test
+  public void parseTle_ignoresEmptyTle() throws IOException {
+    boolean parsed =
+        N2yoResponseParser.parseTle(
+            new StringReader("{\"info\":{\"satid\":1,\"satname\":\"X\"},\"tle\":\"\"}"),
+            new N2yoResponseParser.TleHandler() {
+              @Override
+              public void onTle(int noradId, String name, String line1, String line2) {
+                throw new AssertionError("unexpected TLE");
+              }
+            });
+
+    assertFalse(parsed);
+  }
+
+  @Test(expected = IOException.class)
+  public void parseWhatsUp_rejectsTruncatedResponse() throws IOException {
+    N2yoResponseParser.parseWhatsUp(
+        new StringReader(WHATS_UP.substring(0, WHATS_UP.length() / 2)),
+        new N2yoResponseParser.WhatsUpHandler() {
+          @Override
+          public void onSatellite(
+              int noradId,
+              String name,
+              String intlDesignator,
+              double latitude,
+              double longitude,
+              double altitude) {}
+        });
+  }
+}
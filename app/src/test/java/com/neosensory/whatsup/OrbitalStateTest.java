@@ -0,0 +1,96 @@
+package com.neosensory.whatsup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks propagation against Vallado's SGP4 verification vectors ("Revisiting Spacetrack Report
+ * #3", 2006): TEME positions (km) at several minutes since epoch.
+ */
+public class OrbitalStateTest {
+  // near-earth SGP4 agrees with the published vectors to their last digit; 1 m is plenty
+  private static final double NEAR_EARTH_TOLERANCE_KM = 0.001;
+  // the deep-space case (integrated lunar-solar terms) agrees to within ~25 m
+  private static final double DEEP_SPACE_TOLERANCE_KM = 0.05;
+
+  @Test
+  public void nearEarth_matchesReferenceVectors() {
+    // Vanguard 1: perigee 650 km, period 133 minutes
+    OrbitalState state = OrbitalState.fromTle(TestTles.LOW_EARTH[3][0], TestTles.LOW_EARTH[3][1]);
+    assertFalse(state.isDeepSpace());
+    double[][] expected = {
+      {0, 7022.46529266, -1400.08296755, 0.03995155},
+      {360, -7154.03120202, -3783.17682504, -3536.19412294},
+      {720, -7134.59340119, 6531.68641334, 3260.27186483},
+      {1080, 5568.53901181, 4492.06992591, 3863.87641983}
+    };
+    assertMatches(state, expected, NEAR_EARTH_TOLERANCE_KM);
+  }
+
+  @Test
+  public void deepSpace_matchesReferenceVectors() {
+    // a Molniya-like orbit with lunar-solar terms but no resonance
+    OrbitalState state =
+        OrbitalState.fromTle(
+            "1 11801U          80230.29629788  .01431103  00000-0  14311-1      13",
+            "2 11801  46.7916 230.4354 7318036  47.4722  10.4117  2.28537848    13");
+    assertTrue(state.isDeepSpace());
+    double[][] expected = {
+      {0, 7473.37066650, 428.95261765, 5828.74786377},
+      {360, -3305.22537232, 32410.86328760, -24697.17675344},
+      {720, 14271.28759740, 24110.46482397, -4725.76265047}
+    };
+    assertMatches(state, expected, DEEP_SPACE_TOLERANCE_KM);
+  }
+
+  @Test
+  public void deepSpace_twelveHourResonance_matchesReferenceVectors() {
+    // a Molniya orbit in 12-hour resonance. 120 minutes is part of one integration step from
+    // epoch, 720 a whole step and 1440 two, so each exercises more of the resonance integration.
+    OrbitalState state =
+        OrbitalState.fromTle(
+            "1 08195U 75081A   06176.33215444  .00000099  00000-0  11873-3 0   813",
+            "2 08195  64.1586 279.0717 6877146 264.7651  20.2257  2.00491383225656");
+    assertTrue(state.isDeepSpace());
+    double[][] expected = {
+      {0, 2349.89483350, -14785.93811562, 0.02119378},
+      {120, 15223.91713658, -17852.95881713, 25280.39558224},
+      {720, 2622.13222207, -15125.15464924, 474.51048398},
+      {1440, 2890.80638268, -15446.43952300, 948.77010176}
+    };
+    assertMatches(state, expected, NEAR_EARTH_TOLERANCE_KM);
+  }
+
+  @Test
+  public void deepSpace_getPosition_dependsOnlyOnTheRequestedTime() {
+    OrbitalState gps = OrbitalState.fromTle(TestTles.DEEP_SPACE[0], TestTles.DEEP_SPACE[1]);
+    long timeMillis = gps.getEpochMillis() + 3 * 24 * 60 * 60 * 1000L;
+    double[] first = new double[3];
+    double[] again = new double[3];
+    double[] later = new double[3];
+    assertTrue(gps.getPosition(timeMillis, first));
+    assertTrue(gps.getPosition(timeMillis + 60000, later));
+    assertTrue(gps.getPosition(timeMillis, again));
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals(first[i], again[i], 0);
+    }
+    // GPS moves about 3.9 km/s, so a minute on its sub-satellite point has moved ~0.4 degrees
+    assertTrue(Math.abs(later[0] - first[0]) + Math.abs(later[1] - first[1]) > 0.2);
+    // and it's at GPS altitude
+    assertEquals(20200, first[2], 300);
+  }
+
+  private static void assertMatches(OrbitalState state, double[][] expected, double toleranceKm) {
+    double[] teme = new double[OrbitalState.TEME_SIZE];
+    for (double[] row : expected) {
+      assertTrue(state.getTemePositionSinceEpoch(row[0], teme));
+      for (int i = 0; i < 3; i++) {
+        assertEquals("tsince " + row[0] + " axis " + i, row[i + 1], teme[i], toleranceKm);
+      }
+    }
+  }
+}
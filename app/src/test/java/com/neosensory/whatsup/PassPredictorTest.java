@@ -0,0 +1,116 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Predicts an ISS pass straight over the user and checks the events and the caching. */
+public class PassPredictorTest {
+  private static final double MAX_DISTANCE_KM = 300;
+  private static final long HORIZON_MILLIS = 10 * 60 * 1000;
+  private static final long STEP_MILLIS = 20000;
+  private static final double OBSERVER_MOVE_KM = 5;
+  private static final long OVERHEAD_MILLIS = 5 * 60 * 1000;
+
+  private OrbitalState iss;
+  private PassPredictor predictor;
+  private long startMillis;
+  private double userLat;
+  private double userLon;
+  private final double[] lla = new double[3];
+
+  @Before
+  public void setUp() {
+    iss = OrbitalState.fromTle(TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]);
+    startMillis = iss.getEpochMillis();
+    // the ISS passes straight over the user 5 minutes in
+    assertTrue(iss.getPosition(startMillis + OVERHEAD_MILLIS, lla));
+    userLat = lla[0];
+    userLon = lla[1];
+    predictor =
+        new PassPredictor(MAX_DISTANCE_KM, HORIZON_MILLIS, STEP_MILLIS, OBSERVER_MOVE_KM);
+  }
+
+  private double distanceAt(long timeMillis) {
+    assertTrue(iss.getPosition(timeMillis, lla));
+    return Utilities.getDistance(userLat, lla[0], userLon, lla[1]);
+  }
+
+  @Test
+  public void update_findsThePass() {
+    predictor.update(0, iss, userLat, userLon, startMillis);
+
+    assertTrue(predictor.hasPass(0));
+    assertEquals(startMillis + OVERHEAD_MILLIS, predictor.getClosestMillis(0), 1000);
+    assertTrue(predictor.getClosestDistance(0) < 1);
+    long entry = predictor.getEntryMillis(0);
+    long exit = predictor.getExitMillis(0);
+    assertEquals(MAX_DISTANCE_KM, distanceAt(entry), 1);
+    assertEquals(MAX_DISTANCE_KM, distanceAt(exit), 1);
+    // about 600 km of ground track at a little over 7 km/s
+    assertTrue(exit - entry > 60000 && exit - entry < 100000);
+    assertTrue(predictor.isApproaching(0, startMillis));
+    assertFalse(predictor.isApproaching(0, predictor.getClosestMillis(0) + 1));
+  }
+
+  @Test
+  public void update_duringThePass() {
+    long now = startMillis + OVERHEAD_MILLIS - 10000;
+    predictor.update(0, iss, userLat, userLon, now);
+
+    assertTrue(predictor.hasPass(0));
+    assertEquals(now, predictor.getEntryMillis(0));
+    assertEquals(startMillis + OVERHEAD_MILLIS, predictor.getClosestMillis(0), 1000);
+    assertTrue(predictor.isApproaching(0, now));
+  }
+
+  @Test
+  public void update_noPassOnTheFarSide() {
+    predictor.update(0, iss, -userLat, userLon + (userLon > 0 ? -180 : 180), startMillis);
+
+    assertFalse(predictor.hasPass(0));
+    assertFalse(predictor.isApproaching(0, startMillis));
+  }
+
+  @Test
+  public void update_recomputesOnlyWhenStale() {
+    predictor.update(0, iss, userLat, userLon, startMillis);
+    predictor.update(0, iss, userLat, userLon, startMillis + 60000);
+    // a short walk
+    predictor.update(0, iss, userLat + 0.01, userLon, startMillis + 120000);
+    assertEquals(1, predictor.getPredictionCount());
+
+    // a long drive
+    predictor.update(0, iss, userLat + 0.1, userLon, startMillis + 180000);
+    assertEquals(2, predictor.getPredictionCount());
+
+    // a new TLE
+    OrbitalState refreshed =
+        OrbitalState.fromTle(TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]);
+    predictor.update(0, refreshed, userLat + 0.1, userLon, startMillis + 180000);
+    assertEquals(3, predictor.getPredictionCount());
+
+    // the pass is over
+    predictor.update(0, refreshed, userLat + 0.1, userLon, predictor.getExitMillis(0));
+    assertEquals(4, predictor.getPredictionCount());
+  }
+
+  @Test
+  public void update_leavesDeepSpaceOrbitsWithoutAPass() {
+    predictor.update(0, iss, userLat, userLon, startMillis);
+    assertTrue(predictor.hasPass(0));
+
+    // the slot now holds a GPS satellite, with the user right under it
+    OrbitalState gps = OrbitalState.fromTle(TestTles.DEEP_SPACE[0], TestTles.DEEP_SPACE[1]);
+    assertTrue(gps.getPosition(gps.getEpochMillis(), lla));
+    assertFalse(predictor.predicts(gps));
+    predictor.update(0, gps, lla[0], lla[1], gps.getEpochMillis());
+
+    assertFalse(predictor.hasPass(0));
+    assertFalse(predictor.isApproaching(0, gps.getEpochMillis()));
+    assertEquals(1, predictor.getPredictionCount());
+  }
+}
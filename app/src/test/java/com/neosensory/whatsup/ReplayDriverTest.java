@@ -0,0 +1,233 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Replays an ISS pass over a stationary user and checks the engine's admissions and output. */
+public class ReplayDriverTest {
+  private static final int MOTORS = 4;
+  private static final long TICK_MILLIS = 50;
+  private static final long TLE_DELAY_MILLIS = 500;
+  private static final long DURATION_MILLIS = 15 * 60 * 1000;
+  private static final double MAX_DISTANCE_KM = 300;
+
+  // intensity on motor 0, bearing (as a location) on motor 1, both scaled to 0-1000
+  private static final HapticEncoder.Encoding RAW =
+      new HapticEncoder.Encoding() {
+        @Override
+        public int[] getActivations(float intensity, float location) {
+          return new int[] {Math.round(1000 * intensity), Math.round(1000 * location), 0, 0};
+        }
+      };
+
+  private OrbitalState iss;
+  private long startMillis;
+  private double userLat;
+  private double userLon;
+  private String whatsUp;
+  private String tle;
+
+  @Before
+  public void setUp() {
+    iss = OrbitalState.fromTle(TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]);
+    startMillis = iss.getEpochMillis() / 1000 * 1000;
+    // the ISS passes straight over the user 5 minutes in
+    double[] lla = new double[3];
+    assertTrue(iss.getPosition(startMillis + 5 * 60 * 1000, lla));
+    userLat = lla[0];
+    userLon = lla[1];
+    assertTrue(iss.getPosition(startMillis, lla));
+    whatsUp =
+        "{\"info\":{\"category\":\"ANY\",\"transactionscount\":1,\"satcount\":3},\"above\":["
+            + satellite(25544, "SPACE STATION", lla[0], lla[1], lla[2])
+            + ","
+            // no TLE is recorded for this one, so it stays where "What's Up" put it
+            + satellite(90001, "NO TLE", userLat + 10, userLon, 500)
+            + ","
+            // too high to be admitted
+            + satellite(90002, "TOO HIGH", userLat - 10, userLon, 20000)
+            + "]}";
+    tle =
+        "{\"info\":{\"satid\":25544,\"satname\":\"SPACE STATION\",\"transactionscount\":2},"
+            + "\"tle\":\""
+            + TestTles.LOW_EARTH[0][0]
+            + "\\r\\n"
+            + TestTles.LOW_EARTH[0][1]
+            + "\"}";
+  }
+
+  private static String satellite(int noradId, String name, double lat, double lon, double alt) {
+    return String.format(
+        Locale.US,
+        "{\"satid\":%d,\"satname\":\"%s\",\"intDesignator\":\"2000-001A\","
+            + "\"launchDate\":\"2000-01-01\",\"satlat\":%.4f,\"satlng\":%.4f,\"satalt\":%.4f}",
+        noradId,
+        name,
+        lat,
+        lon,
+        alt);
+  }
+
+  private ReplayDriver.Recording newRecording() {
+    ReplayDriver.Recording recording = new ReplayDriver.Recording();
+    for (long t = 0; t <= DURATION_MILLIS; t += 1000) {
+      recording.addLocation(startMillis + t, userLat, userLon, 0);
+    }
+    recording.addWhatsUp(startMillis, whatsUp);
+    recording.addTle(25544, tle);
+    return recording;
+  }
+
+  private static TrackingEngine newEngine(ReplayDriver driver) {
+    return new TrackingEngine(
+        new HapticEncoder(RAW, MOTORS, 1001, 1001),
+        MOTORS,
+        20,
+        6000,
+        MAX_DISTANCE_KM,
+        3,
+        TICK_MILLIS,
+        2000,
+        0.5,
+        driver);
+  }
+
+  // records every tick as text, and how far the ISS strays from a direct propagation
+  private final class Recorder implements ReplayDriver.Output {
+    final StringBuilder text = new StringBuilder();
+    final double[] lla = new double[3];
+    double maxIssErrorKm;
+    long issTicks;
+    long felt;
+    int[] lastFrame;
+
+    @Override
+    public void onTick(
+        long timeMillis, double lat, double lon, SatelliteStore store, int[] frame) {
+      text.append(timeMillis);
+      for (int slot = 0; slot < store.getHighWater(); slot++) {
+        if (!store.isLive(slot)) {
+          continue;
+        }
+        text.append(
+            String.format(
+                Locale.US,
+                " %d:%.6f,%.6f",
+                store.getNoradId(slot),
+                store.getLatitude(slot),
+                store.getLongitude(slot)));
+        if (store.getNoradId(slot) == 25544 && store.getOrbitalState(slot) != null) {
+          assertTrue(iss.getPosition(timeMillis, lla));
+          maxIssErrorKm =
+              Math.max(
+                  maxIssErrorKm,
+                  Utilities.getDistance(
+                      lla[0], store.getLatitude(slot), lla[1], store.getLongitude(slot)));
+          issTicks++;
+        }
+      }
+      for (int activation : frame) {
+        text.append(' ').append(activation);
+      }
+      text.append('\n');
+      if (frame[0] > 0) {
+        felt++;
+      }
+      lastFrame = frame.clone();
+    }
+  }
+
+  @Test
+  public void replay_tracksThePass() throws IOException {
+    ReplayDriver driver = new ReplayDriver(newRecording(), TICK_MILLIS, TLE_DELAY_MILLIS);
+    Recorder recorder = new Recorder();
+
+    long ticks = driver.run(newEngine(driver), recorder);
+
+    assertTrackedThePass(driver, recorder, ticks);
+  }
+
+  @Test
+  public void replay_tracksThePassWithAPassPredictor() throws IOException {
+    ReplayDriver driver = new ReplayDriver(newRecording(), TICK_MILLIS, TLE_DELAY_MILLIS);
+    Recorder recorder = new Recorder();
+    TrackingEngine engine = newEngine(driver);
+    PassPredictor predictor = new PassPredictor(MAX_DISTANCE_KM, 600000, 20000, 5);
+    engine.getTracker().setPassPredictor(predictor);
+
+    long ticks = driver.run(engine, recorder);
+
+    assertTrackedThePass(driver, recorder, ticks);
+    // a few predictions over the whole replay, rather than one per tick
+    assertTrue(predictor.getPredictionCount() > 0);
+    assertTrue(predictor.getPredictionCount() < 10);
+  }
+
+  private static void assertTrackedThePass(ReplayDriver driver, Recorder recorder, long ticks) {
+    assertEquals(DURATION_MILLIS / TICK_MILLIS + 1, ticks);
+    // the ISS and the satellite without a TLE were admitted, the ISS left after its pass
+    assertEquals(2, driver.getAddedCount());
+    assertEquals(1, driver.getRemovedCount());
+    assertTrue(recorder.issTicks > 0);
+    assertTrue(recorder.maxIssErrorKm < 0.01);
+    // the pass was felt, and nothing is felt once it's over
+    assertTrue(recorder.felt > 0);
+    assertEquals(0, recorder.lastFrame[0]);
+  }
+
+  @Test
+  public void replay_isDeterministic() throws IOException {
+    ReplayDriver first = new ReplayDriver(newRecording(), TICK_MILLIS, TLE_DELAY_MILLIS);
+    Recorder firstOutput = new Recorder();
+    first.run(newEngine(first), firstOutput);
+    ReplayDriver second = new ReplayDriver(newRecording(), TICK_MILLIS, TLE_DELAY_MILLIS);
+    Recorder secondOutput = new Recorder();
+    second.run(newEngine(second), secondOutput);
+
+    assertEquals(firstOutput.text.toString(), secondOutput.text.toString());
+  }
+
+  @Test
+  public void load_matchesTheRecording() throws IOException {
+    File directory = Files.createTempDirectory("replay").toFile();
+    directory.deleteOnExit();
+    StringBuilder locations = new StringBuilder("# timeMillis,latitude,longitude,altitude\n");
+    for (long t = 0; t <= DURATION_MILLIS; t += 1000) {
+      locations.append(String.format(Locale.US, "%d,%s,%s,0\n", startMillis + t, userLat, userLon));
+    }
+    write(new File(directory, "locations.csv"), locations.toString());
+    write(new File(directory, "whatsup-" + startMillis + ".json"), whatsUp);
+    write(new File(directory, "tle-25544.json"), tle);
+
+    ReplayDriver loaded =
+        new ReplayDriver(ReplayDriver.Recording.load(directory), TICK_MILLIS, TLE_DELAY_MILLIS);
+    Recorder loadedOutput = new Recorder();
+    loaded.run(newEngine(loaded), loadedOutput);
+    ReplayDriver built = new ReplayDriver(newRecording(), TICK_MILLIS, TLE_DELAY_MILLIS);
+    Recorder builtOutput = new Recorder();
+    built.run(newEngine(built), builtOutput);
+
+    assertEquals(builtOutput.text.toString(), loadedOutput.text.toString());
+  }
+
+  private static void write(File file, String text) throws IOException {
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write(text);
+    } finally {
+      writer.close();
+    }
+    file.deleteOnExit();
+  }
+}
@@ -0,0 +1,142 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the index's queries against a brute-force scan, after rebuilds and in-place refits. */
+public class SatelliteKdTreeTest {
+  private static final int SATELLITES = 500;
+  private static final int QUERIES = 50;
+  private static final int NEAREST = 5;
+  private static final double RADIUS_KM = 2000;
+
+  private final Random random = new Random(42);
+  private final int[] slotsToIndex = new int[SATELLITES];
+  private final int[] outSlots = new int[SATELLITES];
+  private final double[] outDistances = new double[SATELLITES];
+  private SatelliteStore store;
+  private SatelliteKdTree index;
+  private int indexedCount;
+
+  @Before
+  public void setUp() {
+    store = new SatelliteStore(SATELLITES);
+    for (int i = 0; i < SATELLITES; i++) {
+      int slot = store.allocate(10000 + i, "", "", 0, 0, 0);
+      moveRandomly(slot);
+      slotsToIndex[indexedCount++] = slot;
+    }
+    index = new SatelliteKdTree();
+  }
+
+  @Test
+  public void rebuild_matchesBruteForce() {
+    index.rebuild(store, slotsToIndex, indexedCount);
+
+    assertEquals(SATELLITES, index.size());
+    checkQueries();
+  }
+
+  @Test
+  public void update_refitsMovedPointsAndStillMatchesBruteForce() {
+    assertTrue(index.update(store, slotsToIndex, indexedCount));
+    for (int i = 0; i < 5; i++) {
+      // move every satellite anywhere on the globe: far further than a tick, so every split plane
+      // is stale and only the refitted boxes keep the queries exact
+      for (int j = 0; j < indexedCount; j++) {
+        moveRandomly(slotsToIndex[j]);
+      }
+      assertFalse(index.update(store, slotsToIndex, indexedCount));
+      checkQueries();
+    }
+  }
+
+  @Test
+  public void update_rebuildsWhenTheSetOfSlotsChanges() {
+    index.update(store, slotsToIndex, indexedCount);
+
+    // one satellite drops out of the indexed set (e.g. it went dormant)
+    indexedCount--;
+    assertTrue(index.update(store, slotsToIndex, indexedCount));
+    assertEquals(SATELLITES - 1, index.size());
+    checkQueries();
+
+    // it comes back in a different place in the list
+    slotsToIndex[indexedCount++] = slotsToIndex[0];
+    slotsToIndex[0] = SATELLITES - 1;
+    assertTrue(index.update(store, slotsToIndex, indexedCount));
+    checkQueries();
+  }
+
+  @Test
+  public void update_rebuildsAfterManyRefits() {
+    index.update(store, slotsToIndex, indexedCount);
+    for (int i = 0; i < SatelliteKdTree.REFITS_PER_REBUILD; i++) {
+      assertFalse(index.update(store, slotsToIndex, indexedCount));
+    }
+    assertTrue(index.update(store, slotsToIndex, indexedCount));
+  }
+
+  private void moveRandomly(int slot) {
+    // uniform on the sphere, so the poles and the antimeridian get exercised too
+    double lat = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+    double lon = random.nextDouble() * 360 - 180;
+    store.setLla(slot, lat, lon, 400);
+    store.setFlag(slot, SatelliteStore.FLAG_LOCATION_UPDATED, true);
+  }
+
+  private void checkQueries() {
+    for (int q = 0; q < QUERIES; q++) {
+      double lat = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+      double lon = random.nextDouble() * 360 - 180;
+      double[] distances = bruteForceDistances(lat, lon);
+
+      int found = index.nearest(lat, lon, NEAREST, outSlots, outDistances);
+      assertEquals(NEAREST, found);
+      double[] sorted = Arrays.copyOf(distances, indexedCount);
+      Arrays.sort(sorted);
+      for (int i = 0; i < found; i++) {
+        assertEquals(sorted[i], outDistances[i], 1e-6);
+        assertEquals(sorted[i], distances[indexOf(outSlots[i])], 1e-6);
+      }
+
+      int inRange = 0;
+      for (int i = 0; i < indexedCount; i++) {
+        if (distances[i] <= RADIUS_KM) {
+          inRange++;
+        }
+      }
+      found = index.withinRadius(lat, lon, RADIUS_KM, outSlots);
+      assertEquals(inRange, found);
+      for (int i = 0; i < found; i++) {
+        assertTrue(distances[indexOf(outSlots[i])] <= RADIUS_KM + 1e-6);
+      }
+    }
+  }
+
+  private double[] bruteForceDistances(double lat, double lon) {
+    double[] distances = new double[indexedCount];
+    for (int i = 0; i < indexedCount; i++) {
+      int slot = slotsToIndex[i];
+      distances[i] =
+          Utilities.getDistance(lat, store.getLatitude(slot), lon, store.getLongitude(slot));
+    }
+    return distances;
+  }
+
+  private int indexOf(int slot) {
+    for (int i = 0; i < indexedCount; i++) {
+      if (slotsToIndex[i] == slot) {
+        return i;
+      }
+    }
+    throw new AssertionError("slot " + slot + " isn't indexed");
+  }
+}
@@ -0,0 +1,106 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/** Checks slot allocation, release and reuse, and that a full store turns satellites away. */
+public class SatelliteStoreTest {
+  private static final int CAPACITY = 3;
+
+  private SatelliteStore store;
+
+  @Before
+  public void setUp() {
+    store = new SatelliteStore(CAPACITY);
+  }
+
+  @Test
+  public void allocate_fillsTheSlot() {
+    int slot = store.allocate(25544, "1998-067A", "SPACE STATION", 10, 20, 400);
+
+    assertEquals(0, slot);
+    assertEquals(1, store.size());
+    assertEquals(1, store.getHighWater());
+    assertTrue(store.isLive(slot));
+    assertTrue(store.hasFlag(slot, SatelliteStore.FLAG_HEADED_TO_USER));
+    assertFalse(store.hasFlag(slot, SatelliteStore.FLAG_HAS_TLE));
+    assertEquals(25544, store.getNoradId(slot));
+    assertEquals("1998-067A", store.getIntlDesignator(slot));
+    assertEquals("SPACE STATION", store.getName(slot));
+    assertEquals(10, store.getLatitude(slot), 0);
+    assertEquals(20, store.getLongitude(slot), 0);
+    assertEquals(400, store.getAltitude(slot), 0);
+    assertNull(store.getOrbitalState(slot));
+  }
+
+  @Test
+  public void release_freesTheSlotForReuse() {
+    int first = store.allocate(1, "", "ONE", 0, 0, 0);
+    int second = store.allocate(2, "", "TWO", 0, 0, 0);
+    OrbitalState iss = OrbitalState.fromTle(TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]);
+    store.setOrbitalState(first, iss);
+    store.setDistanceToUser(first, 100, 1000);
+
+    store.release(first);
+    assertFalse(store.isLive(first));
+    assertEquals(0, store.getFlags(first));
+    assertNull(store.getOrbitalState(first));
+    assertEquals(1, store.size());
+    // releasing twice is harmless
+    store.release(first);
+    assertEquals(1, store.size());
+
+    // the freed slot is reused, with nothing left over from its last satellite
+    int third = store.allocate(3, "", "THREE", 5, 6, 7);
+    assertEquals(first, third);
+    assertEquals(2, store.getHighWater());
+    assertEquals(3, store.getNoradId(third));
+    assertEquals(0, store.getDistanceToUser(third), 0);
+    assertNull(store.getOrbitalState(third));
+    assertEquals(
+        SatelliteStore.FLAG_LIVE | SatelliteStore.FLAG_HEADED_TO_USER, store.getFlags(third));
+    assertEquals(2, store.getNoradId(second));
+  }
+
+  @Test
+  public void allocate_whenFull_keepsTheColumns() {
+    double[] latitudes = store.getLatitudes();
+    for (int i = 0; i < CAPACITY; i++) {
+      assertEquals(i, store.allocate(i, "", "", i, 0, 0));
+    }
+
+    // full: the satellite is turned away rather than the columns being swapped out under readers
+    assertEquals(-1, store.allocate(99, "", "", 0, 0, 0));
+    assertEquals(CAPACITY, store.size());
+    assertEquals(CAPACITY, store.getCapacity());
+    assertSame(latitudes, store.getLatitudes());
+    assertEquals(2, latitudes[2], 0);
+
+    // and there's room again once one leaves
+    store.release(1);
+    assertEquals(1, store.allocate(99, "", "", 0, 0, 0));
+    assertEquals(99, store.getNoradId(1));
+  }
+
+  @Test
+  public void setOrbitalState_byNoradId_skipsASlotThatWasReused() {
+    OrbitalState iss = OrbitalState.fromTle(TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]);
+    int slot = store.allocate(25544, "", "ISS", 0, 0, 0);
+    assertTrue(store.setOrbitalState(slot, 25544, iss));
+    assertSame(iss, store.getOrbitalState(slot));
+
+    // the ISS leaves and another satellite takes its slot before the ISS's next TLE lands
+    store.release(slot);
+    assertFalse(store.setOrbitalState(slot, 25544, iss));
+    assertEquals(slot, store.allocate(5, "", "VANGUARD 1", 0, 0, 0));
+    assertFalse(store.setOrbitalState(slot, 25544, iss));
+    assertNull(store.getOrbitalState(slot));
+    assertFalse(store.hasFlag(slot, SatelliteStore.FLAG_HAS_TLE));
+  }
+}
@@ -0,0 +1,76 @@
+package com.neosensory.whatsup;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Guards the per-tick tracking loop against allocation regressions: once warmed up, a tick must not
+ * allocate anything. Measured with the HotSpot per-thread allocation counter.
+ */
+public class SatelliteTrackerAllocationTest {
+  private static final int WARMUP_TICKS = 20000;
+  private static final int MEASURED_TICKS = 1000;
+  private static final long TICK_MILLIS = 50;
+
+  @Test
+  public void tick_allocatesNothingOnceWarm() {
+    assertTickAllocatesNothing(0, null, 0);
+  }
+
+  @Test
+  public void interpolatedTick_allocatesNothingOnceWarm() {
+    assertTickAllocatesNothing(1000, null, 0);
+  }
+
+  @Test
+  public void predictedTick_allocatesNothingOnceWarm() {
+    // a short horizon, so predictions are recomputed while measuring
+    assertTickAllocatesNothing(1000, new PassPredictor(300, 20000, 5000, 5), 0);
+  }
+
+  @Test
+  public void dormantTick_allocatesNothingOnceWarm() {
+    // short naps, so satellites wake and go back to sleep while measuring
+    assertTickAllocatesNothing(1000, new PassPredictor(300, 20000, 5000, 5), 5000);
+  }
+
+  private void assertTickAllocatesNothing(
+      long propagationIntervalMillis, PassPredictor passPredictor, long maxDormantMillis) {
+    assumeTrue(
+        "per-thread allocation counter not available",
+        ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(
+        "per-thread allocation counter not enabled",
+        threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+    long threadId = Thread.currentThread().getId();
+
+    SatelliteStore store = new SatelliteStore(TestTles.LOW_EARTH.length);
+    long timeMillis = StoreFixtures.addTles(store, TestTles.LOW_EARTH, null, null);
+    SatelliteTracker tracker = new SatelliteTracker(store, 300, null);
+    tracker.setPropagationInterval(propagationIntervalMillis);
+    tracker.setPassPredictor(passPredictor);
+    tracker.setDormancy(maxDormantMillis, 2500);
+    for (int i = 0; i < WARMUP_TICKS; i++) {
+      timeMillis += TICK_MILLIS;
+      tracker.update(29.76, -95.37, timeMillis);
+    }
+
+    // the counter query can allocate itself, so measure that overhead and subtract it
+    long before = threads.getThreadAllocatedBytes(threadId);
+    long overhead = threads.getThreadAllocatedBytes(threadId) - before;
+    before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < MEASURED_TICKS; i++) {
+      timeMillis += TICK_MILLIS;
+      tracker.update(29.76, -95.37, timeMillis);
+    }
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+    assertEquals("bytes allocated by " + MEASURED_TICKS + " ticks", 0, allocated);
+  }
+}
@@ -0,0 +1,106 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Tracks the ISS towards a pass straight over the user and checks when it sleeps and wakes. */
+public class SatelliteTrackerDormancyTest {
+  private static final double MAX_DISTANCE_KM = 300;
+  private static final long TICK_MILLIS = 50;
+  private static final long MAX_DORMANT_MILLIS = 60000;
+  private static final long WAKE_MARGIN_MILLIS = 2500;
+  private static final long OVERHEAD_MILLIS = 5 * 60 * 1000;
+
+  private OrbitalState iss;
+  private SatelliteStore store;
+  private SatelliteTracker tracker;
+  private int slot;
+  private long startMillis;
+  private double userLat;
+  private double userLon;
+  private final double[] lla = new double[3];
+
+  @Before
+  public void setUp() {
+    iss = OrbitalState.fromTle(TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]);
+    startMillis = iss.getEpochMillis();
+    // the ISS passes straight over the user 5 minutes in
+    assertTrue(iss.getPosition(startMillis + OVERHEAD_MILLIS, lla));
+    userLat = lla[0];
+    userLon = lla[1];
+    store = new SatelliteStore(1);
+    slot = store.allocate(iss.getNoradId(), "", "", 0, 0, 0);
+    store.setOrbitalState(slot, iss);
+    tracker = new SatelliteTracker(store, MAX_DISTANCE_KM, null);
+    tracker.setPropagationInterval(1000);
+    tracker.setPassPredictor(new PassPredictor(MAX_DISTANCE_KM, 10 * 60 * 1000, 20000, 5));
+    tracker.setDormancy(MAX_DORMANT_MILLIS, WAKE_MARGIN_MILLIS);
+  }
+
+  private double distanceAt(long timeMillis) {
+    assertTrue(iss.getPosition(timeMillis, lla));
+    return Utilities.getDistance(userLat, lla[0], userLon, lla[1]);
+  }
+
+  @Test
+  public void update_sleepsUntilItCouldReachRange() {
+    long dormantTicks = 0;
+    long inRangeTicks = 0;
+    for (long t = startMillis; t <= startMillis + OVERHEAD_MILLIS; t += TICK_MILLIS) {
+      tracker.update(userLat, userLon, t);
+      if (tracker.getDormantCount() > 0) {
+        assertEquals(0, tracker.getPropagatedCount());
+        // asleep only while it's more than the wake margin from range
+        assertTrue(distanceAt(t + WAKE_MARGIN_MILLIS) > MAX_DISTANCE_KM);
+        dormantTicks++;
+      }
+      inRangeTicks += tracker.getInRangeCount();
+    }
+    // it slept for most of the approach and was awake for the pass
+    assertTrue(dormantTicks * TICK_MILLIS > OVERHEAD_MILLIS / 2);
+    assertTrue(inRangeTicks > 0);
+    assertEquals(0, tracker.getDormantCount());
+  }
+
+  @Test
+  public void update_wakesForANewTle() {
+    tracker.update(userLat, userLon, startMillis);
+    tracker.update(userLat, userLon, startMillis + TICK_MILLIS);
+    assertEquals(1, tracker.getDormantCount());
+
+    store.setOrbitalState(
+        slot, OrbitalState.fromTle(TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]));
+    tracker.update(userLat, userLon, startMillis + 2 * TICK_MILLIS);
+    assertEquals(0, tracker.getDormantCount());
+    assertEquals(1, tracker.getPropagatedCount());
+  }
+
+  @Test
+  public void update_wakesWhenTheUserJumps() {
+    tracker.update(userLat, userLon, startMillis);
+    tracker.update(userLat, userLon, startMillis + TICK_MILLIS);
+    assertEquals(1, tracker.getDormantCount());
+
+    // a walk doesn't wake it; the first fix after a made-up location does
+    tracker.update(userLat + 0.001, userLon, startMillis + 2 * TICK_MILLIS);
+    assertEquals(1, tracker.getDormantCount());
+    tracker.update(userLat + 10, userLon, startMillis + 3 * TICK_MILLIS);
+    assertEquals(0, tracker.getDormantCount());
+    assertEquals(1, tracker.getPropagatedCount());
+  }
+
+  @Test
+  public void update_headedAwayStaysAwake() {
+    // no pass on the far side of the earth, so it's on its way to being removed
+    double farLat = -userLat;
+    double farLon = userLon + (userLon > 0 ? -180 : 180);
+    for (long t = startMillis; t <= startMillis + 60000; t += TICK_MILLIS) {
+      tracker.update(farLat, farLon, t);
+      assertEquals(0, tracker.getDormantCount());
+      assertEquals(1, tracker.getPropagatedCount());
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package com.neosensory.whatsup;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that interpolating between low-rate propagations stays close to propagating every tick,
+ * and that the tracker's own error measurement sees it.
+ */
+public class SatelliteTrackerInterpolationTest {
+  private static final long TICK_MILLIS = 50;
+  private static final long PROPAGATION_INTERVAL_MILLIS = 1000;
+  private static final int TICKS = 12000; // 10 minutes
+  private static final double MAX_ERROR_KM = 0.001;
+
+  @Test
+  public void interpolatedPositions_matchPropagation() {
+    int count = TestTles.LOW_EARTH.length;
+    SatelliteStore store = new SatelliteStore(count);
+    OrbitalState[] orbitalStates = new OrbitalState[count];
+    int[] slots = new int[count];
+    long startMillis = StoreFixtures.addTles(store, TestTles.LOW_EARTH, orbitalStates, slots);
+    SatelliteTracker tracker = new SatelliteTracker(store, 300, null);
+    tracker.setPropagationInterval(PROPAGATION_INTERVAL_MILLIS);
+
+    double maxErrorKm = 0;
+    double[] lla = new double[3];
+    for (int tick = 0; tick < TICKS; tick++) {
+      long timeMillis = startMillis + tick * TICK_MILLIS;
+      tracker.update(29.76, -95.37, timeMillis);
+      for (int i = 0; i < count; i++) {
+        assertTrue(orbitalStates[i].getPosition(timeMillis, lla));
+        double surfaceError =
+            Utilities.getDistance(
+                lla[0], store.getLatitude(slots[i]), lla[1], store.getLongitude(slots[i]));
+        double altitudeError = lla[2] - store.getAltitude(slots[i]);
+        maxErrorKm =
+            Math.max(
+                maxErrorKm, Math.sqrt(surfaceError * surfaceError + altitudeError * altitudeError));
+      }
+    }
+
+    assertTrue("max interpolation error " + maxErrorKm + " km", maxErrorKm < MAX_ERROR_KM);
+    assertTrue(tracker.getInterpolationErrorChecks() > 0);
+    assertTrue(tracker.getMaxInterpolationErrorKm() > 0);
+    assertTrue(tracker.getMaxInterpolationErrorKm() <= maxErrorKm);
+  }
+}
@@ -0,0 +1,37 @@
+package com.neosensory.whatsup;
+
+/**
+ * Fills a store with satellites that already have their TLEs, as the tracker sees them once
+ * admission and TLE requests are done. Public and free of test dependencies so the benchmarks can
+ * compile it too.
+ */
+public final class StoreFixtures {
+  private StoreFixtures() {}
+
+  /**
+   * Allocate a slot for each TLE and give it its orbital state
+   *
+   * @param store the store to fill, with room for every TLE
+   * @param tles {line 1, line 2} pairs
+   * @param outOrbitalStates receives each TLE's orbital state, or null
+   * @param outSlots receives each TLE's slot, or null
+   * @return the latest TLE epoch (ms), a time at which every satellite can be propagated
+   */
+  public static long addTles(
+      SatelliteStore store, String[][] tles, OrbitalState[] outOrbitalStates, int[] outSlots) {
+    long latestEpochMillis = 0;
+    for (int i = 0; i < tles.length; i++) {
+      OrbitalState orbitalState = OrbitalState.fromTle(tles[i][0], tles[i][1]);
+      int slot = store.allocate(orbitalState.getNoradId(), "", "", 0, 0, 0);
+      store.setOrbitalState(slot, orbitalState);
+      latestEpochMillis = Math.max(latestEpochMillis, orbitalState.getEpochMillis());
+      if (outOrbitalStates != null) {
+        outOrbitalStates[i] = orbitalState;
+      }
+      if (outSlots != null) {
+        outSlots[i] = slot;
+      }
+    }
+    return latestEpochMillis;
+  }
+}
@@ -0,0 +1,31 @@
+package com.neosensory.whatsup;
+
+/** Published TLEs (the ISS and objects from the SGP4 verification set) for tests. */
+final class TestTles {
+  static final String[][] LOW_EARTH = {
+    {
+      "1 25544U 98067A   08264.51782528 -.00002182  00000-0 -11606-4 0  2927",
+      "2 25544  51.6416 247.4627 0006703 130.5360 325.0288 15.72125391563537"
+    },
+    {
+      "1 06251U 62025E   06176.82412014  .00008885  00000-0  12808-3 0  3985",
+      "2 06251  58.0579  54.0425 0030035 139.1568 221.1854 15.56387291  6774"
+    },
+    {
+      "1 28057U 03049A   06177.78615833  .00000060  00000-0  35940-4 0  1836",
+      "2 28057  98.4283 247.6961 0000884  88.1964 272.0056 14.34857809140017"
+    },
+    {
+      "1 00005U 58002B   00179.78495062  .00000023  00000-0  28098-4 0  4753",
+      "2 00005  34.2682 348.7242 1859667 331.7664  19.3264 10.82419157413667"
+    },
+  };
+
+  // GPS satellite (12 hour orbit), propagated with the SDP4 deep-space terms
+  static final String[] DEEP_SPACE = {
+    "1 28129U 03058A   06175.57071136 -.00000104  00000-0  10000-3 0   459",
+    "2 28129  54.7298 324.8098 0048506 266.2640  93.1663  2.00562768 18443"
+  };
+
+  private TestTles() {}
+}
@@ -0,0 +1,100 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Drives the scheduler on a fake clock: catching up, skipping ticks and counting overruns. */
+public class TickSchedulerTest {
+  private static final long PERIOD_MILLIS = 50;
+  private static final long PERIOD_NANOS = PERIOD_MILLIS * 1000000;
+
+  private long nowNanos;
+  private long sleptNanos;
+  private final TickScheduler.Clock clock =
+      new TickScheduler.Clock() {
+        @Override
+        public long nanoTime() {
+          return nowNanos;
+        }
+
+        @Override
+        public void sleepNanos(long nanos) {
+          sleptNanos += nanos;
+          nowNanos += nanos;
+        }
+      };
+  private TickScheduler scheduler;
+
+  @Before
+  public void setUp() throws InterruptedException {
+    nowNanos = 1000000000L;
+    scheduler = new TickScheduler(PERIOD_MILLIS, clock);
+    assertEquals(0, scheduler.awaitNextTick());
+  }
+
+  @Test
+  public void onTimeTicks_sleepOutTheRestOfThePeriod() throws InterruptedException {
+    nowNanos += PERIOD_NANOS / 5;
+    assertEquals(0, scheduler.awaitNextTick());
+    assertEquals(PERIOD_NANOS * 4 / 5, sleptNanos);
+
+    // a tick that takes exactly the period is on time, not an overrun
+    nowNanos += PERIOD_NANOS;
+    assertEquals(0, scheduler.awaitNextTick());
+    assertEquals(0, scheduler.getOverrunCount());
+    assertEquals(3, scheduler.getTickCount());
+    assertEquals(0, scheduler.getLastLatenessNanos());
+  }
+
+  @Test
+  public void lateTick_isCaughtUpByTheNextOne() throws InterruptedException {
+    // overrun by 30 ms: the next tick starts straight away
+    nowNanos += PERIOD_NANOS + PERIOD_NANOS * 3 / 5;
+    assertEquals(0, scheduler.awaitNextTick());
+    assertEquals(0, sleptNanos);
+    assertEquals(PERIOD_NANOS * 3 / 5, scheduler.getLastLatenessNanos());
+
+    // and a quick tick after it gets back on the original schedule, with only 10 ms to sleep
+    nowNanos += PERIOD_NANOS / 5;
+    assertEquals(0, scheduler.awaitNextTick());
+    assertEquals(PERIOD_NANOS / 5, sleptNanos);
+    assertEquals(0, scheduler.getLastLatenessNanos());
+    assertEquals(1, scheduler.getOverrunCount());
+    assertEquals(0, scheduler.getSkippedTickCount());
+  }
+
+  @Test
+  public void farBehind_skipsTheMissedTicks() throws InterruptedException {
+    // 3.5 periods: the deadlines at 1, 2 and 3 periods are gone; 2 of them are skipped
+    nowNanos += PERIOD_NANOS * 7 / 2;
+    assertEquals(2, scheduler.awaitNextTick());
+    assertEquals(2, scheduler.getSkippedTickCount());
+    assertEquals(1, scheduler.getOverrunCount());
+    assertEquals(PERIOD_NANOS / 2, scheduler.getLastLatenessNanos());
+
+    // the schedule carries on from the last skipped deadline
+    assertEquals(0, scheduler.awaitNextTick());
+    assertEquals(PERIOD_NANOS / 2, sleptNanos);
+  }
+
+  @Test
+  public void isOverrun_onlyWhenLongerThanThePeriod() {
+    assertFalse(TickScheduler.isOverrun(PERIOD_NANOS - 1, PERIOD_NANOS));
+    assertFalse(TickScheduler.isOverrun(PERIOD_NANOS, PERIOD_NANOS));
+    assertTrue(TickScheduler.isOverrun(PERIOD_NANOS + 1, PERIOD_NANOS));
+  }
+
+  @Test
+  public void setPeriodMillis_appliesFromTheNextDeadline() throws InterruptedException {
+    scheduler.setPeriodMillis(2 * PERIOD_MILLIS);
+    // this tick started at the old period, so 60 ms is an overrun even though the new one's 100
+    nowNanos += PERIOD_NANOS * 6 / 5;
+    assertEquals(0, scheduler.awaitNextTick());
+    assertEquals(1, scheduler.getOverrunCount());
+    assertEquals(PERIOD_NANOS * 4 / 5, sleptNanos);
+  }
+}
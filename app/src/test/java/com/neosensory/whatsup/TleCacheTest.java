@@ -0,0 +1,155 @@
+package com.neosensory.whatsup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Checks TLEs survive a reopen, when they're due for a refresh, and that corruption is ignored. */
+public class TleCacheTest {
+  private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+  private static final long MAX_AGE_MILLIS = DAY_MILLIS;
+  private static final int HEADER_SIZE = 16;
+  private static final int RECORD_SIZE = 256;
+
+  private final String[] iss = TestTles.LOW_EARTH[0];
+  private final String[] vanguard = TestTles.LOW_EARTH[3];
+  private File file;
+  private TleCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("tle-cache", ".bin");
+    file.deleteOnExit();
+    cache = new TleCache(file, MAX_AGE_MILLIS);
+  }
+
+  @After
+  public void tearDown() {
+    cache.close();
+    file.delete();
+  }
+
+  @Test
+  public void put_roundTripsThroughTheFile() throws IOException {
+    cache.put(25544, "SPACE STATION", iss[0], iss[1], 1000);
+    cache.put(5, "VANGUARD 1", vanguard[0], vanguard[1], 2000);
+    // replacing an entry keeps one record for it
+    cache.put(25544, "ISS (ZARYA)", iss[0], iss[1], 3000);
+    reopen();
+
+    assertEquals(2, cache.size());
+    TleCache.Entry entry = cache.get(25544);
+    assertEquals("ISS (ZARYA)", entry.name);
+    assertEquals(iss[0], entry.line1);
+    assertEquals(iss[1], entry.line2);
+    assertEquals(3000, entry.fetchedAtMillis);
+    OrbitalState orbitalState = OrbitalState.fromTle(iss[0], iss[1]);
+    assertEquals(orbitalState.getEpochMillis(), entry.epochMillis);
+    assertEquals(orbitalState.getMeanMotion(), entry.meanMotion, 0);
+    List<TleCache.Entry> all = cache.getAll();
+    assertEquals(2, all.size());
+    assertEquals(25544, all.get(0).noradId);
+    assertEquals(5, all.get(1).noradId);
+  }
+
+  @Test
+  public void put_truncatesLongNamesAtACharacterBoundary() throws IOException {
+    // 46 ASCII bytes then a 2-byte character, which doesn't fit in the 47-byte field
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < 46; i++) {
+      name.append('A');
+    }
+    name.append("\u00e9\u00e9"); // "ee" with acute accents
+    cache.put(25544, name.toString(), iss[0], iss[1], 0);
+    reopen();
+
+    assertEquals(name.substring(0, 46), cache.get(25544).name);
+  }
+
+  @Test
+  public void needsRefresh_onceTheEpochIsOlderThanTheMaxAge() throws IOException {
+    // Vanguard 1 (10.8 rev/day) gets the full max age, the ISS (15.7 rev/day) a quarter of it
+    assertEquals(MAX_AGE_MILLIS, cache.getMaxAgeMillis(10.8));
+    assertEquals(MAX_AGE_MILLIS / 2, cache.getMaxAgeMillis(14.3));
+    assertEquals(MAX_AGE_MILLIS / 4, cache.getMaxAgeMillis(15.7));
+
+    long epochMillis = OrbitalState.fromTle(iss[0], iss[1]).getEpochMillis();
+    cache.put(25544, "ISS", iss[0], iss[1], epochMillis);
+    TleCache.Entry entry = cache.get(25544);
+    assertFalse(cache.needsRefresh(entry, epochMillis + MAX_AGE_MILLIS / 4));
+    // old enough, but just fetched: don't ask again yet
+    cache.put(25544, "ISS", iss[0], iss[1], epochMillis + DAY_MILLIS);
+    entry = cache.get(25544);
+    assertFalse(cache.needsRefresh(entry, epochMillis + DAY_MILLIS + 1000));
+    assertTrue(cache.needsRefresh(entry, epochMillis + 2 * DAY_MILLIS));
+  }
+
+  @Test
+  public void corruptRecord_isIgnored() throws IOException {
+    cache.put(25544, "ISS", iss[0], iss[1], 0);
+    cache.put(5, "VANGUARD 1", vanguard[0], vanguard[1], 0);
+    cache.close();
+    // tear the first record: a digit of its line 2 changes, as if a write never finished
+    RandomAccessFile raw = new RandomAccessFile(file, "rw");
+    raw.seek(HEADER_SIZE + 80 + 69 + 20);
+    raw.write('9');
+    raw.close();
+    cache = new TleCache(file, MAX_AGE_MILLIS);
+
+    assertNull(cache.get(25544));
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.getAll().size());
+    assertEquals(5, cache.getAll().get(0).noradId);
+    // a fresh TLE for the satellite is stored and read back
+    cache.put(25544, "ISS", iss[0], iss[1], 0);
+    reopen();
+    assertEquals(iss[1], cache.get(25544).line2);
+    assertEquals(2, cache.getAll().size());
+  }
+
+  @Test
+  public void unrecognizedFile_startsEmpty() throws IOException {
+    cache.close();
+    RandomAccessFile raw = new RandomAccessFile(file, "rw");
+    raw.setLength(0);
+    raw.write(new byte[HEADER_SIZE + RECORD_SIZE]);
+    raw.close();
+    cache = new TleCache(file, MAX_AGE_MILLIS);
+
+    assertEquals(0, cache.size());
+    cache.put(25544, "ISS", iss[0], iss[1], 0);
+    assertEquals(iss[0], cache.get(25544).line1);
+  }
+
+  @Test
+  public void headerOnlyFile_growsOnTheFirstPut() throws IOException {
+    cache.put(25544, "ISS", iss[0], iss[1], 0);
+    cache.close();
+    // a valid header with no records after it, e.g. the file was truncated
+    RandomAccessFile raw = new RandomAccessFile(file, "rw");
+    raw.setLength(HEADER_SIZE);
+    raw.close();
+    cache = new TleCache(file, MAX_AGE_MILLIS);
+
+    assertEquals(0, cache.size());
+    cache.put(5, "VANGUARD 1", vanguard[0], vanguard[1], 0);
+    reopen();
+    assertEquals(1, cache.size());
+    assertEquals(vanguard[1], cache.get(5).line2);
+  }
+
+  private void reopen() throws IOException {
+    cache.close();
+    cache = new TleCache(file, MAX_AGE_MILLIS);
+  }
+}
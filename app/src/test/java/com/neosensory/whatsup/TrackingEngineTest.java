@@ -0,0 +1,158 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks admission and removal, including a satellite admitted again while it's being removed, and
+ * the cooldown before a released satellite is admitted again.
+ */
+public class TrackingEngineTest {
+  private static final int MOTORS = 4;
+  private static final int MAX_SATELLITES = 2;
+  private static final double MAX_ALTITUDE_KM = 1000;
+  private static final double MAX_DISTANCE_KM = 300;
+  private static final int ISS = 25544;
+  private static final long COOLDOWN_MILLIS = 5 * 60 * 1000;
+  // reported over the Gulf of Guinea, far from the user
+  private static final String WHATS_UP =
+      "{\"info\":{\"category\":\"ANY\",\"satcount\":1},\"above\":["
+          + "{\"satid\":25544,\"satname\":\"SPACE STATION\",\"intDesignator\":\"1998-067A\","
+          + "\"satlat\":0,\"satlng\":0,\"satalt\":421.5}"
+          + "]}";
+
+  private static final HapticEncoder.Encoding SILENT =
+      new HapticEncoder.Encoding() {
+        @Override
+        public int[] getActivations(float intensity, float location) {
+          return new int[MOTORS];
+        }
+      };
+
+  // what the app keeps by NORAD ID, as MapsActivity's markers do
+  private final Map<Integer, Integer> tracked = new HashMap<Integer, Integer>();
+  private TrackingEngine engine;
+  // admission to run from inside onSatelliteRemoved, as another thread could at that moment
+  private boolean admitDuringRemoval;
+  private long epochMillis;
+  private double userLat;
+  private double userLon;
+
+  @Before
+  public void setUp() {
+    engine =
+        new TrackingEngine(
+            new HapticEncoder(SILENT, MOTORS, 11, 7),
+            MOTORS,
+            MAX_SATELLITES,
+            MAX_ALTITUDE_KM,
+            MAX_DISTANCE_KM,
+            1,
+            50,
+            2000,
+            0.5,
+            new TrackingEngine.Listener() {
+              @Override
+              public void onSatelliteAdded(int slot, int noradId) {
+                tracked.put(noradId, slot);
+              }
+
+              @Override
+              public void onSatelliteRemoved(int slot, int noradId) {
+                if (admitDuringRemoval) {
+                  admitDuringRemoval = false;
+                  admit();
+                }
+                tracked.remove(noradId);
+              }
+            });
+    // the user is on the other side of the earth from the ISS at its epoch
+    OrbitalState iss = OrbitalState.fromTle(TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]);
+    epochMillis = iss.getEpochMillis();
+    double[] lla = new double[3];
+    assertTrue(iss.getPosition(epochMillis, lla));
+    userLat = -lla[0];
+    userLon = lla[1] > 0 ? lla[1] - 180 : lla[1] + 180;
+    engine.tick(userLat, userLon, epochMillis);
+  }
+
+  @Test
+  public void admitWhatsUp_addsEachSatelliteOnce() {
+    admit();
+    admit();
+
+    assertEquals(1, tracked.size());
+    assertEquals(ISS, engine.getStore().getNoradId(tracked.get(ISS)));
+  }
+
+  @Test
+  public void removal_racingReadmission_leavesTheListenerInStep() {
+    admit();
+    int slot = tracked.get(ISS);
+    assertTrue(engine.applyTle(ISS, TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]));
+    // the app has cleared the marker, so the next tick releases the satellite, and a "What's Up"
+    // with it in arrives while the release is under way
+    engine.getStore().setFlag(slot, SatelliteStore.FLAG_READY_TO_REMOVE, true);
+    admitDuringRemoval = true;
+    engine.tick(userLat, userLon, epochMillis + 50);
+
+    assertFalse(admitDuringRemoval);
+    assertEquals(liveSatellites(), tracked.size());
+    assertTrue(engine.getStore().isEmpty());
+    // and once the removal is done it's admitted again as usual
+    admit();
+    assertEquals(1, liveSatellites());
+    assertEquals(ISS, engine.getStore().getNoradId(tracked.get(ISS)));
+    assertTrue(engine.applyTle(ISS, TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]));
+  }
+
+  @Test
+  public void releasedSatellite_isntAdmittedAgainUntilItsCooldownIsOver() {
+    engine.setReadmissionCooldown(COOLDOWN_MILLIS);
+    admit();
+    assertTrue(engine.applyTle(ISS, TestTles.LOW_EARTH[0][0], TestTles.LOW_EARTH[0][1]));
+    engine.getStore().setFlag(tracked.get(ISS), SatelliteStore.FLAG_READY_TO_REMOVE, true);
+    engine.tick(userLat, userLon, epochMillis + 50);
+    assertTrue(tracked.isEmpty());
+
+    // the next searches still see it, but it stays out
+    engine.tick(userLat, userLon, epochMillis + 5050);
+    admit();
+    engine.tick(userLat, userLon, epochMillis + COOLDOWN_MILLIS);
+    admit();
+    assertTrue(tracked.isEmpty());
+    assertTrue(engine.getStore().isEmpty());
+
+    engine.tick(userLat, userLon, epochMillis + 50 + COOLDOWN_MILLIS);
+    admit();
+    assertEquals(ISS, engine.getStore().getNoradId(tracked.get(ISS)));
+  }
+
+  private void admit() {
+    try {
+      engine.admitWhatsUp(new StringReader(WHATS_UP));
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private int liveSatellites() {
+    int count = 0;
+    SatelliteStore store = engine.getStore();
+    for (int slot = 0; slot < store.getHighWater(); slot++) {
+      if (store.isLive(slot)) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
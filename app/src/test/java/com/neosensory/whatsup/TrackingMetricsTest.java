@@ -0,0 +1,52 @@
+package com.neosensory.whatsup;
+
+import com.neosensory.n2yo.N2YO;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Checks the pipeline metrics' bookkeeping. */
+public class TrackingMetricsTest {
+  private static final double EPSILON = 1e-9;
+
+  @Test
+  public void n2yoRoundTrips_matchRequestsByTypeAndKey() {
+    TrackingMetrics metrics = new TrackingMetrics();
+    metrics.n2yoRequestSent(N2YO.CallId.TLE, 25544, 1000000);
+    metrics.n2yoRequestSent(N2YO.CallId.TLE, 20580, 2000000);
+    metrics.n2yoRequestSent(N2YO.CallId.WHATSUP, 0, 3000000);
+    metrics.n2yoResponseReceived(N2YO.CallId.TLE, 20580, 7000000);
+    // no matching request: ignored
+    metrics.n2yoResponseReceived(N2YO.CallId.TLE, 1, 8000000);
+    TrackingMetrics.Snapshot snapshot = metrics.snapshot();
+
+    assertEquals(1, snapshot.n2yoRoundTrips.get(N2YO.CallId.TLE).getCount());
+    assertEquals(5, snapshot.n2yoRoundTrips.get(N2YO.CallId.TLE).getMaxMillis(), EPSILON);
+    assertEquals(0, snapshot.n2yoRoundTrips.get(N2YO.CallId.WHATSUP).getCount());
+  }
+
+  @Test
+  public void ticks_countOverrunsAndSkips() {
+    TrackingMetrics metrics = new TrackingMetrics();
+    metrics.recordTick(10000000, 50000000, 0);
+    metrics.recordTick(60000000, 50000000, 0);
+    metrics.recordTick(120000000, 50000000, 2);
+    metrics.recordPropagation(1000000, 100);
+    metrics.recordPropagation(5000000, 0); // nothing propagated: not recorded
+    metrics.satelliteAdded();
+    metrics.satelliteAdded();
+    metrics.satelliteRemoved();
+    TrackingMetrics.Snapshot snapshot = metrics.snapshot();
+
+    assertEquals(3, snapshot.tickDuration.getCount());
+    assertEquals(2, snapshot.tickOverruns);
+    assertEquals(2, snapshot.skippedTicks);
+    assertEquals(1, snapshot.propagationPerSatellite.getCount());
+    assertEquals(0.01, snapshot.propagationPerSatellite.getMaxMillis(), EPSILON);
+    assertEquals(2, snapshot.satellitesAdded);
+    assertEquals(1, snapshot.satellitesRemoved);
+    assertTrue(metrics.dump().contains("satellites added: 2, removed: 1"));
+  }
+}
@@ -0,0 +1,99 @@
+package com.neosensory.whatsup;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/** Checks the shared-trig distance and bearing helpers against getDistance and getBearing. */
+public class UtilitiesTest {
+  private static final double DISTANCE_TOLERANCE_KM = 1e-6;
+  private static final double BEARING_TOLERANCE_DEGREES = 1e-6;
+
+  // {lat1, lon1, lat2, lon2}
+  private static final double[][] CASES = {
+    {37.4, -122.1, 40.7, -74.0},
+    // either side of the antimeridian, both ways
+    {10, 179.5, -5, -179.5},
+    {-5, -179.5, 10, 179.5},
+    {0, 180, 0, -180},
+    // from and to the poles
+    {90, 0, 45, 30},
+    {-90, 0, -80, 100},
+    {45, 10, 90, 0},
+    {-30, -60, -90, 0},
+    {90, 0, -90, 0},
+    // coincident points
+    {37.4, -122.1, 37.4, -122.1},
+    {0, 0, 0, 0},
+    {90, 0, 90, 0},
+    // nearly antipodal
+    {0, 0, 0.001, 179.999}
+  };
+
+  @Test
+  public void getDistanceAndBearing_matchesGetDistanceAndGetBearing() {
+    double[] out = new double[2];
+    for (double[] c : CASES) {
+      Utilities.getDistanceAndBearing(c[0], c[2], c[1], c[3], out);
+      assertMatches(c, out[0], out[1]);
+    }
+  }
+
+  @Test
+  public void getDistancesAndBearings_matchesGetDistanceAndGetBearing() {
+    double[] lats = new double[CASES.length];
+    double[] lons = new double[CASES.length];
+    double[] distances = new double[CASES.length];
+    double[] bearings = new double[CASES.length];
+    int[] indices = new int[CASES.length];
+    // one observer per call, so group the cases by their first point
+    for (int i = 0; i < CASES.length; i++) {
+      int count = 0;
+      for (int j = 0; j < CASES.length; j++) {
+        if (CASES[j][0] == CASES[i][0] && CASES[j][1] == CASES[i][1]) {
+          lats[j] = CASES[j][2];
+          lons[j] = CASES[j][3];
+          indices[count++] = j;
+        }
+      }
+      Utilities.getDistancesAndBearings(
+          CASES[i][0], CASES[i][1], lats, lons, indices, count, distances, bearings);
+      assertMatches(CASES[i], distances[i], bearings[i]);
+    }
+  }
+
+  @Test
+  public void getDistancesAndBearings_matchesOverTheGlobe() {
+    Random random = new Random(7);
+    int points = 1000;
+    double[] lats = new double[points];
+    double[] lons = new double[points];
+    double[] distances = new double[points];
+    double[] bearings = new double[points];
+    int[] indices = new int[points];
+    for (int i = 0; i < points; i++) {
+      lats[i] = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+      lons[i] = random.nextDouble() * 360 - 180;
+      indices[i] = i;
+    }
+    double obsLat = 37.4;
+    double obsLon = -122.1;
+    Utilities.getDistancesAndBearings(
+        obsLat, obsLon, lats, lons, indices, points, distances, bearings);
+    for (int i = 0; i < points; i++) {
+      assertMatches(new double[] {obsLat, obsLon, lats[i], lons[i]}, distances[i], bearings[i]);
+    }
+  }
+
+  private static void assertMatches(double[] c, double distance, double bearing) {
+    String where = "(" + c[0] + ", " + c[1] + ") to (" + c[2] + ", " + c[3] + ")";
+    assertEquals(
+        where, Utilities.getDistance(c[0], c[2], c[1], c[3]), distance, DISTANCE_TOLERANCE_KM);
+    double expected = Utilities.getBearing(c[0], c[2], c[1], c[3]);
+    // 359.9999... and 0 are the same direction
+    double difference = Math.abs(expected - bearing) % 360;
+    assertEquals(where, 0, Math.min(difference, 360 - difference), BEARING_TOLERANCE_DEGREES);
+  }
+}
@@ -0,0 +1,83 @@
+package com.neosensory.whatsup;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Checks which markers count as in view, including across the antimeridian, and update rates. */
+public class ViewportCullerTest {
+  private static final double MARGIN = 0.25;
+  private static final double DISTANT_KM = 150;
+  private static final int MAX_DISTANT_INTERVAL = 8;
+  private static final float FULL_RATE_ZOOM = 10;
+
+  private ViewportCuller culler;
+
+  @Before
+  public void setUp() {
+    culler = new ViewportCuller(MARGIN, DISTANT_KM, MAX_DISTANT_INTERVAL, FULL_RATE_ZOOM);
+  }
+
+  @Test
+  public void everythingIsVisible_untilTheRegionIsSet() {
+    assertTrue(culler.isVisible(89, 179));
+    assertTrue(culler.isVisible(-89, -179));
+  }
+
+  @Test
+  public void isVisible_includesTheMargin() {
+    // 10 degrees square, so the margin is 2.5 degrees on each side
+    culler.setVisibleRegion(20, -100, 30, -90);
+
+    assertTrue(culler.isVisible(25, -95));
+    assertTrue(culler.isVisible(17.6, -102.4));
+    assertTrue(culler.isVisible(32.4, -87.6));
+    assertFalse(culler.isVisible(17.4, -95));
+    assertFalse(culler.isVisible(32.6, -95));
+    assertFalse(culler.isVisible(25, -102.6));
+    assertFalse(culler.isVisible(25, -87.4));
+  }
+
+  @Test
+  public void isVisible_acrossTheAntimeridian() {
+    // 170E to 170W is 20 degrees wide, plus 5 either side
+    culler.setVisibleRegion(-10, 170, 10, -170);
+
+    assertTrue(culler.isVisible(0, 180));
+    assertTrue(culler.isVisible(0, -180));
+    assertTrue(culler.isVisible(0, 166));
+    assertTrue(culler.isVisible(0, -166));
+    assertFalse(culler.isVisible(0, 0));
+    assertFalse(culler.isVisible(0, 164));
+    assertFalse(culler.isVisible(0, -164));
+  }
+
+  @Test
+  public void isVisible_whenTheMarginWrapsTheWholeGlobe() {
+    // 300 degrees wide plus 75 either side: every longitude, but still only 45S to 45N
+    culler.setVisibleRegion(-30, -150, 30, 150);
+
+    assertTrue(culler.isVisible(0, 0));
+    assertTrue(culler.isVisible(0, 180));
+    assertTrue(culler.isVisible(44, -179));
+    assertFalse(culler.isVisible(46, 0));
+  }
+
+  @Test
+  public void getUpdateInterval_slowsDistantMarkersAsTheCameraZoomsOut() {
+    culler.setVisibleRegion(20, -100, 30, -90);
+
+    culler.setZoom(FULL_RATE_ZOOM);
+    assertEquals(1, culler.getUpdateInterval(25, -95, DISTANT_KM * 2));
+    culler.setZoom(FULL_RATE_ZOOM - 2);
+    assertEquals(4, culler.getUpdateInterval(25, -95, DISTANT_KM * 2));
+    assertEquals(1, culler.getUpdateInterval(25, -95, DISTANT_KM / 2));
+    culler.setZoom(0);
+    assertEquals(MAX_DISTANT_INTERVAL, culler.getUpdateInterval(25, -95, DISTANT_KM * 2));
+    // out of view: not updated at all
+    assertEquals(0, culler.getUpdateInterval(50, -95, DISTANT_KM / 2));
+  }
+}
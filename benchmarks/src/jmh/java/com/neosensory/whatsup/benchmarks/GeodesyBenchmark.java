@@ -0,0 +1,66 @@
+package com.neosensory.whatsup.benchmarks;
+
+import com.neosensory.whatsup.Utilities;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Per-call cost of the Utilities helpers used for every satellite on every tick. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeodesyBenchmark {
+  private static final int POINTS = 1024; // power of two, so the index can wrap with a mask
+
+  private final double[] lats = new double[POINTS];
+  private final double[] lons = new double[POINTS];
+  private final float[] values = new float[POINTS];
+  private final double[] distanceAndBearing = new double[2];
+  private int next;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    for (int i = 0; i < POINTS; i++) {
+      lats[i] = random.nextDouble() * 180 - 90;
+      lons[i] = random.nextDouble() * 360 - 180;
+      values[i] = random.nextFloat() * 600;
+    }
+  }
+
+  @Benchmark
+  public float getLinearMap() {
+    int i = next++ & (POINTS - 1);
+    return Utilities.getLinearMap(values[i], 0, 300, 1, 0, true);
+  }
+
+  @Benchmark
+  public double getDistance() {
+    int i = next++ & (POINTS - 1);
+    int j = (i + 1) & (POINTS - 1);
+    return Utilities.getDistance(lats[i], lats[j], lons[i], lons[j]);
+  }
+
+  @Benchmark
+  public double getBearing() {
+    int i = next++ & (POINTS - 1);
+    int j = (i + 1) & (POINTS - 1);
+    return Utilities.getBearing(lats[i], lats[j], lons[i], lons[j]);
+  }
+
+  @Benchmark
+  public double[] getDistanceAndBearing() {
+    int i = next++ & (POINTS - 1);
+    int j = (i + 1) & (POINTS - 1);
+    Utilities.getDistanceAndBearing(lats[i], lats[j], lons[i], lons[j], distanceAndBearing);
+    return distanceAndBearing;
+  }
+}
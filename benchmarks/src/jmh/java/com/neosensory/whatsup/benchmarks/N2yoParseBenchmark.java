@@ -0,0 +1,94 @@
+package com.neosensory.whatsup.benchmarks;
+
+import com.neosensory.whatsup.N2yoResponseParser;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of handling one n2yo.com response: the streaming parser against the org.json tree that the
+ * response receiver used to build (and re-serialize for logging).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class N2yoParseBenchmark {
+  @Param({"100", "1000", "10000"})
+  public int satelliteCount;
+
+  private String whatsUp;
+  private String tle;
+  private double checksum;
+
+  private final N2yoResponseParser.WhatsUpHandler whatsUpHandler =
+      new N2yoResponseParser.WhatsUpHandler() {
+        @Override
+        public void onSatellite(
+            int noradId,
+            String name,
+            String intlDesignator,
+            double latitude,
+            double longitude,
+            double altitude) {
+          checksum += noradId + latitude + longitude + altitude + name.length();
+        }
+      };
+
+  private final N2yoResponseParser.TleHandler tleHandler =
+      new N2yoResponseParser.TleHandler() {
+        @Override
+        public void onTle(int noradId, String name, String line1, String line2) {
+          checksum += noradId + line1.length() + line2.length();
+        }
+      };
+
+  @Setup
+  public void setUp() {
+    whatsUp = N2yoResponseFixtures.whatsUp(satelliteCount);
+    tle = N2yoResponseFixtures.tle();
+  }
+
+  @Benchmark
+  public double streamingWhatsUp() throws IOException {
+    N2yoResponseParser.parseWhatsUp(new StringReader(whatsUp), whatsUpHandler);
+    return checksum;
+  }
+
+  @Benchmark
+  public double jsonObjectWhatsUp() throws JSONException {
+    JSONObject response = new JSONObject(whatsUp);
+    int count = response.getJSONObject("info").getInt("satcount");
+    JSONArray above = response.getJSONArray("above");
+    for (int i = 0; i < count; i++) {
+      JSONObject satellite = above.getJSONObject(i);
+      whatsUpHandler.onSatellite(
+          satellite.getInt("satid"),
+          satellite.getString("satname"),
+          satellite.getString("intDesignator"),
+          satellite.getDouble("satlat"),
+          satellite.getDouble("satlng"),
+          satellite.getDouble("satalt"));
+    }
+    // the old receiver logged the whole response by re-serializing the tree
+    return checksum + response.toString().length();
+  }
+
+  @Benchmark
+  public double streamingTle() throws IOException {
+    N2yoResponseParser.parseTle(new StringReader(tle), tleHandler);
+    return checksum;
+  }
+}
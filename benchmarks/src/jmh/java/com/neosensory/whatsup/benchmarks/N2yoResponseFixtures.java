@@ -0,0 +1,63 @@
+package com.neosensory.whatsup.benchmarks;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * n2yo.com responses in the shape the API returns them, including the fields the app ignores, so
+ * the parser benchmarks see realistic payloads of any size.
+ */
+final class N2yoResponseFixtures {
+  private N2yoResponseFixtures() {}
+
+  /**
+   * Build a "What's Up" response
+   *
+   * @param count the number of satellites above the observer
+   * @return the response JSON
+   */
+  static String whatsUp(int count) {
+    Random random = new Random(42);
+    StringBuilder json = new StringBuilder(count * 200);
+    json.append("{\"info\":{\"category\":\"ANY\",\"transactionscount\":17,\"satcount\":")
+        .append(count)
+        .append("},\"above\":[");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      int year = 1960 + random.nextInt(60);
+      json.append(
+          String.format(
+              Locale.US,
+              "{\"satid\":%d,\"satname\":\"COSMOS %d DEB\",\"intDesignator\":\"%d-%03dA\","
+                  + "\"launchDate\":\"%d-%02d-%02d\",\"satlat\":%.4f,\"satlng\":%.4f,"
+                  + "\"satalt\":%.4f}",
+              10000 + i,
+              1000 + i,
+              year,
+              1 + random.nextInt(120),
+              year,
+              1 + random.nextInt(12),
+              1 + random.nextInt(28),
+              random.nextDouble() * 180 - 90,
+              random.nextDouble() * 360 - 180,
+              300 + random.nextDouble() * 1700));
+    }
+    return json.append("]}").toString();
+  }
+
+  /**
+   * Build a get TLE response for the ISS
+   *
+   * @return the response JSON
+   */
+  static String tle() {
+    return "{\"info\":{\"satid\":25544,\"satname\":\"SPACE STATION\",\"transactionscount\":4},"
+        + "\"tle\":\""
+        + TleFixtures.LOW_EARTH[0][0]
+        + "\\r\\n"
+        + TleFixtures.LOW_EARTH[0][1]
+        + "\"}";
+  }
+}
@@ -0,0 +1,62 @@
+package com.neosensory.whatsup.benchmarks;
+
+import com.neosensory.tlepredictionengine.TlePredictionEngine;
+import com.neosensory.whatsup.OrbitalState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-satellite propagation with real TLEs: TlePredictionEngine re-parses the TLE strings on
+ * every call, OrbitalState parses once up front.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PropagationBenchmark {
+  private static final long TICK_MILLIS = 50;
+
+  /** Which TLE: ISS, a decaying debris object, sun-synchronous, Vanguard 1, or deep-space GPS */
+  @Param({"25544", "06251", "28057", "00005", "28129"})
+  public String noradId;
+
+  private String tle1;
+  private String tle2;
+  private OrbitalState orbitalState;
+  private final double[] latLonAlt = new double[3];
+  private long timeMillis;
+
+  @Setup
+  public void setUp() {
+    String[] tle = TleFixtures.DEEP_SPACE;
+    for (String[] candidate : TleFixtures.LOW_EARTH) {
+      if (candidate[0].substring(2, 7).equals(noradId)) {
+        tle = candidate;
+      }
+    }
+    tle1 = tle[0];
+    tle2 = tle[1];
+    orbitalState = OrbitalState.fromTle(tle1, tle2);
+    timeMillis = orbitalState.getEpochMillis();
+  }
+
+  @Benchmark
+  public double[] tlePredictionEngine() {
+    return TlePredictionEngine.getSatellitePosition(tle1, tle2, true);
+  }
+
+  @Benchmark
+  public double[] orbitalState() {
+    timeMillis += TICK_MILLIS;
+    orbitalState.getPosition(timeMillis, latLonAlt);
+    return latLonAlt;
+  }
+}
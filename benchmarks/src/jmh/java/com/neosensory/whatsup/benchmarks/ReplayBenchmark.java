@@ -0,0 +1,158 @@
+package com.neosensory.whatsup.benchmarks;
+
+import com.neosensory.whatsup.HapticEncoder;
+import com.neosensory.whatsup.OrbitalState;
+import com.neosensory.whatsup.PassPredictor;
+import com.neosensory.whatsup.ReplayDriver;
+import com.neosensory.whatsup.TrackingEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays an hour of tracking over a 2,000-satellite catalog through the headless tracking engine:
+ * a "What's Up" response every two minutes, TLEs for the admitted satellites, and a tick every
+ * 50 ms with propagation, the range rules and motor frame rendering. The score is simulated hours
+ * per second. The app tracks MAXSATELLITES = 20 today; the larger limit shows what more would
+ * cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReplayBenchmark {
+  // as in MapsActivity
+  private static final int NUM_MOTORS = 4;
+  private static final double MAX_ALTITUDE = 6000;
+  private static final double MAX_SURFACE_DISTANCE_TO_USER = 300;
+  private static final int HAPTIC_SATELLITES = 3;
+  private static final long TICK_MILLIS = 50;
+  private static final long PROPAGATION_INTERVAL_MILLIS = 1000;
+  private static final long PASS_HORIZON_MILLIS = 10 * 60 * 1000;
+  private static final long PASS_STEP_MILLIS = 20000;
+  private static final double PASS_OBSERVER_MOVE_KM = 5;
+  private static final long LOOKAHEAD_MILLIS = 2000;
+  private static final double LOOKAHEAD_MOVE_KM = 0.5;
+  private static final long MAX_DORMANT_MILLIS = 60000;
+  private static final long IDLE_TICK_MILLIS = 500;
+  private static final long WHATS_UP_PERIOD_MILLIS = 120000;
+  private static final long TLE_DELAY_MILLIS = 500;
+
+  private static final int CATALOG_SIZE = 2000;
+  private static final long DURATION_MILLIS = 60 * 60 * 1000;
+  // observer: Houston, TX
+  private static final double USER_LATITUDE = 29.76;
+  private static final double USER_LONGITUDE = -95.37;
+
+  // intensity panned across the motors by bearing
+  private static final HapticEncoder.Encoding PANNED =
+      new HapticEncoder.Encoding() {
+        @Override
+        public int[] getActivations(float intensity, float location) {
+          int[] activations = new int[NUM_MOTORS];
+          float position = location * (NUM_MOTORS - 1);
+          int motor = Math.min(NUM_MOTORS - 2, (int) position);
+          float fraction = position - motor;
+          activations[motor] = Math.round(255 * intensity * (1 - fraction));
+          activations[motor + 1] = Math.round(255 * intensity * fraction);
+          return activations;
+        }
+      };
+
+  @Param({"20", "500"})
+  public int maxSatellites;
+
+  private ReplayDriver.Recording recording;
+
+  @Setup
+  public void setUp() {
+    String[][] catalog = TleFixtures.catalog(CATALOG_SIZE);
+    OrbitalState[] orbitalStates = new OrbitalState[catalog.length];
+    long startMillis = 0;
+    for (int i = 0; i < catalog.length; i++) {
+      orbitalStates[i] = OrbitalState.fromTle(catalog[i][0], catalog[i][1]);
+      startMillis = Math.max(startMillis, orbitalStates[i].getEpochMillis());
+    }
+    recording = new ReplayDriver.Recording();
+    for (long t = 0; t <= DURATION_MILLIS; t += 1000) {
+      recording.addLocation(startMillis + t, USER_LATITUDE, USER_LONGITUDE, 0);
+    }
+    double[] latLonAlt = new double[3];
+    for (long t = 0; t <= DURATION_MILLIS; t += WHATS_UP_PERIOD_MILLIS) {
+      StringBuilder json = new StringBuilder("{\"info\":{\"category\":\"ANY\"},\"above\":[");
+      boolean first = true;
+      for (OrbitalState orbitalState : orbitalStates) {
+        if (!orbitalState.getPosition(startMillis + t, latLonAlt)) {
+          continue;
+        }
+        if (!first) {
+          json.append(',');
+        }
+        first = false;
+        json.append(
+            String.format(
+                Locale.US,
+                "{\"satid\":%d,\"satname\":\"SAT %d\",\"intDesignator\":\"2000-001A\","
+                    + "\"satlat\":%.4f,\"satlng\":%.4f,\"satalt\":%.4f}",
+                orbitalState.getNoradId(),
+                orbitalState.getNoradId(),
+                latLonAlt[0],
+                latLonAlt[1],
+                latLonAlt[2]));
+      }
+      recording.addWhatsUp(startMillis + t, json.append("]}").toString());
+    }
+    for (String[] tle : catalog) {
+      int noradId = Integer.parseInt(tle[0].substring(2, 7));
+      recording.addTle(
+          noradId,
+          "{\"info\":{\"satid\":"
+              + noradId
+              + ",\"satname\":\"SAT "
+              + noradId
+              + "\"},\"tle\":\""
+              + tle[0]
+              + "\\r\\n"
+              + tle[1]
+              + "\"}");
+    }
+  }
+
+  /** Replay the hour; one operation is one simulated hour */
+  @Benchmark
+  public long replayHour() throws IOException {
+    ReplayDriver driver = new ReplayDriver(recording, TICK_MILLIS, TLE_DELAY_MILLIS);
+    TrackingEngine engine =
+        new TrackingEngine(
+            new HapticEncoder(PANNED, NUM_MOTORS, 64, 181),
+            NUM_MOTORS,
+            maxSatellites,
+            MAX_ALTITUDE,
+            MAX_SURFACE_DISTANCE_TO_USER,
+            HAPTIC_SATELLITES,
+            TICK_MILLIS,
+            LOOKAHEAD_MILLIS,
+            LOOKAHEAD_MOVE_KM,
+            driver);
+    engine.getTracker().setPropagationInterval(PROPAGATION_INTERVAL_MILLIS);
+    engine
+        .getTracker()
+        .setPassPredictor(
+            new PassPredictor(
+                MAX_SURFACE_DISTANCE_TO_USER,
+                PASS_HORIZON_MILLIS,
+                PASS_STEP_MILLIS,
+                PASS_OBSERVER_MOVE_KM));
+    engine.getTracker().setDormancy(MAX_DORMANT_MILLIS, LOOKAHEAD_MILLIS + IDLE_TICK_MILLIS);
+    return driver.run(engine, null) + driver.getAddedCount();
+  }
+}
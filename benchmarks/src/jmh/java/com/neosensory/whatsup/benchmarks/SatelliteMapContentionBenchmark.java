@@ -0,0 +1,213 @@
+package com.neosensory.whatsup.benchmarks;
+
+import com.neosensory.whatsup.IntSatelliteMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IntSatelliteMap against Hashtable and ConcurrentHashMap. The "mixed" group runs the app's mix of
+ * threads at once: two sweepers (the compute thread walking every satellite each tick and the UI
+ * thread each frame) and two ingestion threads that look up NORAD IDs and now and then admit or
+ * drop a satellite. "write" is a lone put and remove, which for IntSatelliteMap copies the whole
+ * table; the larger sizes show how that grows.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SatelliteMapContentionBenchmark {
+  private static final int WRITE_EVERY_N_LOOKUPS = 64; // admissions are rare compared to lookups
+
+  @Param({"IntSatelliteMap", "ConcurrentHashMap", "Hashtable"})
+  public String implementation;
+
+  /** Satellites in the map; the app tracks MAXSATELLITES = 20 */
+  @Param({"20", "500", "20000"})
+  public int tracked;
+
+  private SatelliteMap map;
+  // twice as many candidates as are tracked, so ingestion finds about half of them missing
+  private Tracked[] candidates;
+
+  @Setup
+  public void setUp() {
+    if (implementation.equals("Hashtable")) {
+      map = new HashtableMap();
+    } else if (implementation.equals("ConcurrentHashMap")) {
+      map = new ConcurrentMap();
+    } else {
+      map = new CopyOnWriteMap();
+    }
+    candidates = new Tracked[tracked * 2];
+    for (int i = 0; i < candidates.length; i++) {
+      candidates[i] = new Tracked(10000 + i, i);
+    }
+    for (int i = 0; i < tracked; i++) {
+      map.put(candidates[i].noradId, candidates[i]);
+    }
+  }
+
+  /** Each ingestion thread's walk through the candidates */
+  @State(Scope.Thread)
+  public static class Cursor {
+    int next;
+    long lookups;
+  }
+
+  /** A compute or UI thread walking every satellite */
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(2)
+  public int sweep() {
+    return map.sweep();
+  }
+
+  /** An ingestion thread looking up a NORAD ID, and every so often admitting or dropping it */
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(2)
+  public Tracked ingest(Cursor cursor) {
+    Tracked candidate = candidates[cursor.next];
+    cursor.next = (cursor.next + 7) % candidates.length;
+    long n = cursor.lookups++;
+    Tracked found = map.get(candidate.noradId);
+    if (found == null && n % WRITE_EVERY_N_LOOKUPS == 0) {
+      map.put(candidate.noradId, candidate);
+    } else if (found != null && n % WRITE_EVERY_N_LOOKUPS == 1) {
+      map.remove(candidate.noradId);
+    }
+    return found;
+  }
+
+  /** Admitting a satellite and dropping it again, uncontended */
+  @Benchmark
+  public int write() {
+    Tracked extra = candidates[tracked];
+    map.put(extra.noradId, extra);
+    map.remove(extra.noradId);
+    return extra.slot;
+  }
+
+  /** Stands in for a Satellite: a NORAD ID and a slot */
+  static final class Tracked {
+    final int noradId;
+    final int slot;
+
+    Tracked(int noradId, int slot) {
+      this.noradId = noradId;
+      this.slot = slot;
+    }
+  }
+
+  /** The operations the benchmark needs from each map implementation */
+  interface SatelliteMap {
+    Tracked get(int key);
+
+    void put(int key, Tracked satellite);
+
+    void remove(int key);
+
+    // visit every value, returning something derived from them so the JIT can't drop the loop
+    int sweep();
+  }
+
+  static final class HashtableMap implements SatelliteMap {
+    private final Hashtable<Integer, Tracked> map = new Hashtable<Integer, Tracked>();
+
+    @Override
+    public Tracked get(int key) {
+      return map.get(key);
+    }
+
+    @Override
+    public void put(int key, Tracked satellite) {
+      map.put(key, satellite);
+    }
+
+    @Override
+    public void remove(int key) {
+      map.remove(key);
+    }
+
+    @Override
+    public int sweep() {
+      // what the tick loops did before: copy the values and cast each one back
+      Object[] values = map.values().toArray();
+      int sum = 0;
+      for (int i = 0; i < values.length; i++) {
+        sum += ((Tracked) values[i]).slot;
+      }
+      return sum;
+    }
+  }
+
+  static final class ConcurrentMap implements SatelliteMap {
+    private final Map<Integer, Tracked> map = new ConcurrentHashMap<Integer, Tracked>();
+
+    @Override
+    public Tracked get(int key) {
+      return map.get(key);
+    }
+
+    @Override
+    public void put(int key, Tracked satellite) {
+      map.put(key, satellite);
+    }
+
+    @Override
+    public void remove(int key) {
+      map.remove(key);
+    }
+
+    @Override
+    public int sweep() {
+      int sum = 0;
+      for (Tracked satellite : map.values()) {
+        sum += satellite.slot;
+      }
+      return sum;
+    }
+  }
+
+  static final class CopyOnWriteMap implements SatelliteMap {
+    private final IntSatelliteMap<Tracked> map = new IntSatelliteMap<Tracked>();
+
+    @Override
+    public Tracked get(int key) {
+      return map.get(key);
+    }
+
+    @Override
+    public void put(int key, Tracked satellite) {
+      map.put(key, satellite);
+    }
+
+    @Override
+    public void remove(int key) {
+      map.remove(key);
+    }
+
+    @Override
+    public int sweep() {
+      IntSatelliteMap.Snapshot<Tracked> snapshot = map.snapshot();
+      int sum = 0;
+      for (int i = 0; i < snapshot.size(); i++) {
+        sum += snapshot.get(i).slot;
+      }
+      return sum;
+    }
+  }
+}
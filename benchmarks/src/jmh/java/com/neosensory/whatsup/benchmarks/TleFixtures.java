@@ -0,0 +1,80 @@
+package com.neosensory.whatsup.benchmarks;
+
+import java.util.Locale;
+
+/**
+ * Real TLEs for the benchmarks, plus a synthetic catalog of any size built by spreading copies of
+ * the low-earth ones around their orbits.
+ */
+final class TleFixtures {
+  // published TLEs (from the SGP4 verification set and the ISS)
+  static final String[][] LOW_EARTH = {
+    {
+      "1 25544U 98067A   08264.51782528 -.00002182  00000-0 -11606-4 0  2927",
+      "2 25544  51.6416 247.4627 0006703 130.5360 325.0288 15.72125391563537"
+    },
+    {
+      "1 06251U 62025E   06176.82412014  .00008885  00000-0  12808-3 0  3985",
+      "2 06251  58.0579  54.0425 0030035 139.1568 221.1854 15.56387291  6774"
+    },
+    {
+      "1 28057U 03049A   06177.78615833  .00000060  00000-0  35940-4 0  1836",
+      "2 28057  98.4283 247.6961 0000884  88.1964 272.0056 14.34857809140017"
+    },
+    {
+      "1 00005U 58002B   00179.78495062  .00000023  00000-0  28098-4 0  4753",
+      "2 00005  34.2682 348.7242 1859667 331.7664  19.3264 10.82419157413667"
+    },
+  };
+
+  // GPS satellite (12 hour orbit), which takes the SDP4 deep-space path
+  static final String[] DEEP_SPACE = {
+    "1 28129U 03058A   06175.57071136 -.00000104  00000-0  10000-3 0   459",
+    "2 28129  54.7298 324.8098 0048506 266.2640  93.1663  2.00562768 18443"
+  };
+
+  private TleFixtures() {}
+
+  /**
+   * Build a catalog by copying the low-earth TLEs with new NORAD IDs and spreading the copies'
+   * ascending nodes and mean anomalies evenly, so they cover the globe.
+   *
+   * @param count the number of satellites
+   * @return count {line 1, line 2} pairs
+   */
+  static String[][] catalog(int count) {
+    String[][] tles = new String[count][];
+    for (int i = 0; i < count; i++) {
+      String[] base = LOW_EARTH[i % LOW_EARTH.length];
+      String noradId = String.format(Locale.US, "%05d", 10000 + i);
+      double raan = (i * 360.0 / count) % 360;
+      double meanAnomaly = (i * 137.50776) % 360; // golden angle, to avoid lining up
+      String line1 = withChecksum(base[0].substring(0, 2) + noradId + base[0].substring(7, 68));
+      String line2 =
+          withChecksum(
+              base[1].substring(0, 2)
+                  + noradId
+                  + base[1].substring(7, 17)
+                  + String.format(Locale.US, "%8.4f", raan)
+                  + base[1].substring(25, 43)
+                  + String.format(Locale.US, "%8.4f", meanAnomaly)
+                  + base[1].substring(51, 68));
+      tles[i] = new String[] {line1, line2};
+    }
+    return tles;
+  }
+
+  // append the modulo 10 checksum (digits, with '-' counting as 1)
+  private static String withChecksum(String line) {
+    int sum = 0;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c >= '0' && c <= '9') {
+        sum += c - '0';
+      } else if (c == '-') {
+        sum += 1;
+      }
+    }
+    return line + (sum % 10);
+  }
+}
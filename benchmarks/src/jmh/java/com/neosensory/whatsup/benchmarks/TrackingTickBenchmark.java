@@ -0,0 +1,94 @@
+package com.neosensory.whatsup.benchmarks;
+
+import com.neosensory.whatsup.SatelliteKdTree;
+import com.neosensory.whatsup.SatelliteStore;
+import com.neosensory.whatsup.SatelliteTracker;
+import com.neosensory.whatsup.StoreFixtures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One main-loop tick of the app (propagate every satellite, update distance/bearing and the range
+ * rules, then find the nearest satellite and the ones in range) at different catalog sizes. The
+ * app tracks MAXSATELLITES = 20 today; the larger sizes show what a full local catalog would cost.
+ * With dormancy on, satellites that can't reach the user for a while are skipped.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TrackingTickBenchmark {
+  private static final double MAX_SURFACE_DISTANCE_TO_USER = 300; // km, as in MapsActivity
+  private static final long TICK_MILLIS = 50;
+  // as in MapsActivity: the haptic lookahead plus an idle tick
+  private static final long WAKE_MARGIN_MILLIS = 2500;
+  // observer: Houston, TX
+  private static final double USER_LATITUDE = 29.76;
+  private static final double USER_LONGITUDE = -95.37;
+
+  @Param({"20", "500", "20000"})
+  public int satelliteCount;
+
+  /** 0 propagates every satellite every tick; otherwise ms between propagations (interpolating) */
+  @Param({"0", "1000"})
+  public long propagationIntervalMillis;
+
+  /** 0 positions every satellite every tick; otherwise the longest (ms) a satellite sleeps */
+  @Param({"0", "60000"})
+  public long maxDormantMillis;
+
+  private SatelliteStore store;
+  private SatelliteTracker tracker;
+  private SatelliteKdTree index;
+  private final int[] nearestSlots = new int[1];
+  private final double[] nearestDistances = new double[1];
+  private long timeMillis;
+
+  @Setup
+  public void setUp() {
+    store = new SatelliteStore(satelliteCount);
+    timeMillis = StoreFixtures.addTles(store, TleFixtures.catalog(satelliteCount), null, null);
+    tracker = new SatelliteTracker(store, MAX_SURFACE_DISTANCE_TO_USER, null);
+    tracker.setPropagationInterval(propagationIntervalMillis);
+    tracker.setDormancy(maxDormantMillis, WAKE_MARGIN_MILLIS);
+    tracker.update(USER_LATITUDE, USER_LONGITUDE, timeMillis);
+    index = new SatelliteKdTree();
+    index.rebuild(store);
+  }
+
+  /** The full per-tick update, as run by MapsActivity's main loop */
+  @Benchmark
+  public int tick() {
+    timeMillis += TICK_MILLIS;
+    tracker.update(USER_LATITUDE, USER_LONGITUDE, timeMillis);
+    return tracker.getNearestSlot();
+  }
+
+  /** Just the nearest-satellite query against an already built index */
+  @Benchmark
+  public double nearestSatellite() {
+    index.nearest(USER_LATITUDE, USER_LONGITUDE, 1, nearestSlots, nearestDistances);
+    return nearestDistances[0];
+  }
+
+  /** The linear nearest-satellite scan the index replaced, for comparison */
+  @Benchmark
+  public double nearestSatelliteScan() {
+    double nearest = Double.MAX_VALUE;
+    int highWater = store.getHighWater();
+    for (int slot = 0; slot < highWater; slot++) {
+      if (store.isLive(slot)) {
+        nearest = Math.min(nearest, store.getDistanceToUser(slot));
+      }
+    }
+    return nearest;
+  }
+}